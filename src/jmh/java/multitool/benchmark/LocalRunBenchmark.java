@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import multitool.Main;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures complete local mode runs of a word count, the flow from the README, over generated track
+ * data. Each run is timed once, as the larger datasets take minutes to process.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class LocalRunBenchmark
+  {
+  public static final String OUTPUT = "build/jmh/output/local";
+
+  @Param({"1000000", "10000000", "100000000"})
+  public long rows;
+
+  @Param({"1"})
+  public int threads;
+
+  private String source;
+
+  @Setup
+  public void setUp() throws IOException
+    {
+    source = TrackData.get( rows ).getPath();
+    }
+
+  @TearDown
+  public void tearDown() throws IOException
+    {
+    FileUtils.deleteDirectory( new File( OUTPUT ) );
+    }
+
+  @Benchmark
+  public void wordCount()
+    {
+    List<String[]> params = new ArrayList<String[]>();
+
+    params.add( new String[]{ "source", source } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "expr", "$0.toLowerCase()" } );
+    params.add( new String[]{ "gen", null } );
+    params.add( new String[]{ "gen.delim", "[\\s\\t]+" } );
+    params.add( new String[]{ "group", "0" } );
+    params.add( new String[]{ "count", null } );
+    params.add( new String[]{ "group", "1" } );
+
+    params.add( new String[]{ "sink", OUTPUT + "/wordcount" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Map<String, String> options = OperationBenchmark.localMode();
+
+    if( threads > 1 )
+      options.put( "--threads", Integer.toString( threads ) );
+
+    new Main( options, params ).execute();
+    }
+  }
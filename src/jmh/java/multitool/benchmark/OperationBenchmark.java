@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import multitool.Main;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures each pipe operation in local mode, reading generated track data and writing the results
+ * to a file. The {@code copy} operation runs the same flow without an operation, so the cost of an
+ * operation is its difference to {@code copy}. The tuples counter reports per tuple throughput, run
+ * with {@code -prof gc} for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class OperationBenchmark
+  {
+  public static final String OUTPUT = "build/jmh/output/operation";
+
+  @Param({"copy", "cut", "parse", "replace", "select", "expr", "sexpr", "concat", "gen", "pgen"})
+  public String operation;
+
+  @Param({"1000000"})
+  public long rows;
+
+  private String source;
+
+  /** Counts the tuples read by each run, reported by JMH as tuples per second. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Tuples
+    {
+    public long tuples;
+
+    @Setup(Level.Iteration)
+    public void reset()
+      {
+      tuples = 0;
+      }
+    }
+
+  @Setup
+  public void setUp() throws IOException
+    {
+    source = TrackData.get( rows ).getPath();
+    }
+
+  @TearDown
+  public void tearDown() throws IOException
+    {
+    FileUtils.deleteDirectory( new File( OUTPUT ) );
+    }
+
+  @Benchmark
+  public void run( Tuples counter )
+    {
+    List<String[]> params = new ArrayList<String[]>();
+
+    params.add( new String[]{ "source", source } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    addOperation( params, operation );
+
+    params.add( new String[]{ "sink", OUTPUT + "/" + operation } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    new Main( localMode(), params ).plan( new Properties() ).complete();
+
+    counter.tuples += rows;
+    }
+
+  static Map<String, String> localMode()
+    {
+    Map<String, String> options = new LinkedHashMap<String, String>();
+
+    options.put( "--local", "" );
+
+    return options;
+    }
+
+  /** Adds the parameters of a typical use of the given operation on track data. */
+  static void addOperation( List<String[]> params, String operation )
+    {
+    if( operation.equals( "copy" ) )
+      return;
+
+    if( operation.equals( "cut" ) )
+      {
+      params.add( new String[]{ "cut", "0,3,4" } );
+      }
+    else if( operation.equals( "parse" ) )
+      {
+      params.add( new String[]{ "parse", "^([^\\t]*)\\t/guid/([0-9a-f]+)" } );
+      params.add( new String[]{ "parse.groups", "1,2" } );
+      }
+    else if( operation.equals( "replace" ) )
+      {
+      params.add( new String[]{ "replace", "/guid/[0-9a-f]+" } );
+      params.add( new String[]{ "replace.replace", "guid" } );
+      params.add( new String[]{ "replace.replaceAll", "true" } );
+      }
+    else if( operation.equals( "select" ) )
+      {
+      params.add( new String[]{ "select", "love" } );
+      }
+    else if( operation.equals( "expr" ) )
+      {
+      params.add( new String[]{ "expr", "$0.toLowerCase()" } );
+      }
+    else if( operation.equals( "sexpr" ) )
+      {
+      params.add( new String[]{ "sexpr", "$0.indexOf( \"love\" ) >= 0" } );
+      }
+    else if( operation.equals( "concat" ) )
+      {
+      // concat needs more than one field, the cut is part of what is measured
+      params.add( new String[]{ "cut", "0,3" } );
+      params.add( new String[]{ "concat", null } );
+      params.add( new String[]{ "concat.delim", "|" } );
+      }
+    else if( operation.equals( "gen" ) )
+      {
+      params.add( new String[]{ "gen", null } );
+      params.add( new String[]{ "gen.delim", " " } );
+      }
+    else if( operation.equals( "pgen" ) )
+      {
+      params.add( new String[]{ "pgen", "(\\b[12][09][0-9]{2}\\b)" } );
+      }
+    else
+      {
+      throw new IllegalArgumentException( "unknown operation: " + operation );
+      }
+    }
+  }
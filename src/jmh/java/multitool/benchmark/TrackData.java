@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates datasets shaped like data/track.100.txt: a header line followed by rows of eleven tab
+ * separated fields, most of them empty. Generated files are kept under build/jmh/data and reused by
+ * later runs asking for the same number of rows.
+ */
+public class TrackData
+  {
+  public static final String DIRECTORY = "build/jmh/data";
+
+  private static final String HEADER = "name\tid\tlength\tartist\talbum\tlyrics\tacquire_webpage\tsong\tdate\tplace\tcontributions";
+
+  private static final String[] WORDS = {"the", "love", "night", "ghost", "child", "meat", "song", "blue", "fire", "heart",
+                                         "road", "dream", "rain", "city", "dance", "black", "summer", "river", "star",
+                                         "home", "Chasing", "Mind", "Cruel", "Talking", "Through", "Tin", "Cans",
+                                         "Factor", "Emulator", "Necrosis", "caf\u00e9", "na\u00efve"};
+
+  private TrackData()
+    {
+    }
+
+  /** Returns a file of the given number of rows plus the header, generating it if missing. */
+  public static synchronized File get( long rows ) throws IOException
+    {
+    File file = new File( DIRECTORY, "track." + rows + ".txt" );
+
+    if( file.exists() )
+      return file;
+
+    File temp = new File( DIRECTORY, file.getName() + ".tmp" );
+
+    if( !temp.getParentFile().exists() && !temp.getParentFile().mkdirs() )
+      throw new IOException( "unable to create: " + temp.getParent() );
+
+    Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( temp ), "UTF-8" ), 1024 * 1024 );
+
+    try
+      {
+      write( writer, rows, new Random( rows ) );
+      }
+    finally
+      {
+      writer.close();
+      }
+
+    if( !temp.renameTo( file ) )
+      throw new IOException( "unable to rename: " + temp );
+
+    return file;
+    }
+
+  private static void write( Writer writer, long rows, Random random ) throws IOException
+    {
+    StringBuilder line = new StringBuilder( 256 );
+
+    writer.write( HEADER );
+    writer.write( '\n' );
+
+    for( long row = 0; row < rows; row++ )
+      {
+      line.setLength( 0 );
+
+      appendWords( line, random, 1 + random.nextInt( 4 ) );
+      line.append( "\t/guid/9202a8c04000641f80000000" ).append( Long.toHexString( 0x100000000L + row ).substring( 1 ) );
+      line.append( '\t' );
+
+      if( random.nextInt( 4 ) == 0 )
+        line.append( 60000 + random.nextInt( 300000 ) );
+
+      line.append( '\t' );
+      appendWords( line, random, random.nextInt( 4 ) );
+      line.append( '\t' );
+      appendWords( line, random, 1 + random.nextInt( 3 ) );
+      line.append( "\t\t\t\t" );
+
+      if( random.nextInt( 3 ) == 0 )
+        line.append( 1950 + random.nextInt( 64 ) );
+
+      line.append( "\t\t\n" );
+
+      writer.append( line );
+      }
+    }
+
+  private static void appendWords( StringBuilder line, Random random, int count )
+    {
+    for( int i = 0; i < count; i++ )
+      {
+      if( i != 0 )
+        line.append( ' ' );
+
+      line.append( WORDS[ random.nextInt( WORDS.length ) ] );
+      }
+    }
+  }
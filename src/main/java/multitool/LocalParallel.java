@@ -0,0 +1,1004 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import multitool.columnar.ColumnarReader;
+import multitool.columnar.ColumnarWriter;
+import multitool.factory.AggregatorFactory;
+import multitool.factory.CoGroupFactory;
+import multitool.factory.GroupByFactory;
+import multitool.factory.PipeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowException;
+import cascading.tuple.Tuple;
+
+/**
+ * Runs a local mode flow on several threads. Each input file is split at line boundaries and the
+ * leading map side steps of its source run over each slice on their own thread. The results of
+ * the slices are concatenated in order, so the output is the same as that of a single threaded run.
+ * <p/>
+ * Any steps after the leading map side steps run in stages, each starting at a group or join and
+ * ending before the next one. The input of a stage is sampled for its keys and range partitioned
+ * on them, so every partition holds a contiguous run of keys in the order the stage would have
+ * read them. The stage then runs over each partition on its own thread, and concatenating the
+ * results in partition order again gives the output of a single threaded run. Intermediate results
+ * are kept in the columnar format so that field names and types survive.
+ * <p/>
+ * A stage that cannot be partitioned, like a join using a hash join or a skewed join, runs single
+ * threaded over the concatenated results together with all the steps after it.
+ */
+class LocalParallel
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( LocalParallel.class );
+
+  /** Slices smaller than this are not worth a thread of their own. */
+  static long minSliceSize = 1024 * 1024;
+
+  /** Number of keys sampled from each input file to find the partition boundaries of a stage. */
+  static final int SAMPLE_SIZE = 1000;
+
+  private static final String STAGE_NAME = "multitool";
+
+  private final Map<String, String> options;
+  private final List<String[]> params;
+  private final int threads;
+
+  LocalParallel( Map<String, String> options, List<String[]> params, int threads )
+    {
+    this.options = options;
+    this.params = params;
+    this.threads = threads;
+    }
+
+  /**
+   * Runs the flow, returning false without running anything if the params cannot be split, in
+   * which case the flow should run single threaded.
+   */
+  boolean complete( Properties properties )
+    {
+    try
+      {
+      return run( properties );
+      }
+    catch( IOException exception )
+      {
+      throw new FlowException( "unable to run parallel local flow", exception );
+      }
+    }
+
+  private boolean run( Properties properties ) throws IOException
+    {
+    int sinkStart = getSinkStart();
+    List<int[]> blocks = getSourceBlocks( sinkStart );
+
+    if( !canSplit( blocks ) )
+      return false;
+
+    int split = blocks.get( blocks.size() - 1 )[ 1 ];
+    boolean mapOnly = split == sinkStart;
+    List<long[]> boundaries = new ArrayList<long[]>();
+    boolean isSplit = false;
+
+    for( int[] block : blocks )
+      {
+      long[] blockBoundaries = getBoundaries( new File( params.get( block[ 0 ] )[ 1 ] ) );
+
+      boundaries.add( blockBoundaries );
+      isSplit |= blockBoundaries.length > 2;
+      }
+
+    if( !isSplit )
+      {
+      LOG.info( "input is too small to split, running single threaded" );
+      return false;
+      }
+
+    List<String[]> sink = params.subList( sinkStart, params.size() );
+    File target = new File( sink.get( 0 )[ 1 ] );
+
+    if( target.exists() && !isReplace( sink ) )
+      throw new IllegalArgumentException( "error: sink exists, set sink.replace=true to overwrite: " + target );
+
+    File temp = createTempDir();
+
+    try
+      {
+      Map<String, List<File>> inputs = runSlices( properties, blocks, boundaries, mapOnly, temp );
+
+      if( mapOnly )
+        {
+        concatenate( inputs.values().iterator().next(), target );
+        return true;
+        }
+
+      runStages( properties, inputs, split, sinkStart, target, temp );
+      }
+    finally
+      {
+      delete( temp );
+      }
+
+    return true;
+    }
+
+  /**
+   * Returns the start and end of each leading source and the map side steps directly following it.
+   */
+  private List<int[]> getSourceBlocks( int sinkStart )
+    {
+    List<int[]> blocks = new ArrayList<int[]>();
+    int start = 0;
+
+    while( start < sinkStart && params.get( start )[ 0 ].equals( "source" ) )
+      {
+      int end = getGroupEnd( start );
+
+      while( end < sinkStart && isMapSide( end ) )
+        end = getGroupEnd( end );
+
+      blocks.add( new int[]{ start, end } );
+      start = end;
+      }
+
+    return blocks;
+    }
+
+  private boolean canSplit( List<int[]> blocks )
+    {
+    if( blocks.isEmpty() )
+      return false;
+
+    int split = blocks.get( blocks.size() - 1 )[ 1 ];
+
+    for( String[] param : params.subList( split, params.size() ) )
+      {
+      if( param[ 0 ].equals( "source" ) )
+        {
+        LOG.info( "source follows a group or join, running single threaded" );
+        return false;
+        }
+      }
+
+    if( blocks.size() > 1 && split == getSinkStart() )
+      {
+      LOG.info( "more than one source without a join, running single threaded" );
+      return false;
+      }
+
+    for( String[] param : params.subList( 0, getSinkStart() ) )
+      {
+      if( param[ 0 ].equals( "sink" ) )
+        {
+        LOG.info( "more than one sink, running single threaded" );
+        return false;
+        }
+      }
+
+    for( String[] param : params.subList( getSinkStart(), params.size() ) )
+      {
+      if( param[ 0 ].equals( "sink.partition" ) )
+        {
+        LOG.info( "sink is partitioned, running single threaded" );
+        return false;
+        }
+      }
+
+    for( int[] block : blocks )
+      {
+      for( String[] param : params.subList( block[ 0 ] + 1, getGroupEnd( block[ 0 ] ) ) )
+        {
+        String key = param[ 0 ].substring( param[ 0 ].indexOf( '.' ) + 1 );
+
+        if( key.equals( "hasheader" ) || key.equals( "seqfile" ) || ( key.equals( "format" ) && !"text".equalsIgnoreCase( param[ 1 ] ) ) )
+          {
+          LOG.info( "source option {} cannot be split, running single threaded", param[ 0 ] );
+          return false;
+          }
+        }
+
+      if( !new File( params.get( block[ 0 ] )[ 1 ] ).isFile() )
+        {
+        LOG.info( "source is not a file, running single threaded" );
+        return false;
+        }
+      }
+
+    return true;
+    }
+
+  private Map<String, List<File>> runSlices( final Properties properties, List<int[]> blocks, List<long[]> boundaries, boolean mapOnly, File temp )
+    {
+    List<Callable<File>> tasks = new ArrayList<Callable<File>>();
+    Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+
+    for( int b = 0; b < blocks.size(); b++ )
+      {
+      long[] blockBoundaries = boundaries.get( b );
+
+      for( int i = 0; i < blockBoundaries.length - 1; i++ )
+        {
+        final File part = new File( temp, String.format( "source-%d-part-%05d", b, i ) );
+        final List<String[]> slice = getSliceParams( blocks.get( b ), i, mapOnly, part );
+        final long[] range = new long[]{ blockBoundaries[ i ], blockBoundaries[ i + 1 ] };
+
+        tasks.add( new Callable<File>()
+        {
+        public File call()
+          {
+          Main main = new Main( options, slice );
+
+          main.sourceRange = range;
+          main.plan( copy( properties ) ).complete();
+
+          return part;
+          }
+        } );
+        }
+
+      counts.put( getSourceName( blocks.get( b ) ), blockBoundaries.length - 1 );
+
+      LOG.info( "running {} slices of {} on {} threads", new Object[]{ blockBoundaries.length - 1, params.get( blocks.get( b )[ 0 ] )[ 1 ], threads } );
+      }
+
+    Iterator<File> parts = invokeAll( tasks ).iterator();
+    Map<String, List<File>> inputs = new LinkedHashMap<String, List<File>>();
+
+    for( Map.Entry<String, Integer> entry : counts.entrySet() )
+      {
+      List<File> files = new ArrayList<File>();
+
+      for( int i = 0; i < entry.getValue(); i++ )
+        files.add( parts.next() );
+
+      inputs.put( entry.getKey(), files );
+      }
+
+    return inputs;
+    }
+
+  private List<String[]> getSliceParams( int[] block, int slice, boolean mapOnly, File part )
+    {
+    List<String[]> sliceParams = new LinkedList<String[]>();
+
+    // only the first slice starts with the header line
+    for( String[] param : params.subList( block[ 0 ], block[ 1 ] ) )
+      {
+      if( slice == 0 || !param[ 0 ].equals( "source.skipheader" ) )
+        sliceParams.add( param );
+      }
+
+    if( !mapOnly )
+      {
+      sliceParams.add( new String[]{ "sink", part.getPath() } );
+      sliceParams.add( new String[]{ "sink.format", "columnar" } );
+
+      return sliceParams;
+      }
+
+    sliceParams.addAll( getSinkParams( slice, part ) );
+
+    return sliceParams;
+    }
+
+  /** Returns the sink params writing the given part of the final output. */
+  private List<String[]> getSinkParams( int part, File file )
+    {
+    List<String[]> sinkParams = new LinkedList<String[]>();
+
+    for( String[] param : params.subList( getSinkStart(), params.size() ) )
+      {
+      if( param[ 0 ].equals( "sink" ) )
+        sinkParams.add( new String[]{ "sink", file.getPath() } );
+      else if( param[ 0 ].equals( "sink.replace" ) )
+        continue;
+      else if( part == 0 || !param[ 0 ].equals( "sink.writeheader" ) )
+        sinkParams.add( param );
+      }
+
+    return sinkParams;
+    }
+
+  private void runStages( Properties properties, Map<String, List<File>> inputs, int stage, int sinkStart, File target, File temp ) throws IOException
+    {
+    for( int index = 0; ; index++ )
+      {
+      int end = getStageEnd( stage, sinkStart );
+      Map<String, int[]> keys = getStageKeys( inputs, stage, end );
+
+      if( keys == null )
+        {
+        runRemainder( properties, inputs, stage, temp );
+        return;
+        }
+
+      boolean last = end == sinkStart;
+      List<File> outputs = runPartitions( properties, inputs, keys, stage, end, last, new File( temp, "stage-" + index ) );
+
+      LOG.info( "ran {} over {} partitions", params.get( stage )[ 0 ], outputs.size() );
+
+      if( last )
+        {
+        concatenate( outputs, target );
+        return;
+        }
+
+      inputs = new LinkedHashMap<String, List<File>>();
+      inputs.put( STAGE_NAME, outputs );
+      stage = end;
+      }
+    }
+
+  /** Runs the remaining steps single threaded over the concatenated inputs. */
+  private void runRemainder( Properties properties, Map<String, List<File>> inputs, int stage, File temp ) throws IOException
+    {
+    List<String[]> remainder = new LinkedList<String[]>();
+    int index = 0;
+
+    for( Map.Entry<String, List<File>> entry : inputs.entrySet() )
+      {
+      File intermediate = new File( temp, "intermediate-" + index++ );
+
+      concatenate( entry.getValue(), intermediate );
+
+      remainder.add( new String[]{ "source", intermediate.getPath() } );
+      remainder.add( new String[]{ "source.format", "columnar" } );
+      remainder.add( new String[]{ "source.name", entry.getKey() } );
+      }
+
+    remainder.addAll( params.subList( stage, params.size() ) );
+
+    new Main( options, remainder ).plan( copy( properties ) ).complete();
+    }
+
+  /** Returns the index of the next group or join after the given stage, or the sink start. */
+  private int getStageEnd( int stage, int sinkStart )
+    {
+    int end = getGroupEnd( stage );
+
+    while( end < sinkStart && !isGrouping( end ) )
+      end = getGroupEnd( end );
+
+    return end;
+    }
+
+  /**
+   * Returns the key columns of each input the stage groups on, or null if the stage cannot be
+   * partitioned.
+   */
+  private Map<String, int[]> getStageKeys( Map<String, List<File>> inputs, int stage, int end ) throws IOException
+    {
+    for( int i = getGroupEnd( stage ); i < end; i = getGroupEnd( i ) )
+      {
+      if( !isMapSide( i ) && !( Main.factoryMap.get( params.get( i )[ 0 ] ) instanceof AggregatorFactory ) )
+        {
+        LOG.info( "{} cannot run over partitions, running single threaded", params.get( i )[ 0 ] );
+        return null;
+        }
+      }
+
+    Map<String, String> subParams = getSubParams( stage );
+    Map<String, String> fields = new LinkedHashMap<String, String>();
+    Object factory = Main.factoryMap.get( params.get( stage )[ 0 ] );
+
+    if( factory instanceof GroupByFactory && inputs.size() == 1 && params.get( stage )[ 1 ] != null && !params.get( stage )[ 1 ].isEmpty() )
+      {
+      fields.put( inputs.keySet().iterator().next(), params.get( stage )[ 1 ] );
+      }
+    else if( factory instanceof CoGroupFactory && inputs.size() == 2 && isPartitionable( subParams ) )
+      {
+      fields.put( subParams.get( "lhs" ), subParams.get( "lhs.group" ) );
+      fields.put( subParams.get( "rhs" ), subParams.get( "rhs.group" ) );
+      }
+
+    if( fields.size() != inputs.size() || !fields.keySet().equals( inputs.keySet() ) )
+      {
+      LOG.info( "{} cannot run over partitions, running single threaded", params.get( stage )[ 0 ] );
+      return null;
+      }
+
+    Map<String, int[]> keys = new LinkedHashMap<String, int[]>();
+
+    for( Map.Entry<String, String> entry : fields.entrySet() )
+      {
+      String[] names = getNames( inputs.get( entry.getKey() ) );
+      int[] columns = names == null ? null : getKeyColumns( names, entry.getValue() );
+
+      if( columns == null )
+        {
+        LOG.info( "keys of {} not found, running single threaded", entry.getKey() );
+        return null;
+        }
+
+      keys.put( entry.getKey(), columns );
+      }
+
+    return keys;
+    }
+
+  /** Only a plain cogroup keeps all rows with the same key together. */
+  private static boolean isPartitionable( Map<String, String> subParams )
+    {
+    String strategy = subParams.get( "strategy" );
+    String skew = subParams.get( "skew" );
+
+    if( strategy != null && !strategy.equalsIgnoreCase( "cogroup" ) )
+      return false;
+
+    return skew == null || skew.equalsIgnoreCase( "off" );
+    }
+
+  /** Returns the column names of the first of the files having any, or null if none do. */
+  private static String[] getNames( List<File> files ) throws IOException
+    {
+    for( File file : files )
+      {
+      if( !file.exists() )
+        continue;
+
+      ColumnarReader reader = new ColumnarReader( new FileInputStream( file ) );
+
+      try
+        {
+        if( reader.getNames().length != 0 )
+          return reader.getNames();
+        }
+      finally
+        {
+        reader.close();
+        }
+      }
+
+    return null;
+    }
+
+  /**
+   * Resolves the given fields, names or positions, against the column names, returning null if any
+   * is not found. No fields means the first field, as in join.
+   */
+  private static int[] getKeyColumns( String[] names, String fields )
+    {
+    if( fields == null || fields.isEmpty() )
+      return names.length == 0 ? null : new int[]{ 0 };
+
+    String[] split = fields.split( "," );
+    int[] columns = new int[ split.length ];
+
+    for( int i = 0; i < split.length; i++ )
+      {
+      try
+        {
+        columns[ i ] = Integer.parseInt( split[ i ] );
+
+        if( columns[ i ] < 0 )
+          columns[ i ] += names.length;
+        }
+      catch( NumberFormatException exception )
+        {
+        columns[ i ] = Arrays.asList( names ).indexOf( split[ i ] );
+        }
+
+      if( columns[ i ] < 0 || columns[ i ] >= names.length )
+        return null;
+      }
+
+    return columns;
+    }
+
+  private List<File> runPartitions( final Properties properties, Map<String, List<File>> inputs, Map<String, int[]> keys, final int stage, final int end, final boolean last, final File dir ) throws IOException
+    {
+    if( !dir.mkdirs() )
+      throw new IOException( "unable to create temporary directory: " + dir );
+
+    final Tuple[] splits = getSplits( inputs, keys );
+    final int partitions = splits.length + 1;
+    List<Callable<File>> routes = new ArrayList<Callable<File>>();
+    final List<String> names = new ArrayList<String>( inputs.keySet() );
+
+    for( int n = 0; n < names.size(); n++ )
+      {
+      final List<File> files = inputs.get( names.get( n ) );
+      final int[] columns = keys.get( names.get( n ) );
+
+      for( int f = 0; f < files.size(); f++ )
+        {
+        final File file = files.get( f );
+        final String prefix = String.format( "input-%d-%05d", n, f );
+
+        routes.add( new Callable<File>()
+        {
+        public File call() throws IOException
+          {
+          route( file, columns, splits, new File( dir, prefix ) );
+          return file;
+          }
+        } );
+        }
+      }
+
+    invokeAll( routes );
+
+    List<Callable<File>> tasks = new ArrayList<Callable<File>>();
+
+    for( int p = 0; p < partitions; p++ )
+      {
+      final List<String[]> partitionParams = new LinkedList<String[]>();
+
+      for( int n = 0; n < names.size(); n++ )
+        {
+        List<File> parts = new ArrayList<File>();
+
+        for( int f = 0; f < inputs.get( names.get( n ) ).size(); f++ )
+          parts.add( new File( dir, String.format( "input-%d-%05d-%05d", n, f, p ) ) );
+
+        File input = new File( dir, String.format( "input-%d-%05d", n, p ) );
+
+        concatenate( parts, input );
+
+        partitionParams.add( new String[]{ "source", input.getPath() } );
+        partitionParams.add( new String[]{ "source.format", "columnar" } );
+        partitionParams.add( new String[]{ "source.name", names.get( n ) } );
+        }
+
+      partitionParams.addAll( params.subList( stage, end ) );
+
+      final File output = new File( dir, String.format( "output-%05d", p ) );
+
+      if( last )
+        {
+        partitionParams.addAll( getSinkParams( p, output ) );
+        }
+      else
+        {
+        partitionParams.add( new String[]{ "sink", output.getPath() } );
+        partitionParams.add( new String[]{ "sink.format", "columnar" } );
+        }
+
+      tasks.add( new Callable<File>()
+      {
+      public File call()
+        {
+        new Main( options, partitionParams ).plan( copy( properties ) ).complete();
+
+        return output;
+        }
+      } );
+      }
+
+    return invokeAll( tasks );
+    }
+
+  /**
+   * Samples the keys of all inputs and returns the sorted, distinct keys splitting them into at most
+   * as many partitions as there are threads.
+   */
+  private Tuple[] getSplits( Map<String, List<File>> inputs, Map<String, int[]> keys )
+    {
+    List<Callable<List<Tuple>>> tasks = new ArrayList<Callable<List<Tuple>>>();
+
+    for( Map.Entry<String, List<File>> entry : inputs.entrySet() )
+      {
+      final int[] columns = keys.get( entry.getKey() );
+
+      for( final File file : entry.getValue() )
+        {
+        final long seed = tasks.size();
+
+        tasks.add( new Callable<List<Tuple>>()
+        {
+        public List<Tuple> call() throws IOException
+          {
+          return sample( file, columns, new Random( seed ) );
+          }
+        } );
+        }
+      }
+
+    List<Tuple> samples = new ArrayList<Tuple>();
+
+    for( List<Tuple> sample : invokeAll( tasks ) )
+      samples.addAll( sample );
+
+    Collections.sort( samples );
+
+    List<Tuple> splits = new ArrayList<Tuple>();
+
+    for( int i = 1; i < threads && !samples.isEmpty(); i++ )
+      {
+      Tuple split = samples.get( i * samples.size() / threads );
+
+      if( splits.isEmpty() || splits.get( splits.size() - 1 ).compareTo( split ) < 0 )
+        splits.add( split );
+      }
+
+    return splits.toArray( new Tuple[ splits.size() ] );
+    }
+
+  /** Returns a uniform sample of the keys of the file, reading only the key columns. */
+  private static List<Tuple> sample( File file, int[] columns, Random random ) throws IOException
+    {
+    List<Tuple> sample = new ArrayList<Tuple>();
+
+    if( !file.exists() )
+      return sample;
+
+    ColumnarReader reader = new ColumnarReader( new FileInputStream( file ) );
+
+    try
+      {
+      if( reader.getNames().length == 0 )
+        return sample;
+
+      String[] selected = new String[ columns.length ];
+
+      for( int i = 0; i < columns.length; i++ )
+        selected[ i ] = reader.getNames()[ columns[ i ] ];
+
+      reader.select( selected );
+
+      long seen = 0;
+
+      while( reader.next() )
+        {
+        seen++;
+
+        if( sample.size() < SAMPLE_SIZE )
+          {
+          sample.add( getKey( reader, null ) );
+          continue;
+          }
+
+        long index = (long) ( random.nextDouble() * seen );
+
+        if( index < SAMPLE_SIZE )
+          sample.set( (int) index, getKey( reader, null ) );
+        }
+      }
+    finally
+      {
+      reader.close();
+      }
+
+    return sample;
+    }
+
+  /**
+   * Writes each row of the file to the partition its key falls in, a file named after the prefix and
+   * the partition number. Every partition file is written, if empty, so that it names the columns.
+   */
+  private static void route( File file, int[] columns, Tuple[] splits, File prefix ) throws IOException
+    {
+    if( !file.exists() )
+      return;
+
+    ColumnarReader reader = new ColumnarReader( new FileInputStream( file ) );
+    ColumnarWriter[] writers = new ColumnarWriter[ splits.length + 1 ];
+
+    try
+      {
+      String[] names = reader.getNames();
+
+      if( names.length == 0 )
+        return;
+
+      // keep the buffered rows of all partitions to about a single row group
+      int rowGroupSize = Math.max( 1, ColumnarWriter.DEFAULT_ROW_GROUP_SIZE / writers.length );
+
+      for( int p = 0; p < writers.length; p++ )
+        writers[ p ] = new ColumnarWriter( new FileOutputStream( String.format( "%s-%05d", prefix.getPath(), p ) ), names, rowGroupSize, false );
+
+      while( reader.next() )
+        {
+        ColumnarWriter writer = writers[ getPartition( splits, getKey( reader, columns ) ) ];
+
+        for( int i = 0; i < names.length; i++ )
+          writer.set( i, reader.get( i ) );
+
+        writer.endRow();
+        }
+      }
+    finally
+      {
+      reader.close();
+
+      for( ColumnarWriter writer : writers )
+        {
+        if( writer != null )
+          writer.close();
+        }
+      }
+    }
+
+  /** Returns the key of the current row, made of the given columns or all selected columns if null. */
+  private static Tuple getKey( ColumnarReader reader, int[] columns )
+    {
+    int width = columns == null ? reader.getWidth() : columns.length;
+    Tuple key = new Tuple();
+
+    for( int i = 0; i < width; i++ )
+      key.add( reader.get( columns == null ? i : columns[ i ] ) );
+
+    return key;
+    }
+
+  /** Returns the number of splits not greater than the key. */
+  static int getPartition( Tuple[] splits, Tuple key )
+    {
+    int low = 0;
+    int high = splits.length;
+
+    while( low < high )
+      {
+      int middle = ( low + high ) >>> 1;
+
+      if( splits[ middle ].compareTo( key ) <= 0 )
+        low = middle + 1;
+      else
+        high = middle;
+      }
+
+    return low;
+    }
+
+  /** Runs the tasks on the thread pool, returning their results in order. */
+  private <T> List<T> invokeAll( List<? extends Callable<T>> tasks )
+    {
+    ExecutorService executor = Executors.newFixedThreadPool( threads );
+    List<Future<T>> futures = new ArrayList<Future<T>>();
+
+    try
+      {
+      for( Callable<T> task : tasks )
+        futures.add( executor.submit( task ) );
+
+      List<T> results = new ArrayList<T>();
+
+      for( Future<T> future : futures )
+        results.add( future.get() );
+
+      return results;
+      }
+    catch( InterruptedException exception )
+      {
+      Thread.currentThread().interrupt();
+      throw new FlowException( "interrupted while running parallel tasks", exception );
+      }
+    catch( ExecutionException exception )
+      {
+      if( exception.getCause() instanceof RuntimeException )
+        throw (RuntimeException) exception.getCause();
+
+      throw new FlowException( "failed running parallel task", exception.getCause() );
+      }
+    finally
+      {
+      executor.shutdownNow();
+      }
+    }
+
+  private String getSourceName( int[] block )
+    {
+    for( String[] param : params.subList( block[ 0 ] + 1, getGroupEnd( block[ 0 ] ) ) )
+      {
+      if( param[ 0 ].equals( "source.name" ) && param[ 1 ] != null && !param[ 1 ].isEmpty() )
+        return param[ 1 ];
+      }
+
+    return STAGE_NAME;
+    }
+
+  private Map<String, String> getSubParams( int index )
+    {
+    Map<String, String> subParams = new HashMap<String, String>();
+    String prefix = params.get( index )[ 0 ] + ".";
+
+    for( String[] param : params.subList( index + 1, getGroupEnd( index ) ) )
+      subParams.put( param[ 0 ].substring( prefix.length() ), param[ 1 ] );
+
+    return subParams;
+    }
+
+  private boolean isMapSide( int index )
+    {
+    Object factory = Main.factoryMap.get( params.get( index )[ 0 ] );
+
+    return factory instanceof PipeFactory && ( (PipeFactory) factory ).isMapSide();
+    }
+
+  private boolean isGrouping( int index )
+    {
+    Object factory = Main.factoryMap.get( params.get( index )[ 0 ] );
+
+    return factory instanceof GroupByFactory || factory instanceof CoGroupFactory;
+    }
+
+  /** Returns the offsets splitting the file into slices, each starting at the beginning of a line. */
+  private long[] getBoundaries( File file ) throws IOException
+    {
+    long size = file.length();
+    int slices = (int) Math.min( threads, Math.max( 1, size / minSliceSize ) );
+    List<Long> boundaries = new ArrayList<Long>();
+    RandomAccessFile random = new RandomAccessFile( file, "r" );
+
+    boundaries.add( 0L );
+
+    try
+      {
+      for( int i = 1; i < slices; i++ )
+        {
+        random.seek( Math.max( size * i / slices, boundaries.get( boundaries.size() - 1 ) ) );
+
+        int read;
+
+        do
+          {
+          read = random.read();
+          }
+        while( read != -1 && read != '\n' );
+
+        long position = random.getFilePointer();
+
+        if( position > boundaries.get( boundaries.size() - 1 ) && position < size )
+          boundaries.add( position );
+        }
+      }
+    finally
+      {
+      random.close();
+      }
+
+    boundaries.add( size );
+
+    long[] result = new long[ boundaries.size() ];
+
+    for( int i = 0; i < result.length; i++ )
+      result[ i ] = boundaries.get( i );
+
+    return result;
+    }
+
+  private int getGroupEnd( int index )
+    {
+    int end = index + 1;
+
+    while( end < params.size() && params.get( end )[ 0 ].startsWith( params.get( index )[ 0 ] + "." ) )
+      end++;
+
+    return end;
+    }
+
+  private int getSinkStart()
+    {
+    for( int i = params.size() - 1; i >= 0; i-- )
+      {
+      if( params.get( i )[ 0 ].equals( "sink" ) )
+        return i;
+      }
+
+    throw new IllegalArgumentException( "error: must have one sink" );
+    }
+
+  private boolean isReplace( List<String[]> sink )
+    {
+    for( String[] param : sink )
+      {
+      if( param[ 0 ].equals( "sink.replace" ) && Boolean.parseBoolean( param[ 1 ] ) )
+        return true;
+      }
+
+    return false;
+    }
+
+  private static Properties copy( Properties properties )
+    {
+    Properties copy = new Properties();
+
+    copy.putAll( properties );
+
+    return copy;
+    }
+
+  private static File createTempDir() throws IOException
+    {
+    File temp = File.createTempFile( "multitool", "" );
+
+    if( !temp.delete() || !temp.mkdir() )
+      throw new IOException( "unable to create temporary directory: " + temp );
+
+    return temp;
+    }
+
+  private static void concatenate( List<File> parts, File target ) throws IOException
+    {
+    if( target.getParentFile() != null )
+      target.getParentFile().mkdirs();
+
+    OutputStream output = new FileOutputStream( target );
+    byte[] buffer = new byte[ 64 * 1024 ];
+
+    try
+      {
+      for( File part : parts )
+        {
+        // a slice without output may not have written a file
+        if( !part.exists() )
+          continue;
+
+        InputStream input = new FileInputStream( part );
+
+        try
+          {
+          int read;
+
+          while( ( read = input.read( buffer ) ) != -1 )
+            output.write( buffer, 0, read );
+          }
+        finally
+          {
+          input.close();
+          }
+        }
+      }
+    finally
+      {
+      output.close();
+      }
+    }
+
+  private static void delete( File file )
+    {
+    File[] children = file.listFiles();
+
+    if( children != null )
+      {
+      for( File child : children )
+        delete( child );
+      }
+
+    if( !file.delete() )
+      LOG.warn( "unable to delete temporary file: {}", file );
+    }
+  }
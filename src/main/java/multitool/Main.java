@@ -20,7 +20,16 @@
 
 package multitool;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,6 +37,10 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Properties;
 
+import multitool.columnar.Pushdown;
+import multitool.factory.AggregatorFactory;
+import multitool.factory.ApproxDistinctFactory;
+import multitool.factory.BranchFactory;
 import multitool.factory.CoGroupFactory;
 import multitool.factory.ConcatFactory;
 import multitool.factory.CountFactory;
@@ -42,6 +55,7 @@ import multitool.factory.GroupByFactory;
 import multitool.factory.ParserFactory;
 import multitool.factory.ParserGenFactory;
 import multitool.factory.PipeFactory;
+import multitool.factory.QuantileFactory;
 import multitool.factory.RejectFactory;
 import multitool.factory.ReplaceFactory;
 import multitool.factory.RetainFactory;
@@ -51,7 +65,13 @@ import multitool.factory.SinkFactory;
 import multitool.factory.SourceFactory;
 import multitool.factory.SumFactory;
 import multitool.factory.TapFactory;
+import multitool.factory.TopFactory;
 import multitool.factory.UniqueFactory;
+import multitool.operation.ExpressionCache;
+import multitool.operation.FusedFilter;
+import multitool.operation.FusedFunction;
+import multitool.stats.Stats;
+import multitool.tap.local.FileRangeTap;
 import multitool.util.Version;
 
 import org.apache.hadoop.io.compress.GzipCodec;
@@ -60,12 +80,20 @@ import org.slf4j.LoggerFactory;
 
 import cascading.flow.Flow;
 import cascading.flow.FlowConnector;
+import cascading.flow.FlowException;
 import cascading.flow.hadoop.HadoopFlowConnector;
 import cascading.flow.local.LocalFlowConnector;
 import cascading.flow.planner.PlannerException;
+import cascading.operation.Filter;
+import cascading.operation.Function;
+import cascading.operation.Operation;
+import cascading.pipe.Each;
 import cascading.pipe.Pipe;
+import cascading.pipe.SubAssembly;
 import cascading.property.AppProps;
 import cascading.tap.Tap;
+import cascading.tap.local.FileTap;
+import cascading.tuple.Fields;
 
 /**
  * Main class of multitool.
@@ -94,10 +122,14 @@ public class Main
                                                            new ReplaceFactory( "replace" ),
                                                            new GroupByFactory( "group" ),
                                                            new CoGroupFactory( "join" ),
+                                                           new BranchFactory( "branch" ),
                                                            new ConcatFactory( "concat" ),
                                                            new GenFactory( "gen" ),
                                                            new CountFactory( "count" ),
+                                                           new ApproxDistinctFactory( "approxdistinct" ),
+                                                           new QuantileFactory( "quantile" ),
                                                            new SumFactory( "sum" ),
+                                                           new TopFactory( "top" ),
                                                            new ExpressionFactory( "expr" ),
                                                            new SelectExpressionFactory( "sexpr" ),
                                                            new DebugFactory( "debug" ),
@@ -115,6 +147,12 @@ public class Main
     optionMap.put( "--local", new Option( "--markdown", false, null ) );
     optionMap.put( "--dot", new Option( "--dot", true, null ) );
     optionMap.put( "--appname", new Option( "--appname", true, null ) );
+    optionMap.put( "--threads", new Option( "--threads", true, null ) );
+    optionMap.put( "--stats", new Option( "--stats", true, null ) );
+    optionMap.put( "--exprcache", new Option( "--exprcache", true, null ) );
+    optionMap.put( "--nofusion", new Option( "--nofusion", false, null ) );
+    optionMap.put( "--pipeline", new Option( "--pipeline", true, null ) );
+    optionMap.put( "--no-plan-cache", new Option( "--no-plan-cache", false, null ) );
 
     for( Factory factory : TAP_FACTORIES )
       {
@@ -134,6 +172,12 @@ public class Main
 
   private PLATFORM platform;
 
+  /** Byte range of the source file to read, set when running a slice of a parallel local flow. */
+  long[] sourceRange;
+
+  /** Metrics of the stages of the last planned flow, if --stats was given. */
+  private Stats stats;
+
   public static void main( String[] args )
     {
 
@@ -142,49 +186,140 @@ public class Main
 
     try
       {
-      for( String arg : args )
+      parseArgs( Arrays.asList( args ), options, params, false );
+
+      new Main( options, params ).execute();
+      }
+    catch ( IllegalArgumentException exception )
+      {
+      System.err.println( exception.getMessage() );
+      printUsage( true, false );
+      }
+    }
+
+  /**
+   * Adds the given arguments to the options and params, in order. The params of a --pipeline file
+   * are added in place of the option, so arguments following it can add further steps. Sub-params
+   * directly following the option set the sub-param of the last step of their name instead, so they
+   * override the values the file gave any of its steps.
+   */
+  static void parseArgs( List<String> args, Map<String, String> options, List<String[]> params, boolean inPipeline )
+    {
+    boolean isOverride = false;
+
+    for( String arg : args )
+      {
+      String argName = arg;
+      String argVerb = arg;
+      String argData = null;
+
+      int equalsIndex = arg.indexOf( "=" );
+
+      if( equalsIndex != -1 )
         {
-        String argName = arg;
-        String argVerb = arg;
-        String argData = null;
+        argName = arg.substring( 0, equalsIndex );
+        argVerb = arg.substring( 0, equalsIndex );
+        argData = arg.substring( equalsIndex + 1 );
+        }
 
-        int equalsIndex = arg.indexOf( "=" );
+      int dotIndex = argName.indexOf( "." );
+
+      if( dotIndex != -1 )
+        argName = argName.substring( 0, dotIndex );
+
+      if( arg.startsWith( "-" ) )
+        {
+        if( !optionMap.keySet().contains( argName ) || !optionMap.get( argName ).isValid( argVerb, argData ) )
+          throw new IllegalArgumentException( "error: incorrect option or usage: " + arg );
 
-        if( equalsIndex != -1 )
+        if( argVerb.equals( "--pipeline" ) )
           {
-          argName = arg.substring( 0, equalsIndex );
-          argVerb = arg.substring( 0, equalsIndex );
-          argData = arg.substring( equalsIndex + 1 );
+          if( inPipeline )
+            throw new IllegalArgumentException( "error: --pipeline cannot be used in a pipeline file: " + arg );
+
+          parseArgs( readPipeline( argData ), options, params, true );
+          isOverride = true;
           }
 
-        int dotIndex = argName.indexOf( "." );
+        options.put( argVerb, argData );
+        }
+      else
+        {
+        if( !optionMap.keySet().contains( argName ) )
+          throw new IllegalArgumentException( "error: incorrect parameter or usage: " + arg );
 
-        if( dotIndex != -1 )
-          argName = argName.substring( 0, dotIndex );
+        isOverride &= dotIndex != -1;
 
-        if( arg.startsWith( "-" ) )
-          {
-          if( optionMap.keySet().contains( argName ) && optionMap.get( argName ).isValid( argVerb, argData ) )
-            options.put( argVerb, argData );
-          else
-            throw new IllegalArgumentException( "error: incorrect option or usage: " + arg );
-          }
+        if( isOverride )
+          override( params, argName, argVerb, argData );
         else
+          params.add( new String[]{ argVerb, argData } );
+        }
+      }
+    }
+
+  /** Sets the sub-param of the last step of the given name, replacing its value if already set. */
+  private static void override( List<String[]> params, String step, String key, String value )
+    {
+    int index = params.size() - 1;
+
+    while( index >= 0 && !params.get( index )[ 0 ].equals( step ) )
+      index--;
+
+    if( index == -1 )
+      throw new IllegalArgumentException( "error: no " + step + " in pipeline to set: " + key );
+
+    int end = index + 1;
+
+    for( ; end < params.size() && params.get( end )[ 0 ].startsWith( step + "." ); end++ )
+      {
+      if( params.get( end )[ 0 ].equals( key ) )
+        {
+        params.set( end, new String[]{ key, value } );
+        return;
+        }
+      }
+
+    params.add( end, new String[]{ key, value } );
+    }
+
+  /**
+   * Reads the arguments of a pipeline file, one per line as given on the command line. Whitespace
+   * around the name of a param is ignored, so sub-params may be indented below their step, but the
+   * value following the '=' is kept as is. Blank lines and lines starting with '#' are skipped.
+   */
+  static List<String> readPipeline( String path )
+    {
+    List<String> args = new ArrayList<String>();
+
+    try
+      {
+      BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( path ), "UTF-8" ) );
+
+      try
+        {
+        String line;
+
+        while( ( line = reader.readLine() ) != null )
           {
-          if( optionMap.keySet().contains( argName ) )
-            params.add( new String[]{ argVerb, argData } );
-          else
-            throw new IllegalArgumentException( "error: incorrect parameter or usage: " + arg );
+          int equalsIndex = line.indexOf( '=' );
+          String arg = equalsIndex == -1 ? line.trim() : line.substring( 0, equalsIndex ).trim() + line.substring( equalsIndex );
+
+          if( !arg.isEmpty() && !arg.startsWith( "#" ) )
+            args.add( arg );
           }
         }
-
-      new Main( options, params ).execute();
+      finally
+        {
+        reader.close();
+        }
       }
-    catch ( IllegalArgumentException exception )
+    catch( IOException exception )
       {
-      System.err.println( exception.getMessage() );
-      printUsage( true, false );
+      throw new IllegalArgumentException( "error: unable to read pipeline: " + path, exception );
       }
+
+    return args;
     }
 
   private static void printUsage( boolean isError, boolean genMarkdown )
@@ -214,7 +349,13 @@ public class Main
     printTableRow( genMarkdown, "--markdown", "generate help text as GitHub Flavored Markdown" );
     printTableRow( genMarkdown, "--appname=name", "set cascading application name" );
     printTableRow( genMarkdown, "--local", "use cascading local mode" );
+    printTableRow( genMarkdown, "--threads=N", "in local mode, split the input over N threads" );
     printTableRow( genMarkdown, "--dot=filename", "write a plan DOT file, then exit" );
+    printTableRow( genMarkdown, "--stats=filename", "write tuple counts, time spent per operation and bytes read per source as JSON" );
+    printTableRow( genMarkdown, "--exprcache=dir", "store compiled expressions in dir, a local path on every node, for later tasks and runs" );
+    printTableRow( genMarkdown, "--pipeline=filename", "read params from filename, one per line, in place of this option; sub-params directly following it override those of the last step of their name" );
+    printTableRow( genMarkdown, "--no-plan-cache", "always plan the flow, instead of reusing the plan of an earlier run of the same command" );
+    printTableRow( genMarkdown, "--nofusion", "run each step as its own operation instead of fusing consecutive filters and functions" );
     printSubHeading( genMarkdown, "taps:" );
     printFactoryUsage( genMarkdown, TAP_FACTORIES );
     printSubHeading( genMarkdown, "operations:" );
@@ -293,6 +434,34 @@ public class Main
     this.platform = options.containsKey( "--local" ) ? PLATFORM.LOCAL : PLATFORM.HADOOP;
     }
 
+  private int getThreads()
+    {
+    String threads = options.get( "--threads" );
+
+    if( threads == null )
+      return 1;
+
+    if( options.containsKey( "--stats" ) )
+      throw new IllegalArgumentException( "error: --stats cannot be used with --threads" );
+
+    if( platform != PLATFORM.LOCAL )
+      throw new IllegalArgumentException( "error: --threads requires --local" );
+
+    try
+      {
+      int value = Integer.parseInt( threads );
+
+      if( value > 0 )
+        return value;
+      }
+    catch( NumberFormatException exception )
+      {
+      // fall through
+      }
+
+    throw new IllegalArgumentException( "error: --threads must be a positive number: " + threads );
+    }
+
   private void validateParams()
     {
     for( String[] param : params )
@@ -336,6 +505,11 @@ public class Main
 
     try
       {
+      int threads = getThreads();
+
+      if( threads > 1 && !options.containsKey( dotKey ) && new LocalParallel( options, params, threads ).complete( getDefaultProperties() ) )
+        return;
+
       Flow flow = plan( getDefaultProperties() );
       if( options.containsKey( dotKey ) )
         {
@@ -346,7 +520,21 @@ public class Main
         }
       else
         {
-        flow.complete();
+        try
+          {
+          flow.complete();
+          }
+        finally
+          {
+          // the stats of a failed flow tell which stage failed it
+          if( stats != null )
+            writeStats( flow, new File( options.get( "--stats" ) ) );
+          }
+
+        long absorbed = flow.getFlowStats().getCounterValue( AggregatorFactory.Partial.Tuples_Absorbed );
+
+        if( absorbed > 0 )
+          LOG.info( "map side partial aggregation absorbed {} tuples", absorbed );
         }
       }
     catch ( PlannerException exception )
@@ -363,14 +551,46 @@ public class Main
       }
     }
 
+  @SuppressWarnings("rawtypes")
+  private void writeStats( Flow flow, File file )
+    {
+    try
+      {
+      stats.write( flow, file );
+      LOG.info( "wrote stats to: {}", file );
+      }
+    catch( IOException exception )
+      {
+      throw new FlowException( "unable to write stats to: " + file, exception );
+      }
+    }
+
   @SuppressWarnings("rawtypes")
   public Flow plan( Properties properties )
     {
     Map<String, Pipe> pipes = new HashMap<String, Pipe>();
     Map<String, Tap> sources = new HashMap<String, Tap>();
     Map<String, Tap> sinks = new HashMap<String, Tap>();
+    List<Pipe> tails = new ArrayList<Pipe>();
     Pipe currentPipe = null;
 
+    stats = options.containsKey( "--stats" ) ? new Stats() : null;
+    boolean isPlanCacheable = true;
+
+    // set before planning, so side flows run while planning, like those of join.bloom, see them too
+    String appnameOption = "--appname";
+    if( optionMap.containsKey( appnameOption ) )
+      AppProps.setApplicationName( properties, options.get( appnameOption ) );
+
+    if( options.containsKey( "--exprcache" ) )
+      properties.setProperty( ExpressionCache.DIRECTORY, options.get( "--exprcache" ) );
+
+    if( options.containsKey( "--dot" ) )
+      properties.setProperty( PipeFactory.PLAN_ONLY, "true" );
+
+    List<String[]> params = new LinkedList<String[]>( this.params );
+    Map<String[], Pushdown> pushdowns = pushdown( params );
+
     ListIterator<String[]> iterator = params.listIterator();
 
     while( iterator.hasNext() )
@@ -379,28 +599,53 @@ public class Main
       String key = pair[ 0 ];
       String value = pair[ 1 ];
       LOG.debug( "key: {}", key );
-      Map<String, String> subParams = getSubParams( key, iterator );
+      Map<String, String> subParams = getSubParams( params, key, iterator );
 
       Factory factory = factoryMap.get( key );
+      Pipe previousPipe = currentPipe;
 
       if( !factory.supportsPlatform( platform ) )
         throw new IllegalArgumentException( String.format( "option '%s' in is incompatible with current mode '%s'", key, platform
             .toString().toLowerCase() ) );
       if( factory instanceof SourceFactory )
         {
-        Tap tap = ( (TapFactory) factory ).getTap( value, subParams, platform );
+        Tap tap = ( (SourceFactory) factory ).getTap( value, subParams, pushdowns.get( pair ), platform );
+
+        if( sourceRange != null && tap instanceof FileTap )
+          tap = new FileRangeTap( ( (FileTap) tap ).getScheme(), tap.getIdentifier(), sourceRange[ 0 ], sourceRange[ 1 ] );
         currentPipe = ( (TapFactory) factory ).addAssembly( value, subParams, currentPipe );
         sources.put( currentPipe.getName(), tap );
         }
       else if( factory instanceof SinkFactory )
         {
+        if( sinks.containsKey( currentPipe.getName() ) )
+          throw new IllegalArgumentException( "error: more than one sink for: " + currentPipe.getName() + ", use branch to add another" );
+
         sinks.put( currentPipe.getName(), ( (TapFactory) factory ).getTap( value, subParams, platform ) );
         currentPipe = ( (TapFactory) factory ).addAssembly( value, subParams, currentPipe );
+        tails.add( currentPipe );
         }
       else
         {
-        currentPipe = ( (PipeFactory) factory ).addAssembly( value, subParams, pipes, currentPipe );
+        // the steps so far must end in a sink, unless the branch continues them
+        if( factory instanceof BranchFactory && !tails.contains( currentPipe ) && currentPipe != pipes.get( value ) )
+          throw new IllegalArgumentException( "error: branch must follow a sink or the pipe it branches off" );
+
+        currentPipe = ( (PipeFactory) factory ).addAssembly( value, subParams, pipes, sources, properties, currentPipe );
+        isPlanCacheable &= ( (PipeFactory) factory ).isPlanCacheable( value, subParams );
+
+        if( stats == null && !options.containsKey( "--nofusion" ) )
+          currentPipe = fuse( previousPipe, currentPipe );
+        }
+
+      if( stats != null )
+        {
+        currentPipe = stats.meter( key, value, previousPipe, currentPipe, pipes.values() );
+
+        if( factory instanceof SourceFactory )
+          stats.setSource( sources.get( currentPipe.getName() ) );
         }
+
       pipes.put( currentPipe.getName(), currentPipe );
       }
 
@@ -408,22 +653,248 @@ public class Main
       throw new IllegalArgumentException( "error: must have at least one source" );
 
     if( sinks.isEmpty() )
-      throw new IllegalArgumentException( "error: must have one sink" );
+      throw new IllegalArgumentException( "error: must have at least one sink" );
 
-    String appnameOption = "--appname";
-    if( optionMap.containsKey( appnameOption ) )
-      AppProps.setApplicationName( properties, options.get( appnameOption ) );
+    // only the pipes ending in a sink are planned, any steps after the last sink would be dropped
+    if( !tails.contains( currentPipe ) )
+      throw new IllegalArgumentException( "error: steps after the last sink must end in a sink" );
 
-    FlowConnector connector;
-    if( platform == PLATFORM.HADOOP )
-      connector = new HadoopFlowConnector( properties );
-    else
-      connector = new LocalFlowConnector( properties );
+    long start = System.currentTimeMillis();
+    PlanCache planCache = null;
+    String planKey = null;
+    Flow flow = null;
+
+    // a cached plan is a single Hadoop job, and the DOT file needs the planned flow
+    if( isPlanCacheable && platform == PLATFORM.HADOOP && !options.containsKey( "--no-plan-cache" ) && !options.containsKey( "--dot" ) )
+      {
+      planCache = new PlanCache( PlanCache.getDefaultDirectory() );
+      planKey = planCache.getKey( this.params, options, properties, sources, sinks );
+
+      // without a key the code is not known, so no plan is read or written
+      if( planKey == null )
+        planCache = null;
+      else
+        flow = planCache.get( planKey, "multitool", isReplace( sinks ) );
+      }
+
+    if( flow == null )
+      {
+      FlowConnector connector;
+      if( platform == PLATFORM.HADOOP )
+        connector = new HadoopFlowConnector( properties );
+      else
+        connector = new LocalFlowConnector( properties );
 
-    return connector.connect( "multitool", sources, sinks, currentPipe );
+      flow = connector.connect( "multitool", sources, sinks, tails.toArray( new Pipe[ tails.size() ] ) );
+
+      if( planCache != null )
+        planCache.put( planKey, flow );
+      }
+
+    long planningTime = System.currentTimeMillis() - start;
+    LOG.info( "planned flow in {} ms", planningTime );
+
+    if( stats != null )
+      stats.setPlanningTime( planningTime );
+
+    return flow;
+    }
+
+  @SuppressWarnings("rawtypes")
+  private static boolean isReplace( Map<String, Tap> sinks )
+    {
+    for( Tap sink : sinks.values() )
+      {
+      if( sink.isReplace() )
+        return true;
+      }
+
+    return false;
+    }
+
+  /**
+   * Replaces the filters and functions of a step, and those of the step it directly follows, by a
+   * single {@link FusedFilter} if all are filters, otherwise by a single {@link FusedFunction}, so a
+   * chain of cut, retain, replace, select, reject and expr steps is one operation per tuple. Functions are
+   * fused if their output selector is RESULTS, REPLACE or SWAP and the fields they emit are known
+   * while planning, otherwise the longest chain ending in the step that can be fused is. Steps are not
+   * fused when metered, as their stages would no longer be told apart.
+   */
+  private static Pipe fuse( Pipe previousPipe, Pipe currentPipe )
+    {
+    List<Each> chain = new LinkedList<Each>();
+    Pipe pipe = currentPipe;
+
+    for( ; pipe != previousPipe && isFusable( getEach( pipe ) ); pipe = getEach( pipe ).getPrevious()[ 0 ] )
+      chain.add( 0, (Each) getEach( pipe ) );
+
+    if( pipe != previousPipe )
+      return currentPipe;
+
+    if( isFusable( getEach( previousPipe ) ) )
+      chain.add( 0, (Each) getEach( previousPipe ) );
+
+    for( ; chain.size() > 1; chain.remove( 0 ) )
+      {
+      Pipe fused = fuse( chain );
+
+      if( fused != null )
+        return fused;
+      }
+
+    return currentPipe;
+    }
+
+  /** Returns a single operation running the given steps, or null if the fields they emit are not known. */
+  @SuppressWarnings("rawtypes")
+  private static Pipe fuse( List<Each> chain )
+    {
+    List<Operation> operations = new ArrayList<Operation>();
+    List<Fields> argumentSelectors = new ArrayList<Fields>();
+    List<Fields> outputSelectors = new ArrayList<Fields>();
+    boolean isFilters = true;
+
+    for( Each each : chain )
+      {
+      if( each.getOperation() instanceof FusedFilter )
+        {
+        FusedFilter fused = (FusedFilter) each.getOperation();
+
+        operations.addAll( Arrays.asList( fused.getFilters() ) );
+        argumentSelectors.addAll( Arrays.asList( fused.getArgumentSelectors() ) );
+        outputSelectors.addAll( Collections.nCopies( fused.getFilters().length, Fields.RESULTS ) );
+        }
+      else if( each.getOperation() instanceof FusedFunction )
+        {
+        FusedFunction fused = (FusedFunction) each.getOperation();
+
+        operations.addAll( Arrays.asList( fused.getOperations() ) );
+        argumentSelectors.addAll( Arrays.asList( fused.getArgumentSelectors() ) );
+        outputSelectors.addAll( Arrays.asList( fused.getOutputSelectors() ) );
+        isFilters = false;
+        }
+      else
+        {
+        operations.add( each.getOperation() );
+        argumentSelectors.add( each.getArgumentSelector() );
+        outputSelectors.add( each.getOutputSelector() );
+        isFilters &= each.getOperation() instanceof Filter;
+        }
+      }
+
+    Pipe previous = chain.get( 0 ).getPrevious()[ 0 ];
+
+    if( isFilters )
+      {
+      List<Filter> filters = new ArrayList<Filter>();
+
+      for( Operation operation : operations )
+        filters.add( (Filter) operation );
+
+      LOG.debug( "fused {} filters", filters.size() );
+
+      return new Each( previous, Fields.ALL, new FusedFilter( filters, argumentSelectors ) );
+      }
+
+    Fields declared = FusedFunction.getFieldDeclaration( operations, argumentSelectors, outputSelectors );
+
+    if( declared == null )
+      return null;
+
+    LOG.debug( "fused {} operations", operations.size() );
+
+    FusedFunction function = new FusedFunction( declared, operations, argumentSelectors, outputSelectors );
+
+    return new Each( previous, Fields.ALL, function, declared.isArguments() ? Fields.REPLACE : Fields.RESULTS );
+    }
+
+  /** Returns the single tail of a sub assembly, like that of retain or discard, any other pipe unchanged. */
+  private static Pipe getEach( Pipe pipe )
+    {
+    if( pipe instanceof SubAssembly && ( (SubAssembly) pipe ).getTails().length == 1 )
+      return ( (SubAssembly) pipe ).getTails()[ 0 ];
+
+    return pipe;
+    }
+
+  private static boolean isFusable( Pipe pipe )
+    {
+    if( !( pipe instanceof Each ) || pipe.getPrevious().length != 1 )
+      return false;
+
+    Each each = (Each) pipe;
+
+    if( each.getOperation() instanceof Filter )
+      return true;
+
+    Fields outputSelector = each.getOutputSelector();
+
+    return each.getOperation() instanceof Function && ( outputSelector.isResults() || outputSelector.isReplace() || outputSelector.isSwap() );
+    }
+
+  /**
+   * Moves the steps directly following each columnar source that can be applied while the source
+   * is read out of the given params, returning them keyed by the param of their source.
+   */
+  private Map<String[], Pushdown> pushdown( List<String[]> params )
+    {
+    Map<String[], Pushdown> pushdowns = new IdentityHashMap<String[], Pushdown>();
+
+    for( int i = 0; i < params.size(); i++ )
+      {
+      String[] source = params.get( i );
+      Factory sourceFactory = factoryMap.get( source[ 0 ] );
+
+      if( !( sourceFactory instanceof SourceFactory ) )
+        continue;
+
+      int next = getSubParamsEnd( params, i );
+
+      if( !( (SourceFactory) sourceFactory ).supportsPushdown( getSubParams( params, i, next ) ) )
+        continue;
+
+      Pushdown pushdown = new Pushdown();
+
+      while( next < params.size() && factoryMap.get( params.get( next )[ 0 ] ) instanceof PipeFactory )
+        {
+        PipeFactory factory = (PipeFactory) factoryMap.get( params.get( next )[ 0 ] );
+        int end = getSubParamsEnd( params, next );
+
+        if( !factory.pushdown( params.get( next )[ 1 ], getSubParams( params, next, end ), pushdown ) )
+          break;
+
+        LOG.debug( "pushed {} down into source {}", params.get( next )[ 0 ], source[ 1 ] );
+        params.subList( next, end ).clear();
+        }
+
+      if( !pushdown.isEmpty() )
+        pushdowns.put( source, pushdown );
+      }
+
+    return pushdowns;
+    }
+
+  private int getSubParamsEnd( List<String[]> params, int index )
+    {
+    int end = index + 1;
+
+    while( end < params.size() && params.get( end )[ 0 ].startsWith( params.get( index )[ 0 ] + "." ) )
+      end++;
+
+    return end;
+    }
+
+  private Map<String, String> getSubParams( List<String[]> params, int index, int end )
+    {
+    Map<String, String> subParams = new LinkedHashMap<String, String>();
+
+    for( String[] param : params.subList( index + 1, end ) )
+      subParams.put( param[ 0 ].substring( param[ 0 ].indexOf( '.' ) + 1 ), param[ 1 ] );
+
+    return subParams;
     }
 
-  private Map<String, String> getSubParams( String key, ListIterator<String[]> iterator )
+  private Map<String, String> getSubParams( List<String[]> params, String key, ListIterator<String[]> iterator )
     {
     Map<String, String> subParams = new LinkedHashMap<String, String>();
 
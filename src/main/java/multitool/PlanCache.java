@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import multitool.util.Version;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowProcess;
+import cascading.flow.FlowStep;
+import cascading.flow.hadoop.HadoopFlowProcess;
+import cascading.flow.hadoop.HadoopFlowStep;
+import cascading.flow.hadoop.MapReduceFlow;
+import cascading.flow.hadoop.util.HadoopUtil;
+import cascading.tap.Tap;
+
+/**
+ * Keeps the job configuration of planned single step Hadoop flows, so a later run of the same
+ * command can skip the Cascading planner. A plan is keyed by a hash of the params, the options, the
+ * properties and the multitool code, and of the identifier, scheme and fields of every tap, with
+ * the source fields read the way the planner reads them, so a changed header of an input is a miss.
+ * The contents of the local files read while planning, like select.patterns, are part of the key too.
+ * <p/>
+ * Plans depending on the input data, like a bloom filter or hot keys of a join, must not be cached,
+ * see {@link multitool.factory.PipeFactory#isPlanCacheable(String, Map)}.
+ */
+class PlanCache
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( PlanCache.class );
+
+  /** Options that do not change the planned flow. */
+  private static final String[] IGNORED_OPTIONS = new String[]{ "--no-plan-cache", "--pipeline" };
+
+  /** Params naming local files read while planning. */
+  private static final String[] FILE_PARAMS = new String[]{ "select.patterns", "reject.patterns" };
+
+  private final File directory;
+  private final String codeVersion;
+
+  PlanCache( File directory )
+    {
+    this( directory, getCodeVersion() );
+    }
+
+  /** @param codeVersion identifies the code planning the flows, null to cache no plans */
+  PlanCache( File directory, String codeVersion )
+    {
+    this.directory = directory;
+    this.codeVersion = codeVersion;
+    }
+
+  /**
+   * Returns the release and the path, size and modification time of the jar multitool is run from, or
+   * null if it is not run from a jar, as in development, where a changed class would not change the key.
+   */
+  static String getCodeVersion()
+    {
+    CodeSource codeSource = PlanCache.class.getProtectionDomain().getCodeSource();
+
+    if( codeSource == null || codeSource.getLocation() == null )
+      return null;
+
+    File jar;
+
+    try
+      {
+      jar = new File( codeSource.getLocation().toURI() );
+      }
+    catch( URISyntaxException exception )
+      {
+      return null;
+      }
+    catch( IllegalArgumentException exception )
+      {
+      return null;
+      }
+
+    if( !jar.isFile() )
+      return null;
+
+    return Version.getReleaseFull() + ':' + jar.getAbsolutePath() + ':' + jar.length() + ':' + jar.lastModified();
+    }
+
+  static File getDefaultDirectory()
+    {
+    return new File( System.getProperty( "user.home" ), ".multitool" + File.separator + "plans" );
+    }
+
+  /** Returns the key of the plan of the given command, or null if the code is not known and no plan may be cached. */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  String getKey( List<String[]> params, Map<String, String> options, Properties properties, Map<String, Tap> sources, Map<String, Tap> sinks )
+    {
+    if( codeVersion == null )
+      return null;
+
+    StringBuilder builder = new StringBuilder( codeVersion ).append( '\n' );
+
+    for( String[] param : params )
+      {
+      builder.append( param[ 0 ] ).append( '=' ).append( param[ 1 ] ).append( '\n' );
+
+      if( Arrays.asList( FILE_PARAMS ).contains( param[ 0 ] ) )
+        builder.append( "file:" ).append( hashFile( param[ 1 ] ) ).append( '\n' );
+      }
+
+    Map<String, String> sortedOptions = new TreeMap<String, String>( options );
+
+    for( String option : IGNORED_OPTIONS )
+      sortedOptions.remove( option );
+
+    builder.append( sortedOptions ).append( '\n' );
+    builder.append( new TreeMap<Object, Object>( properties ) ).append( '\n' );
+
+    FlowProcess<JobConf> flowProcess = new HadoopFlowProcess( HadoopUtil.createJobConf( properties, null ) );
+
+    for( Map.Entry<String, Tap> entry : new TreeMap<String, Tap>( sources ).entrySet() )
+      {
+      Tap tap = entry.getValue();
+
+      builder.append( "source:" ).append( entry.getKey() ).append( ':' ).append( tap.getIdentifier() ).append( ':' );
+      builder.append( tap.getScheme().getClass().getName() ).append( ':' ).append( tap.retrieveSourceFields( flowProcess ) ).append( '\n' );
+      }
+
+    for( Map.Entry<String, Tap> entry : new TreeMap<String, Tap>( sinks ).entrySet() )
+      {
+      Tap tap = entry.getValue();
+
+      builder.append( "sink:" ).append( entry.getKey() ).append( ':' ).append( tap.getIdentifier() ).append( ':' );
+      builder.append( tap.getScheme().getClass().getName() ).append( ':' ).append( tap.getSinkFields() ).append( ':' );
+      builder.append( tap.getSinkMode() ).append( '\n' );
+      }
+
+    return hash( builder.toString() );
+    }
+
+  private static String hash( String value )
+    {
+    try
+      {
+      MessageDigest digest = getDigest();
+
+      digest.update( value.getBytes( "UTF-8" ) );
+
+      return toHex( digest.digest() );
+      }
+    catch( UnsupportedEncodingException exception )
+      {
+      throw new IllegalStateException( exception );
+      }
+    }
+
+  /** Returns the hash of the contents of the given file, or a marker if it cannot be read, as the planner then fails. */
+  private static String hashFile( String path )
+    {
+    MessageDigest digest = getDigest();
+    byte[] buffer = new byte[ 8192 ];
+
+    try
+      {
+      InputStream input = new FileInputStream( path );
+
+      try
+        {
+        for( int read = input.read( buffer ); read != -1; read = input.read( buffer ) )
+          digest.update( buffer, 0, read );
+        }
+      finally
+        {
+        input.close();
+        }
+      }
+    catch( IOException exception )
+      {
+      return "unreadable";
+      }
+
+    return toHex( digest.digest() );
+    }
+
+  private static MessageDigest getDigest()
+    {
+    try
+      {
+      return MessageDigest.getInstance( "SHA-1" );
+      }
+    catch( NoSuchAlgorithmException exception )
+      {
+      throw new IllegalStateException( exception );
+      }
+    }
+
+  private static String toHex( byte[] digest )
+    {
+    StringBuilder builder = new StringBuilder( digest.length * 2 );
+
+    for( byte current : digest )
+      builder.append( String.format( "%02x", current & 0xff ) );
+
+    return builder.toString();
+    }
+
+  /**
+   * Returns a flow running the cached job configuration of the given key, or null if there is none
+   * or it cannot be read.
+   */
+  Flow get( String key, String name, boolean deleteSinkOnInit )
+    {
+    File file = getFile( key );
+
+    if( !file.exists() )
+      return null;
+
+    try
+      {
+      JobConf jobConf = new JobConf( false );
+
+      jobConf.addResource( new Path( file.getAbsolutePath() ) );
+      jobConf.size(); // loads the file, failing here on a broken one
+
+      LOG.info( "using cached plan: {}", file );
+
+      return new MapReduceFlow( name, jobConf, deleteSinkOnInit );
+      }
+    catch( RuntimeException exception )
+      {
+      LOG.warn( "unable to read cached plan: " + file, exception );
+
+      return null;
+      }
+    }
+
+  /**
+   * Stores the job configuration of the given flow under the given key. Flows of several steps are
+   * not stored, as their steps would have to be run as a cascade, nor are flows of several sinks.
+   */
+  @SuppressWarnings("unchecked")
+  void put( String key, Flow<JobConf> flow )
+    {
+    List<FlowStep<JobConf>> steps = flow.getFlowSteps();
+
+    if( steps.size() != 1 || !( steps.get( 0 ) instanceof HadoopFlowStep ) || flow.getSinks().size() != 1 )
+      return;
+
+    File file = getFile( key );
+    File temp = new File( directory, key + ".tmp" );
+
+    try
+      {
+      JobConf jobConf = ( (HadoopFlowStep) steps.get( 0 ) ).getInitializedConfig( flow.getFlowProcess(), flow.getConfig() );
+
+      if( !directory.isDirectory() && !directory.mkdirs() )
+        throw new IOException( "unable to create directory: " + directory );
+
+      OutputStream output = new FileOutputStream( temp );
+
+      try
+        {
+        jobConf.writeXml( output );
+        }
+      finally
+        {
+        output.close();
+        }
+
+      // renamed into place so a concurrent run never reads a partial plan
+      if( !temp.renameTo( file ) )
+        throw new IOException( "unable to rename: " + temp );
+
+      LOG.info( "cached plan: {}", file );
+      }
+    catch( IOException exception )
+      {
+      LOG.warn( "unable to cache plan: " + file, exception );
+      temp.delete();
+      }
+    }
+
+  private File getFile( String key )
+    {
+    return new File( directory, key + ".xml" );
+    }
+  }
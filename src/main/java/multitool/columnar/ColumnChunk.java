@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.columnar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The values of one column within a row group. A chunk has a type, an encoding chosen from its
+ * values, optional deflate compression, a null count and the min and max non null value.
+ * <p/>
+ * Strings are stored plain, dictionary encoded if they repeat, or delta encoded if every value is
+ * the canonical text of a long, so numeric text columns are compact but still read back as text.
+ */
+public class ColumnChunk
+  {
+  public static final byte TYPE_STRING = 0;
+  public static final byte TYPE_LONG = 1;
+  public static final byte TYPE_DOUBLE = 2;
+
+  public static final byte ENCODING_PLAIN = 0;
+  public static final byte ENCODING_DICTIONARY = 1;
+  public static final byte ENCODING_DELTA = 2;
+
+  public static final byte COMPRESSION_NONE = 0;
+  public static final byte COMPRESSION_DEFLATE = 1;
+
+  private static final String LONG_MAX_DIGITS = Long.toString( Long.MAX_VALUE );
+  private static final String LONG_MIN_DIGITS = Long.toString( Long.MIN_VALUE ).substring( 1 );
+
+  private byte type;
+  private byte encoding;
+  private byte compression;
+  private int rows;
+  private int nullCount;
+  private Object min;
+  private Object max;
+  private int rawLength;
+  private byte[] data;
+
+  private ColumnChunk()
+    {
+    }
+
+  public byte getType()
+    {
+    return type;
+    }
+
+  public byte getEncoding()
+    {
+    return encoding;
+    }
+
+  public int getRows()
+    {
+    return rows;
+    }
+
+  public int getNullCount()
+    {
+    return nullCount;
+    }
+
+  /** Returns the smallest non null value, or null if all values are null. */
+  public Object getMin()
+    {
+    return min;
+    }
+
+  /** Returns the largest non null value, or null if all values are null. */
+  public Object getMax()
+    {
+    return max;
+    }
+
+  /**
+   * Encodes the first rows values. Integer and Long values are stored as longs, Float and Double
+   * values as doubles and anything else as its string representation. Mixed columns are stored as
+   * strings.
+   */
+  public static ColumnChunk encode( Object[] values, int rows, boolean compress ) throws IOException
+    {
+    ColumnChunk chunk = new ColumnChunk();
+
+    chunk.rows = rows;
+    chunk.type = getType( values, rows );
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream( bytes );
+
+    chunk.writeNulls( output, values );
+
+    if( chunk.type == TYPE_LONG )
+      chunk.writeLongs( output, values );
+    else if( chunk.type == TYPE_DOUBLE )
+      chunk.writeDoubles( output, values );
+    else
+      chunk.writeStrings( output, values );
+
+    output.flush();
+
+    byte[] raw = bytes.toByteArray();
+
+    chunk.rawLength = raw.length;
+    chunk.compression = compress ? COMPRESSION_DEFLATE : COMPRESSION_NONE;
+    chunk.data = compress ? deflate( raw ) : raw;
+
+    return chunk;
+    }
+
+  private static byte getType( Object[] values, int rows )
+    {
+    boolean allLongs = true;
+    boolean allDoubles = true;
+
+    for( int i = 0; i < rows; i++ )
+      {
+      Object value = values[ i ];
+
+      if( value == null )
+        continue;
+
+      allLongs &= value instanceof Long || value instanceof Integer;
+      allDoubles &= value instanceof Double || value instanceof Float;
+      }
+
+    // a column of nulls is stored as strings
+    if( allLongs && allDoubles )
+      return TYPE_STRING;
+
+    if( allLongs )
+      return TYPE_LONG;
+
+    if( allDoubles )
+      return TYPE_DOUBLE;
+
+    return TYPE_STRING;
+    }
+
+  private void writeNulls( DataOutputStream output, Object[] values ) throws IOException
+    {
+    for( int i = 0; i < rows; i++ )
+      {
+      if( values[ i ] == null )
+        nullCount++;
+      }
+
+    if( nullCount == 0 )
+      return;
+
+    byte[] bitmap = new byte[ ( rows + 7 ) / 8 ];
+
+    for( int i = 0; i < rows; i++ )
+      {
+      if( values[ i ] == null )
+        bitmap[ i / 8 ] |= 1 << ( i % 8 );
+      }
+
+    output.write( bitmap );
+    }
+
+  private void writeLongs( DataOutputStream output, Object[] values ) throws IOException
+    {
+    encoding = ENCODING_DELTA;
+
+    long previous = 0;
+
+    for( int i = 0; i < rows; i++ )
+      {
+      if( values[ i ] == null )
+        continue;
+
+      long value = ( (Number) values[ i ] ).longValue();
+
+      if( min == null || value < (Long) min )
+        min = value;
+
+      if( max == null || value > (Long) max )
+        max = value;
+
+      writeVarLong( output, value - previous );
+      previous = value;
+      }
+    }
+
+  private void writeDoubles( DataOutputStream output, Object[] values ) throws IOException
+    {
+    encoding = ENCODING_PLAIN;
+
+    for( int i = 0; i < rows; i++ )
+      {
+      if( values[ i ] == null )
+        continue;
+
+      double value = ( (Number) values[ i ] ).doubleValue();
+
+      if( min == null || value < (Double) min )
+        min = value;
+
+      if( max == null || value > (Double) max )
+        max = value;
+
+      output.writeDouble( value );
+      }
+    }
+
+  private void writeStrings( DataOutputStream output, Object[] values ) throws IOException
+    {
+    String[] strings = new String[ rows ];
+    boolean allNumeric = true;
+    Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+    for( int i = 0; i < rows; i++ )
+      {
+      if( values[ i ] == null )
+        continue;
+
+      String value = values[ i ].toString();
+      strings[ i ] = value;
+
+      if( min == null || value.compareTo( (String) min ) < 0 )
+        min = value;
+
+      if( max == null || value.compareTo( (String) max ) > 0 )
+        max = value;
+
+      allNumeric &= isCanonicalLong( value );
+
+      if( !dictionary.containsKey( value ) )
+        dictionary.put( value, dictionary.size() );
+      }
+
+    int nonNull = rows - nullCount;
+
+    if( allNumeric && nonNull > 0 )
+      {
+      encoding = ENCODING_DELTA;
+
+      long previous = 0;
+
+      for( String string : strings )
+        {
+        if( string == null )
+          continue;
+
+        long value = Long.parseLong( string );
+        writeVarLong( output, value - previous );
+        previous = value;
+        }
+      }
+    else if( dictionary.size() <= nonNull / 2 )
+      {
+      encoding = ENCODING_DICTIONARY;
+
+      String[] entries = new String[ dictionary.size() ];
+
+      for( Map.Entry<String, Integer> entry : dictionary.entrySet() )
+        entries[ entry.getValue() ] = entry.getKey();
+
+      writeVarLong( output, entries.length );
+
+      for( String entry : entries )
+        writeString( output, entry );
+
+      for( String string : strings )
+        {
+        if( string != null )
+          writeVarLong( output, dictionary.get( string ) );
+        }
+      }
+    else
+      {
+      encoding = ENCODING_PLAIN;
+
+      for( String string : strings )
+        {
+        if( string != null )
+          writeString( output, string );
+        }
+      }
+    }
+
+  static boolean isCanonicalLong( String value )
+    {
+    int length = value.length();
+
+    if( length == 0 || length > 20 )
+      return false;
+
+    int start = value.charAt( 0 ) == '-' ? 1 : 0;
+
+    if( start == length || length - start > 19 )
+      return false;
+
+    // no leading zeros, and no negative zero
+    if( value.charAt( start ) == '0' && ( length > start + 1 || start == 1 ) )
+      return false;
+
+    for( int i = start; i < length; i++ )
+      {
+      char current = value.charAt( i );
+
+      if( current < '0' || current > '9' )
+        return false;
+      }
+
+    // 19 digits may be beyond the range of a long, digits of the same length compare as numbers
+    if( length - start == 19 )
+      return value.substring( start ).compareTo( start == 1 ? LONG_MIN_DIGITS : LONG_MAX_DIGITS ) <= 0;
+
+    return true;
+    }
+
+  /** Writes the chunk header followed by its data. */
+  public void write( DataOutputStream output ) throws IOException
+    {
+    output.writeByte( type );
+    output.writeByte( encoding );
+    output.writeByte( compression );
+    output.writeInt( rows );
+    output.writeInt( nullCount );
+    output.writeBoolean( min != null );
+
+    if( min != null )
+      {
+      writeStat( output, min );
+      writeStat( output, max );
+      }
+
+    output.writeInt( rawLength );
+    output.writeInt( data.length );
+    output.write( data );
+    }
+
+  private void writeStat( DataOutputStream output, Object value ) throws IOException
+    {
+    if( type == TYPE_LONG )
+      output.writeLong( (Long) value );
+    else if( type == TYPE_DOUBLE )
+      output.writeDouble( (Double) value );
+    else
+      writeString( output, (String) value );
+    }
+
+  /**
+   * Reads a chunk header and its data. If skip is true the data is skipped without being read into
+   * memory, the returned chunk only carries its statistics then.
+   */
+  public static ColumnChunk read( DataInputStream input, boolean skip ) throws IOException
+    {
+    ColumnChunk chunk = new ColumnChunk();
+
+    chunk.type = input.readByte();
+    chunk.encoding = input.readByte();
+    chunk.compression = input.readByte();
+    chunk.rows = input.readInt();
+    chunk.nullCount = input.readInt();
+
+    if( input.readBoolean() )
+      {
+      chunk.min = chunk.readStat( input );
+      chunk.max = chunk.readStat( input );
+      }
+
+    chunk.rawLength = input.readInt();
+
+    int length = input.readInt();
+
+    if( skip )
+      {
+      skipFully( input, length );
+      return chunk;
+      }
+
+    chunk.data = new byte[ length ];
+    input.readFully( chunk.data );
+
+    return chunk;
+    }
+
+  private Object readStat( DataInputStream input ) throws IOException
+    {
+    if( type == TYPE_LONG )
+      return input.readLong();
+
+    if( type == TYPE_DOUBLE )
+      return input.readDouble();
+
+    return readString( input );
+    }
+
+  /** Decodes the values of this chunk into the first rows elements of values. */
+  public void decode( Object[] values ) throws IOException
+    {
+    if( data == null )
+      throw new IllegalStateException( "chunk data was skipped" );
+
+    byte[] raw = compression == COMPRESSION_DEFLATE ? inflate( data, rawLength ) : data;
+    DataInputStream input = new DataInputStream( new ByteArrayInputStream( raw ) );
+
+    byte[] bitmap = null;
+
+    if( nullCount != 0 )
+      {
+      bitmap = new byte[ ( rows + 7 ) / 8 ];
+      input.readFully( bitmap );
+      }
+
+    String[] dictionary = null;
+
+    if( encoding == ENCODING_DICTIONARY )
+      {
+      dictionary = new String[ (int) readVarLong( input ) ];
+
+      for( int i = 0; i < dictionary.length; i++ )
+        dictionary[ i ] = readString( input );
+      }
+
+    long previous = 0;
+
+    for( int i = 0; i < rows; i++ )
+      {
+      if( bitmap != null && ( bitmap[ i / 8 ] & ( 1 << ( i % 8 ) ) ) != 0 )
+        {
+        values[ i ] = null;
+        continue;
+        }
+
+      if( encoding == ENCODING_DELTA )
+        {
+        previous += readVarLong( input );
+        values[ i ] = type == TYPE_LONG ? (Object) previous : Long.toString( previous );
+        }
+      else if( encoding == ENCODING_DICTIONARY )
+        {
+        values[ i ] = dictionary[ (int) readVarLong( input ) ];
+        }
+      else if( type == TYPE_DOUBLE )
+        {
+        values[ i ] = input.readDouble();
+        }
+      else
+        {
+        values[ i ] = readString( input );
+        }
+      }
+    }
+
+  private static byte[] deflate( byte[] raw )
+    {
+    Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+    ByteArrayOutputStream output = new ByteArrayOutputStream( raw.length / 2 + 16 );
+    byte[] buffer = new byte[ 8192 ];
+
+    deflater.setInput( raw );
+    deflater.finish();
+
+    while( !deflater.finished() )
+      output.write( buffer, 0, deflater.deflate( buffer ) );
+
+    deflater.end();
+
+    return output.toByteArray();
+    }
+
+  private static byte[] inflate( byte[] compressed, int rawLength ) throws IOException
+    {
+    Inflater inflater = new Inflater();
+    byte[] raw = new byte[ rawLength ];
+
+    try
+      {
+      inflater.setInput( compressed );
+
+      int offset = 0;
+
+      while( offset < rawLength )
+        {
+        int inflated = inflater.inflate( raw, offset, rawLength - offset );
+
+        if( inflated == 0 && ( inflater.finished() || inflater.needsInput() ) )
+          throw new EOFException( "truncated column chunk" );
+
+        offset += inflated;
+        }
+      }
+    catch( DataFormatException exception )
+      {
+      throw new IOException( "corrupt column chunk", exception );
+      }
+    finally
+      {
+      inflater.end();
+      }
+
+    return raw;
+    }
+
+  static void skipFully( DataInputStream input, int length ) throws IOException
+    {
+    while( length > 0 )
+      {
+      int skipped = input.skipBytes( length );
+
+      if( skipped <= 0 )
+        throw new EOFException( "truncated column chunk" );
+
+      length -= skipped;
+      }
+    }
+
+  static void writeVarLong( DataOutputStream output, long value ) throws IOException
+    {
+    // zig zag encoding keeps small negative deltas small
+    long zigZag = ( value << 1 ) ^ ( value >> 63 );
+
+    while( ( zigZag & ~0x7FL ) != 0 )
+      {
+      output.writeByte( (int) ( ( zigZag & 0x7F ) | 0x80 ) );
+      zigZag >>>= 7;
+      }
+
+    output.writeByte( (int) zigZag );
+    }
+
+  static long readVarLong( DataInputStream input ) throws IOException
+    {
+    long zigZag = 0;
+
+    for( int shift = 0; shift < 64; shift += 7 )
+      {
+      byte current = input.readByte();
+      zigZag |= (long) ( current & 0x7F ) << shift;
+
+      if( ( current & 0x80 ) == 0 )
+        return ( zigZag >>> 1 ) ^ -( zigZag & 1 );
+      }
+
+    throw new IOException( "malformed variable length long" );
+    }
+
+  static void writeString( DataOutputStream output, String value ) throws IOException
+    {
+    byte[] bytes = value.getBytes( "UTF-8" );
+
+    writeVarLong( output, bytes.length );
+    output.write( bytes );
+    }
+
+  static String readString( DataInputStream input ) throws IOException
+    {
+    byte[] bytes = new byte[ (int) readVarLong( input ) ];
+
+    input.readFully( bytes );
+
+    return new String( bytes, "UTF-8" );
+    }
+  }
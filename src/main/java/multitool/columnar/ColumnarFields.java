@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.columnar;
+
+import java.util.Arrays;
+
+import cascading.tuple.Fields;
+
+/**
+ * Maps between the column names stored in a columnar file and {@link Fields}. Positional fields are
+ * stored under their position, so a file written from unnamed fields reads back as unnamed fields.
+ */
+public class ColumnarFields
+  {
+  /** Returns the column names to write for the given fields and tuple size. */
+  public static String[] getNames( Fields fields, int size )
+    {
+    String[] names = new String[ size ];
+
+    for( int i = 0; i < size; i++ )
+      {
+      if( fields != null && fields.isDefined() && fields.size() == size )
+        names[ i ] = fields.get( i ).toString();
+      else
+        names[ i ] = Integer.toString( i );
+      }
+
+    return names;
+    }
+
+  /** Returns the fields declared by the given column names. */
+  public static Fields asFields( String[] names )
+    {
+    boolean positional = true;
+
+    for( int i = 0; i < names.length; i++ )
+      positional &= names[ i ].equals( Integer.toString( i ) );
+
+    if( positional )
+      return Fields.size( names.length );
+
+    return new Fields( names );
+    }
+
+  /**
+   * Returns the names of the columns selected by the given fields, in the order of the fields.
+   * Positions select by index into names, negative positions count from the end.
+   */
+  public static String[] select( String[] names, Fields columns )
+    {
+    if( columns == null || columns.isAll() || columns.isUnknown() )
+      return names;
+
+    String[] selected = new String[ columns.size() ];
+
+    for( int i = 0; i < selected.length; i++ )
+      {
+      Comparable column = columns.get( i );
+
+      if( column instanceof Integer )
+        {
+        int pos = (Integer) column;
+
+        if( pos < 0 )
+          pos += names.length;
+
+        if( pos < 0 || pos >= names.length )
+          throw new IllegalArgumentException( "column position out of range: " + column );
+
+        selected[ i ] = names[ pos ];
+        }
+      else if( Arrays.asList( names ).contains( column.toString() ) )
+        {
+        selected[ i ] = column.toString();
+        }
+      else
+        {
+        throw new IllegalArgumentException( "no column named: " + column );
+        }
+      }
+
+    return selected;
+    }
+
+  /** Returns the fields to declare before the file header is read. */
+  public static Fields getDeclaredFields( Fields columns )
+    {
+    if( columns == null || !columns.isDefined() )
+      return Fields.ALL;
+
+    for( Comparable column : columns )
+      {
+      if( column instanceof Integer )
+        return Fields.ALL;
+      }
+
+    return columns;
+    }
+  }
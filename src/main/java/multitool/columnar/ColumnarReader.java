@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.columnar;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads rows written by {@link ColumnarWriter}. Only the selected columns are decoded, the chunks
+ * of all other columns are skipped without being inflated.
+ * <p/>
+ * Files with the same columns may be concatenated, the rows of each file are read in turn.
+ */
+public class ColumnarReader implements Closeable
+  {
+  private final DataInputStream input;
+  private final String[] names;
+  private int[] selected;
+  private Object[][] values;
+  private int rows;
+  private int current;
+  private boolean exhausted;
+
+  public ColumnarReader( InputStream input ) throws IOException
+    {
+    this.input = new DataInputStream( new BufferedInputStream( input ) );
+
+    int magic;
+
+    try
+      {
+      magic = this.input.readInt();
+      }
+    catch( EOFException exception )
+      {
+      // an empty file has no columns and no rows
+      names = new String[ 0 ];
+      exhausted = true;
+      select( names );
+      return;
+      }
+
+    if( magic != ColumnarWriter.MAGIC )
+      throw new IOException( "not a columnar file" );
+
+    names = readNames();
+
+    select( names );
+    }
+
+  private String[] readNames() throws IOException
+    {
+    String[] names = new String[ input.readInt() ];
+
+    for( int i = 0; i < names.length; i++ )
+      names[ i ] = input.readUTF();
+
+    return names;
+    }
+
+  public String[] getNames()
+    {
+    return names;
+    }
+
+  /** Restricts the columns read to the given names, in the given order. */
+  public void select( String[] columns )
+    {
+    selected = new int[ columns.length ];
+
+    for( int i = 0; i < columns.length; i++ )
+      {
+      selected[ i ] = Arrays.asList( names ).indexOf( columns[ i ] );
+
+      if( selected[ i ] == -1 )
+        throw new IllegalArgumentException( "no column named: " + columns[ i ] );
+      }
+
+    values = new Object[ columns.length ][];
+    }
+
+  /** Returns the number of selected columns. */
+  public int getWidth()
+    {
+    return selected.length;
+    }
+
+  /** Advances to the next row, returning false at the end of the file. */
+  public boolean next() throws IOException
+    {
+    if( ++current < rows )
+      return true;
+
+    while( !exhausted )
+      {
+      readRowGroup();
+
+      if( rows > 0 )
+        return true;
+      }
+
+    return false;
+    }
+
+  /** Returns the value of the given selected column in the current row. */
+  public Object get( int column )
+    {
+    return values[ column ][ current ];
+    }
+
+  private void readRowGroup() throws IOException
+    {
+    current = 0;
+
+    rows = readRowCount();
+
+    // the end of a file may be followed by another file with the same columns
+    while( rows == 0 )
+      {
+      if( readRowCount() != ColumnarWriter.MAGIC )
+        {
+        exhausted = true;
+        return;
+        }
+
+      if( !Arrays.equals( names, readNames() ) )
+        throw new IOException( "concatenated columnar files have different columns" );
+
+      rows = readRowCount();
+      }
+
+    ColumnChunk[] chunks = new ColumnChunk[ names.length ];
+
+    for( int i = 0; i < names.length; i++ )
+      chunks[ i ] = ColumnChunk.read( input, !isSelected( i ) );
+
+    for( int i = 0; i < selected.length; i++ )
+      {
+      if( values[ i ] == null || values[ i ].length < rows )
+        values[ i ] = new Object[ rows ];
+
+      chunks[ selected[ i ] ].decode( values[ i ] );
+      }
+    }
+
+  private int readRowCount() throws IOException
+    {
+    try
+      {
+      return input.readInt();
+      }
+    catch( EOFException exception )
+      {
+      return 0;
+      }
+    }
+
+  private boolean isSelected( int column )
+    {
+    for( int index : selected )
+      {
+      if( index == column )
+        return true;
+      }
+
+    return false;
+    }
+
+  @Override
+  public void close() throws IOException
+    {
+    input.close();
+    }
+  }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.columnar;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes rows in the columnar format. A file starts with a magic number and the column names,
+ * followed by row groups of at most rowGroupSize rows, each holding one {@link ColumnChunk} per
+ * column, and ends with an empty row group.
+ */
+public class ColumnarWriter implements Closeable
+  {
+  public static final int MAGIC = 0x4D544331;
+  public static final int DEFAULT_ROW_GROUP_SIZE = 10000;
+
+  private final DataOutputStream output;
+  private final int rowGroupSize;
+  private final boolean compress;
+  private final Object[][] columns;
+  private int rows;
+  private boolean finished;
+
+  public ColumnarWriter( OutputStream output, String[] names, boolean compress ) throws IOException
+    {
+    this( output, names, DEFAULT_ROW_GROUP_SIZE, compress );
+    }
+
+  public ColumnarWriter( OutputStream output, String[] names, int rowGroupSize, boolean compress ) throws IOException
+    {
+    if( rowGroupSize < 1 )
+      throw new IllegalArgumentException( "row group size must be positive" );
+
+    this.output = new DataOutputStream( new BufferedOutputStream( output ) );
+    this.rowGroupSize = rowGroupSize;
+    this.compress = compress;
+    this.columns = new Object[ names.length ][ rowGroupSize ];
+
+    this.output.writeInt( MAGIC );
+    this.output.writeInt( names.length );
+
+    for( String name : names )
+      this.output.writeUTF( name );
+    }
+
+  /** Sets the value of the given column in the current row. */
+  public void set( int column, Object value )
+    {
+    columns[ column ][ rows ] = value;
+    }
+
+  /** Ends the current row, writing a row group once it is full. */
+  public void endRow() throws IOException
+    {
+    if( ++rows == rowGroupSize )
+      flushRowGroup();
+    }
+
+  private void flushRowGroup() throws IOException
+    {
+    if( rows == 0 )
+      return;
+
+    output.writeInt( rows );
+
+    for( Object[] column : columns )
+      {
+      ColumnChunk.encode( column, rows, compress ).write( output );
+      Arrays.fill( column, 0, rows, null );
+      }
+
+    rows = 0;
+    }
+
+  /** Writes any buffered rows and the end marker without closing the underlying stream. */
+  public void finish() throws IOException
+    {
+    if( finished )
+      return;
+
+    finished = true;
+    flushRowGroup();
+    output.writeInt( 0 );
+    output.flush();
+    }
+
+  @Override
+  public void close() throws IOException
+    {
+    finish();
+    output.close();
+    }
+  }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.columnar;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import multitool.util.Horspool;
+import multitool.util.RegexUtil;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * The retain, discard, select and reject steps pushed from the pipe chain into a columnar source.
+ * Once the column names of the source are known the steps are resolved into the columns to decode
+ * and the filters to apply to each decoded row, in the order they appeared on the command line.
+ */
+public class Pushdown implements Serializable
+  {
+  private static final long serialVersionUID = 1L;
+
+  private enum Kind
+    {
+    RETAIN, DISCARD, FILTER
+    }
+
+  private static class Step implements Serializable
+    {
+    private static final long serialVersionUID = 1L;
+
+    final Kind kind;
+    final Fields fields;
+    final String regex;
+    final String literal;
+    final boolean remove;
+
+    Step( Kind kind, Fields fields, String regex, String literal, boolean remove )
+      {
+      this.kind = kind;
+      this.fields = fields;
+      this.regex = regex;
+      this.literal = literal;
+      this.remove = remove;
+      }
+    }
+
+  private final List<Step> steps = new ArrayList<Step>();
+
+  public void retain( Fields fields )
+    {
+    steps.add( new Step( Kind.RETAIN, fields, null, null, false ) );
+    }
+
+  public void discard( Fields fields )
+    {
+    steps.add( new Step( Kind.DISCARD, fields, null, null, false ) );
+    }
+
+  /** Adds a regex filter over the given fields, all fields if null, removing matches if remove is true. */
+  public void filter( Fields fields, String regex, boolean remove )
+    {
+    steps.add( new Step( Kind.FILTER, fields, regex, RegexUtil.asLiteral( regex ), remove ) );
+    }
+
+  /** Adds a filter on a literal substring over the given fields, all fields if null, removing matches if remove is true. */
+  public void filterLiteral( Fields fields, String literal, boolean remove )
+    {
+    if( literal == null || literal.isEmpty() )
+      filter( fields, literal, remove );
+    else
+      steps.add( new Step( Kind.FILTER, fields, Pattern.quote( literal ), literal, remove ) );
+    }
+
+  /** Appends the steps of the given pushdown. */
+  public void addAll( Pushdown pushdown )
+    {
+    steps.addAll( pushdown.steps );
+    }
+
+  public boolean isEmpty()
+    {
+    return steps.isEmpty();
+    }
+
+  /** Returns the fields this pushdown declares without knowing the column names, or Fields.ALL. */
+  public Fields getDeclaredFields()
+    {
+    Fields declared = Fields.ALL;
+
+    for( Step step : steps )
+      {
+      if( step.kind == Kind.RETAIN )
+        declared = ColumnarFields.getDeclaredFields( step.fields );
+      else if( step.kind == Kind.DISCARD )
+        declared = Fields.ALL;
+      }
+
+    return declared;
+    }
+
+  public Resolved resolve( String[] names )
+    {
+    String[] current = names;
+    List<String[]> filtered = new ArrayList<String[]>();
+    List<Step> filters = new ArrayList<Step>();
+
+    for( Step step : steps )
+      {
+      String[] selected = ColumnarFields.select( current, step.fields );
+
+      if( step.kind == Kind.RETAIN )
+        {
+        current = selected;
+        }
+      else if( step.kind == Kind.DISCARD )
+        {
+        List<String> remaining = new ArrayList<String>( Arrays.asList( current ) );
+        remaining.removeAll( Arrays.asList( selected ) );
+        current = remaining.toArray( new String[ remaining.size() ] );
+        }
+      else
+        {
+        filtered.add( selected );
+        filters.add( step );
+        }
+      }
+
+    return new Resolved( current, filtered, filters );
+    }
+
+  /**
+   * A pushdown resolved against the column names of a source. The decoded columns start with the
+   * columns to emit, followed by any columns only the filters read.
+   */
+  public static class Resolved implements Serializable
+    {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] columns;
+    private final String[] decoded;
+    private final int[][] positions;
+    private final Pattern[] patterns;
+    private final Horspool[] literals;
+    private final boolean[] removes;
+    private transient Matcher[] matchers;
+
+    Resolved( String[] columns, List<String[]> filtered, List<Step> filters )
+      {
+      Set<String> union = new LinkedHashSet<String>( Arrays.asList( columns ) );
+
+      for( String[] selected : filtered )
+        union.addAll( Arrays.asList( selected ) );
+
+      this.columns = columns;
+      this.decoded = union.toArray( new String[ union.size() ] );
+      this.positions = new int[ filters.size() ][];
+      this.patterns = new Pattern[ filters.size() ];
+      this.literals = new Horspool[ filters.size() ];
+      this.removes = new boolean[ filters.size() ];
+
+      List<String> decodedList = Arrays.asList( decoded );
+
+      for( int i = 0; i < filters.size(); i++ )
+        {
+        String[] selected = filtered.get( i );
+
+        positions[ i ] = new int[ selected.length ];
+
+        for( int j = 0; j < selected.length; j++ )
+          positions[ i ][ j ] = decodedList.indexOf( selected[ j ] );
+
+        // literal filters are searched for without a regex
+        if( filters.get( i ).literal != null )
+          literals[ i ] = new Horspool( filters.get( i ).literal );
+        else
+          patterns[ i ] = Pattern.compile( filters.get( i ).regex );
+
+        removes[ i ] = filters.get( i ).remove;
+        }
+      }
+
+    /** Returns the names of the columns to emit. */
+    public String[] getColumns()
+      {
+      return columns;
+      }
+
+    /** Returns the names of the columns to decode. */
+    public String[] getDecoded()
+      {
+      return decoded;
+      }
+
+    /** Returns true if a row of decoded values passes every filter, matching RegexFilter. */
+    public boolean accept( Tuple row )
+      {
+      if( matchers == null )
+        {
+        matchers = new Matcher[ patterns.length ];
+
+        for( int i = 0; i < patterns.length; i++ )
+          matchers[ i ] = patterns[ i ] == null ? null : patterns[ i ].matcher( "" );
+        }
+
+      StringBuilder builder = new StringBuilder();
+
+      for( int i = 0; i < matchers.length; i++ )
+        {
+        builder.setLength( 0 );
+
+        for( int j = 0; j < positions[ i ].length; j++ )
+          {
+          if( j != 0 )
+            builder.append( '\t' );
+
+          Object value = row.getObject( positions[ i ][ j ] );
+
+          if( value != null )
+            builder.append( value );
+          }
+
+        boolean matched = literals[ i ] != null ? literals[ i ].find( builder ) : matchers[ i ].reset( builder ).find();
+
+        if( matched == removes[ i ] )
+          return false;
+        }
+
+      return true;
+      }
+
+    /** Returns the emitted columns of a decoded row, reusing output if filters read extra columns. */
+    public Tuple project( Tuple row, Tuple output )
+      {
+      if( decoded.length == columns.length )
+        return row;
+
+      for( int i = 0; i < columns.length; i++ )
+        output.set( i, row.getObject( i ) );
+
+      return output;
+      }
+    }
+  }
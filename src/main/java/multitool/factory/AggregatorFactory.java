@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.factory;
+
+import java.util.Map;
+
+import multitool.operation.SaltedKey;
+
+import cascading.pipe.CoGroup;
+import cascading.pipe.Each;
+import cascading.pipe.GroupBy;
+import cascading.pipe.HashJoin;
+import cascading.pipe.Pipe;
+import cascading.tuple.Fields;
+
+/**
+ * Super class for all factories adding an aggregation to a grouping.
+ */
+public abstract class AggregatorFactory extends PipeFactory
+  {
+  /** Counters reported by the map side partial aggregations. */
+  public enum Partial
+    {
+    Tuples_Absorbed
+    }
+
+  protected AggregatorFactory( String alias )
+    {
+    super( alias );
+    }
+
+  /**
+   * Returns the size of the map side cache used for partial aggregation, 0 if partial aggregation is disabled.
+   */
+  protected int getThreshold( Map<String, String> subParams )
+    {
+    return getInteger( subParams, "threshold", 0 );
+    }
+
+  /**
+   * Returns the {@link GroupBy} this aggregation directly follows, if it can be replaced by a partial
+   * aggregation, otherwise null.
+   *
+   * @param pipe the current pipe
+   * @return a GroupBy over a single pipe or null
+   */
+  protected GroupBy getPartialGrouping( Pipe pipe )
+    {
+    if( !( pipe instanceof GroupBy ) || pipe.getPrevious().length != 1 )
+      return null;
+
+    return (GroupBy) pipe;
+    }
+
+  /**
+   * Returns the fields the given single pipe grouping groups on.
+   */
+  protected Fields getGroupingFields( GroupBy groupBy )
+    {
+    return groupBy.getKeySelectors().get( groupBy.getPrevious()[ 0 ].getName() );
+    }
+
+  /**
+   * Returns a pipe an aggregation can follow. A {@link HashJoin} does not group its values, so it is
+   * replaced by the equivalent {@link CoGroup}. A skewed join ends in the {@link Each} restoring its
+   * salted keys, so its values are grouped again on the lhs key. Any other pipe is returned unchanged.
+   *
+   * @param pipe the current pipe
+   * @return a grouping pipe
+   */
+  protected Pipe asGrouping( Pipe pipe )
+    {
+    if( pipe instanceof Each && ( (Each) pipe ).getOperation() instanceof SaltedKey.Unsalt )
+      {
+      // the lhs values come first in the joined values, so the lhs key selects the same fields
+      CoGroup join = (CoGroup) pipe.getPrevious()[ 0 ];
+      Pipe lhsPipe = join.getPrevious()[ 0 ];
+
+      return new GroupBy( pipe, join.getKeySelectors().get( lhsPipe.getName() ) );
+      }
+
+    if( !( pipe instanceof HashJoin ) )
+      return pipe;
+
+    HashJoin join = (HashJoin) pipe;
+    Pipe lhsPipe = join.getPrevious()[ 0 ];
+    Pipe rhsPipe = join.getPrevious()[ 1 ];
+    Map<String, Fields> keys = join.getKeySelectors();
+
+    return new CoGroup( lhsPipe, keys.get( lhsPipe.getName() ), rhsPipe, keys.get( rhsPipe.getName() ), join.getJoiner() );
+    }
+  }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.factory;
+
+import java.util.Map;
+
+import multitool.util.HyperLogLog;
+import cascading.flow.FlowProcess;
+import cascading.operation.Aggregator;
+import cascading.operation.AggregatorCall;
+import cascading.operation.BaseOperation;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.pipe.assembly.AggregateBy;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Estimates the number of distinct values in the grouping with a {@link HyperLogLog} sketch.
+ */
+public class ApproxDistinctFactory extends AggregatorFactory
+  {
+  /** Sketches on the map side, the partial sketches are merged after the grouping. */
+  private static class PartialDistinct extends AggregateBy
+    {
+    private PartialDistinct( Fields argumentFields, Fields distinctField, int precision )
+      {
+      super( argumentFields, new DistinctPartials( distinctField, precision ), new Distinct( distinctField, precision, true ) );
+      }
+    }
+
+  private static class DistinctPartials implements AggregateBy.Functor
+    {
+    private final Fields declaredFields;
+    private final int precision;
+
+    private DistinctPartials( Fields declaredFields, int precision )
+      {
+      this.declaredFields = declaredFields;
+      this.precision = precision;
+      }
+
+    public Fields getDeclaredFields()
+      {
+      return declaredFields;
+      }
+
+    public Tuple aggregate( FlowProcess flowProcess, TupleEntry args, Tuple context )
+      {
+      if( context == null )
+        context = new Tuple( new HyperLogLog( precision ) );
+      else
+        flowProcess.increment( Partial.Tuples_Absorbed, 1 );
+
+      ( (HyperLogLog) context.getObject( 0 ) ).offer( asValue( args ) );
+
+      return context;
+      }
+
+    public Tuple complete( FlowProcess flowProcess, Tuple context )
+      {
+      return new Tuple( ( (HyperLogLog) context.getObject( 0 ) ).encode() );
+      }
+    }
+
+  /** Sketches the argument values, or merges the encoded sketches of the partials, emitting the estimate. */
+  private static class Distinct extends BaseOperation<HyperLogLog> implements Aggregator<HyperLogLog>
+    {
+    private final int precision;
+    private final boolean isMerge;
+
+    private Distinct( Fields distinctField, int precision, boolean isMerge )
+      {
+      super( distinctField );
+      this.precision = precision;
+      this.isMerge = isMerge;
+      }
+
+    public void start( FlowProcess flowProcess, AggregatorCall<HyperLogLog> aggregatorCall )
+      {
+      aggregatorCall.setContext( new HyperLogLog( precision ) );
+      }
+
+    public void aggregate( FlowProcess flowProcess, AggregatorCall<HyperLogLog> aggregatorCall )
+      {
+      if( isMerge )
+        aggregatorCall.getContext().merge( HyperLogLog.decode( aggregatorCall.getArguments().getString( 0 ) ) );
+      else
+        aggregatorCall.getContext().offer( asValue( aggregatorCall.getArguments() ) );
+      }
+
+    public void complete( FlowProcess flowProcess, AggregatorCall<HyperLogLog> aggregatorCall )
+      {
+      aggregatorCall.getOutputCollector().add( new Tuple( aggregatorCall.getContext().estimate() ) );
+      }
+    }
+
+  /** Returns the arguments joined by tabs, nulls as empty values. */
+  private static String asValue( TupleEntry arguments )
+    {
+    if( arguments.size() == 1 )
+      {
+      String value = arguments.getString( 0 );
+
+      return value == null ? "" : value;
+      }
+
+    StringBuilder builder = new StringBuilder();
+
+    for( int i = 0; i < arguments.size(); i++ )
+      {
+      if( i != 0 )
+        builder.append( '\t' );
+
+      Object value = arguments.getObject( i );
+
+      if( value != null )
+        builder.append( value );
+      }
+
+    return builder.toString();
+    }
+
+  public ApproxDistinctFactory( String alias )
+    {
+    super( alias );
+    }
+
+  public String getUsage()
+    {
+    return "estimate the number of distinct values in the grouping";
+    }
+
+  public String[] getParameters()
+    {
+    return new String[]{"precision", "threshold"};
+    }
+
+  public String[] getParametersUsage()
+    {
+    return new String[]{"log2 of the number of sketch registers, 4 to 18, default: 14 (0.8% standard error)",
+                        "number of groups to sketch on the map side before grouping, default: 0 (disabled)"};
+    }
+
+  public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
+    {
+    Fields fields = asFields( value );
+
+    if( fields == null )
+      fields = Fields.ALL;
+
+    int precision = getInteger( subParams, "precision", 14 );
+
+    if( precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION )
+      throw new IllegalArgumentException( "error: " + getAlias() + ".precision must be between " + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION );
+
+    int threshold = getThreshold( subParams );
+    GroupBy groupBy = getPartialGrouping( pipe );
+
+    if( threshold > 0 && groupBy != null )
+      {
+      PartialDistinct distinct = new PartialDistinct( fields, new Fields( "distinct" ), precision );
+
+      return new AggregateBy( groupBy.getPrevious()[ 0 ], getGroupingFields( groupBy ), threshold, distinct );
+      }
+
+    return new Every( asGrouping( pipe ), fields, new Distinct( new Fields( "distinct" ), precision, false ) );
+    }
+  }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.factory;
+
+import java.util.Map;
+
+import cascading.pipe.Pipe;
+
+/**
+ * Starts a new branch off a named pipe, so the tuples of a single scan of a source can flow into
+ * several sinks. The branch is named by the name param, which names its sink as well.
+ */
+public class BranchFactory extends PipeFactory
+  {
+  public BranchFactory( String alias )
+    {
+    super( alias );
+    }
+
+  public String getUsage()
+    {
+    return "branch off the named source or branch after all its steps so far, to read it once for several sinks";
+    }
+
+  public String[] getParameters()
+    {
+    return new String[]{ "name" };
+    }
+
+  public String[] getParametersUsage()
+    {
+    return new String[]{ "name of the new branch, must differ from any other source or branch" };
+    }
+
+  public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
+    {
+    Pipe previous = pipes.get( value );
+
+    if( previous == null )
+      throw new IllegalArgumentException( "error: no pipe found with name: " + value );
+
+    String name = getString( subParams, "name" );
+
+    if( name == null || name.isEmpty() )
+      throw new IllegalArgumentException( "error: branch.name is required" );
+
+    if( pipes.containsKey( name ) )
+      throw new IllegalArgumentException( "error: branch.name is already in use: " + name );
+
+    return new Pipe( name, previous );
+    }
+  }
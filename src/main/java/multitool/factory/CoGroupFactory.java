@@ -20,22 +20,142 @@
 
 package multitool.factory;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
 
+import multitool.operation.BloomJoinFilter;
+import multitool.operation.Coercions;
+import multitool.operation.SaltedKey;
+import multitool.util.BloomFilter;
+import multitool.util.TapUtil;
+
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowConnector;
+import cascading.flow.FlowException;
+import cascading.flow.FlowProcess;
+import cascading.flow.hadoop.HadoopFlowConnector;
+import cascading.flow.local.LocalFlowConnector;
+import cascading.operation.BaseOperation;
+import cascading.operation.Buffer;
+import cascading.operation.BufferCall;
+import cascading.operation.filter.Sample;
 import cascading.pipe.CoGroup;
+import cascading.pipe.Each;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.HashJoin;
 import cascading.pipe.Pipe;
+import cascading.pipe.assembly.CountBy;
+import cascading.pipe.assembly.Unique;
 import cascading.pipe.joiner.InnerJoin;
 import cascading.pipe.joiner.Joiner;
 import cascading.pipe.joiner.LeftJoin;
 import cascading.pipe.joiner.OuterJoin;
 import cascading.pipe.joiner.RightJoin;
+import cascading.property.AppProps;
+import cascading.tap.MultiSourceTap;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tap.hadoop.Hfs;
+import cascading.tap.local.FileTap;
 import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryIterator;
 
 /**
  *
  */
 public class CoGroupFactory extends PipeFactory
   {
+  private static final Logger LOG = LoggerFactory.getLogger( CoGroupFactory.class );
+
+  /**
+   * Emits the hashes counted more than the given fraction of all counts, given every hash and its count
+   * in a single grouping. Only hashes above the fraction of the counts seen so far are kept, so at most
+   * the inverse of the fraction are held at once.
+   */
+  private static class HotHashes extends BaseOperation implements Buffer
+    {
+    private final double threshold;
+
+    private HotHashes( double threshold )
+      {
+      super( new Fields( "hash" ) );
+      this.threshold = threshold;
+      }
+
+    public void operate( FlowProcess flowProcess, BufferCall bufferCall )
+      {
+      Map<Long, Long> candidates = new HashMap<Long, Long>();
+      Iterator<TupleEntry> iterator = bufferCall.getArgumentsIterator();
+      long total = 0;
+
+      while( iterator.hasNext() )
+        {
+        TupleEntry arguments = iterator.next();
+        long count = Coercions.toLong( arguments.getObject( 1 ) );
+
+        total += count;
+
+        if( count > threshold * total )
+          candidates.put( Coercions.toLong( arguments.getObject( 0 ) ), count );
+
+        if( candidates.size() > 1 / threshold )
+          removeCold( candidates, threshold * total );
+        }
+
+      removeCold( candidates, threshold * total );
+
+      for( Long hash : candidates.keySet() )
+        bufferCall.getOutputCollector().add( new Tuple( hash ) );
+      }
+
+    private static void removeCold( Map<Long, Long> candidates, double minimum )
+      {
+      Iterator<Long> counts = candidates.values().iterator();
+
+      while( counts.hasNext() )
+        {
+        if( counts.next() <= minimum )
+          counts.remove();
+        }
+      }
+    }
+
+  /** Default rhs size in bytes below which the auto strategy chooses a hash join. */
+  public static final long DEFAULT_HASH_THRESHOLD = 10 * 1024 * 1024;
+
+  /** Default false positive probability of the bloom filter over the rhs join keys. */
+  public static final double DEFAULT_BLOOM_FPP = 0.01;
+
+  /** Default number of groupings each hot key of a skewed join is spread over. */
+  public static final int DEFAULT_SKEW_SALTS = 16;
+
+  /** Bloom filters larger than this many bytes are shipped to Hadoop tasks in the distributed cache. */
+  public static final long BLOOM_CACHE_BYTES = 1024 * 1024;
+
+  /** Default fraction of the lhs sampled to find the hot keys of a skewed join. */
+  public static final double DEFAULT_SKEW_SAMPLE = 0.1;
+
+  /** Default fraction of the sampled lhs values above which a key is hot. */
+  public static final double DEFAULT_SKEW_THRESHOLD = 0.01;
+
   public CoGroupFactory( String alias )
     {
     super( alias );
@@ -48,17 +168,33 @@ public class CoGroupFactory extends PipeFactory
 
   public String[] getParameters()
     {
-    return new String[]{"lhs", "lhs.group", "rhs", "rhs.group", "joiner", "name"};
+    return new String[]{"lhs", "lhs.group", "rhs", "rhs.group", "joiner", "name", "strategy", "threshold", "bloom", "bloom.fpp", "skew",
+                        "skew.salts", "skew.sample", "skew.threshold"};
     }
 
   public String[] getParametersUsage()
     {
     return new String[]{"source name of the lhs of the join", "lhs fields to group on, default FIRST",
                         "source name of the rhs of the join", "rhs fields to group on, default FIRST",
-                        "join type: inner, outer, left, right", "branch name"};
+                        "join type: inner, outer, left, right", "branch name",
+                        "cogroup, hash (rhs is held in memory, inner and left joins only), or auto, default: cogroup",
+                        "rhs size in bytes below which auto uses a hash join, default: " + DEFAULT_HASH_THRESHOLD,
+                        "set true to drop lhs values without a matching rhs key before the join, inner and right joins only",
+                        "false positive probability of the bloom filter of rhs keys, default: " + DEFAULT_BLOOM_FPP,
+                        "off, or auto to spread hot lhs keys over several reducers, found by a separate job sampling the lhs before the join, inner and left cogroup joins only, default: off",
+                        "number of reducers to spread each hot key over, default: " + DEFAULT_SKEW_SALTS,
+                        "fraction of the lhs to sample for hot keys, only that fraction of its files is read if it has several, default: " + DEFAULT_SKEW_SAMPLE,
+                        "fraction of the sampled lhs values above which a key is hot, default: " + DEFAULT_SKEW_THRESHOLD};
     }
 
   public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
+    {
+    return addAssembly( value, subParams, pipes, new HashMap<String, Tap>(), new Properties(), pipe );
+    }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Map<String, Tap> sources, Properties properties, Pipe pipe )
     {
     String lhsName = getString( subParams, "lhs" );
     String rhsName = getString( subParams, "rhs" );
@@ -95,7 +231,378 @@ public class CoGroupFactory extends PipeFactory
     else
       throw new IllegalArgumentException( "unknown join type: " + join );
 
+    if( getBoolean( subParams, "bloom" ) )
+      {
+      // an lhs value without a matching rhs key is only emitted by left and outer joins
+      if( !( joiner instanceof InnerJoin || joiner instanceof RightJoin ) )
+        throw new IllegalArgumentException( "error: join.bloom only supports inner and right joins" );
+
+      double fpp = Double.parseDouble( getString( subParams, "bloom.fpp", Double.toString( DEFAULT_BLOOM_FPP ) ) );
+      BloomFilter bloomFilter = getBloomFilter( rhsPipe, rhsFields, sources, properties, fpp );
+
+      lhsPipe = new Each( lhsPipe, lhsFields, getBloomJoinFilter( bloomFilter, rhsPipe, sources, properties ) );
+      }
+
+    boolean isSkewed = isSkewed( subParams, joiner );
+
+    if( isHashJoin( subParams, joiner, rhsPipe, sources ) )
+      return new HashJoin( lhsPipe, lhsFields, rhsPipe, rhsFields, joiner );
+
+    if( !isSkewed )
+      return new CoGroup( lhsPipe, lhsFields, rhsPipe, rhsFields, joiner );
+
+    long[] hotHashes = getHotKeys( subParams, lhsPipe, lhsFields, sources, properties );
+
+    if( hotHashes.length == 0 )
+      return new CoGroup( lhsPipe, lhsFields, rhsPipe, rhsFields, joiner );
+
+    int salts = getInteger( subParams, "skew.salts", DEFAULT_SKEW_SALTS );
+
+    lhsPipe = new Each( lhsPipe, lhsFields, new SaltedKey( hotHashes, salts, false ), Fields.REPLACE );
+    rhsPipe = new Each( rhsPipe, rhsFields, new SaltedKey( hotHashes, salts, true ), Fields.REPLACE );
+
+    Pipe coGroup = new CoGroup( lhsPipe, lhsFields, rhsPipe, rhsFields, joiner );
+
+    // the lhs values come first, positions of the rhs key are only known if the fields are named
+    Fields keyFields = isNamed( lhsFields ) && isNamed( rhsFields ) ? Fields.merge( lhsFields, rhsFields ) : Fields.ALL;
+
+    return new Each( coGroup, keyFields, new SaltedKey.Unsalt(), Fields.REPLACE );
+    }
+
+  private static boolean isNamed( Fields fields )
+    {
+    for( Comparable field : fields )
+      {
+      if( !( field instanceof String ) )
+        return false;
+      }
+
+    return true;
+    }
+
+  /** Bloom filters, hot keys and the auto strategy depend on the data read while planning. */
+  @Override
+  public boolean isPlanCacheable( String value, Map<String, String> subParams )
+    {
+    if( getBoolean( subParams, "bloom" ) )
+      return false;
+
+    if( !getString( subParams, "skew", "off" ).equalsIgnoreCase( "off" ) )
+      return false;
+
+    return !getString( subParams, "strategy", "cogroup" ).equalsIgnoreCase( "auto" );
+    }
+
+  private boolean isSkewed( Map<String, String> subParams, Joiner joiner )
+    {
+    String skew = getString( subParams, "skew", "off" );
+
+    if( skew.equalsIgnoreCase( "off" ) )
+      return false;
+
+    if( !skew.equalsIgnoreCase( "auto" ) )
+      throw new IllegalArgumentException( "error: unknown join skew: " + skew );
+
+    // the rhs of a hot key is replicated to every salt, unmatched copies would be emitted once per salt
+    if( !( joiner instanceof InnerJoin || joiner instanceof LeftJoin ) )
+      throw new IllegalArgumentException( "error: join.skew only supports inner and left joins" );
+
+    return true;
+    }
+
+  /**
+   * Returns the hashes of the lhs keys that make up more than the skew threshold of a sample of the
+   * lhs values, counted by the side flow.
+   */
+  @SuppressWarnings("rawtypes")
+  private long[] getHotKeys( Map<String, String> subParams, Pipe lhsPipe, Fields lhsFields, Map<String, Tap> sources, Properties properties )
+    {
+    double sample = Double.parseDouble( getString( subParams, "skew.sample", Double.toString( DEFAULT_SKEW_SAMPLE ) ) );
+    double threshold = Double.parseDouble( getString( subParams, "skew.threshold", Double.toString( DEFAULT_SKEW_THRESHOLD ) ) );
+
+    if( !( sample > 0 && sample <= 1 ) )
+      throw new IllegalArgumentException( "error: join.skew.sample must be between 0 and 1" );
+
+    // a placeholder hot key shows the salted plan without sampling the lhs
+    if( isPlanOnly( properties ) )
+      return new long[]{ 0 };
+
+    if( !( threshold > 0 && threshold <= 1 ) )
+      throw new IllegalArgumentException( "error: join.skew.threshold must be between 0 and 1" );
+
+    long[] hotHashes = getKeyHashes( lhsPipe, lhsFields, sources, properties, sample, threshold );
+
+    LOG.info( "found {} hot join keys in a sample of {} of the lhs values", hotHashes.length, sample );
+
+    return hotHashes;
+    }
+
+  @SuppressWarnings("rawtypes")
+  private boolean isHashJoin( Map<String, String> subParams, Joiner joiner, Pipe rhsPipe, Map<String, Tap> sources )
+    {
+    String strategy = getString( subParams, "strategy", "cogroup" );
+
+    // every mapper holds the whole rhs, so unmatched rhs values would be emitted once per mapper
+    boolean canHash = joiner instanceof InnerJoin || joiner instanceof LeftJoin;
+
+    if( strategy.equalsIgnoreCase( "cogroup" ) )
+      return false;
+
+    if( strategy.equalsIgnoreCase( "hash" ) )
+      {
+      if( !canHash )
+        throw new IllegalArgumentException( "hash join strategy only supports inner and left joins" );
+
+      return true;
+      }
+
+    if( !strategy.equalsIgnoreCase( "auto" ) )
+      throw new IllegalArgumentException( "unknown join strategy: " + strategy );
+
+    if( !canHash )
+      return false;
+
+    long threshold = getLong( subParams, "threshold", DEFAULT_HASH_THRESHOLD );
+    long size = 0;
+
+    for( Pipe head : rhsPipe.getHeads() )
+      {
+      Tap tap = sources.get( head.getName() );
+      long headSize = tap == null ? TapUtil.UNKNOWN_SIZE : TapUtil.getSize( tap );
+
+      if( headSize == TapUtil.UNKNOWN_SIZE )
+        return false;
+
+      size += headSize;
+      }
+
+    LOG.info( "rhs of join is {} bytes, hash join threshold is {} bytes", size, threshold );
+
+    return size <= threshold;
+    }
+
+  /** Builds a bloom filter over the distinct join keys of the rhs, an empty one if the flow will not run. */
+  @SuppressWarnings("rawtypes")
+  private BloomFilter getBloomFilter( Pipe rhsPipe, Fields rhsFields, Map<String, Tap> sources, Properties properties, double fpp )
+    {
+    if( isPlanOnly( properties ) )
+      return new BloomFilter( 1, fpp );
+
+    long[] hashes = getKeyHashes( rhsPipe, rhsFields, sources, properties, 1, 0 );
+    BloomFilter bloomFilter = new BloomFilter( hashes.length, fpp );
+
+    for( long hash : hashes )
+      bloomFilter.add( hash );
+
+    LOG.info( "bloom filter over {} rhs join keys is {} bytes", hashes.length, bloomFilter.getBytes() );
+
+    return bloomFilter;
+    }
+
+  /**
+   * Returns the filter removing the lhs values not in the bloom filter. Hadoop jobs read large
+   * filters from the distributed cache, rather than from the job configuration every task reads.
+   */
+  @SuppressWarnings("rawtypes")
+  private BloomJoinFilter getBloomJoinFilter( BloomFilter bloomFilter, Pipe rhsPipe, Map<String, Tap> sources, Properties properties )
+    {
+    if( bloomFilter.getBytes() <= BLOOM_CACHE_BYTES || !( sources.get( rhsPipe.getHeads()[ 0 ].getName() ) instanceof Hfs ) )
+      return new BloomJoinFilter( bloomFilter );
+
+    JobConf conf = new JobConf();
+
+    for( String key : properties.stringPropertyNames() )
+      conf.set( key, properties.getProperty( key ) );
+
+    Path path = new Path( conf.get( "hadoop.tmp.dir" ), "multitool-bloom-" + UUID.randomUUID() );
+
+    try
+      {
+      FileSystem fileSystem = path.getFileSystem( conf );
+      ObjectOutputStream output = new ObjectOutputStream( fileSystem.create( path ) );
+
+      try
+        {
+        output.writeObject( bloomFilter );
+        }
+      finally
+        {
+        output.close();
+        }
+
+      // the job runs before this process exits, the file is only needed until then
+      fileSystem.deleteOnExit( path );
+
+      String uri = path.makeQualified( fileSystem ).toUri().toString();
+      String files = properties.getProperty( DistributedCache.CACHE_FILES );
+
+      properties.setProperty( DistributedCache.CACHE_FILES, files == null || files.isEmpty() ? uri : files + "," + uri );
+
+      LOG.info( "bloom filter added to the distributed cache: {}", uri );
+
+      return new BloomJoinFilter( uri );
+      }
+    catch( IOException exception )
+      {
+      throw new FlowException( "unable to write bloom filter: " + path, exception );
+      }
+    }
+
+  /** Returns a tap reading count of the given files of the tap, spread evenly over them. */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static Tap getFileSample( Tap tap, List<String> files, int count )
+    {
+    Tap[] children = new Tap[ count ];
+
+    for( int i = 0; i < count; i++ )
+      {
+      String file = files.get( (int) ( (long) i * files.size() / count ) );
+
+      if( tap instanceof Hfs )
+        children[ i ] = new Hfs( ( (Hfs) tap ).getScheme(), file );
+      else
+        children[ i ] = new FileTap( ( (FileTap) tap ).getScheme(), file );
+      }
+
+    LOG.info( "sampling {} of {} files of: {}", new Object[]{ count, files.size(), tap.getIdentifier() } );
+
+    return new MultiSourceTap( children );
+    }
+
+  private static boolean isPlanOnly( Properties properties )
+    {
+    return Boolean.parseBoolean( properties.getProperty( PLAN_ONLY ) );
+    }
+
+  /**
+   * Returns the distinct hashes of the join keys of a sample of the values of the given pipe, by running
+   * the pipe on its own, writing the hashes to a temporary location that is read back and deleted.
+   * Sources of several files are sampled by reading only the sampled fraction of their files, spread
+   * over all of them in name order, so the sample is not read in full. Values of single files are
+   * sampled as they are read.
+   *
+   * @param threshold the fraction of the sampled values above which a hash is returned, 0 for all hashes
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private long[] getKeyHashes( Pipe pipe, Fields keyFields, Map<String, Tap> sources, Properties properties, double sample, double threshold )
+    {
+    Map<String, Tap> pipeSources = new HashMap<String, Tap>();
+    boolean isHadoop = false;
+    double fileFraction = 0;
+
+    for( Pipe head : pipe.getHeads() )
+      {
+      Tap tap = sources.get( head.getName() );
+
+      if( tap == null )
+        throw new IllegalArgumentException( "error: join keys can only be read from sources" );
+
+      isHadoop |= tap instanceof Hfs;
+
+      if( sample < 1 )
+        {
+        List<String> files = TapUtil.getFiles( tap );
+        int count = files == null ? 0 : (int) Math.ceil( sample * files.size() );
+
+        if( count > 0 && count < files.size() )
+          {
+          tap = getFileSample( tap, files, count );
+          fileFraction = Math.max( fileFraction, (double) count / files.size() );
+          }
+        else
+          {
+          fileFraction = 1;
+          }
+        }
+
+      pipeSources.put( head.getName(), tap );
+      }
+
+    String name = "multitool-keys-" + UUID.randomUUID();
+    Properties keyProperties = new Properties();
+    FlowConnector connector;
+    Tap hashTap;
+
+    // the side flow runs with the settings and application name of the flow it is planned for
+    keyProperties.putAll( properties );
+
+    if( isHadoop )
+      {
+      AppProps.setApplicationJarClass( keyProperties, CoGroupFactory.class );
+      connector = new HadoopFlowConnector( keyProperties );
+      hashTap = new Hfs( new cascading.scheme.hadoop.TextLine( new Fields( "line" ) ), new Path( new JobConf().get( "hadoop.tmp.dir" ), name ).toString(), SinkMode.REPLACE );
+      }
+    else
+      {
+      connector = new LocalFlowConnector( keyProperties );
+      hashTap = new FileTap( new cascading.scheme.local.TextLine( new Fields( "line" ) ), new File( System.getProperty( "java.io.tmpdir" ), name ).getPath(), SinkMode.REPLACE );
+      }
+
+    Pipe hashPipe = new Pipe( name, pipe );
+
+    // the values of the sampled files are sampled further down to the sample, if more files were read
+    if( sample < 1 && sample < fileFraction )
+      hashPipe = new Each( hashPipe, new Sample( sample / fileFraction ) );
+
+    hashPipe = new Each( hashPipe, keyFields, new BloomJoinFilter.KeyHash( new Fields( "hash" ) ), Fields.RESULTS );
+
+    if( threshold == 0 )
+      {
+      hashPipe = new Unique( hashPipe, new Fields( "hash" ) );
+      }
+    else
+      {
+      // hashes are counted on the map side, and only the hot hashes are read back
+      hashPipe = new CountBy( hashPipe, new Fields( "hash" ), new Fields( "count" ) );
+      hashPipe = new GroupBy( hashPipe, Fields.NONE );
+      hashPipe = new Every( hashPipe, new HotHashes( threshold ), Fields.RESULTS );
+      }
+
+    Map<String, Tap> sinks = new HashMap<String, Tap>();
+
+    sinks.put( name, hashTap );
+
+    Flow flow = connector.connect( name, pipeSources, sinks, hashPipe );
+
+    try
+      {
+      flow.complete();
+
+      long[] hashes = new long[ 1024 ];
+      int count = 0;
+      TupleEntryIterator iterator = flow.openSink();
+
+      try
+        {
+        while( iterator.hasNext() )
+          {
+          if( count == hashes.length )
+            hashes = Arrays.copyOf( hashes, count * 2 );
+
+          hashes[ count++ ] = Long.parseLong( iterator.next().getString( 0 ) );
+          }
+        }
+      finally
+        {
+        iterator.close();
+        }
 
-    return new CoGroup( lhsPipe, lhsFields, rhsPipe, rhsFields, joiner );
+      return Arrays.copyOf( hashes, count );
+      }
+    catch( IOException exception )
+      {
+      throw new FlowException( "unable to read join keys", exception );
+      }
+    finally
+      {
+      try
+        {
+        hashTap.deleteResource( flow.getConfig() );
+        }
+      catch( IOException exception )
+        {
+        LOG.warn( "unable to delete join keys: {}", hashTap.getIdentifier(), exception );
+        }
+      }
     }
   }
\ No newline at end of file
@@ -62,4 +62,10 @@ public class ConcatFactory extends PipeFactory
 
     return new Each( pipe, fields, new FieldJoiner( delim ) );
     }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
+    }
   }
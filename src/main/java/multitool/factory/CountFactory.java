@@ -22,16 +22,62 @@ package multitool.factory;
 
 import java.util.Map;
 
+import cascading.flow.FlowProcess;
 import cascading.operation.aggregator.Count;
+import cascading.operation.aggregator.Sum;
 import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
+import cascading.pipe.assembly.AggregateBy;
 import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
 
 /**
  *
  */
-public class CountFactory extends PipeFactory
+public class CountFactory extends AggregatorFactory
   {
+  /** Counts on the map side, the partial counts are summed after the grouping. */
+  private static class PartialCount extends AggregateBy
+    {
+    private PartialCount( Fields argumentFields, Fields countField )
+      {
+      super( argumentFields, new CountPartials( countField ), new Sum( countField, Long.TYPE ) );
+      }
+    }
+
+  private static class CountPartials implements AggregateBy.Functor
+    {
+    private final Fields declaredFields;
+
+    private CountPartials( Fields declaredFields )
+      {
+      this.declaredFields = declaredFields;
+      }
+
+    public Fields getDeclaredFields()
+      {
+      return declaredFields;
+      }
+
+    public Tuple aggregate( FlowProcess flowProcess, TupleEntry args, Tuple context )
+      {
+      if( context == null )
+        return new Tuple( 1L );
+
+      flowProcess.increment( Partial.Tuples_Absorbed, 1 );
+      context.set( 0, context.getLong( 0 ) + 1 );
+
+      return context;
+      }
+
+    public Tuple complete( FlowProcess flowProcess, Tuple context )
+      {
+      return context;
+      }
+    }
+
   public CountFactory( String alias )
     {
     super( alias );
@@ -44,12 +90,12 @@ public class CountFactory extends PipeFactory
 
   public String[] getParameters()
     {
-    return new String[]{};
+    return new String[]{"threshold"};
     }
 
   public String[] getParametersUsage()
     {
-    return new String[]{};
+    return new String[]{"number of groups to count on the map side before grouping, default: 0 (disabled)"};
     }
 
   public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
@@ -59,6 +105,16 @@ public class CountFactory extends PipeFactory
     if( fields == null )
       fields = Fields.ALL;
 
-    return new Every( pipe, fields, new Count() );
+    int threshold = getThreshold( subParams );
+    GroupBy groupBy = getPartialGrouping( pipe );
+
+    if( threshold > 0 && groupBy != null )
+      {
+      PartialCount count = new PartialCount( fields, new Fields( "count" ) );
+
+      return new AggregateBy( groupBy.getPrevious()[ 0 ], getGroupingFields( groupBy ), threshold, count );
+      }
+
+    return new Every( asGrouping( pipe ), fields, new Count() );
     }
   }
\ No newline at end of file
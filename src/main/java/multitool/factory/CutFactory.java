@@ -22,6 +22,9 @@ package multitool.factory;
 
 import java.util.Map;
 
+import multitool.operation.DelimitedSplitter;
+import multitool.util.RegexUtil;
+import cascading.operation.Function;
 import cascading.operation.Identity;
 import cascading.operation.regex.RegexSplitter;
 import cascading.pipe.Each;
@@ -58,12 +61,22 @@ public class CutFactory extends PipeFactory
     Fields fields = asFields( value );
     String delim = getString( subParams, "delim", "\\t" );
 
+    // literal delimiters, like the default, are split without a regex
+    String literal = RegexUtil.asLiteral( delim );
+    Function splitter = literal != null ? new DelimitedSplitter( literal ) : new RegexSplitter( delim );
+
     // cut parses the first field and returns fields out of the results
-    pipe = new Each( pipe, Fields.FIRST, new RegexSplitter( delim ) );
+    pipe = new Each( pipe, Fields.FIRST, splitter );
 
     if( fields != null )
       pipe = new Each( pipe, fields, new Identity() );
 
     return pipe;
     }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
+    }
   }
@@ -67,4 +67,10 @@ public class DebugFactory extends PipeFactory
 
     return new Each( pipe, fields, filter );
     }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
+    }
   }
\ No newline at end of file
@@ -22,7 +22,7 @@ package multitool.factory;
 
 import java.util.Map;
 
-import cascading.operation.expression.ExpressionFunction;
+import multitool.operation.CompiledExpressionFunction;
 import cascading.pipe.Each;
 import cascading.pipe.Pipe;
 import cascading.tuple.Fields;
@@ -44,12 +44,13 @@ public class ExpressionFactory extends PipeFactory
 
   public String[] getParameters()
     {
-    return new String[]{"args"};
+    return new String[]{"args", "types"};
     }
 
   public String[] getParametersUsage()
     {
-    return new String[]{"the fields to use as arguments"};
+    return new String[]{"the fields to use as arguments",
+                        "types of the arguments, one of string, long, int, double or boolean per argument, failing on null or blank numbers unless followed by ? to pass them as null; default string, or the field types if known"};
     }
 
   public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
@@ -59,6 +60,12 @@ public class ExpressionFactory extends PipeFactory
     if( fields == null )
       fields = Fields.FIRST;
 
-    return new Each( pipe, fields, new ExpressionFunction( Fields.size( 1 ), value, String.class ) );
+    return new Each( pipe, fields, new CompiledExpressionFunction( Fields.size( 1 ), value, getTypes( subParams, fields ) ) );
+    }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
     }
   }
\ No newline at end of file
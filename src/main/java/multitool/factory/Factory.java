@@ -127,6 +127,13 @@ public abstract class Factory implements Serializable
     return replace != null ? Integer.parseInt( replace ) : defaultValue;
     }
 
+  protected long getLong( Map<String, String> params, String key, long defaultValue )
+    {
+    String replace = params.get( key );
+
+    return replace != null ? Long.parseLong( replace ) : defaultValue;
+    }
+
   protected String getString( Map<String, String> params, String key )
     {
     return getString( params, key, null );
@@ -22,7 +22,7 @@ package multitool.factory;
 
 import java.util.Map;
 
-import multitool.Main.PLATFORM;
+import multitool.tap.local.FileSetTap;
 import cascading.flow.FlowProcess;
 import cascading.flow.planner.PlatformInfo;
 import cascading.operation.BaseOperation;
@@ -49,6 +49,11 @@ public class FileNameFactory extends PipeFactory
     public void operate( FlowProcess flowProcess, FunctionCall functionCall )
       {
       String filename = (String) flowProcess.getProperty( "cascading.source.path" );
+
+      // local sources know the file being read on the reading thread
+      if( filename == null )
+        filename = FileSetTap.getCurrentPath();
+
       functionCall.getOutputCollector().add( new Tuple( filename ) );
       }
     }
@@ -85,12 +90,4 @@ public class FileNameFactory extends PipeFactory
 
     return new Each( pipe, new FileNameFunction( new Fields( "filename" ) ), fields );
     }
-  
-  @Override
-  public boolean supportsPlatform( PLATFORM platform )
-    {
-    if (platform == PLATFORM.LOCAL)
-      return false;
-    return true;
-    }
   }
\ No newline at end of file
@@ -22,6 +22,8 @@ package multitool.factory;
 
 import java.util.Map;
 
+import multitool.operation.DelimitedSplitGenerator;
+import multitool.util.RegexUtil;
 import cascading.operation.regex.RegexSplitGenerator;
 import cascading.pipe.Each;
 import cascading.pipe.Pipe;
@@ -56,6 +58,17 @@ public class GenFactory extends PipeFactory
     {
     String delim = getString( subParams, "delim", "\\t" );
 
+    String literal = RegexUtil.asLiteral( delim );
+
+    if( literal != null )
+      return new Each( pipe, Fields.FIRST, new DelimitedSplitGenerator( literal ) );
+
     return new Each( pipe, Fields.FIRST, new RegexSplitGenerator( delim ) );
     }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
+    }
   }
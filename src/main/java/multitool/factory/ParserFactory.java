@@ -22,7 +22,7 @@ package multitool.factory;
 
 import java.util.Map;
 
-import cascading.operation.regex.RegexParser;
+import multitool.operation.CountingRegexParser;
 import cascading.pipe.Each;
 import cascading.pipe.Pipe;
 import cascading.tuple.Fields;
@@ -57,8 +57,14 @@ public class ParserFactory extends PipeFactory
     int[] groups = getIntArray( subParams.get( "groups" ) );
 
     if( groups == null )
-      return new Each( pipe, Fields.FIRST, new RegexParser( value ) );
+      return new Each( pipe, Fields.FIRST, new CountingRegexParser( value ) );
 
-    return new Each( pipe, Fields.FIRST, new RegexParser( value, groups ) );
+    return new Each( pipe, Fields.FIRST, new CountingRegexParser( value, groups ) );
+    }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
     }
   }
\ No newline at end of file
@@ -56,4 +56,10 @@ public class ParserGenFactory extends PipeFactory
     {
     return new Each( pipe, Fields.FIRST, new RegexGenerator( value ) );
     }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
+    }
   }
\ No newline at end of file
@@ -21,14 +21,28 @@
 package multitool.factory;
 
 import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
 
+import multitool.columnar.Pushdown;
+import multitool.operation.ExpressionCache;
+import multitool.operation.LiteralFilter;
+import multitool.operation.MultiRegexFilter;
+import multitool.util.RegexUtil;
+import cascading.operation.Filter;
+import cascading.operation.regex.RegexFilter;
 import cascading.pipe.Pipe;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
 
 /**
  * Super class for all factories operating on pipes.
  */
 public abstract class PipeFactory extends Factory
   {
+  /** Property set while planning a flow that is not run, like for --dot, so no data must be read. */
+  public static final String PLAN_ONLY = "multitool.plan.only";
+
   protected PipeFactory( String alias )
     {
     super( alias );
@@ -36,4 +50,103 @@ public abstract class PipeFactory extends Factory
 
   public abstract Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe );
 
+  /**
+   * Variant of {@link #addAssembly(String, Map, Map, Pipe)} for factories that need to inspect the source
+   * taps of the pipes they are given, or run flows of their own while planning. The default ignores the
+   * sources and properties.
+   *
+   * @param sources    the source taps planned so far, keyed by head pipe name
+   * @param properties the properties the flow is planned with, {@link #PLAN_ONLY} if it will not run
+   */
+  @SuppressWarnings("rawtypes")
+  public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Map<String, Tap> sources, Properties properties, Pipe pipe )
+    {
+    return addAssembly( value, subParams, pipes, pipe );
+    }
+
+  /**
+   * Adds the step this factory would plan to the given pushdown, if it can be applied while the
+   * source is read. The default cannot be pushed down.
+   *
+   * @return true if the step was added and must not be planned as a pipe
+   */
+  public boolean pushdown( String value, Map<String, String> subParams, Pushdown pushdown )
+    {
+    return false;
+    }
+
+  /**
+   * Returns true if the step this factory plans for the given params only depends on the params and
+   * the fields of the sources, so a cached plan of the command may be reused. The default is true.
+   */
+  public boolean isPlanCacheable( String value, Map<String, String> subParams )
+    {
+    return true;
+    }
+
+  /**
+   * Returns true if this factory only plans {@link cascading.pipe.Each} pipes, so its step gives the
+   * same results when run over separate slices of the input. The default is false.
+   */
+  public boolean isMapSide()
+    {
+    return false;
+    }
+
+  /**
+   * Returns the expression argument types named by the types param, one per argument, or null if not
+   * given, so the types of the argument fields are used.
+   */
+  protected Class[] getTypes( Map<String, String> subParams, Fields arguments )
+    {
+    String value = getString( subParams, "types" );
+
+    if( value == null || value.isEmpty() )
+      return null;
+
+    Class[] types = ExpressionCache.getTypes( value );
+
+    if( types.length != arguments.size() )
+      throw new IllegalArgumentException( "error: " + getAlias() + ".types has " + types.length + " types for " + arguments.size() + " arguments" );
+
+    return types;
+    }
+
+  /**
+   * Returns the filter for a select or reject step. Patterns that are plain literals, or any pattern
+   * if the literal param is true, are searched for as substrings instead of run as a regex.
+   */
+  protected Filter getMatchFilter( String value, Map<String, String> subParams, boolean removeMatch )
+    {
+    boolean isLiteral = getBoolean( subParams, "literal" );
+    String regex = isLiteral && value != null && !value.isEmpty() ? Pattern.quote( value ) : value;
+    String patterns = getString( subParams, "patterns", null );
+
+    if( patterns != null )
+      return new MultiRegexFilter( RegexUtil.readPatterns( regex, patterns ), removeMatch );
+
+    String literal = isLiteral ? value : RegexUtil.asLiteral( value );
+
+    if( literal != null && !literal.isEmpty() )
+      return new LiteralFilter( literal, removeMatch );
+
+    return new RegexFilter( regex, removeMatch );
+    }
+
+  /** Adds a select or reject step to the given pushdown, unless it reads a patterns file. */
+  protected boolean pushdownMatch( String value, Map<String, String> subParams, Pushdown pushdown, boolean removeMatch )
+    {
+    if( getString( subParams, "patterns", null ) != null )
+      return false;
+
+    Fields fields = asFields( getString( subParams, "args", null ) );
+
+    if( getBoolean( subParams, "literal" ) )
+      pushdown.filterLiteral( fields, value, removeMatch );
+    else
+      pushdown.filter( fields, value, removeMatch );
+
+    return true;
+    }
+
   }
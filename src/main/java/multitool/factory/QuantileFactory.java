@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.factory;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import multitool.util.QuantileSketch;
+import cascading.flow.FlowProcess;
+import cascading.operation.Aggregator;
+import cascading.operation.AggregatorCall;
+import cascading.operation.BaseOperation;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.pipe.assembly.AggregateBy;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Estimates quantiles of a numeric field in the grouping with a {@link QuantileSketch}.
+ */
+public class QuantileFactory extends AggregatorFactory
+  {
+  /** Sketches on the map side, the partial sketches are merged after the grouping. */
+  private static class PartialQuantiles extends AggregateBy
+    {
+    private PartialQuantiles( Fields argumentFields, Fields quantileFields, int k, double[] quantiles )
+      {
+      super( argumentFields, new QuantilePartials( new Fields( "sketch" ), k ), new Quantiles( quantileFields, k, quantiles, true ) );
+      }
+    }
+
+  private static class QuantilePartials implements AggregateBy.Functor
+    {
+    private final Fields declaredFields;
+    private final int k;
+
+    private QuantilePartials( Fields declaredFields, int k )
+      {
+      this.declaredFields = declaredFields;
+      this.k = k;
+      }
+
+    public Fields getDeclaredFields()
+      {
+      return declaredFields;
+      }
+
+    public Tuple aggregate( FlowProcess flowProcess, TupleEntry args, Tuple context )
+      {
+      if( context == null )
+        context = new Tuple( new QuantileSketch( k ) );
+      else
+        flowProcess.increment( Partial.Tuples_Absorbed, 1 );
+
+      offer( (QuantileSketch) context.getObject( 0 ), args.getObject( 0 ) );
+
+      return context;
+      }
+
+    public Tuple complete( FlowProcess flowProcess, Tuple context )
+      {
+      return new Tuple( ( (QuantileSketch) context.getObject( 0 ) ).encode() );
+      }
+    }
+
+  /** Sketches the argument values, or merges the encoded sketches of the partials, emitting the quantiles. */
+  private static class Quantiles extends BaseOperation<QuantileSketch> implements Aggregator<QuantileSketch>
+    {
+    private final int k;
+    private final double[] quantiles;
+    private final boolean isMerge;
+
+    private Quantiles( Fields quantileFields, int k, double[] quantiles, boolean isMerge )
+      {
+      super( quantileFields );
+      this.k = k;
+      this.quantiles = quantiles;
+      this.isMerge = isMerge;
+      }
+
+    public void start( FlowProcess flowProcess, AggregatorCall<QuantileSketch> aggregatorCall )
+      {
+      aggregatorCall.setContext( new QuantileSketch( k ) );
+      }
+
+    public void aggregate( FlowProcess flowProcess, AggregatorCall<QuantileSketch> aggregatorCall )
+      {
+      if( isMerge )
+        aggregatorCall.getContext().merge( QuantileSketch.decode( aggregatorCall.getArguments().getString( 0 ) ) );
+      else
+        offer( aggregatorCall.getContext(), aggregatorCall.getArguments().getObject( 0 ) );
+      }
+
+    public void complete( FlowProcess flowProcess, AggregatorCall<QuantileSketch> aggregatorCall )
+      {
+      QuantileSketch sketch = aggregatorCall.getContext();
+      Tuple result = Tuple.size( quantiles.length );
+
+      // groupings without any numeric values have null quantiles
+      if( sketch.getCount() != 0 )
+        {
+        double[] values = sketch.getQuantiles( quantiles );
+
+        for( int i = 0; i < values.length; i++ )
+          result.set( i, values[ i ] );
+        }
+
+      aggregatorCall.getOutputCollector().add( result );
+      }
+    }
+
+  /** Offers the given value if it is a number, other values are ignored. */
+  private static void offer( QuantileSketch sketch, Object value )
+    {
+    double number;
+
+    if( value instanceof Number )
+      {
+      number = ( (Number) value ).doubleValue();
+      }
+    else
+      {
+      if( value == null )
+        return;
+
+      try
+        {
+        number = Double.parseDouble( value.toString() );
+        }
+      catch( NumberFormatException exception )
+        {
+        return;
+        }
+      }
+
+    if( !Double.isNaN( number ) )
+      sketch.offer( number );
+    }
+
+  public QuantileFactory( String alias )
+    {
+    super( alias );
+    }
+
+  public String getUsage()
+    {
+    return "estimate quantiles of the numeric values of a field in the grouping";
+    }
+
+  public String[] getParameters()
+    {
+    return new String[]{"p", "k", "threshold"};
+    }
+
+  public String[] getParametersUsage()
+    {
+    return new String[]{"comma separated quantiles to emit as fields p50, p95.., default: 0.5,0.95,0.99",
+                        "size of the sketch, the rank error is about 1.7/k, default: 200",
+                        "number of groups to sketch on the map side before grouping, default: 0 (disabled)"};
+    }
+
+  public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
+    {
+    Fields fields = asFields( value );
+
+    if( fields == null || fields.size() != 1 )
+      throw new IllegalArgumentException( "error: " + getAlias() + " requires a single field" );
+
+    double[] quantiles = getQuantiles( getString( subParams, "p", "0.5,0.95,0.99" ) );
+    Fields quantileFields = getQuantileFields( quantiles );
+    int k = getInteger( subParams, "k", 200 );
+
+    if( k < 8 )
+      throw new IllegalArgumentException( "error: " + getAlias() + ".k must be at least 8" );
+
+    int threshold = getThreshold( subParams );
+    GroupBy groupBy = getPartialGrouping( pipe );
+
+    if( threshold > 0 && groupBy != null )
+      {
+      PartialQuantiles partial = new PartialQuantiles( fields, quantileFields, k, quantiles );
+
+      return new AggregateBy( groupBy.getPrevious()[ 0 ], getGroupingFields( groupBy ), threshold, partial );
+      }
+
+    return new Every( asGrouping( pipe ), fields, new Quantiles( quantileFields, k, quantiles, false ) );
+    }
+
+  private double[] getQuantiles( String value )
+    {
+    String[] split = value.split( "," );
+    double[] quantiles = new double[ split.length ];
+
+    for( int i = 0; i < split.length; i++ )
+      {
+      try
+        {
+        quantiles[ i ] = Double.parseDouble( split[ i ].trim() );
+        }
+      catch( NumberFormatException exception )
+        {
+        quantiles[ i ] = -1;
+        }
+
+      if( !( quantiles[ i ] >= 0 && quantiles[ i ] <= 1 ) )
+        throw new IllegalArgumentException( "error: " + getAlias() + ".p must be between 0 and 1: " + split[ i ] );
+
+      // equal quantiles would declare the same field twice
+      for( int j = 0; j < i; j++ )
+        {
+        if( quantiles[ j ] == quantiles[ i ] )
+          throw new IllegalArgumentException( "error: " + getAlias() + ".p has duplicate quantile: " + split[ i ].trim() );
+        }
+      }
+
+    return quantiles;
+    }
+
+  /** Returns a field per quantile named by its percentile, p50 for 0.5 and p99.9 for 0.999. */
+  private Fields getQuantileFields( double[] quantiles )
+    {
+    Comparable[] names = new Comparable[ quantiles.length ];
+
+    for( int i = 0; i < quantiles.length; i++ )
+      names[ i ] = "p" + new BigDecimal( Double.toString( quantiles[ i ] ) ).movePointRight( 2 ).stripTrailingZeros().toPlainString();
+
+    return new Fields( names );
+    }
+  }
@@ -60,4 +60,10 @@ public class ReplaceFactory extends PipeFactory
 
     return new Each( pipe, Fields.FIRST, new RegexReplace( Fields.UNKNOWN, value, replace, replaceAll ) );
     }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
+    }
   }
\ No newline at end of file
@@ -22,6 +22,7 @@ package multitool.factory;
 
 import java.util.Map;
 
+import multitool.columnar.Pushdown;
 import cascading.pipe.Pipe;
 import cascading.pipe.assembly.Retain;
 import cascading.tuple.Fields;
@@ -59,4 +60,18 @@ public class RetainFactory extends PipeFactory
 
     return pipe;
     }
+
+  @Override
+  public boolean pushdown( String value, Map<String, String> subParams, Pushdown pushdown )
+    {
+    pushdown.retain( asFields( value ) );
+
+    return true;
+    }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
+    }
   }
\ No newline at end of file
@@ -22,7 +22,7 @@ package multitool.factory;
 
 import java.util.Map;
 
-import cascading.operation.regex.RegexFilter;
+import multitool.columnar.Pushdown;
 import cascading.pipe.Each;
 import cascading.pipe.Pipe;
 import cascading.tuple.Fields;
@@ -44,12 +44,12 @@ public class SelectFactory extends PipeFactory
 
   public String[] getParameters()
     {
-    return new String[]{"args"};
+    return new String[]{"args", "patterns", "literal"};
     }
 
   public String[] getParametersUsage()
     {
-    return new String[]{"fields to match against"};
+    return new String[]{"fields to match against", "local file of additional regexes, one per line", "match the value as a literal string instead of a regex"};
     }
 
   public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
@@ -59,6 +59,18 @@ public class SelectFactory extends PipeFactory
     if( fields == null )
       fields = Fields.ALL;
 
-    return new Each( pipe, fields, new RegexFilter( value, false ) );
+    return new Each( pipe, fields, getMatchFilter( value, subParams, false ) );
+    }
+
+  @Override
+  public boolean pushdown( String value, Map<String, String> subParams, Pushdown pushdown )
+    {
+    return pushdownMatch( value, subParams, pushdown, false );
+    }
+
+  @Override
+  public boolean isMapSide()
+    {
+    return true;
     }
   }
@@ -24,6 +24,9 @@ import java.util.Map;
 
 import multitool.Main;
 import multitool.Main.PLATFORM;
+import multitool.scheme.hadoop.Columnar;
+import multitool.tap.hadoop.PartitionHfs;
+import multitool.tap.local.PartitionFileTap;
 import cascading.pipe.Pipe;
 import cascading.scheme.Scheme;
 import cascading.scheme.hadoop.SequenceFile;
@@ -40,6 +43,9 @@ import cascading.tuple.Fields;
  */
 public class SinkFactory extends TapFactory
   {
+  /** Default number of partitions a task keeps open for writing. */
+  public static final int DEFAULT_OPEN_PARTITIONS = 100;
+
   public SinkFactory( String alias )
     {
     super( alias );
@@ -47,6 +53,9 @@ public class SinkFactory extends TapFactory
 
   public Tap getTap( String value, Map<String, String> params, Main.PLATFORM platform )
     {
+    if( containsKey( params, "mmap" ) )
+      throw new IllegalArgumentException( "error: mmap can only be used with sources" );
+
     SinkMode mode = SinkMode.KEEP;
 
     if( getBoolean( params, "replace" ) )
@@ -60,7 +69,17 @@ public class SinkFactory extends TapFactory
 
     Scheme scheme;
 
-    if( !containsKey( params, "seqfile" ) )
+    if( isColumnar( params ) )
+      {
+      String compress = getString( params, "compress", TextLine.Compress.DEFAULT.toString() );
+      boolean enabled = TextLine.Compress.valueOf( compress.toUpperCase() ) != TextLine.Compress.DISABLE;
+
+      if( platform == PLATFORM.HADOOP )
+        scheme = new Columnar( sinkFields, enabled );
+      else
+        scheme = new multitool.scheme.local.Columnar( sinkFields, enabled );
+      }
+    else if( !containsKey( params, "seqfile" ) )
       {
       String compress = getString( params, "compress", TextLine.Compress.DEFAULT.toString() );
       boolean writeHeader = getBoolean( params, "writeheader" );
@@ -78,6 +97,21 @@ public class SinkFactory extends TapFactory
       else
         throw new IllegalArgumentException( "cannot use sequence file in local mode." );
       }
+    Fields partitionFields = asFields( getString( params, "partition" ) );
+
+    if( partitionFields != null )
+      {
+      int open = getInteger( params, "partition.open", DEFAULT_OPEN_PARTITIONS );
+
+      if( open < 1 )
+        throw new IllegalArgumentException( "error: sink.partition.open must be at least 1" );
+
+      if( platform == PLATFORM.HADOOP )
+        return new PartitionHfs( scheme, value, mode, partitionFields, open );
+
+      return new PartitionFileTap( scheme, value, mode, partitionFields, open );
+      }
+
     if( platform == PLATFORM.HADOOP )
       return new Hfs( scheme, value, mode );
 
@@ -96,13 +130,16 @@ public class SinkFactory extends TapFactory
 
   public String[] getParameters()
     {
-    return new String[] { "select", "replace", "compress", "writeheader", "delim", "seqfile" };
+    return new String[] { "select", "replace", "compress", "writeheader", "delim", "seqfile", "format", "partition", "partition.open" };
     }
 
   public String[] getParametersUsage()
     {
     return new String[] { "fields to sink", "set true if output should be overwritten", "compression: enable, disable, or default",
         "set true to write field names as the first line", "delimiter used to separate fields",
-        "write to a sequence file instead of text; writeheader, delim, and compress are ignored" };
+        "write to a sequence file instead of text; writeheader, delim, and compress are ignored",
+        "format of the output: text or columnar; columnar ignores writeheader and delim",
+        "fields to partition the output by, one field=value directory per value",
+        "number of partitions a task keeps open, closing the least recently written one beyond it, default: " + DEFAULT_OPEN_PARTITIONS };
     }
   }
\ No newline at end of file
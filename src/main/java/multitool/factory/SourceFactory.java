@@ -24,8 +24,12 @@ import java.util.Map;
 
 import multitool.Main;
 import multitool.Main.PLATFORM;
+import multitool.columnar.Pushdown;
+import multitool.operation.CompiledExpressionFilter;
+import multitool.tap.local.FileSetTap;
+import multitool.scheme.hadoop.Columnar;
+import multitool.scheme.local.MappedTextLine;
 import cascading.operation.Identity;
-import cascading.operation.expression.ExpressionFilter;
 import cascading.pipe.Each;
 import cascading.pipe.Pipe;
 import cascading.scheme.Scheme;
@@ -34,7 +38,6 @@ import cascading.scheme.hadoop.TextDelimited;
 import cascading.scheme.hadoop.TextLine;
 import cascading.tap.Tap;
 import cascading.tap.hadoop.Hfs;
-import cascading.tap.local.FileTap;
 import cascading.tuple.Fields;
 
 /**
@@ -42,16 +45,60 @@ import cascading.tuple.Fields;
  */
 public class SourceFactory extends TapFactory
   {
+  /** Number of files read ahead by local sources reading more than one file. */
+  public static final int DEFAULT_PREFETCH = 2;
+
   public SourceFactory( String alias )
     {
     super( alias );
     }
 
   public Tap getTap( String value, Map<String, String> params, Main.PLATFORM platform )
+    {
+    return getTap( value, params, null, platform );
+    }
+
+  /**
+   * Returns the source tap, applying the given steps pushed down from the pipe chain. Only
+   * columnar sources accept pushed down steps.
+   */
+  public Tap getTap( String value, Map<String, String> params, Pushdown pushed, Main.PLATFORM platform )
     {
     String numFields = getString( params, "seqfile", "" );
+    int prefetch = getInteger( params, "prefetch", DEFAULT_PREFETCH );
+
+    if( isColumnar( params ) )
+      {
+      Pushdown pushdown = new Pushdown();
+      Fields columns = asFields( getString( params, "select" ) );
+
+      if( columns != null )
+        pushdown.retain( columns );
+
+      if( pushed != null )
+        pushdown.addAll( pushed );
+
+      if( platform == PLATFORM.HADOOP )
+        return new Hfs( new Columnar( pushdown ), value );
+      else
+        return new FileSetTap( new multitool.scheme.local.Columnar( pushdown ), value, prefetch );
+      }
+    else if( pushed != null && !pushed.isEmpty() )
+      {
+      throw new IllegalArgumentException( "only columnar sources accept pushed down steps" );
+      }
+    else if( getBoolean( params, "mmap" ) )
+      {
+      if( platform == PLATFORM.HADOOP )
+        throw new IllegalArgumentException( "cannot use mmap in hadoop mode" );
+
+      if( containsKey( params, "delim" ) || containsKey( params, "seqfile" ) )
+        throw new IllegalArgumentException( "mmap can only be used with plain text sources" );
 
-    if( containsKey( params, "delim" ) )
+      // mapped files are paged in on demand, so there is nothing to read ahead
+      return new FileSetTap( new MappedTextLine(), value, 0 );
+      }
+    else if( containsKey( params, "delim" ) )
       {
       String delim = getString( params, "delim", "\t" );
       boolean hasHeader = getBoolean( params, "hasheader" );
@@ -63,7 +110,7 @@ public class SourceFactory extends TapFactory
       else
         {
         Scheme scheme = new cascading.scheme.local.TextDelimited( Fields.ALL, hasHeader, hasHeader, delim );
-        return new cascading.tap.local.FileTap( scheme, value );
+        return new FileSetTap( scheme, value, prefetch );
         }
       }
     else if( containsKey( params, "seqfile" ) || numFields.equalsIgnoreCase( "true" ) )
@@ -77,7 +124,7 @@ public class SourceFactory extends TapFactory
       if( platform == PLATFORM.HADOOP )
         return new Hfs( new TextLine( Fields.size( 2 ) ), value );
       else
-        return new FileTap( new cascading.scheme.local.TextLine( Fields.size( 2 ) ), value );
+        return new FileSetTap( new cascading.scheme.local.TextLine( Fields.size( 2 ) ), value, prefetch );
       }
     else
       {
@@ -85,10 +132,16 @@ public class SourceFactory extends TapFactory
       if( platform == PLATFORM.HADOOP )
         return new Hfs( new SequenceFile( Fields.size( size ) ), value );
       else
-        return new FileTap( new cascading.scheme.local.TextLine( Fields.size( size ) ), value );
+        return new FileSetTap( new cascading.scheme.local.TextLine( Fields.size( size ) ), value, prefetch );
       }
     }
 
+  /** Returns true if the source accepts steps pushed down from the pipe chain. */
+  public boolean supportsPushdown( Map<String, String> params )
+    {
+    return isColumnar( params );
+    }
+
   public Pipe addAssembly( String value, Map<String, String> subParams, Pipe pipe )
     {
     String name = getString( subParams, "name" );
@@ -98,8 +151,11 @@ public class SourceFactory extends TapFactory
 
     pipe = new Pipe( name );
 
+    if( isColumnar( subParams ) )
+      return pipe;
+
     if( getBoolean( subParams, "skipheader" ) )
-      pipe = new Each( pipe, new Fields( 0 ), new ExpressionFilter( "$0 == 0", Long.class ) );
+      pipe = new Each( pipe, new Fields( 0 ), new CompiledExpressionFilter( "$0 == 0", new Class[]{ Long.TYPE } ) );
 
     String sequence = getString( subParams, "seqfile" );
 
@@ -108,6 +164,11 @@ public class SourceFactory extends TapFactory
     else if( sequence == null || sequence.isEmpty() )
       pipe = new Each( pipe, new Fields( 1 ), new Identity() );
 
+    Fields select = asFields( getString( subParams, "select" ) );
+
+    if( select != null )
+      pipe = new Each( pipe, select, new Identity() );
+
     return pipe;
     }
 
@@ -118,13 +179,17 @@ public class SourceFactory extends TapFactory
 
   public String[] getParameters()
     {
-    return new String[]{ "name", "skipheader", "hasheader", "delim", "seqfile" };
+    return new String[]{ "name", "skipheader", "hasheader", "delim", "seqfile", "format", "select", "prefetch", "mmap" };
     }
 
   public String[] getParametersUsage()
     {
     return new String[]{ "name of this source, required if more than one", "set true if the first line should be skipped",
         "set true if the first line should be used for field names", "delimiter used to separate fields",
-        "read from a sequence file instead of text; specify N fields, or 'true'" };
+        "read from a sequence file instead of text; specify N fields, or 'true'",
+        "format of the input: text or columnar; columnar ignores all other options but name and select",
+        "fields to read; columnar sources decode only these columns",
+        "local mode: number of files of a directory or glob to read ahead, default 2",
+        "local mode: set true to read plain text through memory mapped files" };
     }
   }
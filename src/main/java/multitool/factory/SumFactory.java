@@ -22,16 +22,236 @@ package multitool.factory;
 
 import java.util.Map;
 
-import cascading.operation.aggregator.Sum;
+import multitool.operation.Coercions;
+import cascading.flow.FlowProcess;
+import cascading.operation.Aggregator;
+import cascading.operation.AggregatorCall;
+import cascading.operation.BaseOperation;
 import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
+import cascading.pipe.assembly.AggregateBy;
 import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
 
 /**
  *
  */
-public class SumFactory extends PipeFactory
+public class SumFactory extends AggregatorFactory
   {
+  /** The statistics that can be emitted per summed field. */
+  private enum Statistic
+    {
+    sum, min, max, avg
+    }
+
+  /**
+   * Running sums, minimums and maximums, as longs or as doubles, and the counts of the non blank values
+   * of each field. Null and blank values add nothing to the sum.
+   */
+  private static class Accumulators
+    {
+    private final boolean isLong;
+    private final long[] longs;
+    private final double[] doubles;
+    private final long[] counts;
+
+    private Accumulators( int size, boolean isLong )
+      {
+      this.isLong = isLong;
+      this.longs = isLong ? new long[ size * 3 ] : null;
+      this.doubles = isLong ? null : new double[ size * 3 ];
+      this.counts = new long[ size ];
+      }
+
+    private void add( TupleEntry arguments )
+      {
+      for( int i = 0; i < counts.length; i++ )
+        {
+        Object value = arguments.getObject( i );
+
+        if( Coercions.isEmpty( value ) )
+          continue;
+
+        if( isLong )
+          {
+          long number = Coercions.toLong( value );
+          add( i, number, number, number, 1 );
+          }
+        else
+          {
+          double number = Coercions.toDouble( value );
+          add( i, number, number, number, 1 );
+          }
+        }
+      }
+
+    /** Adds the sums, minimums, maximums and counts of each field of a partial, as written by {@link #getPartial()}. */
+    private void merge( TupleEntry partial )
+      {
+      for( int i = 0; i < counts.length; i++ )
+        {
+        long count = Coercions.toLong( partial.getObject( i * 4 + 3 ) );
+
+        if( count == 0 )
+          continue;
+
+        if( isLong )
+          add( i, Coercions.toLong( partial.getObject( i * 4 ) ), Coercions.toLong( partial.getObject( i * 4 + 1 ) ), Coercions.toLong( partial.getObject( i * 4 + 2 ) ), count );
+        else
+          add( i, Coercions.toDouble( partial.getObject( i * 4 ) ), Coercions.toDouble( partial.getObject( i * 4 + 1 ) ), Coercions.toDouble( partial.getObject( i * 4 + 2 ) ), count );
+        }
+      }
+
+    private void add( int field, long sum, long min, long max, long count )
+      {
+      boolean isFirst = counts[ field ] == 0;
+
+      longs[ field * 3 ] += sum;
+      longs[ field * 3 + 1 ] = isFirst ? min : Math.min( longs[ field * 3 + 1 ], min );
+      longs[ field * 3 + 2 ] = isFirst ? max : Math.max( longs[ field * 3 + 2 ], max );
+      counts[ field ] += count;
+      }
+
+    private void add( int field, double sum, double min, double max, long count )
+      {
+      boolean isFirst = counts[ field ] == 0;
+
+      doubles[ field * 3 ] += sum;
+      doubles[ field * 3 + 1 ] = isFirst ? min : Math.min( doubles[ field * 3 + 1 ], min );
+      doubles[ field * 3 + 2 ] = isFirst ? max : Math.max( doubles[ field * 3 + 2 ], max );
+      counts[ field ] += count;
+      }
+
+    private Object get( int field, Statistic statistic )
+      {
+      if( statistic == Statistic.sum )
+        return isLong ? (Object) longs[ field * 3 ] : (Object) doubles[ field * 3 ];
+
+      // there is no minimum, maximum or average of no values
+      if( counts[ field ] == 0 )
+        return null;
+
+      switch( statistic )
+        {
+        case min:
+          return isLong ? (Object) longs[ field * 3 + 1 ] : (Object) doubles[ field * 3 + 1 ];
+        case max:
+          return isLong ? (Object) longs[ field * 3 + 2 ] : (Object) doubles[ field * 3 + 2 ];
+        default:
+          return ( isLong ? (double) longs[ field * 3 ] : doubles[ field * 3 ] ) / counts[ field ];
+        }
+      }
+
+    /** Returns the sum, minimum, maximum and count of each field. */
+    private Tuple getPartial()
+      {
+      Tuple partial = new Tuple();
+
+      for( int i = 0; i < counts.length; i++ )
+        {
+        partial.add( get( i, Statistic.sum ) );
+        partial.add( isLong ? (Object) longs[ i * 3 + 1 ] : (Object) doubles[ i * 3 + 1 ] );
+        partial.add( isLong ? (Object) longs[ i * 3 + 2 ] : (Object) doubles[ i * 3 + 2 ] );
+        partial.add( counts[ i ] );
+        }
+
+      return partial;
+      }
+
+    /** Returns the given statistics of each field. */
+    private Tuple getResult( Statistic[] statistics )
+      {
+      Tuple result = new Tuple();
+
+      for( int i = 0; i < counts.length; i++ )
+        {
+        for( Statistic statistic : statistics )
+          result.add( get( i, statistic ) );
+        }
+
+      return result;
+      }
+    }
+
+  /** Sums on the map side, the partial sums are summed again after the grouping. */
+  private static class PartialSum extends AggregateBy
+    {
+    private PartialSum( Fields argumentFields, Fields partialFields, Fields resultFields, boolean isLong, Statistic[] statistics )
+      {
+      super( argumentFields, new SumPartials( partialFields, isLong ), new Sums( resultFields, isLong, statistics, true ) );
+      }
+    }
+
+  private static class SumPartials implements AggregateBy.Functor
+    {
+    private final Fields declaredFields;
+    private final boolean isLong;
+
+    private SumPartials( Fields declaredFields, boolean isLong )
+      {
+      this.declaredFields = declaredFields;
+      this.isLong = isLong;
+      }
+
+    public Fields getDeclaredFields()
+      {
+      return declaredFields;
+      }
+
+    public Tuple aggregate( FlowProcess flowProcess, TupleEntry args, Tuple context )
+      {
+      if( context == null )
+        context = new Tuple( new Accumulators( declaredFields.size() / 4, isLong ) );
+      else
+        flowProcess.increment( Partial.Tuples_Absorbed, 1 );
+
+      ( (Accumulators) context.getObject( 0 ) ).add( args );
+
+      return context;
+      }
+
+    public Tuple complete( FlowProcess flowProcess, Tuple context )
+      {
+      return ( (Accumulators) context.getObject( 0 ) ).getPartial();
+      }
+    }
+
+  /** Sums the argument values, or the partial sums, emitting the statistics of each field. */
+  private static class Sums extends BaseOperation<Accumulators> implements Aggregator<Accumulators>
+    {
+    private final boolean isLong;
+    private final Statistic[] statistics;
+    private final boolean isMerge;
+
+    private Sums( Fields resultFields, boolean isLong, Statistic[] statistics, boolean isMerge )
+      {
+      super( resultFields );
+      this.isLong = isLong;
+      this.statistics = statistics;
+      this.isMerge = isMerge;
+      }
+
+    public void start( FlowProcess flowProcess, AggregatorCall<Accumulators> aggregatorCall )
+      {
+      aggregatorCall.setContext( new Accumulators( fieldDeclaration.size() / statistics.length, isLong ) );
+      }
+
+    public void aggregate( FlowProcess flowProcess, AggregatorCall<Accumulators> aggregatorCall )
+      {
+      if( isMerge )
+        aggregatorCall.getContext().merge( aggregatorCall.getArguments() );
+      else
+        aggregatorCall.getContext().add( aggregatorCall.getArguments() );
+      }
+
+    public void complete( FlowProcess flowProcess, AggregatorCall<Accumulators> aggregatorCall )
+      {
+      aggregatorCall.getOutputCollector().add( aggregatorCall.getContext().getResult( statistics ) );
+      }
+    }
+
   public SumFactory( String alias )
     {
     super( alias );
@@ -39,17 +259,18 @@ public class SumFactory extends PipeFactory
 
   public String getUsage()
     {
-    return "sum the values in the grouping";
+    return "sum the values in the grouping, of the first field unless fields are given";
     }
 
   public String[] getParameters()
     {
-    return new String[]{};
+    return new String[]{"type", "emit", "threshold"};
     }
 
   public String[] getParametersUsage()
     {
-    return new String[]{};
+    return new String[]{"long or double, default: double", "comma separated statistics per field of sum, min, max and avg, default: sum",
+                        "number of groups to sum on the map side before grouping, default: 0 (disabled)"};
     }
 
   public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
@@ -59,6 +280,88 @@ public class SumFactory extends PipeFactory
     if( fields == null )
       fields = Fields.ALL;
 
-    return new Every( pipe, fields, new Sum() );
+    boolean isLong = isLong( getString( subParams, "type", "double" ) );
+    Statistic[] statistics = getStatistics( getString( subParams, "emit", "sum" ) );
+    Fields resultFields = getResultFields( fields, statistics );
+
+    int threshold = getThreshold( subParams );
+    GroupBy groupBy = getPartialGrouping( pipe );
+
+    if( threshold > 0 && groupBy != null )
+      {
+      PartialSum sum = new PartialSum( fields, getPartialFields( fields ), resultFields, isLong, statistics );
+
+      return new AggregateBy( groupBy.getPrevious()[ 0 ], getGroupingFields( groupBy ), threshold, sum );
+      }
+
+    return new Every( asGrouping( pipe ), fields, new Sums( resultFields, isLong, statistics, false ) );
+    }
+
+  private boolean isLong( String type )
+    {
+    if( "long".equals( type ) )
+      return true;
+
+    if( "double".equals( type ) )
+      return false;
+
+    throw new IllegalArgumentException( "error: " + getAlias() + ".type must be long or double: " + type );
+    }
+
+  private Statistic[] getStatistics( String value )
+    {
+    String[] names = value.split( "," );
+    Statistic[] statistics = new Statistic[ names.length ];
+
+    for( int i = 0; i < names.length; i++ )
+      {
+      try
+        {
+        statistics[ i ] = Statistic.valueOf( names[ i ].trim() );
+        }
+      catch( IllegalArgumentException exception )
+        {
+        throw new IllegalArgumentException( "error: " + getAlias() + ".emit has unknown statistic: " + names[ i ] );
+        }
+      }
+
+    return statistics;
+    }
+
+  /** Returns the number of fields summed, only the first argument if all fields are given. */
+  private static int getSize( Fields fields )
+    {
+    return fields.isDefined() ? fields.size() : 1;
+    }
+
+  /** Returns the statistics named as given for a single field, and suffixed by the field name for several. */
+  private static Fields getResultFields( Fields fields, Statistic[] statistics )
+    {
+    int size = getSize( fields );
+    Comparable[] names = new Comparable[ size * statistics.length ];
+
+    for( int i = 0; i < size; i++ )
+      {
+      for( int j = 0; j < statistics.length; j++ )
+        names[ i * statistics.length + j ] = size == 1 ? statistics[ j ].name() : statistics[ j ].name() + "_" + fields.get( i );
+      }
+
+    return new Fields( names );
+    }
+
+  private static Fields getPartialFields( Fields fields )
+    {
+    int size = getSize( fields );
+    Comparable[] names = new Comparable[ size * 4 ];
+
+    for( int i = 0; i < size; i++ )
+      {
+      names[ i * 4 ] = "sum$" + i;
+      names[ i * 4 + 1 ] = "min$" + i;
+      names[ i * 4 + 2 ] = "max$" + i;
+      names[ i * 4 + 3 ] = "count$" + i;
+      }
+
+    return new Fields( names );
     }
   }
\ No newline at end of file
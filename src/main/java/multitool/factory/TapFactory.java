@@ -39,4 +39,17 @@ public abstract class TapFactory extends Factory
   public abstract Tap getTap( String value, Map<String, String> params, Main.PLATFORM mode );
 
   public abstract Pipe addAssembly( String value, Map<String, String> subParams, Pipe pipe );
+
+  protected boolean isColumnar( Map<String, String> params )
+    {
+    String format = getString( params, "format", "text" );
+
+    if( format.equalsIgnoreCase( "columnar" ) )
+      return true;
+
+    if( format.equalsIgnoreCase( "text" ) )
+      return false;
+
+    throw new IllegalArgumentException( "unknown format: " + format );
+    }
   }
\ No newline at end of file
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.factory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Buffer;
+import cascading.operation.BufferCall;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.pipe.Each;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * Keeps the first values of each grouping ranked on the given fields. Directly following a group, the
+ * values are first ranked on the map side, so at most the given number of values per key and task
+ * are grouped.
+ */
+public class TopFactory extends AggregatorFactory
+  {
+  /**
+   * A value and the fields it is ranked on, numbers before any other values. Integral numbers are
+   * ranked as longs, so they compare exactly beyond the 53 bits a double holds.
+   */
+  private static class Ranked
+    {
+    private final Object[] keys;
+    private final Tuple value;
+
+    private Ranked( Tuple keys, Tuple value )
+      {
+      this.keys = new Object[ keys.size() ];
+      this.value = value;
+
+      for( int i = 0; i < this.keys.length; i++ )
+        this.keys[ i ] = asComparable( keys.getObject( i ) );
+      }
+
+    private static Object asComparable( Object value )
+      {
+      if( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte )
+        return ( (Number) value ).longValue();
+
+      if( value instanceof Number )
+        return ( (Number) value ).doubleValue();
+
+      String string = value == null ? "" : value.toString();
+      String trimmed = string.trim();
+
+      if( isIntegral( trimmed ) )
+        {
+        try
+          {
+          return Long.parseLong( trimmed );
+          }
+        catch( NumberFormatException exception )
+          {
+          // out of the range of a long, ranked as a double
+          }
+        }
+
+      try
+        {
+        return Double.parseDouble( trimmed );
+        }
+      catch( NumberFormatException exception )
+        {
+        return string;
+        }
+      }
+
+    private static boolean isIntegral( String string )
+      {
+      int start = string.startsWith( "-" ) || string.startsWith( "+" ) ? 1 : 0;
+
+      if( string.length() == start )
+        return false;
+
+      for( int i = start; i < string.length(); i++ )
+        {
+        if( string.charAt( i ) < '0' || string.charAt( i ) > '9' )
+          return false;
+        }
+
+      return true;
+      }
+    }
+
+  /** Orders ranked values best first, the greatest values unless reversed. */
+  private static class Rank implements Comparator<Ranked>, Serializable
+    {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean reverse;
+
+    private Rank( boolean reverse )
+      {
+      this.reverse = reverse;
+      }
+
+    public int compare( Ranked lhs, Ranked rhs )
+      {
+      for( int i = 0; i < lhs.keys.length; i++ )
+        {
+        int result = compareKeys( lhs.keys[ i ], rhs.keys[ i ] );
+
+        if( result != 0 )
+          return reverse ? result : -result;
+        }
+
+      return 0;
+      }
+
+    private static int compareKeys( Object lhs, Object rhs )
+      {
+      if( lhs instanceof Long && rhs instanceof Long )
+        return ( (Long) lhs ).compareTo( (Long) rhs );
+
+      if( lhs instanceof Number )
+        return rhs instanceof Number ? Double.compare( ( (Number) lhs ).doubleValue(), ( (Number) rhs ).doubleValue() ) : -1;
+
+      if( rhs instanceof Number )
+        return 1;
+
+      return ( (String) lhs ).compareTo( (String) rhs );
+      }
+    }
+
+  /** The best values seen so far, the worst of them at the head. */
+  private static class Heap
+    {
+    private final int limit;
+    private final Rank rank;
+    private final PriorityQueue<Ranked> queue;
+
+    private Heap( int limit, Rank rank )
+      {
+      this.limit = limit;
+      this.rank = rank;
+      this.queue = new PriorityQueue<Ranked>( Math.min( limit + 1, 64 ), Collections.reverseOrder( rank ) );
+      }
+
+    /** Returns false if the value, or the value it replaced, was dropped. */
+    private boolean add( Ranked ranked )
+      {
+      if( queue.size() < limit )
+        return queue.add( ranked );
+
+      if( rank.compare( ranked, queue.peek() ) < 0 )
+        {
+        queue.poll();
+        queue.add( ranked );
+        }
+
+      return false;
+      }
+
+    private List<Ranked> getSorted()
+      {
+      List<Ranked> sorted = new ArrayList<Ranked>( queue );
+
+      Collections.sort( sorted, rank );
+
+      return sorted;
+      }
+    }
+
+  /** Ranks the values of each key on the map side, emitting the heaps of the least recently seen keys. */
+  private static class TopPartials extends BaseOperation<LinkedHashMap<Tuple, Heap>> implements Function<LinkedHashMap<Tuple, Heap>>
+    {
+    private final Fields groupFields;
+    private final Fields rankFields;
+    private final int limit;
+    private final Rank rank;
+    private final int threshold;
+
+    private TopPartials( Fields groupFields, Fields rankFields, int limit, boolean reverse, int threshold )
+      {
+      super( Fields.ARGS );
+      this.groupFields = groupFields;
+      this.rankFields = rankFields;
+      this.limit = limit;
+      this.rank = new Rank( reverse );
+      this.threshold = threshold;
+      }
+
+    @Override
+    public void prepare( FlowProcess flowProcess, OperationCall<LinkedHashMap<Tuple, Heap>> operationCall )
+      {
+      operationCall.setContext( new LinkedHashMap<Tuple, Heap>( 16, 0.75f, true ) );
+      }
+
+    public void operate( FlowProcess flowProcess, FunctionCall<LinkedHashMap<Tuple, Heap>> functionCall )
+      {
+      TupleEntry arguments = functionCall.getArguments();
+      LinkedHashMap<Tuple, Heap> heaps = functionCall.getContext();
+      Tuple key = arguments.selectTuple( groupFields );
+      Heap heap = heaps.get( key );
+
+      if( heap == null )
+        {
+        heap = new Heap( limit, rank );
+        heaps.put( key, heap );
+        }
+
+      if( !heap.add( new Ranked( arguments.selectTuple( rankFields ), arguments.getTupleCopy() ) ) )
+        flowProcess.increment( Partial.Tuples_Absorbed, 1 );
+
+      if( heaps.size() > threshold )
+        {
+        Iterator<Heap> eldest = heaps.values().iterator();
+
+        emit( eldest.next(), functionCall.getOutputCollector() );
+        eldest.remove();
+        }
+      }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void flush( FlowProcess flowProcess, OperationCall<LinkedHashMap<Tuple, Heap>> operationCall )
+      {
+      TupleEntryCollector collector = ( (FunctionCall<LinkedHashMap<Tuple, Heap>>) operationCall ).getOutputCollector();
+
+      for( Heap heap : operationCall.getContext().values() )
+        emit( heap, collector );
+
+      operationCall.getContext().clear();
+      }
+
+    private void emit( Heap heap, TupleEntryCollector collector )
+      {
+      for( Ranked ranked : heap.queue )
+        collector.add( ranked.value );
+      }
+    }
+
+  /** Emits the best values of each grouping, best first. */
+  private static class TopBuffer extends BaseOperation implements Buffer
+    {
+    private final Fields rankFields;
+    private final int limit;
+    private final Rank rank;
+
+    private TopBuffer( Fields rankFields, int limit, boolean reverse )
+      {
+      super( Fields.ARGS );
+      this.rankFields = rankFields;
+      this.limit = limit;
+      this.rank = new Rank( reverse );
+      }
+
+    public void operate( FlowProcess flowProcess, BufferCall bufferCall )
+      {
+      Heap heap = new Heap( limit, rank );
+      Iterator<TupleEntry> iterator = bufferCall.getArgumentsIterator();
+
+      while( iterator.hasNext() )
+        {
+        TupleEntry arguments = iterator.next();
+
+        heap.add( new Ranked( arguments.selectTuple( rankFields ), arguments.getTupleCopy() ) );
+        }
+
+      for( Ranked ranked : heap.getSorted() )
+        bufferCall.getOutputCollector().add( ranked.value );
+      }
+    }
+
+  public TopFactory( String alias )
+    {
+    super( alias );
+    }
+
+  public String getUsage()
+    {
+    return "number of values to keep per grouping, greatest first";
+    }
+
+  public String[] getParameters()
+    {
+    return new String[]{"by", "reverse", "threshold"};
+    }
+
+  public String[] getParametersUsage()
+    {
+    return new String[]{"fields to rank on, numbers compare numerically, default: all fields",
+                        "set true to keep the least values", "number of groups to rank on the map side before grouping, default: 10000, 0 to disable"};
+    }
+
+  public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
+    {
+    int limit;
+
+    try
+      {
+      limit = Integer.parseInt( value );
+      }
+    catch( NumberFormatException exception )
+      {
+      throw new IllegalArgumentException( "error: " + getAlias() + " must be a number: " + value );
+      }
+
+    if( limit < 1 )
+      throw new IllegalArgumentException( "error: " + getAlias() + " must be at least 1: " + value );
+
+    Fields rankFields = asFields( getString( subParams, "by", null ) );
+    boolean isReverse = getBoolean( subParams, "reverse" );
+    int threshold = getInteger( subParams, "threshold", 10000 );
+
+    if( rankFields == null )
+      rankFields = Fields.ALL;
+
+    GroupBy groupBy = getPartialGrouping( pipe );
+
+    if( threshold > 0 && groupBy != null )
+      {
+      Fields groupFields = getGroupingFields( groupBy );
+      Pipe partials = new Each( groupBy.getPrevious()[ 0 ], new TopPartials( groupFields, rankFields, limit, isReverse, threshold ), Fields.RESULTS );
+
+      pipe = new GroupBy( partials, groupFields );
+      }
+
+    return new Every( asGrouping( pipe ), new TopBuffer( rankFields, limit, isReverse ), Fields.RESULTS );
+    }
+  }
@@ -20,18 +20,86 @@
 
 package multitool.factory;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.OperationCall;
 import cascading.operation.aggregator.First;
+import cascading.pipe.Each;
 import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
 import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
 
 /**
  *
  */
-public class UniqueFactory extends PipeFactory
+public class UniqueFactory extends AggregatorFactory
   {
+  /** Least recently seen groupings, bounded by the threshold. */
+  private static class SeenCache extends LinkedHashMap<Tuple, Boolean>
+    {
+    private final int threshold;
+
+    private SeenCache( int threshold )
+      {
+      super( threshold, 0.75f, true );
+      this.threshold = threshold;
+      }
+
+    @Override
+    protected boolean removeEldestEntry( Map.Entry<Tuple, Boolean> eldest )
+      {
+      return size() > threshold;
+      }
+    }
+
+  /**
+   * Removes values whose grouping was recently seen on the map side, any of them would do as the first
+   * value of an unsorted grouping.
+   */
+  private static class PartialFirst extends BaseOperation<SeenCache> implements Filter<SeenCache>
+    {
+    private final int threshold;
+
+    private PartialFirst( int threshold )
+      {
+      this.threshold = threshold;
+      }
+
+    @Override
+    public void prepare( FlowProcess flowProcess, OperationCall<SeenCache> operationCall )
+      {
+      operationCall.setContext( new SeenCache( threshold ) );
+      }
+
+    public boolean isRemove( FlowProcess flowProcess, FilterCall<SeenCache> filterCall )
+      {
+      SeenCache seen = filterCall.getContext();
+
+      if( seen.get( filterCall.getArguments().getTuple() ) != null )
+        {
+        flowProcess.increment( Partial.Tuples_Absorbed, 1 );
+        return true;
+        }
+
+      seen.put( filterCall.getArguments().getTupleCopy(), Boolean.TRUE );
+
+      return false;
+      }
+
+    @Override
+    public void cleanup( FlowProcess flowProcess, OperationCall<SeenCache> operationCall )
+      {
+      operationCall.setContext( null );
+      }
+    }
+
   public UniqueFactory( String alias )
     {
     super( alias );
@@ -44,12 +112,12 @@ public class UniqueFactory extends PipeFactory
 
   public String[] getParameters()
     {
-    return new String[]{};
+    return new String[]{"threshold"};
     }
 
   public String[] getParametersUsage()
     {
-    return new String[]{};
+    return new String[]{"number of groups to remember on the map side to drop duplicates early, ignored with secondary sort, default: 0 (disabled)"};
     }
 
   public Pipe addAssembly( String value, Map<String, String> subParams, Map<String, Pipe> pipes, Pipe pipe )
@@ -59,6 +127,18 @@ public class UniqueFactory extends PipeFactory
     if( fields == null )
       fields = Fields.ALL;
 
-    return new Every( pipe, fields, new First(), Fields.RESULTS );
+    int threshold = getThreshold( subParams );
+    GroupBy groupBy = getPartialGrouping( pipe );
+
+    // with a secondary sort the first value is well defined and must be chosen after the grouping
+    if( threshold > 0 && groupBy != null && !groupBy.isSorted() )
+      {
+      Fields groupingFields = getGroupingFields( groupBy );
+      Pipe partial = new Each( groupBy.getPrevious()[ 0 ], groupingFields, new PartialFirst( threshold ) );
+
+      pipe = new GroupBy( partial, groupingFields );
+      }
+
+    return new Every( asGrouping( pipe ), fields, new First(), Fields.RESULTS );
     }
   }
\ No newline at end of file
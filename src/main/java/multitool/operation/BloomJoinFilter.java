@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import multitool.util.BloomFilter;
+import multitool.util.Hashing;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.operation.OperationException;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Removes the values whose join key, the arguments, is not in a {@link BloomFilter} of the keys of
+ * the other side of the join. The filter is built from the hashes {@link KeyHash} emits.
+ */
+public class BloomJoinFilter extends BaseOperation<BloomJoinFilter.Context> implements Filter<BloomJoinFilter.Context>
+  {
+  /** Emits the hash of the arguments as a single field, the hash of a join key. */
+  public static class KeyHash extends BaseOperation<StringBuilder> implements Function<StringBuilder>
+    {
+    public KeyHash( Fields hashField )
+      {
+      super( hashField );
+      }
+
+    @Override
+    public void prepare( FlowProcess flowProcess, OperationCall<StringBuilder> operationCall )
+      {
+      operationCall.setContext( new StringBuilder() );
+      }
+
+    public void operate( FlowProcess flowProcess, FunctionCall<StringBuilder> functionCall )
+      {
+      functionCall.getOutputCollector().add( new Tuple( hash( functionCall.getArguments(), functionCall.getContext() ) ) );
+      }
+
+    /** Hashes the arguments joined by tabs, nulls as empty values. */
+    public static long hash( TupleEntry arguments, StringBuilder builder )
+      {
+      builder.setLength( 0 );
+
+      for( int i = 0; i < arguments.size(); i++ )
+        {
+        if( i != 0 )
+          builder.append( '\t' );
+
+        Object value = arguments.getObject( i );
+
+        if( value != null )
+          builder.append( value );
+        }
+
+      return Hashing.hash( builder );
+      }
+    }
+
+  /** The filter of a task and the builder its keys are hashed with. */
+  static class Context
+    {
+    private final StringBuilder builder = new StringBuilder();
+    private final BloomFilter bloomFilter;
+
+    private Context( BloomFilter bloomFilter )
+      {
+      this.bloomFilter = bloomFilter;
+      }
+    }
+
+  private final BloomFilter bloomFilter;
+  private final String path;
+
+  public BloomJoinFilter( BloomFilter bloomFilter )
+    {
+    this.bloomFilter = bloomFilter;
+    this.path = null;
+    }
+
+  /**
+   * Reads the filter from the given file when prepared, the local copy of the distributed cache if
+   * the file was added to it.
+   */
+  public BloomJoinFilter( String path )
+    {
+    this.bloomFilter = null;
+    this.path = path;
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    operationCall.setContext( new Context( bloomFilter != null ? bloomFilter : readBloomFilter( flowProcess ) ) );
+    }
+
+  public boolean isRemove( FlowProcess flowProcess, FilterCall<Context> filterCall )
+    {
+    Context context = filterCall.getContext();
+
+    return !context.bloomFilter.mightContain( KeyHash.hash( filterCall.getArguments(), context.builder ) );
+    }
+
+  @Override
+  public void cleanup( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    operationCall.setContext( null );
+    }
+
+  private BloomFilter readBloomFilter( FlowProcess flowProcess )
+    {
+    Object config = flowProcess.getConfigCopy();
+    Configuration conf = config instanceof Configuration ? (Configuration) config : new Configuration();
+    Path bloomPath = new Path( path );
+
+    try
+      {
+      Path[] localFiles = DistributedCache.getLocalCacheFiles( conf );
+
+      if( localFiles != null )
+        {
+        for( Path localFile : localFiles )
+          {
+          if( localFile.getName().equals( bloomPath.getName() ) )
+            return readBloomFilter( localFile, FileSystem.getLocal( conf ) );
+          }
+        }
+
+      return readBloomFilter( bloomPath, bloomPath.getFileSystem( conf ) );
+      }
+    catch( IOException exception )
+      {
+      throw new OperationException( "unable to read bloom filter: " + path, exception );
+      }
+    }
+
+  private static BloomFilter readBloomFilter( Path path, FileSystem fileSystem ) throws IOException
+    {
+    ObjectInputStream input = new ObjectInputStream( fileSystem.open( path ) );
+
+    try
+      {
+      return (BloomFilter) input.readObject();
+      }
+    catch( ClassNotFoundException exception )
+      {
+      throw new IOException( "unable to read bloom filter: " + path, exception );
+      }
+    finally
+      {
+      input.close();
+      }
+    }
+  }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+/**
+ * Converts argument values to the parameter types of compiled expressions and typed aggregations.
+ * Numbers are converted directly, other values are parsed from their trimmed string form. Null and
+ * blank values, empty or whitespace only, are rejected by the primitive number types, and are null
+ * for their nullable counterparts. Booleans read them as false, as they do any value but true.
+ */
+public class Coercions
+  {
+  private Coercions()
+    {
+    }
+
+  public static long toLong( Object value )
+    {
+    if( value instanceof Number )
+      return ( (Number) value ).longValue();
+
+    return Long.parseLong( toNumber( value ) );
+    }
+
+  public static int toInt( Object value )
+    {
+    if( value instanceof Number )
+      return ( (Number) value ).intValue();
+
+    return Integer.parseInt( toNumber( value ) );
+    }
+
+  public static double toDouble( Object value )
+    {
+    if( value instanceof Number )
+      return ( (Number) value ).doubleValue();
+
+    return Double.parseDouble( toNumber( value ) );
+    }
+
+  public static boolean toBoolean( Object value )
+    {
+    if( value instanceof Boolean )
+      return (Boolean) value;
+
+    if( isEmpty( value ) )
+      return false;
+
+    return Boolean.parseBoolean( value.toString().trim() );
+    }
+
+  public static Long toLongOrNull( Object value )
+    {
+    return isEmpty( value ) ? null : toLong( value );
+    }
+
+  public static Integer toIntOrNull( Object value )
+    {
+    return isEmpty( value ) ? null : toInt( value );
+    }
+
+  public static Double toDoubleOrNull( Object value )
+    {
+    return isEmpty( value ) ? null : toDouble( value );
+    }
+
+  public static Boolean toBooleanOrNull( Object value )
+    {
+    return isEmpty( value ) ? null : toBoolean( value );
+    }
+
+  /** Returns the name of the method of this class converting values to the given type. */
+  public static String getMethodName( Class type )
+    {
+    if( type.isPrimitive() )
+      return "to" + Character.toUpperCase( type.getName().charAt( 0 ) ) + type.getName().substring( 1 );
+
+    return "to" + ( type == Integer.class ? "Int" : type.getSimpleName() ) + "OrNull";
+    }
+
+  /** Returns true if the given value is null or its string form is blank. */
+  public static boolean isEmpty( Object value )
+    {
+    return value == null || value.toString().trim().isEmpty();
+    }
+
+  private static String toNumber( Object value )
+    {
+    if( isEmpty( value ) )
+      throw new NumberFormatException( value == null ? "null value" : "blank value: '" + value + "'" );
+
+    return value.toString().trim();
+    }
+  }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.tuple.Fields;
+
+/**
+ * Removes the tuples a compiled expression evaluates to true for, like
+ * {@link cascading.operation.expression.ExpressionFilter} but compiling each expression once per JVM.
+ */
+public class CompiledExpressionFilter extends CompiledExpressionOperation implements Filter<CompiledExpressionOperation.Context>
+  {
+  public CompiledExpressionFilter( String expression, Class[] types )
+    {
+    super( Fields.ALL, expression, types );
+    }
+
+  public boolean isRemove( FlowProcess flowProcess, FilterCall<Context> filterCall )
+    {
+    return (Boolean) evaluate( filterCall.getContext(), filterCall.getArguments() );
+    }
+  }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * Returns the result of a compiled expression, like {@link cascading.operation.expression.ExpressionFunction}
+ * but compiling each expression once per JVM.
+ */
+public class CompiledExpressionFunction extends CompiledExpressionOperation implements Function<CompiledExpressionOperation.Context>
+  {
+  public CompiledExpressionFunction( Fields fieldDeclaration, String expression, Class[] types )
+    {
+    super( fieldDeclaration, expression, types );
+    }
+
+  public void operate( FlowProcess flowProcess, FunctionCall<Context> functionCall )
+    {
+    Context context = functionCall.getContext();
+    Tuple output = context.output;
+
+    output.set( 0, evaluate( context, functionCall.getArguments() ) );
+
+    functionCall.getOutputCollector().add( output );
+    }
+  }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.OperationCall;
+import cascading.operation.OperationException;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Base of the operations evaluating a Java expression over their arguments, compiled through the
+ * {@link ExpressionCache}. Arguments are available as {@code $0}, {@code $1} and so on, and by field
+ * name when the name is a valid Java identifier and not a keyword. Only the arguments the expression
+ * refers to are read.
+ * <p/>
+ * Arguments are passed as the given types, one per argument. Without types, arguments are passed as
+ * the primitive or wrapper type of their field, if the fields are typed, or as strings.
+ */
+public abstract class CompiledExpressionOperation extends BaseOperation<CompiledExpressionOperation.Context>
+  {
+  private static final Set<String> KEYWORDS = new HashSet<String>( Arrays.asList( "abstract", "assert", "boolean", "break", "byte",
+    "case", "catch", "char", "class", "const", "continue", "default", "do", "double", "else", "enum", "extends", "false", "final",
+    "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native", "new",
+    "null", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super", "switch",
+    "synchronized", "this", "throw", "throws", "transient", "true", "try", "void", "volatile", "while" ) );
+
+  protected final String expression;
+  protected final Class[] types;
+
+  protected CompiledExpressionOperation( Fields fieldDeclaration, String expression, Class[] types )
+    {
+    super( fieldDeclaration );
+    this.expression = expression;
+    this.types = types;
+    }
+
+  public String getExpression()
+    {
+    return expression;
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    Fields argumentFields = operationCall.getArgumentFields();
+
+    if( types != null && types.length != argumentFields.size() )
+      throw new OperationException( "expression has " + types.length + " types for " + argumentFields.size() + " arguments: " + expression );
+
+    // only arguments the expression refers to are read, coerced and bound
+    Set<String> referenced = getIdentifiers( expression );
+    List<String> names = new ArrayList<String>();
+    List<Integer> positions = new ArrayList<Integer>();
+
+    for( int i = 0; i < argumentFields.size(); i++ )
+      {
+      if( referenced.contains( "$" + i ) )
+        {
+        names.add( "$" + i );
+        positions.add( i );
+        }
+      }
+
+    for( int i = 0; i < argumentFields.size(); i++ )
+      {
+      Comparable field = argumentFields.get( i );
+
+      if( field instanceof String && isIdentifier( (String) field ) && referenced.contains( field ) && !names.contains( field ) )
+        {
+        names.add( (String) field );
+        positions.add( i );
+        }
+      }
+
+    Class[] parameterTypes = new Class[ names.size() ];
+    int[] parameterPositions = new int[ names.size() ];
+
+    for( int i = 0; i < parameterTypes.length; i++ )
+      {
+      parameterPositions[ i ] = positions.get( i );
+      parameterTypes[ i ] = getType( argumentFields, parameterPositions[ i ] );
+      }
+
+    String directory = (String) flowProcess.getProperty( ExpressionCache.DIRECTORY );
+    String[] parameterNames = names.toArray( new String[ names.size() ] );
+
+    operationCall.setContext( new Context( ExpressionCache.getExpression( expression, parameterNames, parameterTypes, parameterPositions, directory ) ) );
+    }
+
+  private Class getType( Fields argumentFields, int position )
+    {
+    if( types != null )
+      return types[ position ];
+
+    Type type = argumentFields.hasTypes() ? argumentFields.getType( position ) : null;
+
+    // fields of wrapper types may hold nulls, so they are passed as the nullable wrapper
+    if( type == Long.class || type == Long.TYPE || type == Integer.class || type == Integer.TYPE )
+      return (Class) type;
+
+    if( type == Double.class || type == Double.TYPE || type == Boolean.class || type == Boolean.TYPE )
+      return (Class) type;
+
+    return String.class;
+    }
+
+  protected Object evaluate( Context context, TupleEntry arguments )
+    {
+    try
+      {
+      return context.expression.evaluate( arguments );
+      }
+    catch( RuntimeException exception )
+      {
+      throw new OperationException( "could not evaluate expression: " + expression, exception );
+      }
+    }
+
+  static boolean isIdentifier( String name )
+    {
+    if( name.isEmpty() || !Character.isJavaIdentifierStart( name.charAt( 0 ) ) || KEYWORDS.contains( name ) )
+      return false;
+
+    for( int i = 1; i < name.length(); i++ )
+      {
+      if( !Character.isJavaIdentifierPart( name.charAt( i ) ) )
+        return false;
+      }
+
+    return true;
+    }
+
+  /**
+   * Returns the identifiers the expression may refer to variables by. Identifiers inside string and
+   * character literals, within numbers, and following a dot, like method names, are left out.
+   */
+  static Set<String> getIdentifiers( String expression )
+    {
+    Set<String> identifiers = new HashSet<String>();
+    char previous = 0;
+
+    for( int i = 0; i < expression.length(); )
+      {
+      char current = expression.charAt( i );
+
+      if( current == '"' || current == '\'' )
+        {
+        i++;
+
+        while( i < expression.length() && expression.charAt( i ) != current )
+          i += expression.charAt( i ) == '\\' ? 2 : 1;
+
+        i++;
+        previous = current;
+        }
+      else if( Character.isDigit( current ) )
+        {
+        while( i < expression.length() && ( Character.isJavaIdentifierPart( expression.charAt( i ) ) || expression.charAt( i ) == '.' ) )
+          i++;
+
+        previous = '0';
+        }
+      else if( Character.isJavaIdentifierStart( current ) )
+        {
+        int start = i;
+
+        while( i < expression.length() && Character.isJavaIdentifierPart( expression.charAt( i ) ) )
+          i++;
+
+        if( previous != '.' )
+          identifiers.add( expression.substring( start, i ) );
+
+        previous = 'a';
+        }
+      else
+        {
+        if( !Character.isWhitespace( current ) )
+          previous = current;
+
+        i++;
+        }
+      }
+
+    return identifiers;
+    }
+
+  /** The compiled expression of an instance of the operation. */
+  public static class Context
+    {
+    final CompiledExpression expression;
+    final Tuple output = Tuple.size( 1 );
+
+    Context( CompiledExpression expression )
+      {
+      this.expression = expression;
+      }
+    }
+  }
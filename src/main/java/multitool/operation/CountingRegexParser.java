@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationException;
+import cascading.operation.regex.RegexParser;
+
+/**
+ * {@link RegexParser} counting the values its pattern does not match before failing on them, so that
+ * mismatches can be told apart from other failures. Mismatches are counted into
+ * {@link Parse#Mismatches}, or into the counter given by {@link #setCounter(String, String)}.
+ */
+public class CountingRegexParser extends RegexParser
+  {
+  public enum Parse
+    {
+      Mismatches
+    }
+
+  private String counterGroup;
+  private String counter;
+
+  public CountingRegexParser( String pattern )
+    {
+    super( pattern );
+    }
+
+  public CountingRegexParser( String pattern, int[] groups )
+    {
+    super( pattern, groups );
+    }
+
+  /** Counts mismatches into the given counter instead of {@link Parse#Mismatches}. */
+  public void setCounter( String counterGroup, String counter )
+    {
+    this.counterGroup = counterGroup;
+    this.counter = counter;
+    }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public void operate( FlowProcess flowProcess, FunctionCall functionCall )
+    {
+    try
+      {
+      super.operate( flowProcess, functionCall );
+      }
+    catch( OperationException exception )
+      {
+      // the parser only fails on values its pattern does not match
+      if( counter == null )
+        flowProcess.increment( Parse.Mismatches, 1 );
+      else
+        flowProcess.increment( counterGroup, counter, 1 );
+
+      throw exception;
+      }
+    }
+  }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * Splits the first argument on a literal delimiter, returning every value as a new tuple. Produces
+ * the same results as {@link cascading.operation.regex.RegexSplitGenerator} given the delimiter as a
+ * quoted pattern, including dropping trailing empty values, without running a regex per value.
+ */
+public class DelimitedSplitGenerator extends BaseOperation<Tuple> implements Function<Tuple>
+  {
+  private final String delimiter;
+
+  public DelimitedSplitGenerator( String delimiter )
+    {
+    super( 1, Fields.size( 1 ) );
+
+    if( delimiter == null || delimiter.isEmpty() )
+      throw new IllegalArgumentException( "delimiter may not be empty" );
+
+    this.delimiter = delimiter;
+    }
+
+  public String getDelimiter()
+    {
+    return delimiter;
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Tuple> operationCall )
+    {
+    operationCall.setContext( Tuple.size( 1 ) );
+    }
+
+  public void operate( FlowProcess flowProcess, FunctionCall<Tuple> functionCall )
+    {
+    String value = functionCall.getArguments().getString( 0 );
+
+    if( value == null )
+      value = "";
+
+    Tuple output = functionCall.getContext();
+    TupleEntryCollector collector = functionCall.getOutputCollector();
+
+    int length = delimiter.length();
+    int start = 0;
+    int index = indexOf( value, start );
+
+    if( index == -1 )
+      {
+      output.set( 0, value );
+      collector.add( output );
+      return;
+      }
+
+    // empty values are only emitted once a non empty value follows them
+    int pendingEmpty = 0;
+
+    while( true )
+      {
+      int end = index == -1 ? value.length() : index;
+
+      if( end == start )
+        {
+        pendingEmpty++;
+        }
+      else
+        {
+        output.set( 0, "" );
+
+        for( ; pendingEmpty > 0; pendingEmpty-- )
+          collector.add( output );
+
+        output.set( 0, value.substring( start, end ) );
+        collector.add( output );
+        }
+
+      if( index == -1 )
+        break;
+
+      start = index + length;
+      index = indexOf( value, start );
+      }
+    }
+
+  int indexOf( String value, int start )
+    {
+    if( delimiter.length() == 1 )
+      return value.indexOf( delimiter.charAt( 0 ), start );
+
+    return value.indexOf( delimiter, start );
+    }
+  }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * Splits the first argument on a literal delimiter, returning every value as a field of a single
+ * result. Produces the same results as {@link cascading.operation.regex.RegexSplitter} given the
+ * delimiter as a quoted pattern, without running a regex per value.
+ */
+public class DelimitedSplitter extends BaseOperation<Tuple> implements Function<Tuple>
+  {
+  private final String delimiter;
+
+  public DelimitedSplitter( String delimiter )
+    {
+    super( 1, Fields.UNKNOWN );
+
+    if( delimiter == null || delimiter.isEmpty() )
+      throw new IllegalArgumentException( "delimiter may not be empty" );
+
+    this.delimiter = delimiter;
+    }
+
+  public String getDelimiter()
+    {
+    return delimiter;
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Tuple> operationCall )
+    {
+    operationCall.setContext( new Tuple() );
+    }
+
+  public void operate( FlowProcess flowProcess, FunctionCall<Tuple> functionCall )
+    {
+    String value = functionCall.getArguments().getString( 0 );
+
+    if( value == null )
+      value = "";
+
+    Tuple output = functionCall.getContext();
+    output.clear();
+
+    int length = delimiter.length();
+    int start = 0;
+    int index;
+
+    while( ( index = indexOf( value, start ) ) != -1 )
+      {
+      output.add( value.substring( start, index ) );
+      start = index + length;
+      }
+
+    output.add( value.substring( start ) );
+
+    functionCall.getOutputCollector().add( output );
+    }
+
+  int indexOf( String value, int start )
+    {
+    if( delimiter.length() == 1 )
+      return value.indexOf( delimiter.charAt( 0 ), start );
+
+    return value.indexOf( delimiter, start );
+    }
+  }
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import multitool.util.Version;
+import org.codehaus.janino.ClassLoaderIClassLoader;
+import org.codehaus.janino.DebuggingInformation;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.UnitCompiler;
+import org.codehaus.janino.util.ClassFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.operation.OperationException;
+
+/**
+ * Process wide cache of compiled expressions, keyed on the expression and the names, types and
+ * argument positions of its parameters. Each expression is compiled by Janino into a
+ * {@link CompiledExpression} reading its parameters directly out of the arguments, so primitive
+ * parameters are neither boxed nor passed through reflection, and identical expressions are
+ * compiled once per JVM. Given a directory, the generated classes are also stored there and loaded
+ * by later processes instead of compiling them again. Stored classes are named by a digest of their
+ * source and the multitool release, so classes generated by another release are never loaded.
+ */
+public class ExpressionCache
+  {
+  /** Property naming the directory compiled expressions are stored in, if any. */
+  public static final String DIRECTORY = "multitool.expression.cache";
+
+  private static final Logger LOG = LoggerFactory.getLogger( ExpressionCache.class );
+
+  private static final ConcurrentMap<String, CompiledExpression> CACHE = new ConcurrentHashMap<String, CompiledExpression>();
+
+  private ExpressionCache()
+    {
+    }
+
+  /**
+   * Returns the given expression, compiling it if not cached. Each parameter is read from the
+   * argument at its position as its type, one of String and the primitives and their wrappers
+   * supported by {@link #getTypes(String)}.
+   */
+  public static CompiledExpression getExpression( String expression, String[] names, Class[] types, int[] positions, String directory )
+    {
+    String key = expression + "\u0000" + Arrays.toString( names ) + "\u0000" + Arrays.toString( types ) + "\u0000" + Arrays.toString( positions );
+    CompiledExpression compiled = CACHE.get( key );
+
+    if( compiled != null )
+      return compiled;
+
+    String className = "MultitoolExpression" + digest( getSource( "", expression, names, types, positions ) + "\u0000" + Version.getReleaseFull() );
+
+    try
+      {
+      byte[] bytes = directory == null ? null : read( new File( directory, className + ".class" ) );
+      Class type = null;
+
+      if( bytes != null )
+        type = define( className, bytes );
+
+      if( type == null )
+        {
+        bytes = compile( getSource( className, expression, names, types, positions ) );
+        type = define( className, bytes );
+
+        if( directory != null )
+          write( new File( directory, className + ".class" ), bytes );
+        }
+
+      compiled = (CompiledExpression) type.newInstance();
+      }
+    catch( Exception exception )
+      {
+      throw new OperationException( "could not compile expression: " + expression, exception );
+      }
+
+    CompiledExpression previous = CACHE.putIfAbsent( key, compiled );
+
+    return previous != null ? previous : compiled;
+    }
+
+  /** Empties the cache of this process, leaving stored classes in place. */
+  static void clear()
+    {
+    CACHE.clear();
+    }
+
+  /**
+   * Returns the classes named by the given comma separated list of types. A type followed by a ?, like
+   * long?, is nullable, so null and blank values are passed as null instead of failing.
+   */
+  public static Class[] getTypes( String value )
+    {
+    String[] names = value.split( "," );
+    Class[] types = new Class[ names.length ];
+
+    for( int i = 0; i < names.length; i++ )
+      {
+      String name = names[ i ].trim().toLowerCase();
+      boolean isNullable = name.endsWith( "?" );
+
+      if( isNullable )
+        name = name.substring( 0, name.length() - 1 ).trim();
+
+      if( name.equals( "string" ) )
+        types[ i ] = String.class;
+      else if( name.equals( "long" ) )
+        types[ i ] = isNullable ? Long.class : Long.TYPE;
+      else if( name.equals( "int" ) )
+        types[ i ] = isNullable ? Integer.class : Integer.TYPE;
+      else if( name.equals( "double" ) )
+        types[ i ] = isNullable ? Double.class : Double.TYPE;
+      else if( name.equals( "boolean" ) )
+        types[ i ] = isNullable ? Boolean.class : Boolean.TYPE;
+      else
+        throw new IllegalArgumentException( "error: unknown expression type: " + names[ i ] + ", must be one of string, long, int, double or boolean, optionally followed by ?" );
+      }
+
+    return types;
+    }
+
+  static String getSource( String className, String expression, String[] names, Class[] types, int[] positions )
+    {
+    StringBuilder source = new StringBuilder();
+
+    source.append( "public class " ).append( className ).append( " implements " ).append( CompiledExpression.class.getName() ).append( "\n{\n" );
+    source.append( "public Object evaluate( cascading.tuple.TupleEntry __arguments )\n{\n" );
+
+    for( int i = 0; i < names.length; i++ )
+      {
+      source.append( types[ i ].getCanonicalName() ).append( ' ' ).append( names[ i ] ).append( " = " );
+
+      if( types[ i ] == String.class )
+        source.append( "__arguments.getString( " ).append( positions[ i ] ).append( " );\n" );
+      else
+        source.append( Coercions.class.getName() ).append( '.' ).append( Coercions.getMethodName( types[ i ] ) )
+          .append( "( __arguments.getObject( " ).append( positions[ i ] ).append( " ) );\n" );
+      }
+
+    // wraps primitive results like an ExpressionEvaluator of any type would
+    source.append( "return org.codehaus.janino.util.PrimitiveWrapper.wrap( " ).append( expression ).append( " );\n" );
+    source.append( "}\n}\n" );
+
+    return source.toString();
+    }
+
+  private static byte[] compile( String source ) throws Exception
+    {
+    Scanner scanner = new Scanner( null, new StringReader( source ) );
+    ClassLoaderIClassLoader classLoader = new ClassLoaderIClassLoader( getParentClassLoader() );
+    ClassFile[] classFiles = new UnitCompiler( new Parser( scanner ).parseCompilationUnit(), classLoader ).compileUnit( DebuggingInformation.NONE );
+
+    return classFiles[ 0 ].toByteArray();
+    }
+
+  private static Class define( String className, byte[] bytes )
+    {
+    try
+      {
+      return new ExpressionClassLoader( getParentClassLoader() ).define( className, bytes );
+      }
+    catch( LinkageError error )
+      {
+      LOG.warn( "unable to load stored expression: {}, compiling it instead", className );
+      return null;
+      }
+    }
+
+  private static ClassLoader getParentClassLoader()
+    {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+    return classLoader != null ? classLoader : ExpressionCache.class.getClassLoader();
+    }
+
+  private static byte[] read( File file ) throws IOException
+    {
+    if( !file.isFile() )
+      return null;
+
+    byte[] bytes = new byte[ (int) file.length() ];
+    InputStream input = new FileInputStream( file );
+
+    try
+      {
+      int offset = 0;
+
+      while( offset < bytes.length )
+        {
+        int read = input.read( bytes, offset, bytes.length - offset );
+
+        if( read == -1 )
+          return null;
+
+        offset += read;
+        }
+
+      return bytes;
+      }
+    finally
+      {
+      input.close();
+      }
+    }
+
+  /** Writes to a temporary file renamed into place, so concurrent tasks never read a partial class. */
+  private static void write( File file, byte[] bytes )
+    {
+    try
+      {
+      File directory = file.getParentFile();
+
+      if( !directory.exists() && !directory.mkdirs() && !directory.exists() )
+        throw new IOException( "unable to create: " + directory );
+
+      File temp = File.createTempFile( file.getName(), ".tmp", directory );
+      OutputStream output = new FileOutputStream( temp );
+
+      try
+        {
+        output.write( bytes );
+        }
+      finally
+        {
+        output.close();
+        }
+
+      if( !temp.renameTo( file ) && !temp.delete() )
+        temp.deleteOnExit();
+      }
+    catch( IOException exception )
+      {
+      LOG.warn( "unable to store compiled expression: " + file, exception );
+      }
+    }
+
+  private static String digest( String source )
+    {
+    try
+      {
+      byte[] digest = MessageDigest.getInstance( "MD5" ).digest( source.getBytes( "UTF-8" ) );
+      StringBuilder builder = new StringBuilder();
+
+      for( byte value : digest )
+        builder.append( String.format( "%02x", value ) );
+
+      return builder.toString();
+      }
+    catch( NoSuchAlgorithmException exception )
+      {
+      throw new IllegalStateException( exception );
+      }
+    catch( IOException exception )
+      {
+      throw new IllegalStateException( exception );
+      }
+    }
+
+  private static class ExpressionClassLoader extends ClassLoader
+    {
+    ExpressionClassLoader( ClassLoader parent )
+      {
+      super( parent );
+      }
+
+    Class define( String className, byte[] bytes )
+      {
+      return defineClass( className, bytes, 0, bytes.length );
+      }
+    }
+  }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import java.util.List;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Runs consecutive filters as a single operation over all incoming fields, removing a tuple as soon as
+ * one of them does. Each filter is handed the arguments it was planned with, selected into a tuple
+ * reused for every incoming tuple, so a chain of filter steps costs one operation call per tuple.
+ */
+public class FusedFilter extends BaseOperation<FusedFilter.Call[]> implements Filter<FusedFilter.Call[]>
+  {
+  private final Filter[] filters;
+  private final Fields[] argumentSelectors;
+
+  public FusedFilter( List<Filter> filters, List<Fields> argumentSelectors )
+    {
+    if( filters.size() != argumentSelectors.size() )
+      throw new IllegalArgumentException( "a selector is required per filter" );
+
+    this.filters = filters.toArray( new Filter[ filters.size() ] );
+    this.argumentSelectors = argumentSelectors.toArray( new Fields[ argumentSelectors.size() ] );
+    }
+
+  public Filter[] getFilters()
+    {
+    return filters;
+    }
+
+  public Fields[] getArgumentSelectors()
+    {
+    return argumentSelectors;
+    }
+
+  @Override
+  public boolean isSafe()
+    {
+    for( Filter filter : filters )
+      {
+      if( !filter.isSafe() )
+        return false;
+      }
+
+    return true;
+    }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Call[]> operationCall )
+    {
+    Call[] calls = new Call[ filters.length ];
+
+    for( int i = 0; i < filters.length; i++ )
+      {
+      calls[ i ] = new Call( argumentSelectors[ i ], operationCall.getArgumentFields() );
+      filters[ i ].prepare( flowProcess, calls[ i ] );
+      }
+
+    operationCall.setContext( calls );
+    }
+
+  @SuppressWarnings("unchecked")
+  public boolean isRemove( FlowProcess flowProcess, FilterCall<Call[]> filterCall )
+    {
+    TupleEntry arguments = filterCall.getArguments();
+    Call[] calls = filterCall.getContext();
+
+    for( int i = 0; i < filters.length; i++ )
+      {
+      calls[ i ].select( arguments );
+
+      if( filters[ i ].isRemove( flowProcess, calls[ i ] ) )
+        return true;
+      }
+
+    return false;
+    }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void cleanup( FlowProcess flowProcess, OperationCall<Call[]> operationCall )
+    {
+    Call[] calls = operationCall.getContext();
+
+    for( int i = 0; i < filters.length; i++ )
+      filters[ i ].cleanup( flowProcess, calls[ i ] );
+
+    operationCall.setContext( null );
+    }
+
+  /** The call handed to a single filter, holding its context and its selected arguments. */
+  @SuppressWarnings("rawtypes")
+  public static class Call implements FilterCall
+    {
+    private final Fields selector;
+    private final Fields argumentFields;
+    private Object context;
+    private int[] positions;
+    private Tuple tuple;
+    private TupleEntry arguments;
+
+    Call( Fields selector, Fields incomingFields )
+      {
+      this.selector = selector;
+
+      if( selector.isAll() )
+        argumentFields = incomingFields;
+      else if( incomingFields.isDefined() )
+        argumentFields = incomingFields.select( selector );
+      else
+        argumentFields = selector;
+      }
+
+    public Object getContext()
+      {
+      return context;
+      }
+
+    public void setContext( Object context )
+      {
+      this.context = context;
+      }
+
+    public Fields getArgumentFields()
+      {
+      return argumentFields;
+      }
+
+    public TupleEntry getArguments()
+      {
+      return arguments;
+      }
+
+    /** Returns the positions of the arguments in the incoming tuples, null if all fields are selected. */
+    int[] getPositions()
+      {
+      return positions;
+      }
+
+    /** Selects the arguments of this call out of the given incoming tuple. */
+    void select( TupleEntry incoming )
+      {
+      if( selector.isAll() )
+        {
+        arguments = incoming;
+        return;
+        }
+
+      if( positions == null )
+        {
+        positions = new int[ selector.size() ];
+        tuple = Tuple.size( positions.length );
+        arguments = new TupleEntry( argumentFields, tuple );
+
+        for( int i = 0; i < positions.length; i++ )
+          {
+          Comparable field = selector.get( i );
+
+          if( field instanceof Integer )
+            positions[ i ] = (Integer) field < 0 ? incoming.size() + (Integer) field : (Integer) field;
+          else
+            positions[ i ] = incoming.getFields().getPos( field );
+          }
+        }
+
+      for( int i = 0; i < positions.length; i++ )
+        tuple.set( i, incoming.getObject( positions[ i ] ) );
+      }
+    }
+  }
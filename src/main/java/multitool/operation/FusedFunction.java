@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import java.util.List;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.Operation;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * Runs consecutive filters and functions as a single operation over all incoming fields. Each step is
+ * handed the arguments it was planned with, and the values a function emits are built into the values
+ * of the next step as its output selector would, {@link Fields#RESULTS}, {@link Fields#REPLACE} or
+ * {@link Fields#SWAP}, in a tuple reused for every incoming tuple. Only the values of the last step are
+ * emitted.
+ * <p/>
+ * Use {@link #getFieldDeclaration(List, List, List)} to find if steps can be fused, and with
+ * {@link Fields#REPLACE} if it declares {@link Fields#ARGS}, otherwise with {@link Fields#RESULTS}.
+ */
+public class FusedFunction extends BaseOperation<FusedFunction.Context> implements Function<FusedFunction.Context>
+  {
+  private final Operation[] operations;
+  private final Fields[] argumentSelectors;
+  private final Fields[] outputSelectors;
+
+  public static class Context
+    {
+    private Step[] steps;
+    private TupleEntry[] rows;
+    private TupleEntryCollector output;
+    }
+
+  /** The call handed to a single step, emitting the values of a function into the next step. */
+  @SuppressWarnings("rawtypes")
+  private class Step extends FusedFilter.Call implements FunctionCall
+    {
+    private final Fields declaredFields;
+    private final TupleEntryCollector collector;
+
+    Step( final FlowProcess flowProcess, final Context context, final int index, Fields incomingFields, final Fields outgoingFields )
+      {
+      super( argumentSelectors[ index ], incomingFields );
+
+      Fields declared = operations[ index ].getFieldDeclaration();
+
+      this.declaredFields = declared != null && declared.isArguments() ? getArgumentFields() : declared;
+      this.collector = new TupleEntryCollector( declaredFields )
+        {
+        private final Tuple buffer = new Tuple();
+        private TupleEntry next;
+
+        @Override
+        protected void collect( TupleEntry result )
+          {
+          build( context.rows[ index ], result, outputSelectors[ index ], getPositions(), buffer );
+
+          // created once the buffer holds as many values as the fields
+          if( next == null )
+            next = new TupleEntry( outgoingFields, buffer );
+
+          process( flowProcess, context, index + 1, next );
+          }
+        };
+      }
+
+    public Fields getDeclaredFields()
+      {
+      return declaredFields;
+      }
+
+    public TupleEntryCollector getOutputCollector()
+      {
+      return collector;
+      }
+    }
+
+  public FusedFunction( Fields fieldDeclaration, List<Operation> operations, List<Fields> argumentSelectors, List<Fields> outputSelectors )
+    {
+    super( fieldDeclaration );
+
+    if( operations.size() != argumentSelectors.size() || operations.size() != outputSelectors.size() )
+      throw new IllegalArgumentException( "a selector is required per operation" );
+
+    this.operations = operations.toArray( new Operation[ operations.size() ] );
+    this.argumentSelectors = argumentSelectors.toArray( new Fields[ argumentSelectors.size() ] );
+    this.outputSelectors = outputSelectors.toArray( new Fields[ outputSelectors.size() ] );
+    }
+
+  /**
+   * Returns the fields the given steps emit when fused, {@link Fields#ARGS} if they emit the incoming
+   * fields, or null if the fields depend on incoming fields not known while planning.
+   */
+  public static Fields getFieldDeclaration( List<Operation> operations, List<Fields> argumentSelectors, List<Fields> outputSelectors )
+    {
+    Fields fields = Fields.ALL;
+
+    for( int i = 0; i < operations.size() && fields != null; i++ )
+      fields = resolve( fields, operations.get( i ), argumentSelectors.get( i ), outputSelectors.get( i ) );
+
+    if( fields == null || !fields.isAll() )
+      return fields;
+
+    return Fields.ARGS;
+    }
+
+  /**
+   * Returns the fields a step emits given the fields it is handed, {@link Fields#ALL} while they are the
+   * fields of the incoming values, or null if they cannot be told.
+   */
+  private static Fields resolve( Fields incoming, Operation operation, Fields argumentSelector, Fields outputSelector )
+    {
+    if( operation instanceof Filter || outputSelector.isReplace() )
+      return incoming;
+
+    Fields declared = operation.getFieldDeclaration();
+
+    if( declared.isArguments() )
+      declared = select( incoming, argumentSelector );
+    else if( declared.isNone() )
+      declared = new Fields();
+    else if( !declared.isDefined() && !declared.isUnknown() )
+      return null;
+
+    if( declared == null )
+      return null;
+
+    if( outputSelector.isResults() )
+      return declared;
+
+    if( outputSelector.isSwap() && incoming.isDefined() && declared.isDefined() )
+      return incoming.subtract( select( incoming, argumentSelector ) ).append( declared );
+
+    return null;
+    }
+
+  private static Fields select( Fields incoming, Fields selector )
+    {
+    if( selector.isAll() )
+      return incoming;
+
+    if( incoming.isDefined() )
+      return incoming.select( selector );
+
+    if( incoming.isUnknown() )
+      return Fields.UNKNOWN;
+
+    return null;
+    }
+
+  public Operation[] getOperations()
+    {
+    return operations;
+    }
+
+  public Fields[] getArgumentSelectors()
+    {
+    return argumentSelectors;
+    }
+
+  public Fields[] getOutputSelectors()
+    {
+    return outputSelectors;
+    }
+
+  @Override
+  public boolean isSafe()
+    {
+    for( Operation operation : operations )
+      {
+      if( !operation.isSafe() )
+        return false;
+      }
+
+    return true;
+    }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    Context context = new Context();
+    Fields fields = operationCall.getArgumentFields();
+
+    context.steps = new Step[ operations.length ];
+    context.rows = new TupleEntry[ operations.length ];
+
+    for( int i = 0; i < operations.length; i++ )
+      {
+      Fields incoming = fields;
+
+      fields = resolve( incoming, operations[ i ], argumentSelectors[ i ], outputSelectors[ i ] );
+
+      if( fields == null )
+        fields = Fields.UNKNOWN;
+
+      context.steps[ i ] = new Step( flowProcess, context, i, incoming, fields );
+      operations[ i ].prepare( flowProcess, context.steps[ i ] );
+      }
+
+    operationCall.setContext( context );
+    }
+
+  public void operate( FlowProcess flowProcess, FunctionCall<Context> functionCall )
+    {
+    Context context = functionCall.getContext();
+
+    context.output = functionCall.getOutputCollector();
+
+    process( flowProcess, context, 0, functionCall.getArguments() );
+    }
+
+  /** Hands the given values to the steps from the given one on, until a filter removes them or a function takes them. */
+  @SuppressWarnings("unchecked")
+  private void process( FlowProcess flowProcess, Context context, int index, TupleEntry row )
+    {
+    for( ; index < operations.length; index++ )
+      {
+      Step step = context.steps[ index ];
+
+      step.select( row );
+
+      if( operations[ index ] instanceof Filter )
+        {
+        if( ( (Filter) operations[ index ] ).isRemove( flowProcess, step ) )
+          return;
+
+        continue;
+        }
+
+      context.rows[ index ] = row;
+      ( (Function) operations[ index ] ).operate( flowProcess, step );
+
+      return;
+      }
+
+    context.output.add( row.getTuple() );
+    }
+
+  /**
+   * Builds the values handed to the next step out of the values handed to a function and a result.
+   *
+   * @param positions the positions of the arguments of the function, null if it takes all values
+   */
+  private static void build( TupleEntry row, TupleEntry result, Fields outputSelector, int[] positions, Tuple buffer )
+    {
+    buffer.clear();
+
+    // all values are replaced or swapped when all are arguments
+    if( outputSelector.isResults() || positions == null )
+      {
+      for( int i = 0; i < result.size(); i++ )
+        buffer.add( result.getObject( i ) );
+
+      return;
+      }
+
+    if( outputSelector.isReplace() )
+      {
+      for( int i = 0; i < row.size(); i++ )
+        buffer.add( row.getObject( i ) );
+
+      for( int i = 0; i < positions.length; i++ )
+        buffer.set( positions[ i ], result.getObject( i ) );
+
+      return;
+      }
+
+    // swap, the values not taken as arguments followed by the results
+    for( int i = 0; i < row.size(); i++ )
+      {
+      if( !contains( positions, i ) )
+        buffer.add( row.getObject( i ) );
+      }
+
+    for( int i = 0; i < result.size(); i++ )
+      buffer.add( result.getObject( i ) );
+    }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void flush( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    Context context = operationCall.getContext();
+
+    context.output = ( (FunctionCall<Context>) operationCall ).getOutputCollector();
+
+    for( int i = 0; i < operations.length; i++ )
+      operations[ i ].flush( flowProcess, context.steps[ i ] );
+    }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void cleanup( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    Context context = operationCall.getContext();
+
+    for( int i = 0; i < operations.length; i++ )
+      operations[ i ].cleanup( flowProcess, context.steps[ i ] );
+
+    operationCall.setContext( null );
+    }
+
+  private static boolean contains( int[] positions, int position )
+    {
+    for( int value : positions )
+      {
+      if( value == position )
+        return true;
+      }
+
+    return false;
+    }
+  }
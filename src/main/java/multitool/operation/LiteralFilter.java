@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import multitool.util.Horspool;
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Filters on a literal substring of the arguments joined by tabs. Produces the same results as
+ * {@link cascading.operation.regex.RegexFilter} given the literal as a quoted pattern, without
+ * running a regex per value.
+ */
+public class LiteralFilter extends BaseOperation<StringBuilder> implements Filter<StringBuilder>
+  {
+  private final Horspool matcher;
+  private final boolean removeMatch;
+
+  public LiteralFilter( String literal, boolean removeMatch )
+    {
+    this.matcher = new Horspool( literal );
+    this.removeMatch = removeMatch;
+    }
+
+  public String getLiteral()
+    {
+    return matcher.getLiteral();
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<StringBuilder> operationCall )
+    {
+    operationCall.setContext( new StringBuilder() );
+    }
+
+  public boolean isRemove( FlowProcess flowProcess, FilterCall<StringBuilder> filterCall )
+    {
+    TupleEntry arguments = filterCall.getArguments();
+    CharSequence value;
+
+    if( arguments.size() == 1 )
+      {
+      String string = arguments.getString( 0 );
+      value = string == null ? "" : string;
+      }
+    else
+      {
+      StringBuilder builder = filterCall.getContext();
+      builder.setLength( 0 );
+
+      for( int i = 0; i < arguments.size(); i++ )
+        {
+        if( i != 0 )
+          builder.append( '\t' );
+
+        Object object = arguments.getObject( i );
+
+        if( object != null )
+          builder.append( object );
+        }
+
+      value = builder;
+      }
+
+    return matcher.find( value ) == removeMatch;
+    }
+  }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import multitool.util.AhoCorasick;
+import multitool.util.RegexUtil;
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.OperationCall;
+
+/**
+ * Filters on any of a set of regular expressions, like a {@link cascading.operation.regex.RegexFilter}
+ * given their alternation. The arguments are joined by tabs and matched once against all literal
+ * patterns through an {@link AhoCorasick} automaton, only the remaining patterns are tried one by
+ * one.
+ */
+public class MultiRegexFilter extends BaseOperation<MultiRegexFilter.Context> implements Filter<MultiRegexFilter.Context>
+  {
+  private final String[] patterns;
+  private final boolean removeMatch;
+
+  public MultiRegexFilter( String[] patterns, boolean removeMatch )
+    {
+    if( patterns.length == 0 )
+      throw new IllegalArgumentException( "at least one pattern is required" );
+
+    this.patterns = patterns;
+    this.removeMatch = removeMatch;
+    }
+
+  public String[] getPatterns()
+    {
+    return patterns;
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    List<String> literals = new ArrayList<String>();
+    List<Matcher> matchers = new ArrayList<Matcher>();
+
+    for( String pattern : patterns )
+      {
+      String literal = RegexUtil.asLiteral( pattern );
+
+      if( literal != null )
+        literals.add( literal );
+      else
+        matchers.add( Pattern.compile( pattern ).matcher( "" ) );
+      }
+
+    AhoCorasick automaton = literals.isEmpty() ? null : new AhoCorasick( literals );
+
+    operationCall.setContext( new Context( automaton, matchers.toArray( new Matcher[ matchers.size() ] ) ) );
+    }
+
+  public boolean isRemove( FlowProcess flowProcess, FilterCall<Context> filterCall )
+    {
+    String value = filterCall.getArguments().getTuple().toString( "\t", false );
+
+    return filterCall.getContext().find( value ) == removeMatch;
+    }
+
+  /** The automaton of the literal patterns and a matcher per remaining pattern. */
+  public static class Context
+    {
+    private final AhoCorasick automaton;
+    private final Matcher[] matchers;
+
+    Context( AhoCorasick automaton, Matcher[] matchers )
+      {
+      this.automaton = automaton;
+      this.matchers = matchers;
+      }
+
+    boolean find( String value )
+      {
+      if( automaton != null && automaton.find( value ) )
+        return true;
+
+      for( Matcher matcher : matchers )
+        {
+        if( matcher.reset( value ).find() )
+          return true;
+        }
+
+      return false;
+      }
+    }
+  }
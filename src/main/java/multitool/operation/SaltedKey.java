@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import java.util.Arrays;
+
+import multitool.operation.BloomJoinFilter.KeyHash;
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Salts the keys of a join, the arguments, so the values of hot keys are spread over several groupings.
+ * The first key field is replaced by a {@link Tuple} of its value and a salt, the value keeps its type.
+ * On the large side each value of a hot key gets the next of the salts, on the small side each value
+ * of a hot key is replicated once per salt. Keys that are not hot get the salt 0, so every key compares
+ * the same way. Use with {@link Fields#REPLACE}, {@link Unsalt} restores the values again.
+ */
+public class SaltedKey extends BaseOperation<SaltedKey.Context> implements Function<SaltedKey.Context>
+  {
+  /**
+   * Replaces each salted value in the arguments, the key fields of the join, by its original value.
+   * No source or operation emits values that are tuples, so other values are left unchanged. Use with
+   * {@link Fields#REPLACE}.
+   */
+  public static class Unsalt extends BaseOperation<Tuple> implements Function<Tuple>
+    {
+    public Unsalt()
+      {
+      super( Fields.ARGS );
+      }
+
+    @Override
+    public void prepare( FlowProcess flowProcess, OperationCall<Tuple> operationCall )
+      {
+      operationCall.setContext( new Tuple() );
+      }
+
+    public void operate( FlowProcess flowProcess, FunctionCall<Tuple> functionCall )
+      {
+      TupleEntry arguments = functionCall.getArguments();
+      Tuple output = functionCall.getContext();
+
+      output.clear();
+
+      for( int i = 0; i < arguments.size(); i++ )
+        output.add( unsalt( arguments.getObject( i ) ) );
+
+      functionCall.getOutputCollector().add( output );
+      }
+
+    private static Object unsalt( Object value )
+      {
+      if( !( value instanceof Tuple ) || ( (Tuple) value ).size() != 2 )
+        return value;
+
+      return ( (Tuple) value ).getObject( 0 );
+      }
+    }
+
+  public static class Context
+    {
+    final StringBuilder builder = new StringBuilder();
+    int next;
+    }
+
+  private final long[] hotHashes;
+  private final int salts;
+  private final boolean isReplicated;
+
+  /**
+   * @param hotHashes    the hashes of the hot keys as emitted by {@link KeyHash}
+   * @param salts        the number of groupings to spread each hot key over
+   * @param isReplicated true on the small side, to emit hot keys once per salt
+   */
+  public SaltedKey( long[] hotHashes, int salts, boolean isReplicated )
+    {
+    super( Fields.ARGS );
+
+    this.hotHashes = hotHashes.clone();
+    this.salts = salts;
+    this.isReplicated = isReplicated;
+
+    Arrays.sort( this.hotHashes );
+    }
+
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    Context context = new Context();
+
+    // each slice starts with another salt, so small slices do not all fill the first salt
+    context.next = flowProcess.getCurrentSliceNum() % salts;
+
+    operationCall.setContext( context );
+    }
+
+  public void operate( FlowProcess flowProcess, FunctionCall<Context> functionCall )
+    {
+    TupleEntry arguments = functionCall.getArguments();
+    Context context = functionCall.getContext();
+
+    if( Arrays.binarySearch( hotHashes, KeyHash.hash( arguments, context.builder ) ) < 0 )
+      {
+      functionCall.getOutputCollector().add( salt( arguments, 0 ) );
+      return;
+      }
+
+    if( !isReplicated )
+      {
+      functionCall.getOutputCollector().add( salt( arguments, context.next ) );
+      context.next = ( context.next + 1 ) % salts;
+      return;
+      }
+
+    for( int salt = 0; salt < salts; salt++ )
+      functionCall.getOutputCollector().add( salt( arguments, salt ) );
+    }
+
+  private static Tuple salt( TupleEntry arguments, int salt )
+    {
+    Tuple salted = arguments.getTupleCopy();
+
+    salted.set( 0, new Tuple( salted.getObject( 0 ), salt ) );
+
+    return salted;
+    }
+  }
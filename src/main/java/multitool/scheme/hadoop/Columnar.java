@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.scheme.hadoop;
+
+import java.io.IOException;
+
+import multitool.columnar.ColumnarFields;
+import multitool.columnar.Pushdown;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.scheme.SinkCall;
+import cascading.scheme.SourceCall;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Hadoop {@link Scheme} reading and writing the columnar format. As a source only the given
+ * fields are decoded, as a sink the given fields are written.
+ */
+public class Columnar extends Scheme<JobConf, RecordReader, OutputCollector, Object[], Tuple>
+  {
+  private final Pushdown pushdown;
+  private final boolean compress;
+  private Pushdown.Resolved resolved;
+
+  /** Creates a source decoding only the columns that survive the given pushdown. */
+  public Columnar( Pushdown pushdown )
+    {
+    super( pushdown.getDeclaredFields() );
+    this.pushdown = pushdown;
+    this.compress = true;
+    }
+
+  /** Creates a sink writing the given fields. */
+  public Columnar( Fields fields, boolean compress )
+    {
+    super( Fields.ALL, fields );
+    this.pushdown = new Pushdown();
+    this.compress = compress;
+    }
+
+  @Override
+  public Fields retrieveSourceFields( FlowProcess<JobConf> flowProcess, Tap tap )
+    {
+    String[] names;
+
+    try
+      {
+      names = ColumnarInputFormat.readNames( flowProcess.getConfigCopy(), new Path( tap.getIdentifier() ) );
+      }
+    catch( IOException exception )
+      {
+      return getSourceFields();
+      }
+
+    if( names.length != 0 )
+      {
+      resolved = pushdown.resolve( names );
+      setSourceFields( ColumnarFields.asFields( resolved.getColumns() ) );
+      }
+
+    return getSourceFields();
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<JobConf> flowProcess, Tap<JobConf, RecordReader, OutputCollector> tap, JobConf conf )
+    {
+    conf.setInputFormat( ColumnarInputFormat.class );
+
+    if( resolved == null )
+      retrieveSourceFields( flowProcess, tap );
+
+    if( resolved != null )
+      conf.setStrings( ColumnarInputFormat.COLUMNS, resolved.getDecoded() );
+    }
+
+  @Override
+  public void sinkConfInit( FlowProcess<JobConf> flowProcess, Tap<JobConf, RecordReader, OutputCollector> tap, JobConf conf )
+    {
+    conf.setOutputFormat( ColumnarOutputFormat.class );
+    conf.setOutputKeyClass( Tuple.class );
+    conf.setOutputValueClass( Tuple.class );
+    conf.setBoolean( ColumnarOutputFormat.COMPRESS, compress );
+    }
+
+  @Override
+  public void sourcePrepare( FlowProcess<JobConf> flowProcess, SourceCall<Object[], RecordReader> sourceCall )
+    {
+    Tuple output = Tuple.size( resolved == null ? 0 : resolved.getColumns().length );
+
+    sourceCall.setContext( new Object[]{ sourceCall.getInput().createKey(), sourceCall.getInput().createValue(), output } );
+    }
+
+  @Override
+  public boolean source( FlowProcess<JobConf> flowProcess, SourceCall<Object[], RecordReader> sourceCall ) throws IOException
+    {
+    Object[] context = sourceCall.getContext();
+
+    while( sourceCall.getInput().next( context[ 0 ], context[ 1 ] ) )
+      {
+      Tuple row = (Tuple) context[ 1 ];
+
+      // without resolved columns the whole file is read and nothing is filtered
+      if( resolved == null )
+        {
+        sourceCall.getIncomingEntry().setTuple( row );
+        return true;
+        }
+
+      // rows rejected by a pushed down filter never leave the scheme
+      if( !resolved.accept( row ) )
+        continue;
+
+      sourceCall.getIncomingEntry().setTuple( resolved.project( row, (Tuple) context[ 2 ] ) );
+
+      return true;
+      }
+
+    return false;
+    }
+
+  @Override
+  public void sourceCleanup( FlowProcess<JobConf> flowProcess, SourceCall<Object[], RecordReader> sourceCall )
+    {
+    sourceCall.setContext( null );
+    }
+
+  @Override
+  public void sink( FlowProcess<JobConf> flowProcess, SinkCall<Tuple, OutputCollector> sinkCall ) throws IOException
+    {
+    TupleEntry entry = sinkCall.getOutgoingEntry();
+    Tuple names = sinkCall.getContext();
+
+    // the record writer takes the column names from the key of the first record
+    if( names == null )
+      {
+      names = new Tuple( (Object[]) ColumnarFields.getNames( entry.getFields(), entry.getTuple().size() ) );
+      sinkCall.setContext( names );
+      }
+
+    sinkCall.getOutput().collect( names, entry.getTuple() );
+    }
+  }
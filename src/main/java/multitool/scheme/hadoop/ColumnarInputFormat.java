@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.scheme.hadoop;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import multitool.columnar.ColumnarReader;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import cascading.tuple.Tuple;
+
+/**
+ * Reads columnar files, one split per file, decoding only the columns named by {@link #COLUMNS}.
+ */
+public class ColumnarInputFormat extends FileInputFormat<NullWritable, Tuple>
+  {
+  public static final String COLUMNS = "multitool.columnar.columns";
+
+  @Override
+  protected boolean isSplitable( FileSystem fs, Path file )
+    {
+    return false;
+    }
+
+  @Override
+  public RecordReader<NullWritable, Tuple> getRecordReader( InputSplit split, JobConf job, Reporter reporter ) throws IOException
+    {
+    reporter.setStatus( split.toString() );
+
+    return new ColumnarRecordReader( (FileSplit) split, job );
+    }
+
+  /**
+   * Returns the column names of the first non empty file at the given path, or no names if there
+   * is none.
+   */
+  public static String[] readNames( JobConf conf, Path path ) throws IOException
+    {
+    FileSystem fs = path.getFileSystem( conf );
+    FileStatus[] statuses = fs.globStatus( path );
+
+    if( statuses == null || statuses.length == 0 )
+      return new String[ 0 ];
+
+    if( statuses.length == 1 && statuses[ 0 ].isDir() )
+      statuses = fs.listStatus( statuses[ 0 ].getPath() );
+
+    Arrays.sort( statuses );
+
+    for( FileStatus status : statuses )
+      {
+      String name = status.getPath().getName();
+
+      if( status.isDir() || status.getLen() == 0 || name.startsWith( "_" ) || name.startsWith( "." ) )
+        continue;
+
+      ColumnarReader reader = new ColumnarReader( fs.open( status.getPath() ) );
+
+      try
+        {
+        return reader.getNames();
+        }
+      finally
+        {
+        reader.close();
+        }
+      }
+
+    return new String[ 0 ];
+    }
+
+  static class ColumnarRecordReader implements RecordReader<NullWritable, Tuple>
+    {
+    private final FSDataInputStream input;
+    private final ColumnarReader reader;
+    private final long length;
+
+    ColumnarRecordReader( FileSplit split, JobConf job ) throws IOException
+      {
+      Path path = split.getPath();
+
+      input = path.getFileSystem( job ).open( path );
+      reader = new ColumnarReader( input );
+      length = split.getLength();
+
+      String[] columns = job.getStrings( COLUMNS );
+
+      if( columns != null )
+        reader.select( columns );
+      }
+
+    @Override
+    public boolean next( NullWritable key, Tuple value ) throws IOException
+      {
+      if( !reader.next() )
+        return false;
+
+      for( int i = 0; i < reader.getWidth(); i++ )
+        value.set( i, reader.get( i ) );
+
+      return true;
+      }
+
+    @Override
+    public NullWritable createKey()
+      {
+      return NullWritable.get();
+      }
+
+    @Override
+    public Tuple createValue()
+      {
+      return Tuple.size( reader.getWidth() );
+      }
+
+    @Override
+    public long getPos() throws IOException
+      {
+      return input.getPos();
+      }
+
+    @Override
+    public float getProgress() throws IOException
+      {
+      if( length == 0 )
+        return 1.0f;
+
+      return Math.min( 1.0f, input.getPos() / (float) length );
+      }
+
+    @Override
+    public void close() throws IOException
+      {
+      reader.close();
+      }
+    }
+  }
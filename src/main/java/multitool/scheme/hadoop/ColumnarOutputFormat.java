@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.scheme.hadoop;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import multitool.columnar.ColumnarWriter;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+import cascading.tuple.Tuple;
+
+/**
+ * Writes columnar files. The key of each record holds the column names, the value the row.
+ */
+public class ColumnarOutputFormat extends FileOutputFormat<Tuple, Tuple>
+  {
+  public static final String COMPRESS = "multitool.columnar.compress";
+
+  @Override
+  public RecordWriter<Tuple, Tuple> getRecordWriter( FileSystem ignored, JobConf job, String name, Progressable progress ) throws IOException
+    {
+    Path file = FileOutputFormat.getTaskOutputPath( job, name );
+    OutputStream output = file.getFileSystem( job ).create( file, progress );
+
+    return new ColumnarRecordWriter( output, job.getBoolean( COMPRESS, true ) );
+    }
+
+  static class ColumnarRecordWriter implements RecordWriter<Tuple, Tuple>
+    {
+    private final OutputStream output;
+    private final boolean compress;
+    private ColumnarWriter writer;
+
+    ColumnarRecordWriter( OutputStream output, boolean compress )
+      {
+      this.output = output;
+      this.compress = compress;
+      }
+
+    @Override
+    public void write( Tuple names, Tuple value ) throws IOException
+      {
+      if( writer == null )
+        {
+        String[] columns = new String[ names.size() ];
+
+        for( int i = 0; i < columns.length; i++ )
+          columns[ i ] = names.getString( i );
+
+        writer = new ColumnarWriter( output, columns, compress );
+        }
+
+      for( int i = 0; i < value.size(); i++ )
+        writer.set( i, value.getObject( i ) );
+
+      writer.endRow();
+      }
+
+    @Override
+    public void close( Reporter reporter ) throws IOException
+      {
+      if( writer != null )
+        writer.close();
+      else
+        output.close();
+      }
+    }
+  }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.scheme.local;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import multitool.columnar.ColumnarFields;
+import multitool.columnar.Pushdown;
+import multitool.tap.local.FileSetTap;
+import multitool.columnar.ColumnarReader;
+import multitool.columnar.ColumnarWriter;
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.scheme.SinkCall;
+import cascading.scheme.SourceCall;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+/**
+ * Local mode {@link Scheme} reading and writing the columnar format. As a source only the given
+ * fields are decoded, as a sink the given fields are written.
+ */
+public class Columnar extends Scheme<Properties, InputStream, OutputStream, Object[], ColumnarWriter>
+  {
+  private final Pushdown pushdown;
+  private final boolean compress;
+  private Pushdown.Resolved resolved;
+
+  /** Creates a source decoding only the columns that survive the given pushdown. */
+  public Columnar( Pushdown pushdown )
+    {
+    super( pushdown.getDeclaredFields() );
+    this.pushdown = pushdown;
+    this.compress = true;
+    }
+
+  /** Creates a sink writing the given fields. */
+  public Columnar( Fields fields, boolean compress )
+    {
+    super( Fields.ALL, fields );
+    this.pushdown = new Pushdown();
+    this.compress = compress;
+    }
+
+  @Override
+  public Fields retrieveSourceFields( FlowProcess<Properties> flowProcess, Tap tap )
+    {
+    List<File> files = Arrays.asList( new File( tap.getIdentifier() ) );
+
+    if( tap instanceof FileSetTap )
+      files = ( (FileSetTap) tap ).getFiles();
+
+    String[] names = new String[ 0 ];
+
+    try
+      {
+      // the first non empty file names the columns
+      for( int i = 0; i < files.size() && names.length == 0; i++ )
+        {
+        ColumnarReader reader = new ColumnarReader( new FileInputStream( files.get( i ) ) );
+        names = reader.getNames();
+        reader.close();
+        }
+      }
+    catch( IOException exception )
+      {
+      return getSourceFields();
+      }
+
+    if( names.length != 0 )
+      {
+      resolved = pushdown.resolve( names );
+      setSourceFields( ColumnarFields.asFields( resolved.getColumns() ) );
+      }
+
+    return getSourceFields();
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<Properties> flowProcess, Tap<Properties, InputStream, OutputStream> tap, Properties conf )
+    {
+    }
+
+  @Override
+  public void sinkConfInit( FlowProcess<Properties> flowProcess, Tap<Properties, InputStream, OutputStream> tap, Properties conf )
+    {
+    }
+
+  @Override
+  public void sourcePrepare( FlowProcess<Properties> flowProcess, SourceCall<Object[], InputStream> sourceCall ) throws IOException
+    {
+    ColumnarReader reader = new ColumnarReader( sourceCall.getInput() );
+
+    if( resolved == null )
+      resolved = pushdown.resolve( reader.getNames() );
+
+    reader.select( resolved.getDecoded() );
+
+    Tuple row = Tuple.size( reader.getWidth() );
+    Tuple output = Tuple.size( resolved.getColumns().length );
+
+    sourceCall.setContext( new Object[]{ reader, row, output } );
+    }
+
+  @Override
+  public boolean source( FlowProcess<Properties> flowProcess, SourceCall<Object[], InputStream> sourceCall ) throws IOException
+    {
+    Object[] context = sourceCall.getContext();
+    ColumnarReader reader = (ColumnarReader) context[ 0 ];
+    Tuple row = (Tuple) context[ 1 ];
+
+    while( reader.next() )
+      {
+      for( int i = 0; i < reader.getWidth(); i++ )
+        row.set( i, reader.get( i ) );
+
+      // rows rejected by a pushed down filter never leave the scheme
+      if( !resolved.accept( row ) )
+        continue;
+
+      sourceCall.getIncomingEntry().setTuple( resolved.project( row, (Tuple) context[ 2 ] ) );
+
+      return true;
+      }
+
+    return false;
+    }
+
+  @Override
+  public void sourceCleanup( FlowProcess<Properties> flowProcess, SourceCall<Object[], InputStream> sourceCall )
+    {
+    sourceCall.setContext( null );
+    }
+
+  @Override
+  public void sink( FlowProcess<Properties> flowProcess, SinkCall<ColumnarWriter, OutputStream> sinkCall ) throws IOException
+    {
+    TupleEntry entry = sinkCall.getOutgoingEntry();
+    Tuple tuple = entry.getTuple();
+    ColumnarWriter writer = sinkCall.getContext();
+
+    if( writer == null )
+      {
+      writer = new ColumnarWriter( sinkCall.getOutput(), ColumnarFields.getNames( entry.getFields(), tuple.size() ), compress );
+      sinkCall.setContext( writer );
+      }
+
+    for( int i = 0; i < tuple.size(); i++ )
+      writer.set( i, tuple.getObject( i ) );
+
+    writer.endRow();
+    }
+
+  @Override
+  public void sinkCleanup( FlowProcess<Properties> flowProcess, SinkCall<ColumnarWriter, OutputStream> sinkCall ) throws IOException
+    {
+    ColumnarWriter writer = sinkCall.getContext();
+
+    // an empty result still records its columns if they are known
+    if( writer == null && getSinkFields().isDefined() )
+      writer = new ColumnarWriter( sinkCall.getOutput(), ColumnarFields.getNames( getSinkFields(), getSinkFields().size() ), compress );
+
+    if( writer != null )
+      writer.finish();
+
+    sinkCall.setContext( null );
+    }
+  }
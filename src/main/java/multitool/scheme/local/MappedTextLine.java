@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.scheme.local;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Properties;
+
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.scheme.SinkCall;
+import cascading.scheme.SourceCall;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * Local mode source {@link Scheme} reading lines like {@link cascading.scheme.local.TextLine}, but
+ * from a memory mapped file. Lines end at a \n, a \r\n or a lone \r, as they do for TextLine.
+ * Line boundaries are found in the mapped bytes, and each line is emitted with the byte offset it
+ * starts at as a {@link Line}, holding its bytes until it is read as a string.
+ * <p/>
+ * Files larger than the window size are mapped window by window, each window released before the
+ * next is mapped. Inputs that are not plain files, like slices of a file, are read through a channel
+ * instead.
+ */
+public class MappedTextLine extends Scheme<Properties, InputStream, OutputStream, MappedTextLine.Lines, Void>
+  {
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+  private static final Charset LATIN1 = Charset.forName( "ISO-8859-1" );
+
+  /** Bytes mapped at a time, files larger than this are mapped window by window. */
+  static int windowSize = 256 * 1024 * 1024;
+
+  /** Bytes read at a time from inputs that cannot be mapped. */
+  static int bufferSize = 1024 * 1024;
+
+  public MappedTextLine()
+    {
+    super( Fields.size( 2 ) );
+    }
+
+  @Override
+  public boolean isSink()
+    {
+    return false;
+    }
+
+  @Override
+  public void sourceConfInit( FlowProcess<Properties> flowProcess, Tap<Properties, InputStream, OutputStream> tap, Properties conf )
+    {
+    }
+
+  @Override
+  public void sinkConfInit( FlowProcess<Properties> flowProcess, Tap<Properties, InputStream, OutputStream> tap, Properties conf )
+    {
+    throw new IllegalArgumentException( "error: mapped text can only be read" );
+    }
+
+  @Override
+  public void sourcePrepare( FlowProcess<Properties> flowProcess, SourceCall<Lines, InputStream> sourceCall ) throws IOException
+    {
+    sourceCall.setContext( new Lines( sourceCall.getInput() ) );
+    }
+
+  @Override
+  public boolean source( FlowProcess<Properties> flowProcess, SourceCall<Lines, InputStream> sourceCall ) throws IOException
+    {
+    Lines lines = sourceCall.getContext();
+
+    if( !lines.next() )
+      return false;
+
+    Tuple tuple = lines.tuple;
+
+    tuple.set( 0, lines.offset );
+    tuple.set( 1, lines.line );
+
+    sourceCall.getIncomingEntry().setTuple( tuple );
+
+    return true;
+    }
+
+  @Override
+  public void sourceCleanup( FlowProcess<Properties> flowProcess, SourceCall<Lines, InputStream> sourceCall )
+    {
+    if( sourceCall.getContext() != null )
+      sourceCall.getContext().close();
+
+    sourceCall.setContext( null );
+    }
+
+  @Override
+  public void sink( FlowProcess<Properties> flowProcess, SinkCall<Void, OutputStream> sinkCall )
+    {
+    throw new UnsupportedOperationException( "mapped text can only be read" );
+    }
+
+  /**
+   * A line as read, decoded into a string the first time it is read as one, lines consisting of ASCII
+   * only without going through a charset decoder. Lines hash and compare as their string does, equal
+   * lines of the same bytes, and are serialized as their string.
+   */
+  public static final class Line implements CharSequence, Comparable<Object>, Serializable
+    {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] bytes;
+    private transient String string;
+
+    Line( byte[] bytes )
+      {
+      this.bytes = bytes;
+      }
+
+    public int length()
+      {
+      return toString().length();
+      }
+
+    public char charAt( int index )
+      {
+      return toString().charAt( index );
+      }
+
+    public CharSequence subSequence( int start, int end )
+      {
+      return toString().subSequence( start, end );
+      }
+
+    public int compareTo( Object other )
+      {
+      return toString().compareTo( other.toString() );
+      }
+
+    @Override
+    public boolean equals( Object object )
+      {
+      if( this == object )
+        return true;
+
+      return object instanceof Line && Arrays.equals( bytes, ( (Line) object ).bytes );
+      }
+
+    @Override
+    public int hashCode()
+      {
+      return toString().hashCode();
+      }
+
+    @Override
+    public String toString()
+      {
+      if( string == null )
+        {
+        boolean ascii = true;
+
+        for( int i = 0; i < bytes.length && ascii; i++ )
+          ascii = bytes[ i ] >= 0;
+
+        string = new String( bytes, ascii ? LATIN1 : UTF8 );
+        }
+
+      return string;
+      }
+
+    private Object writeReplace()
+      {
+      return toString();
+      }
+    }
+
+  /** Scans lines out of a mapped window of a file, or out of a buffer refilled from a channel. */
+  static class Lines
+    {
+    private final FileChannel file;
+    private final ReadableByteChannel channel;
+    private final Tuple tuple = Tuple.size( 2 );
+    private ByteBuffer buffer;
+    private long bufferStart;
+    private boolean eof;
+    long offset;
+    Line line;
+
+    Lines( InputStream input ) throws IOException
+      {
+      if( input instanceof FileInputStream )
+        {
+        file = ( (FileInputStream) input ).getChannel();
+        channel = null;
+        bufferStart = file.position();
+        map();
+        }
+      else
+        {
+        file = null;
+        channel = Channels.newChannel( input );
+        buffer = ByteBuffer.allocate( bufferSize );
+        buffer.flip();
+        }
+      }
+
+    private void map() throws IOException
+      {
+      long length = Math.min( windowSize, file.size() - bufferStart );
+
+      buffer = file.map( FileChannel.MapMode.READ_ONLY, bufferStart, length );
+      eof = bufferStart + length == file.size();
+      }
+
+    /** Moves the unread bytes to the front of the buffer and reads more, growing it for long lines. */
+    private void refill() throws IOException
+      {
+      if( file != null )
+        {
+        bufferStart += buffer.position();
+
+        if( buffer.position() == 0 && buffer.limit() == windowSize )
+          throw new IOException( "line longer than " + windowSize + " bytes" );
+
+        // lines hold copies of their bytes, so nothing refers to the window once it is released
+        unmap( buffer );
+        map();
+        return;
+        }
+
+      bufferStart += buffer.position();
+      buffer.compact();
+
+      if( !buffer.hasRemaining() )
+        {
+        ByteBuffer larger = ByteBuffer.allocate( buffer.capacity() * 2 );
+        buffer.flip();
+        larger.put( buffer );
+        buffer = larger;
+        }
+
+      while( buffer.hasRemaining() )
+        {
+        if( channel.read( buffer ) == -1 )
+          {
+          eof = true;
+          break;
+          }
+        }
+
+      buffer.flip();
+      }
+
+    boolean next() throws IOException
+      {
+      while( true )
+        {
+        int start = buffer.position();
+        int limit = buffer.limit();
+
+        for( int i = start; i < limit; i++ )
+          {
+          byte current = buffer.get( i );
+
+          if( current == '\n' )
+            {
+            emit( start, i );
+            buffer.position( i + 1 );
+            return true;
+            }
+
+          if( current == '\r' )
+            {
+            // whether a \r ending the buffer is followed by a \n is only known after reading more
+            if( i + 1 == limit && !eof )
+              break;
+
+            emit( start, i );
+            buffer.position( i + 1 < limit && buffer.get( i + 1 ) == '\n' ? i + 2 : i + 1 );
+            return true;
+            }
+          }
+
+        if( eof )
+          {
+          if( start == limit )
+            return false;
+
+          // the last line has no line terminator
+          emit( start, limit );
+          buffer.position( limit );
+          return true;
+          }
+
+        refill();
+        }
+      }
+
+    /** Sets the line from start to end, leaving the buffer position to the caller. */
+    private void emit( int start, int end )
+      {
+      byte[] bytes = new byte[ end - start ];
+
+      buffer.position( start );
+      buffer.get( bytes );
+
+      offset = bufferStart + start;
+      line = new Line( bytes );
+      }
+
+    /** Releases the mapped window, the lines read so far stay valid. */
+    void close()
+      {
+      if( file != null && buffer != null )
+        unmap( buffer );
+
+      buffer = null;
+      }
+
+    /** Releases a mapped buffer right away where the JVM allows it, otherwise once it is collected. */
+    private static void unmap( ByteBuffer buffer )
+      {
+      if( !( buffer instanceof MappedByteBuffer ) )
+        return;
+
+      try
+        {
+        Method cleanerMethod = buffer.getClass().getMethod( "cleaner" );
+        cleanerMethod.setAccessible( true );
+        Object cleaner = cleanerMethod.invoke( buffer );
+
+        if( cleaner != null )
+          cleaner.getClass().getMethod( "clean" ).invoke( cleaner );
+        }
+      catch( Exception exception )
+        {
+        // left to the garbage collector
+        }
+      }
+    }
+  }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.stats;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.Aggregator;
+import cascading.operation.AggregatorCall;
+
+/**
+ * Counts the tuples aggregated and the results emitted by an {@link Aggregator}.
+ */
+public class MeteredAggregator extends MeteredOperation<Aggregator> implements Aggregator<MeteredOperation.Context>
+  {
+  public MeteredAggregator( Aggregator aggregator, String stage, boolean countIn, boolean countOut )
+    {
+    super( aggregator, stage, countIn, countOut );
+    }
+
+  @SuppressWarnings("unchecked")
+  public void start( FlowProcess flowProcess, AggregatorCall<Context> aggregatorCall )
+    {
+    Context context = aggregatorCall.getContext();
+
+    context.call.outer = aggregatorCall;
+
+    long start = context.start();
+
+    try
+      {
+      operation.start( flowProcess, context.call );
+      }
+    catch( RuntimeException exception )
+      {
+      failed( flowProcess );
+      throw exception;
+      }
+    finally
+      {
+      context.stop( start );
+      }
+    }
+
+  @SuppressWarnings("unchecked")
+  public void aggregate( FlowProcess flowProcess, AggregatorCall<Context> aggregatorCall )
+    {
+    Context context = aggregatorCall.getContext();
+
+    context.call.outer = aggregatorCall;
+    context.in++;
+
+    long start = context.start();
+
+    try
+      {
+      operation.aggregate( flowProcess, context.call );
+      }
+    catch( RuntimeException exception )
+      {
+      failed( flowProcess );
+      throw exception;
+      }
+    finally
+      {
+      context.stop( start );
+      }
+    }
+
+  @SuppressWarnings("unchecked")
+  public void complete( FlowProcess flowProcess, AggregatorCall<Context> aggregatorCall )
+    {
+    Context context = aggregatorCall.getContext();
+
+    context.call.outer = aggregatorCall;
+
+    long start = context.start();
+
+    try
+      {
+      operation.complete( flowProcess, context.call );
+      }
+    catch( RuntimeException exception )
+      {
+      failed( flowProcess );
+      throw exception;
+      }
+    finally
+      {
+      context.stop( start );
+      }
+    }
+  }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package multitool.stats;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.Buffer;
+import cascading.operation.BufferCall;
+
+/**
+ * Counts the grouped tuples read and the results emitted by a {@link Buffer}. Tuples a buffer
+ * leaves unread are not counted.
+ */
+public class MeteredBuffer extends MeteredOperation<Buffer> implements Buffer<MeteredOperation.Context>
+  {
+  public MeteredBuffer( Buffer buffer, String stage, boolean countIn, boolean countOut )
+    {
+    super( buffer, stage, countIn, countOut );
+    }
+
+  @SuppressWarnings("unchecked")
+  public void operate( FlowProcess flowProcess, BufferCall<Context> bufferCall )
+    {
+    Context context = bufferCall.getContext();
+
+    context.call.outer = bufferCall;
+
+    long start = context.start();
+
+    try
+      {
+      operation.operate( flowProcess, context.call );
+      }
+    catch( RuntimeException exception )
+      {
+      failed( flowProcess );
+      throw exception;
+      }
+    finally
+      {
+      context.stop( start );
+      }
+    }
+  }
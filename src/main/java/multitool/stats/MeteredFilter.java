@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.stats;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+
+/**
+ * Counts the tuples passing through and removed by a {@link Filter}.
+ */
+public class MeteredFilter extends MeteredOperation<Filter> implements Filter<MeteredOperation.Context>
+  {
+  public MeteredFilter( Filter filter, String stage, boolean countIn, boolean countOut )
+    {
+    super( filter, stage, countIn, countOut );
+    }
+
+  @SuppressWarnings("unchecked")
+  public boolean isRemove( FlowProcess flowProcess, FilterCall<Context> filterCall )
+    {
+    Context context = filterCall.getContext();
+
+    context.call.outer = filterCall;
+    context.in++;
+
+    long start = context.start();
+    boolean remove;
+
+    try
+      {
+      remove = operation.isRemove( flowProcess, context.call );
+      }
+    catch( RuntimeException exception )
+      {
+      failed( flowProcess );
+      throw exception;
+      }
+    finally
+      {
+      context.stop( start );
+      }
+
+    if( remove )
+      context.filtered++;
+    else
+      context.out++;
+
+    return remove;
+    }
+  }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.stats;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+
+/**
+ * Counts the tuples passing through a {@link Function}.
+ */
+public class MeteredFunction extends MeteredOperation<Function> implements Function<MeteredOperation.Context>
+  {
+  public MeteredFunction( Function function, String stage, boolean countIn, boolean countOut )
+    {
+    super( function, stage, countIn, countOut );
+    }
+
+  @SuppressWarnings("unchecked")
+  public void operate( FlowProcess flowProcess, FunctionCall<Context> functionCall )
+    {
+    Context context = functionCall.getContext();
+
+    context.call.outer = functionCall;
+    context.in++;
+
+    long start = context.start();
+
+    try
+      {
+      operation.operate( flowProcess, context.call );
+      }
+    catch( RuntimeException exception )
+      {
+      failed( flowProcess );
+      throw exception;
+      }
+    finally
+      {
+      context.stop( start );
+      }
+    }
+  }
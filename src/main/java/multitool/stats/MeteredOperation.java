@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.stats;
+
+import java.util.Iterator;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.AggregatorCall;
+import cascading.operation.BaseOperation;
+import cascading.operation.BufferCall;
+import cascading.operation.FilterCall;
+import cascading.operation.FunctionCall;
+import cascading.operation.Operation;
+import cascading.operation.OperationCall;
+import cascading.pipe.joiner.JoinerClosure;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * Base of the operations wrapping another operation to count the tuples it receives, emits and
+ * removes, the exceptions it throws, and the time spent in it. Time spent downstream of the tuples
+ * it emits is not counted. Counts are kept in the context of the operation and added to the counters
+ * of its stage on cleanup.
+ */
+public abstract class MeteredOperation<O extends Operation> extends BaseOperation<MeteredOperation.Context>
+  {
+  protected final O operation;
+  private final String stage;
+  private final boolean countIn;
+  private final boolean countOut;
+
+  protected MeteredOperation( O operation, String stage, boolean countIn, boolean countOut )
+    {
+    super( operation.getNumArgs(), operation.getFieldDeclaration() );
+    this.operation = operation;
+    this.stage = stage;
+    this.countIn = countIn;
+    this.countOut = countOut;
+    }
+
+  public O getOperation()
+    {
+    return operation;
+    }
+
+  @Override
+  public boolean isSafe()
+    {
+    return operation.isSafe();
+    }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void prepare( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    Context context = new Context();
+
+    context.call.outer = operationCall;
+    operation.prepare( flowProcess, context.call );
+    operationCall.setContext( context );
+    }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void flush( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    Context context = operationCall.getContext();
+
+    context.call.outer = operationCall;
+
+    long start = context.start();
+
+    operation.flush( flowProcess, context.call );
+
+    context.stop( start );
+    }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void cleanup( FlowProcess flowProcess, OperationCall<Context> operationCall )
+    {
+    Context context = operationCall.getContext();
+
+    context.call.outer = operationCall;
+    operation.cleanup( flowProcess, context.call );
+    operationCall.setContext( null );
+
+    if( countIn )
+      increment( flowProcess, Stats.Metric.TUPLES_IN, context.in );
+
+    if( countOut )
+      increment( flowProcess, Stats.Metric.TUPLES_OUT, context.out + context.collector.count );
+
+    increment( flowProcess, Stats.Metric.FILTERED, context.filtered );
+    increment( flowProcess, Stats.Metric.NANOS, context.nanos );
+    }
+
+  protected void failed( FlowProcess flowProcess )
+    {
+    increment( flowProcess, Stats.Metric.FAILURES, 1 );
+    }
+
+  private void increment( FlowProcess flowProcess, Stats.Metric metric, long amount )
+    {
+    if( amount != 0 )
+      flowProcess.increment( Stats.GROUP, Stats.getCounter( stage, metric ), amount );
+    }
+
+  /** Counts of a single instance of the operation. */
+  public static class Context
+    {
+    final Call call = new Call( this );
+    final CountingCollector collector = new CountingCollector();
+    long in;
+    long out;
+    long filtered;
+    long nanos;
+
+    long start()
+      {
+      return System.nanoTime() - collector.nanos;
+      }
+
+    void stop( long start )
+      {
+      nanos += System.nanoTime() - collector.nanos - start;
+      }
+    }
+
+  /** The call handed to the wrapped operation, delegating to the current call of the wrapper. */
+  @SuppressWarnings("rawtypes")
+  static class Call implements FunctionCall, FilterCall, AggregatorCall, BufferCall
+    {
+    private final Context context;
+    OperationCall outer;
+    private Object operationContext;
+
+    Call( Context context )
+      {
+      this.context = context;
+      }
+
+    public Object getContext()
+      {
+      return operationContext;
+      }
+
+    public void setContext( Object operationContext )
+      {
+      this.operationContext = operationContext;
+      }
+
+    public Fields getArgumentFields()
+      {
+      return outer.getArgumentFields();
+      }
+
+    public TupleEntry getArguments()
+      {
+      if( outer instanceof FunctionCall )
+        return ( (FunctionCall) outer ).getArguments();
+      else if( outer instanceof AggregatorCall )
+        return ( (AggregatorCall) outer ).getArguments();
+      else
+        return ( (FilterCall) outer ).getArguments();
+      }
+
+    public TupleEntry getGroup()
+      {
+      if( outer instanceof BufferCall )
+        return ( (BufferCall) outer ).getGroup();
+
+      return ( (AggregatorCall) outer ).getGroup();
+      }
+
+    public Fields getDeclaredFields()
+      {
+      if( outer instanceof FunctionCall )
+        return ( (FunctionCall) outer ).getDeclaredFields();
+      else if( outer instanceof BufferCall )
+        return ( (BufferCall) outer ).getDeclaredFields();
+
+      return ( (AggregatorCall) outer ).getDeclaredFields();
+      }
+
+    /** Returns the arguments of the group, counting each as it is read. */
+    public Iterator<TupleEntry> getArgumentsIterator()
+      {
+      final Iterator<TupleEntry> iterator = ( (BufferCall) outer ).getArgumentsIterator();
+
+      return new Iterator<TupleEntry>()
+      {
+      public boolean hasNext()
+        {
+        return iterator.hasNext();
+        }
+
+      public TupleEntry next()
+        {
+        TupleEntry next = iterator.next();
+
+        context.in++;
+
+        return next;
+        }
+
+      public void remove()
+        {
+        iterator.remove();
+        }
+      };
+      }
+
+    public void setRetainValues( boolean retainValues )
+      {
+      ( (BufferCall) outer ).setRetainValues( retainValues );
+      }
+
+    public boolean isRetainValues()
+      {
+      return ( (BufferCall) outer ).isRetainValues();
+      }
+
+    public JoinerClosure getJoinerClosure()
+      {
+      return ( (BufferCall) outer ).getJoinerClosure();
+      }
+
+    public TupleEntryCollector getOutputCollector()
+      {
+      if( outer instanceof FunctionCall )
+        context.collector.delegate = ( (FunctionCall) outer ).getOutputCollector();
+      else if( outer instanceof BufferCall )
+        context.collector.delegate = ( (BufferCall) outer ).getOutputCollector();
+      else
+        context.collector.delegate = ( (AggregatorCall) outer ).getOutputCollector();
+
+      return context.collector;
+      }
+    }
+
+  /** Counts the tuples added, and the time spent downstream of them. */
+  static class CountingCollector extends TupleEntryCollector
+    {
+    TupleEntryCollector delegate;
+    long count;
+    long nanos;
+
+    @Override
+    public void add( TupleEntry tupleEntry )
+      {
+      long start = System.nanoTime();
+
+      delegate.add( tupleEntry );
+
+      nanos += System.nanoTime() - start;
+      count++;
+      }
+
+    @Override
+    public void add( Tuple tuple )
+      {
+      long start = System.nanoTime();
+
+      delegate.add( tuple );
+
+      nanos += System.nanoTime() - start;
+      count++;
+      }
+
+    @Override
+    protected void collect( TupleEntry tupleEntry )
+      {
+      add( tupleEntry );
+      }
+    }
+  }
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.stats;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import multitool.operation.CountingRegexParser;
+import multitool.tap.local.FileSetTap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowStep;
+import cascading.operation.Aggregator;
+import cascading.operation.Buffer;
+import cascading.operation.Filter;
+import cascading.operation.Function;
+import cascading.operation.Operation;
+import cascading.pipe.Each;
+import cascading.pipe.Every;
+import cascading.pipe.Operator;
+import cascading.pipe.Pipe;
+import cascading.pipe.SubAssembly;
+import cascading.stats.CascadingStats;
+import cascading.tap.Tap;
+import cascading.tap.hadoop.Hfs;
+
+/**
+ * Runtime metrics of the stages of a multitool command, one stage per source, operation and sink
+ * param. The operations of each stage are wrapped by {@link MeteredOperation}s counting into
+ * counters of the {@link #GROUP} group, which are read back once the flow completed. Source stages
+ * also report the bytes they read from their files, and parse stages the values their pattern did
+ * not match.
+ */
+public class Stats
+  {
+  public static final String GROUP = "multitool";
+
+  /** The group of the counters Hadoop keeps of the bytes each task read from each file system. */
+  static final String FILE_SYSTEM_GROUP = "FileSystemCounters";
+
+  public enum Metric
+    {
+      TUPLES_IN( "tuples_in" ), TUPLES_OUT( "tuples_out" ), FILTERED( "filtered" ), FAILURES( "failures" ), MISMATCHES( "mismatches" ),
+      NANOS( "nanos" ), BYTES_READ( "bytes_read" );
+
+    private final String key;
+
+    Metric( String key )
+      {
+      this.key = key;
+      }
+
+    public String getKey()
+      {
+      return key;
+      }
+    }
+
+  private final List<String[]> stages = new ArrayList<String[]>();
+  private final Map<String, Tap> sources = new HashMap<String, Tap>();
+  private long planningTime = -1;
+
+  static String getCounter( String stage, Metric metric )
+    {
+    return stage + "." + metric.getKey();
+    }
+
+  /**
+   * Wraps the operations of the pipes leading from head to tail, returning the new tail. Only
+   * {@link Each} and {@link Every} pipes directly following each other are rebuilt, so the wrapping
+   * stops at the first grouping or join, or at a pipe found in the given pipes, like the tail of
+   * an earlier stage.
+   */
+  public Pipe meter( String name, String value, Pipe head, Pipe tail, Collection<Pipe> pipes )
+    {
+    String stage = String.format( "%02d.%s", stages.size(), name );
+
+    stages.add( new String[]{ stage, name, value } );
+
+    if( tail instanceof SubAssembly && ( (SubAssembly) tail ).getTails().length == 1 )
+      tail = ( (SubAssembly) tail ).getTails()[ 0 ];
+
+    LinkedList<Pipe> operators = new LinkedList<Pipe>();
+    Pipe current = tail;
+
+    while( current != head && isMeterable( current ) && !pipes.contains( current ) )
+      {
+      operators.addFirst( current );
+      current = current.getPrevious()[ 0 ];
+      }
+
+    if( operators.isEmpty() )
+      return tail;
+
+    // tuples in are only known if the first operation reads the output of the previous stage
+    boolean countIn = current == head || current.getClass() == Pipe.class;
+    Pipe pipe = current;
+
+    for( Pipe operator : operators )
+      {
+      pipe = rebuild( pipe, operator, stage, countIn, operator == tail );
+      countIn = false;
+      }
+
+    return pipe;
+    }
+
+  private static boolean isMeterable( Pipe pipe )
+    {
+    if( pipe.getPrevious().length != 1 )
+      return false;
+
+    if( pipe instanceof Each )
+      return ( (Each) pipe ).getOperation() instanceof Function || ( (Each) pipe ).getOperation() instanceof Filter;
+
+    return pipe instanceof Every;
+    }
+
+  private static Pipe rebuild( Pipe previous, Pipe pipe, String stage, boolean countIn, boolean countOut )
+    {
+    Operator operator = (Operator) pipe;
+    Operation operation = operator.getOperation();
+
+    if( operation instanceof CountingRegexParser )
+      ( (CountingRegexParser) operation ).setCounter( GROUP, getCounter( stage, Metric.MISMATCHES ) );
+
+    if( operation instanceof Filter )
+      return new Each( previous, operator.getArgumentSelector(), new MeteredFilter( (Filter) operation, stage, countIn, countOut ) );
+
+    if( operation instanceof Function )
+      return new Each( previous, operator.getArgumentSelector(), new MeteredFunction( (Function) operation, stage, countIn, countOut ), operator.getOutputSelector() );
+
+    if( operation instanceof Aggregator )
+      return new Every( previous, operator.getArgumentSelector(), new MeteredAggregator( (Aggregator) operation, stage, countIn, countOut ), operator.getOutputSelector() );
+
+    return new Every( previous, operator.getArgumentSelector(), new MeteredBuffer( (Buffer) operation, stage, countIn, countOut ), operator.getOutputSelector() );
+    }
+
+  /**
+   * Sets the tap read by the stage added last, whose bytes are reported once the flow completed.
+   * Local file taps count the bytes read from their files themselves.
+   */
+  public void setSource( Tap tap )
+    {
+    String stage = stages.get( stages.size() - 1 )[ 0 ];
+
+    if( tap instanceof FileSetTap )
+      ( (FileSetTap) tap ).setCounter( GROUP, getCounter( stage, Metric.BYTES_READ ) );
+    else
+      sources.put( stage, tap );
+    }
+
+  /** Sets the milliseconds spent planning the flow, or loading its cached plan. */
+  public void setPlanningTime( long planningTime )
+    {
+    this.planningTime = planningTime;
+    }
+
+  /** Writes the counters of all stages as JSON to the given file. */
+  public void write( Flow flow, File file ) throws IOException
+    {
+    CascadingStats flowStats = flow.getFlowStats();
+    Collection<String> counters = flowStats.getCountersFor( GROUP );
+    Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+
+    try
+      {
+      writer.write( "{\n  \"flow\": " + quote( flow.getName() ) + ",\n" );
+      writer.write( "  \"duration_ms\": " + flowStats.getDuration() + ",\n" );
+
+      if( planningTime >= 0 )
+        writer.write( "  \"planning_ms\": " + planningTime + ",\n" );
+
+      writer.write( "  \"stages\": [" );
+
+      for( int i = 0; i < stages.size(); i++ )
+        {
+        String[] stage = stages.get( i );
+
+        writer.write( i == 0 ? "\n" : ",\n" );
+        writer.write( "    { \"stage\": " + i + ", \"name\": " + quote( stage[ 1 ] ) + ", \"value\": " + quote( stage[ 2 ] ) );
+
+        for( Metric metric : Metric.values() )
+          {
+          String counter = getCounter( stage[ 0 ], metric );
+
+          if( counters != null && counters.contains( counter ) )
+            writer.write( ", \"" + metric.getKey() + "\": " + flowStats.getCounterValue( GROUP, counter ) );
+          }
+
+        if( sources.containsKey( stage[ 0 ] ) )
+          {
+          long bytes = getBytesRead( flow, sources.get( stage[ 0 ] ) );
+
+          if( bytes >= 0 )
+            writer.write( ", \"bytes_read\": " + bytes );
+          }
+
+        writer.write( " }" );
+        }
+
+      writer.write( "\n  ]\n}\n" );
+      }
+    finally
+      {
+      writer.close();
+      }
+    }
+
+  /**
+   * Returns the bytes Hadoop counted as read from the file system of the tap by the steps reading it,
+   * or -1 if the tap is not read from a file system or its steps did not report them. The counters
+   * are kept per step and file system, not per tap, so sources read by the same step from the same
+   * file system report their bytes together, and bytes read from the local file system include the
+   * map output read back by the reducers of the step.
+   */
+  @SuppressWarnings("rawtypes")
+  static long getBytesRead( Flow flow, Tap tap ) throws IOException
+    {
+    if( !( tap instanceof Hfs ) )
+      return -1;
+
+    Object config = flow.getConfig();
+    Path path = ( (Hfs) tap ).getPath();
+    FileSystem fileSystem = path.getFileSystem( config instanceof Configuration ? (Configuration) config : new Configuration() );
+    String counter = fileSystem.getUri().getScheme().toUpperCase( Locale.ENGLISH ) + "_BYTES_READ";
+    long bytes = -1;
+
+    for( Object object : flow.getFlowSteps() )
+      {
+      FlowStep step = (FlowStep) object;
+
+      if( !step.getSources().contains( tap ) )
+        continue;
+
+      CascadingStats stepStats = step.getFlowStepStats();
+      Collection<String> counters = stepStats.getCountersFor( FILE_SYSTEM_GROUP );
+
+      if( counters != null && counters.contains( counter ) )
+        bytes = Math.max( bytes, 0 ) + stepStats.getCounterValue( FILE_SYSTEM_GROUP, counter );
+      }
+
+    return bytes;
+    }
+
+  static String quote( String value )
+    {
+    if( value == null )
+      return "null";
+
+    StringBuilder builder = new StringBuilder( value.length() + 2 ).append( '"' );
+
+    for( int i = 0; i < value.length(); i++ )
+      {
+      char current = value.charAt( i );
+
+      if( current == '"' || current == '\\' )
+        builder.append( '\\' ).append( current );
+      else if( current < ' ' )
+        builder.append( String.format( "\\u%04x", (int) current ) );
+      else
+        builder.append( current );
+      }
+
+    return builder.append( '"' ).toString();
+    }
+  }
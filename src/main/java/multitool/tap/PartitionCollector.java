@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.tap;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cascading.tuple.Fields;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * Writes each tuple to the collector of its partition, a relative path of one field=value element
+ * per partition field. At most a given number of collectors are open at a time, the least recently
+ * written one is closed to make room for another. A partition opened again is written to a new part
+ * file, numbered by the given sequence.
+ */
+public abstract class PartitionCollector extends TupleEntryCollector
+  {
+  /** Characters of a value kept as they are in a path, beside ASCII letters and digits. */
+  private static final String SAFE_CHARACTERS = " +,-.@_~";
+
+  private final Fields partitionFields;
+  private final int maxOpen;
+  private final LinkedHashMap<String, TupleEntryCollector> collectors = new LinkedHashMap<String, TupleEntryCollector>( 16, 0.75f, true );
+  private final Map<String, Integer> sequences = new HashMap<String, Integer>();
+  private final StringBuilder builder = new StringBuilder();
+  private int[] positions;
+  private String[] names;
+
+  protected PartitionCollector( Fields partitionFields, int maxOpen )
+    {
+    if( maxOpen < 1 )
+      throw new IllegalArgumentException( "at least one partition must be open" );
+
+    this.partitionFields = partitionFields;
+    this.maxOpen = maxOpen;
+    }
+
+  /** Opens a collector writing the given partition, sequence counting the collectors opened for it before. */
+  protected abstract TupleEntryCollector openCollector( String partition, int sequence ) throws IOException;
+
+  @Override
+  protected void collect( TupleEntry tupleEntry ) throws IOException
+    {
+    String partition = getPartition( tupleEntry );
+    TupleEntryCollector collector = collectors.get( partition );
+
+    if( collector == null )
+      {
+      if( collectors.size() == maxOpen )
+        closeEldest();
+
+      Integer sequence = sequences.get( partition );
+
+      if( sequence == null )
+        sequence = 0;
+
+      collector = openCollector( partition, sequence );
+      sequences.put( partition, sequence + 1 );
+      collectors.put( partition, collector );
+      }
+
+    collector.add( tupleEntry );
+    }
+
+  private void closeEldest()
+    {
+    Iterator<TupleEntryCollector> iterator = collectors.values().iterator();
+    TupleEntryCollector eldest = iterator.next();
+
+    iterator.remove();
+    eldest.close();
+    }
+
+  String getPartition( TupleEntry tupleEntry )
+    {
+    if( positions == null )
+      resolve( tupleEntry );
+
+    builder.setLength( 0 );
+
+    for( int i = 0; i < positions.length; i++ )
+      {
+      if( i != 0 )
+        builder.append( '/' );
+
+      builder.append( names[ i ] ).append( '=' );
+      escape( tupleEntry.getString( positions[ i ] ), builder );
+      }
+
+    return builder.toString();
+    }
+
+  private void resolve( TupleEntry tupleEntry )
+    {
+    Fields fields = tupleEntry.getFields();
+
+    positions = new int[ partitionFields.size() ];
+    names = new String[ positions.length ];
+
+    for( int i = 0; i < positions.length; i++ )
+      {
+      Comparable field = partitionFields.get( i );
+
+      if( field instanceof Integer )
+        positions[ i ] = (Integer) field < 0 ? tupleEntry.size() + (Integer) field : (Integer) field;
+      else
+        positions[ i ] = fields.getPos( field );
+
+      names[ i ] = fields.isDefined() ? fields.get( positions[ i ] ).toString() : field.toString();
+      }
+    }
+
+  /** Appends value to builder, percent encoding the UTF-8 bytes of any unsafe character. */
+  static void escape( String value, StringBuilder builder )
+    {
+    if( value == null )
+      return;
+
+    for( int i = 0; i < value.length(); i++ )
+      {
+      char current = value.charAt( i );
+
+      if( current < 128 && ( Character.isLetterOrDigit( current ) || SAFE_CHARACTERS.indexOf( current ) != -1 ) )
+        {
+        builder.append( current );
+        continue;
+        }
+
+      int end = Character.isHighSurrogate( current ) && i + 1 < value.length() ? i + 2 : i + 1;
+
+      try
+        {
+        for( byte encoded : value.substring( i, end ).getBytes( "UTF-8" ) )
+          builder.append( String.format( "%%%02X", encoded & 0xff ) );
+        }
+      catch( UnsupportedEncodingException exception )
+        {
+        throw new IllegalStateException( exception );
+        }
+
+      i = end - 1;
+      }
+    }
+
+  @Override
+  public void close()
+    {
+    try
+      {
+      for( TupleEntryCollector collector : collectors.values() )
+        collector.close();
+      }
+    finally
+      {
+      collectors.clear();
+      }
+    }
+  }
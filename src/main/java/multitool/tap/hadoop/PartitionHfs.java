@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.tap.hadoop;
+
+import java.io.IOException;
+
+import multitool.tap.PartitionCollector;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.tap.SinkMode;
+import cascading.tap.hadoop.Hfs;
+import cascading.tap.hadoop.io.TapOutputCollector;
+import cascading.tuple.Fields;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntrySchemeCollector;
+
+/**
+ * An {@link Hfs} writing a directory with a sub directory per value of the partition fields, like
+ * path/date=2013-10-01/part-00000-00000. The part files of each task are committed along with the
+ * output of the task. See {@link PartitionCollector}.
+ */
+public class PartitionHfs extends Hfs
+  {
+  private final Fields partitionFields;
+  private final int maxOpen;
+
+  @SuppressWarnings("rawtypes")
+  public PartitionHfs( Scheme scheme, String path, SinkMode sinkMode, Fields partitionFields, int maxOpen )
+    {
+    super( scheme, path, sinkMode );
+    this.partitionFields = partitionFields;
+    this.maxOpen = maxOpen;
+    }
+
+  public Fields getPartitionFields()
+    {
+    return partitionFields;
+    }
+
+  @Override
+  public TupleEntryCollector openForWrite( final FlowProcess<JobConf> flowProcess, OutputCollector output ) throws IOException
+    {
+    return new PartitionCollector( partitionFields, maxOpen )
+      {
+      @SuppressWarnings("unchecked")
+      @Override
+      protected TupleEntryCollector openCollector( String partition, int sequence ) throws IOException
+        {
+        TapOutputCollector outputCollector = new TapOutputCollector( flowProcess, PartitionHfs.this, partition, sequence );
+
+        return new TupleEntrySchemeCollector<JobConf, OutputCollector>( flowProcess, getScheme(), outputCollector );
+        }
+      };
+    }
+  }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.tap.local;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.tap.local.FileTap;
+import cascading.tuple.TupleEntryIterator;
+
+/**
+ * A {@link FileTap} reading only the bytes from start up to end of its file.
+ */
+public class FileRangeTap extends FileTap
+  {
+  private final long start;
+  private final long end;
+
+  public FileRangeTap( Scheme<Properties, InputStream, OutputStream, ?, ?> scheme, String path, long start, long end )
+    {
+    super( scheme, path );
+    this.start = start;
+    this.end = end;
+    }
+
+  public long getStart()
+    {
+    return start;
+    }
+
+  public long getEnd()
+    {
+    return end;
+    }
+
+  @Override
+  public TupleEntryIterator openForRead( FlowProcess<Properties> flowProcess, InputStream input ) throws IOException
+    {
+    if( input == null )
+      {
+      FileSetTap.setCurrentPath( new File( getIdentifier() ) );
+      input = new FileInputStream( getIdentifier() );
+
+      long skipped = 0;
+
+      while( skipped < start )
+        {
+        long count = input.skip( start - skipped );
+
+        if( count <= 0 )
+          break;
+
+        skipped += count;
+        }
+
+      input = new RangeInputStream( input, end - start );
+      }
+
+    return super.openForRead( flowProcess, input );
+    }
+
+  private static class RangeInputStream extends FilterInputStream
+    {
+    private long remaining;
+
+    RangeInputStream( InputStream input, long length )
+      {
+      super( input );
+      this.remaining = length;
+      }
+
+    @Override
+    public int read() throws IOException
+      {
+      if( remaining <= 0 )
+        return -1;
+
+      int read = super.read();
+
+      if( read != -1 )
+        remaining--;
+
+      return read;
+      }
+
+    @Override
+    public int read( byte[] buffer, int offset, int length ) throws IOException
+      {
+      if( remaining <= 0 )
+        return -1;
+
+      int read = super.read( buffer, offset, (int) Math.min( length, remaining ) );
+
+      if( read != -1 )
+        remaining -= read;
+
+      return read;
+      }
+
+    @Override
+    public long skip( long count ) throws IOException
+      {
+      long skipped = super.skip( Math.min( count, remaining ) );
+
+      remaining -= skipped;
+
+      return skipped;
+      }
+
+    @Override
+    public int available() throws IOException
+      {
+      return (int) Math.min( super.available(), remaining );
+      }
+
+    @Override
+    public boolean markSupported()
+      {
+      return false;
+      }
+    }
+  }
@@ -0,0 +1,584 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.tap.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import multitool.scheme.local.MappedTextLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.tap.CompositeTap;
+import cascading.tap.TapException;
+import cascading.tap.local.FileTap;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryIterator;
+import cascading.tuple.TupleEntrySchemeIterator;
+
+/**
+ * A local {@link FileTap} reading a file, all files in a directory, or all files matching a glob
+ * pattern, in name order. While one file is parsed the following files are read into memory on
+ * background threads, up to a bounded number of files ahead.
+ * <p/>
+ * The path of the file being read is available to operations on the reading thread through
+ * {@link #getCurrentPath()}. The bytes read from the files are counted into the counter given by
+ * {@link #setCounter(String, String)}, if any, bytes skipped over, like the unselected columns of a
+ * columnar file, are not.
+ */
+public class FileSetTap extends FileTap implements CompositeTap<FileTap>
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( FileSetTap.class );
+
+  /** Files larger than this are streamed instead of being read ahead into memory. */
+  public static final long MAX_PREFETCH_SIZE = 64 * 1024 * 1024;
+
+  /** Seconds closing an iterator waits for the files being read ahead. */
+  private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+  private static final ThreadLocal<String> currentPath = new ThreadLocal<String>();
+
+  private final int prefetch;
+  private String counterGroup;
+  private String counter;
+
+  public FileSetTap( Scheme<Properties, InputStream, OutputStream, ?, ?> scheme, String path, int prefetch )
+    {
+    super( scheme, path );
+    this.prefetch = prefetch;
+    }
+
+  /** Counts the bytes read from the files into the given counter. */
+  public void setCounter( String counterGroup, String counter )
+    {
+    this.counterGroup = counterGroup;
+    this.counter = counter;
+    }
+
+  /** Returns the URI of the file being read by the current thread, or null. */
+  public static String getCurrentPath()
+    {
+    return currentPath.get();
+    }
+
+  static void setCurrentPath( File file )
+    {
+    if( file == null )
+      currentPath.remove();
+    else
+      currentPath.set( file.getAbsoluteFile().toURI().toString() );
+    }
+
+  /** Returns true if the given path contains glob characters. */
+  public static boolean isGlob( String path )
+    {
+    return path.matches( ".*[*?\\[{].*" );
+    }
+
+  /** Returns the files this tap reads, in name order. */
+  public List<File> getFiles()
+    {
+    String path = getIdentifier();
+    File file = new File( path );
+
+    if( file.isFile() )
+      return Arrays.asList( file );
+
+    if( file.isDirectory() )
+      return listChildren( file, null );
+
+    List<File> files = new ArrayList<File>();
+
+    if( !isGlob( path ) )
+      return files;
+
+    // expand the pattern one path element at a time, null standing for the working directory
+    List<File> current = new ArrayList<File>();
+
+    current.add( path.startsWith( File.separator ) ? new File( File.separator ) : null );
+
+    for( String element : path.split( Pattern.quote( File.separator ) ) )
+      {
+      if( element.isEmpty() || element.equals( "." ) )
+        continue;
+
+      List<File> next = new ArrayList<File>();
+      Pattern pattern = Pattern.compile( isGlob( element ) ? globToRegex( element ) : Pattern.quote( element ) );
+
+      for( File parent : current )
+        next.addAll( listChildren( parent, pattern ) );
+
+      current = next;
+      }
+
+    // a pattern matching directories reads the files inside them
+    for( File match : current )
+      {
+      if( match.isDirectory() )
+        files.addAll( listChildren( match, null ) );
+      else
+        files.add( match );
+      }
+
+    return files;
+    }
+
+  /**
+   * Returns the visible children of parent matching pattern in name order, or all visible files if
+   * pattern is null.
+   */
+  private static List<File> listChildren( File parent, Pattern pattern )
+    {
+    List<File> children = new ArrayList<File>();
+    String[] names = ( parent == null ? new File( "." ) : parent ).list();
+
+    if( names == null )
+      return children;
+
+    Arrays.sort( names );
+
+    for( String name : names )
+      {
+      if( name.startsWith( "." ) || name.startsWith( "_" ) )
+        continue;
+
+      if( pattern != null && !pattern.matcher( name ).matches() )
+        continue;
+
+      File child = parent == null ? new File( name ) : new File( parent, name );
+
+      if( pattern != null || child.isFile() )
+        children.add( child );
+      }
+
+    return children;
+    }
+
+  static String globToRegex( String glob )
+    {
+    StringBuilder regex = new StringBuilder();
+    boolean inGroup = false;
+    boolean inClass = false;
+
+    for( int i = 0; i < glob.length(); i++ )
+      {
+      char current = glob.charAt( i );
+
+      // inside a character class only the closing bracket and ranges keep their meaning
+      if( inClass )
+        {
+        if( current == ']' )
+          inClass = false;
+        else if( current != '-' && !Character.isLetterOrDigit( current ) )
+          regex.append( '\\' );
+
+        regex.append( current );
+        continue;
+        }
+
+      switch( current )
+        {
+        case '*':
+          regex.append( ".*" );
+          break;
+        case '?':
+          regex.append( '.' );
+          break;
+        case '[':
+          regex.append( '[' );
+
+          if( i + 1 < glob.length() && glob.charAt( i + 1 ) == '!' )
+            {
+            regex.append( '^' );
+            i++;
+            }
+
+          inClass = true;
+          break;
+        case '{':
+          regex.append( "(?:" );
+          inGroup = true;
+          break;
+        case '}':
+          regex.append( ')' );
+          inGroup = false;
+          break;
+        case ',':
+          regex.append( inGroup ? "|" : "," );
+          break;
+        default:
+          regex.append( Pattern.quote( String.valueOf( current ) ) );
+        }
+      }
+
+    return regex.toString();
+    }
+
+  @Override
+  public Iterator<FileTap> getChildTaps()
+    {
+    List<FileTap> children = new ArrayList<FileTap>();
+
+    for( File file : getFiles() )
+      children.add( new FileTap( getScheme(), file.getPath() ) );
+
+    return children.iterator();
+    }
+
+  @Override
+  public long getNumChildTaps()
+    {
+    return getFiles().size();
+    }
+
+  @Override
+  public boolean resourceExists( Properties conf )
+    {
+    return !getFiles().isEmpty();
+    }
+
+  @Override
+  public long getModifiedTime( Properties conf )
+    {
+    long modified = 0;
+
+    for( File file : getFiles() )
+      modified = Math.max( modified, file.lastModified() );
+
+    return modified;
+    }
+
+  @Override
+  public TupleEntryIterator openForRead( FlowProcess<Properties> flowProcess, InputStream input ) throws IOException
+    {
+    if( input != null )
+      return super.openForRead( flowProcess, input );
+
+    return new FileSetIterator( flowProcess, getFiles() );
+    }
+
+  private class FileSetIterator extends TupleEntryIterator
+    {
+    private final FlowProcess<Properties> flowProcess;
+    private final LinkedList<File> files;
+    private final LinkedList<Future<InputStream>> pending = new LinkedList<Future<InputStream>>();
+    private final ExecutorService executor;
+    private TupleEntryIterator current;
+
+    FileSetIterator( FlowProcess<Properties> flowProcess, List<File> files )
+      {
+      super( getSourceFields() );
+      this.flowProcess = flowProcess;
+      this.files = new LinkedList<File>( files );
+      this.executor = prefetch > 0 && files.size() > 1 ? Executors.newFixedThreadPool( prefetch, new DaemonThreadFactory() ) : null;
+      }
+
+    @Override
+    public boolean hasNext()
+      {
+      try
+        {
+        while( current == null || !current.hasNext() )
+          {
+          if( current != null )
+            current.close();
+
+          current = null;
+
+          if( files.isEmpty() )
+            {
+            setCurrentPath( null );
+            return false;
+            }
+
+          fillPending();
+
+          File file = files.removeFirst();
+          InputStream input = pending.isEmpty() ? new FileInputStream( file ) : waitFor( pending.removeFirst() );
+
+          input = count( input, file );
+          setCurrentPath( file );
+          current = new TupleEntrySchemeIterator<Properties, InputStream>( flowProcess, getScheme(), input, file.getPath() );
+          }
+        }
+      catch( IOException exception )
+        {
+        throw new TapException( "unable to read: " + getIdentifier(), exception );
+        }
+
+      return true;
+      }
+
+    /**
+     * Counts the bytes read from the file, all of them if it was read ahead into memory, or if it is
+     * mapped, as all mapped pages are scanned for lines.
+     */
+    private InputStream count( InputStream input, File file ) throws IOException
+      {
+      if( counter == null )
+        return input;
+
+      if( input instanceof ByteArrayInputStream )
+        flowProcess.increment( counterGroup, counter, input.available() );
+      else if( getScheme() instanceof MappedTextLine )
+        flowProcess.increment( counterGroup, counter, file.length() );
+      else
+        return new CountingInputStream( input, flowProcess, counterGroup, counter );
+
+      return input;
+      }
+
+    /** Keeps up to prefetch files beyond the next one being read in memory or on their way there. */
+    private void fillPending()
+      {
+      if( executor == null )
+        return;
+
+      while( pending.size() < Math.min( prefetch + 1, files.size() ) )
+        {
+        final File file = files.get( pending.size() );
+
+        pending.add( executor.submit( new Callable<InputStream>()
+        {
+        public InputStream call() throws IOException
+          {
+          return open( file );
+          }
+        } ) );
+        }
+      }
+
+    private InputStream waitFor( Future<InputStream> future ) throws IOException
+      {
+      try
+        {
+        return future.get();
+        }
+      catch( InterruptedException exception )
+        {
+        Thread.currentThread().interrupt();
+        throw new IOException( "interrupted while reading ahead", exception );
+        }
+      catch( ExecutionException exception )
+        {
+        if( exception.getCause() instanceof IOException )
+          throw (IOException) exception.getCause();
+
+        throw new IOException( "unable to read ahead", exception.getCause() );
+        }
+      }
+
+    @Override
+    public TupleEntry next()
+      {
+      if( !hasNext() )
+        throw new NoSuchElementException();
+
+      return current.next();
+      }
+
+    @Override
+    public void remove()
+      {
+      throw new UnsupportedOperationException( "remove not supported" );
+      }
+
+    @Override
+    public void close() throws IOException
+      {
+      setCurrentPath( null );
+
+      try
+        {
+        closePending();
+        }
+      finally
+        {
+        if( current != null )
+          current.close();
+        }
+      }
+
+    /**
+     * Stops reading ahead and closes the streams already opened for files that will not be read, as
+     * large files are read ahead as open streams.
+     */
+    private void closePending() throws IOException
+      {
+      if( executor == null )
+        return;
+
+      executor.shutdownNow();
+
+      try
+        {
+        // running reads are not interruptible, they must finish before their streams can be closed
+        if( !executor.awaitTermination( CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS ) )
+          LOG.warn( "reading ahead did not stop within {} seconds: {}", CLOSE_TIMEOUT_SECONDS, getIdentifier() );
+        }
+      catch( InterruptedException exception )
+        {
+        Thread.currentThread().interrupt();
+        }
+
+      for( Future<InputStream> future : pending )
+        {
+        if( future.cancel( false ) || !future.isDone() )
+          continue;
+
+        try
+          {
+          future.get().close();
+          }
+        catch( InterruptedException exception )
+          {
+          Thread.currentThread().interrupt();
+          }
+        catch( ExecutionException exception )
+          {
+          // the file was never opened
+          }
+        }
+
+      pending.clear();
+      }
+    }
+
+  private static InputStream open( File file ) throws IOException
+    {
+    if( file.length() > MAX_PREFETCH_SIZE )
+      return new FileInputStream( file );
+
+    byte[] bytes = new byte[ (int) file.length() ];
+    FileInputStream input = new FileInputStream( file );
+
+    try
+      {
+      int offset = 0;
+
+      while( offset < bytes.length )
+        {
+        int read = input.read( bytes, offset, bytes.length - offset );
+
+        if( read == -1 )
+          break;
+
+        offset += read;
+        }
+
+      return new ByteArrayInputStream( bytes, 0, offset );
+      }
+    finally
+      {
+      input.close();
+      }
+    }
+
+  /** Counts the bytes read, not those skipped, adding them to the counter once closed. */
+  private static class CountingInputStream extends FilterInputStream
+    {
+    private final FlowProcess<Properties> flowProcess;
+    private final String counterGroup;
+    private final String counter;
+    private long count;
+    private boolean closed;
+
+    CountingInputStream( InputStream input, FlowProcess<Properties> flowProcess, String counterGroup, String counter )
+      {
+      super( input );
+      this.flowProcess = flowProcess;
+      this.counterGroup = counterGroup;
+      this.counter = counter;
+      }
+
+    @Override
+    public int read() throws IOException
+      {
+      int read = super.read();
+
+      if( read != -1 )
+        count++;
+
+      return read;
+      }
+
+    @Override
+    public int read( byte[] buffer, int offset, int length ) throws IOException
+      {
+      int read = super.read( buffer, offset, length );
+
+      if( read != -1 )
+        count += read;
+
+      return read;
+      }
+
+    @Override
+    public boolean markSupported()
+      {
+      return false;
+      }
+
+    @Override
+    public void close() throws IOException
+      {
+      if( !closed )
+        flowProcess.increment( counterGroup, counter, count );
+
+      closed = true;
+      super.close();
+      }
+    }
+
+  private static class DaemonThreadFactory implements ThreadFactory
+    {
+    public Thread newThread( Runnable runnable )
+      {
+      Thread thread = new Thread( runnable, "multitool-prefetch" );
+
+      thread.setDaemon( true );
+
+      return thread;
+      }
+    }
+  }
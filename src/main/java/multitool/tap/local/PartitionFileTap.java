@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.tap.local;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import multitool.tap.PartitionCollector;
+
+import cascading.flow.FlowProcess;
+import cascading.scheme.Scheme;
+import cascading.tap.SinkMode;
+import cascading.tap.local.FileTap;
+import cascading.tuple.Fields;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * A local {@link FileTap} writing a directory with a sub directory per value of the partition fields,
+ * like path/date=2013-10-01/part-00000. See {@link PartitionCollector}.
+ */
+public class PartitionFileTap extends FileTap
+  {
+  private final Fields partitionFields;
+  private final int maxOpen;
+
+  public PartitionFileTap( Scheme<Properties, InputStream, OutputStream, ?, ?> scheme, String path, SinkMode sinkMode, Fields partitionFields, int maxOpen )
+    {
+    super( scheme, path, sinkMode );
+    this.partitionFields = partitionFields;
+    this.maxOpen = maxOpen;
+    }
+
+  public Fields getPartitionFields()
+    {
+    return partitionFields;
+    }
+
+  @Override
+  public TupleEntryCollector openForWrite( final FlowProcess<Properties> flowProcess, OutputStream output ) throws IOException
+    {
+    if( output != null )
+      return super.openForWrite( flowProcess, output );
+
+    return new PartitionCollector( partitionFields, maxOpen )
+      {
+      @Override
+      protected TupleEntryCollector openCollector( String partition, int sequence ) throws IOException
+        {
+        File directory = new File( getIdentifier(), partition );
+
+        if( !directory.isDirectory() && !directory.mkdirs() )
+          throw new IOException( "unable to create directory: " + directory );
+
+        String name = sequence == 0 ? "part-00000" : String.format( "part-00000-%05d", sequence );
+        File file = new File( directory, name );
+
+        return new FileTap( getScheme(), file.getPath() ).openForWrite( flowProcess, new FileOutputStream( file ) );
+        }
+      };
+    }
+
+  @Override
+  public boolean createResource( Properties conf )
+    {
+    File directory = new File( getIdentifier() );
+
+    return directory.isDirectory() || directory.mkdirs();
+    }
+
+  @Override
+  public boolean deleteResource( Properties conf )
+    {
+    return delete( new File( getIdentifier() ) );
+    }
+
+  private static boolean delete( File file )
+    {
+    File[] children = file.listFiles();
+
+    if( children != null )
+      {
+      for( File child : children )
+        delete( child );
+      }
+
+    return file.delete();
+    }
+  }
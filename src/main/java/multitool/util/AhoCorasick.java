@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton finding any of a set of literal strings in a single pass over a text,
+ * however many strings there are.
+ */
+public class AhoCorasick
+  {
+  /** Sorted characters leaving each state. */
+  private final char[][] keys;
+  /** States reached by the characters in keys. */
+  private final int[][] targets;
+  /** State to continue from when no character leaves a state. */
+  private final int[] failures;
+  /** True for states ending a string, directly or through their failure states. */
+  private final boolean[] matches;
+
+  public AhoCorasick( Collection<String> strings )
+    {
+    List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+    List<Boolean> ends = new ArrayList<Boolean>();
+
+    trie.add( new HashMap<Character, Integer>() );
+    ends.add( false );
+
+    for( String string : strings )
+      {
+      int state = 0;
+
+      for( int i = 0; i < string.length(); i++ )
+        {
+        Integer next = trie.get( state ).get( string.charAt( i ) );
+
+        if( next == null )
+          {
+          next = trie.size();
+          trie.add( new HashMap<Character, Integer>() );
+          ends.add( false );
+          trie.get( state ).put( string.charAt( i ), next );
+          }
+
+        state = next;
+        }
+
+      ends.set( state, true );
+      }
+
+    int size = trie.size();
+
+    keys = new char[ size ][];
+    targets = new int[ size ][];
+    failures = new int[ size ];
+    matches = new boolean[ size ];
+
+    for( int state = 0; state < size; state++ )
+      {
+      Character[] characters = trie.get( state ).keySet().toArray( new Character[ 0 ] );
+
+      Arrays.sort( characters );
+
+      keys[ state ] = new char[ characters.length ];
+      targets[ state ] = new int[ characters.length ];
+
+      for( int i = 0; i < characters.length; i++ )
+        {
+        keys[ state ][ i ] = characters[ i ];
+        targets[ state ][ i ] = trie.get( state ).get( characters[ i ] );
+        }
+
+      matches[ state ] = ends.get( state );
+      }
+
+    // breadth first, so the failure state of every parent is known before its children
+    LinkedList<Integer> queue = new LinkedList<Integer>();
+
+    queue.add( 0 );
+
+    while( !queue.isEmpty() )
+      {
+      int state = queue.removeFirst();
+
+      for( int i = 0; i < keys[ state ].length; i++ )
+        {
+        int child = targets[ state ][ i ];
+
+        if( state != 0 )
+          {
+          int failure = failures[ state ];
+
+          while( failure != 0 && next( failure, keys[ state ][ i ] ) == -1 )
+            failure = failures[ failure ];
+
+          int next = next( failure, keys[ state ][ i ] );
+
+          failures[ child ] = next == -1 ? 0 : next;
+          matches[ child ] |= matches[ failures[ child ] ];
+          }
+
+        queue.add( child );
+        }
+      }
+    }
+
+  private int next( int state, char character )
+    {
+    int index = Arrays.binarySearch( keys[ state ], character );
+
+    return index < 0 ? -1 : targets[ state ][ index ];
+    }
+
+  /** Returns true if any of the strings occurs in the given text. */
+  public boolean find( CharSequence text )
+    {
+    if( matches[ 0 ] )
+      return true;
+
+    int state = 0;
+
+    for( int i = 0; i < text.length(); i++ )
+      {
+      char character = text.charAt( i );
+      int next;
+
+      while( ( next = next( state, character ) ) == -1 && state != 0 )
+        state = failures[ state ];
+
+      state = next == -1 ? 0 : next;
+
+      if( matches[ state ] )
+        return true;
+      }
+
+    return false;
+    }
+  }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import java.io.Serializable;
+
+/**
+ * Bloom filter over 64 bit hashes, see {@link Hashing}. The bit positions of a hash are derived from
+ * its two halves by double hashing.
+ */
+public class BloomFilter implements Serializable
+  {
+  private static final long serialVersionUID = 1L;
+
+  private final long[] bits;
+  private final long size;
+  private final int hashes;
+
+  /**
+   * Creates a filter sized for the given number of entries at the given false positive probability.
+   *
+   * @param entries                   the expected number of entries
+   * @param falsePositiveProbability  between 0 and 1, exclusive
+   */
+  public BloomFilter( long entries, double falsePositiveProbability )
+    {
+    if( !( falsePositiveProbability > 0 && falsePositiveProbability < 1 ) )
+      throw new IllegalArgumentException( "false positive probability must be between 0 and 1, got: " + falsePositiveProbability );
+
+    double ln2 = Math.log( 2 );
+    long optimal = (long) Math.ceil( -Math.max( entries, 1 ) * Math.log( falsePositiveProbability ) / ( ln2 * ln2 ) );
+    int words = (int) Math.min( Integer.MAX_VALUE, Math.max( 1, ( optimal + 63 ) / 64 ) );
+
+    this.bits = new long[ words ];
+    this.size = words * 64L;
+    this.hashes = (int) Math.max( 1, Math.round( (double) size / Math.max( entries, 1 ) * ln2 ) );
+    }
+
+  public void add( long hash )
+    {
+    int first = (int) hash;
+    int second = (int) ( hash >>> 32 );
+
+    for( int i = 1; i <= hashes; i++ )
+      {
+      long position = ( ( first + i * (long) second ) & Long.MAX_VALUE ) % size;
+
+      bits[ (int) ( position >>> 6 ) ] |= 1L << position;
+      }
+    }
+
+  /** Returns false if the hash was certainly not added, true if it may have been. */
+  public boolean mightContain( long hash )
+    {
+    int first = (int) hash;
+    int second = (int) ( hash >>> 32 );
+
+    for( int i = 1; i <= hashes; i++ )
+      {
+      long position = ( ( first + i * (long) second ) & Long.MAX_VALUE ) % size;
+
+      if( ( bits[ (int) ( position >>> 6 ) ] & 1L << position ) == 0 )
+        return false;
+      }
+
+    return true;
+    }
+
+  /** Returns the size of the filter in bytes. */
+  public long getBytes()
+    {
+    return bits.length * 8L;
+    }
+  }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+/**
+ * Hash functions shared by the sketches.
+ */
+public class Hashing
+  {
+  private Hashing()
+    {
+    }
+
+  /** FNV-1a over the chars of the value, finished with the MurmurHash3 mixer to spread the high bits. */
+  public static long hash( CharSequence value )
+    {
+    long hash = 0xcbf29ce484222325L;
+
+    for( int i = 0; i < value.length(); i++ )
+      {
+      hash ^= value.charAt( i );
+      hash *= 0x100000001b3L;
+      }
+
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+
+    return hash;
+    }
+  }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import java.io.Serializable;
+
+/**
+ * Boyer-Moore-Horspool search for a literal string. Characters are bucketed by their low byte in
+ * the skip table, a collision only shortens the skip, so any text can be searched with a table
+ * of fixed size.
+ */
+public class Horspool implements Serializable
+  {
+  private static final long serialVersionUID = 1L;
+
+  private final char[] pattern;
+  private final int[] skips = new int[ 256 ];
+
+  public Horspool( String literal )
+    {
+    if( literal == null || literal.isEmpty() )
+      throw new IllegalArgumentException( "literal may not be empty" );
+
+    pattern = literal.toCharArray();
+
+    int last = pattern.length - 1;
+
+    for( int i = 0; i < skips.length; i++ )
+      skips[ i ] = pattern.length;
+
+    // later characters overwrite earlier ones, leaving the smallest skip of each bucket
+    for( int i = 0; i < last; i++ )
+      skips[ pattern[ i ] & 0xFF ] = last - i;
+    }
+
+  public String getLiteral()
+    {
+    return new String( pattern );
+    }
+
+  /** Returns the index of the first occurrence of the literal in the given text, or -1. */
+  public int indexOf( CharSequence text )
+    {
+    int last = pattern.length - 1;
+    int end = text.length() - last;
+
+    if( last == 0 )
+      {
+      char first = pattern[ 0 ];
+
+      for( int i = 0; i < end; i++ )
+        {
+        if( text.charAt( i ) == first )
+          return i;
+        }
+
+      return -1;
+      }
+
+    char tail = pattern[ last ];
+    int start = 0;
+
+    while( start < end )
+      {
+      char current = text.charAt( start + last );
+
+      if( current == tail )
+        {
+        int i = last - 1;
+
+        while( i >= 0 && text.charAt( start + i ) == pattern[ i ] )
+          i--;
+
+        if( i < 0 )
+          return start;
+        }
+
+      start += skips[ current & 0xFF ];
+      }
+
+    return -1;
+    }
+
+  /** Returns true if the literal occurs in the given text. */
+  public boolean find( CharSequence text )
+    {
+    return indexOf( text ) != -1;
+    }
+  }
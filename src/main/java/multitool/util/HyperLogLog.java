@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct strings offered to it. A sketch of precision p
+ * keeps 2^p registers of one byte, its standard error is about 1.04 / sqrt( 2^p ).
+ */
+public class HyperLogLog
+  {
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 18;
+
+  /** The 64 digits of the encoding, registers never exceed 64 - precision + 1. */
+  private static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_";
+  private static final char SPARSE = 's';
+  private static final char DENSE = 'd';
+  /** Three digits of register index, enough for 2^18 registers, and one of register value. */
+  private static final int SPARSE_ENTRY_LENGTH = 4;
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog( int precision )
+    {
+    if( precision < MIN_PRECISION || precision > MAX_PRECISION )
+      throw new IllegalArgumentException( "precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ", got: " + precision );
+
+    this.precision = precision;
+    this.registers = new byte[ 1 << precision ];
+    }
+
+  public int getPrecision()
+    {
+    return precision;
+    }
+
+  public void offer( CharSequence value )
+    {
+    long hash = Hashing.hash( value );
+    int index = (int) ( hash >>> ( 64 - precision ) );
+    // the guard bit bounds the rank when the remaining bits are all zero
+    int rank = Long.numberOfLeadingZeros( ( hash << precision ) | ( 1L << ( precision - 1 ) ) ) + 1;
+
+    if( rank > registers[ index ] )
+      registers[ index ] = (byte) rank;
+    }
+
+  /** Adds the values offered to the given sketch, which must have the same precision. */
+  public void merge( HyperLogLog sketch )
+    {
+    if( sketch.precision != precision )
+      throw new IllegalArgumentException( "cannot merge sketches of precision " + sketch.precision + " and " + precision );
+
+    for( int i = 0; i < registers.length; i++ )
+      {
+      if( sketch.registers[ i ] > registers[ i ] )
+        registers[ i ] = sketch.registers[ i ];
+      }
+    }
+
+  public long estimate()
+    {
+    int count = registers.length;
+    double sum = 0;
+    int zeros = 0;
+
+    for( byte register : registers )
+      {
+      sum += 1.0 / ( 1L << register );
+
+      if( register == 0 )
+        zeros++;
+      }
+
+    double estimate = alpha( count ) * count * count / sum;
+
+    // linear counting is more accurate while many registers are still empty
+    if( estimate <= 2.5 * count && zeros != 0 )
+      estimate = count * Math.log( (double) count / zeros );
+
+    return Math.round( estimate );
+    }
+
+  /**
+   * Returns the sketch as a string of printable ASCII, so it can be stored in a tuple and written as
+   * text. A sketch with few set registers is encoded sparsely, four chars per set register, others
+   * densely, one char per register.
+   */
+  public String encode()
+    {
+    int set = 0;
+
+    for( byte register : registers )
+      {
+      if( register != 0 )
+        set++;
+      }
+
+    boolean isSparse = set * SPARSE_ENTRY_LENGTH < registers.length;
+    StringBuilder builder = new StringBuilder( 2 + ( isSparse ? set * SPARSE_ENTRY_LENGTH : registers.length ) );
+
+    builder.append( isSparse ? SPARSE : DENSE ).append( DIGITS.charAt( precision ) );
+
+    for( int i = 0; i < registers.length; i++ )
+      {
+      if( !isSparse )
+        builder.append( DIGITS.charAt( registers[ i ] ) );
+      else if( registers[ i ] != 0 )
+        builder.append( DIGITS.charAt( i >>> 12 ) ).append( DIGITS.charAt( ( i >>> 6 ) & 63 ) ).append( DIGITS.charAt( i & 63 ) ).append( DIGITS.charAt( registers[ i ] ) );
+      }
+
+    return builder.toString();
+    }
+
+  /** Returns the sketch encoded by {@link #encode()}. */
+  public static HyperLogLog decode( String encoded )
+    {
+    if( encoded.length() < 2 || ( encoded.charAt( 0 ) != SPARSE && encoded.charAt( 0 ) != DENSE ) )
+      throw new IllegalArgumentException( "not an encoded sketch: " + encoded );
+
+    HyperLogLog sketch = new HyperLogLog( digit( encoded, 1 ) );
+    boolean isSparse = encoded.charAt( 0 ) == SPARSE;
+    int length = encoded.length() - 2;
+
+    if( isSparse ? length % SPARSE_ENTRY_LENGTH != 0 : length != sketch.registers.length )
+      throw new IllegalArgumentException( "not an encoded sketch, length: " + encoded.length() );
+
+    if( !isSparse )
+      {
+      for( int i = 0; i < sketch.registers.length; i++ )
+        sketch.registers[ i ] = (byte) digit( encoded, i + 2 );
+
+      return sketch;
+      }
+
+    for( int i = 2; i < encoded.length(); i += SPARSE_ENTRY_LENGTH )
+      {
+      int index = digit( encoded, i ) << 12 | digit( encoded, i + 1 ) << 6 | digit( encoded, i + 2 );
+
+      if( index >= sketch.registers.length )
+        throw new IllegalArgumentException( "not an encoded sketch, register: " + index );
+
+      sketch.registers[ index ] = (byte) digit( encoded, i + 3 );
+      }
+
+    return sketch;
+    }
+
+  private static int digit( String encoded, int position )
+    {
+    int digit = DIGITS.indexOf( encoded.charAt( position ) );
+
+    if( digit == -1 )
+      throw new IllegalArgumentException( "not an encoded sketch, char: " + encoded.charAt( position ) );
+
+    return digit;
+    }
+
+  private static double alpha( int count )
+    {
+    switch( count )
+      {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / ( 1 + 1.079 / count );
+      }
+    }
+  }
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * KLL sketch estimating quantiles of the values offered to it in bounded memory. Values are kept in
+ * levels of compactors, a value at level h standing for 2^h values. A full level is sorted and every
+ * other value is promoted to the next level, the upper levels keeping the most values. Sketches with
+ * the same k can be merged. The rank error is about 1.7 / k.
+ */
+public class QuantileSketch
+  {
+  private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+  /** A retained value and the number of values it stands for. */
+  private static class Weighted implements Comparable<Weighted>
+    {
+    private final double value;
+    private final long weight;
+
+    private Weighted( double value, long weight )
+      {
+      this.value = value;
+      this.weight = weight;
+      }
+
+    public int compareTo( Weighted weighted )
+      {
+      return Double.compare( value, weighted.value );
+      }
+    }
+
+  private final int k;
+  private final List<double[]> levels = new ArrayList<double[]>();
+  private final List<Integer> sizes = new ArrayList<Integer>();
+  /** Alternates which half of a compacted level is promoted, per level. */
+  private final List<Boolean> offsets = new ArrayList<Boolean>();
+  private long count;
+  /** The number of retained values and the number the levels may retain before compacting. */
+  private int size;
+  private int maxSize;
+
+  public QuantileSketch( int k )
+    {
+    if( k < 8 )
+      throw new IllegalArgumentException( "k must be at least 8, got: " + k );
+
+    this.k = k;
+    addLevel();
+    }
+
+  public int getK()
+    {
+    return k;
+    }
+
+  /** Returns the number of values offered to this sketch and the sketches merged into it. */
+  public long getCount()
+    {
+    return count;
+    }
+
+  public void offer( double value )
+    {
+    add( 0, value );
+    count++;
+    compress();
+    }
+
+  /** Adds the values of the given sketch, which must have the same k. */
+  public void merge( QuantileSketch sketch )
+    {
+    if( sketch.k != k )
+      throw new IllegalArgumentException( "cannot merge sketches of k " + sketch.k + " and " + k );
+
+    for( int level = 0; level < sketch.levels.size(); level++ )
+      {
+      double[] values = sketch.levels.get( level );
+
+      for( int i = 0; i < sketch.sizes.get( level ); i++ )
+        add( level, values[ i ] );
+      }
+
+    count += sketch.count;
+    compress();
+    }
+
+  /** Returns the estimated value at the given quantile, between 0 and 1, or NaN if the sketch is empty. */
+  public double getQuantile( double quantile )
+    {
+    return getQuantiles( new double[]{quantile} )[ 0 ];
+    }
+
+  /** Returns the estimated values at the given quantiles, each between 0 and 1, or NaNs if the sketch is empty. */
+  public double[] getQuantiles( double[] quantiles )
+    {
+    Weighted[] retained = new Weighted[ size ];
+    long weight = 0;
+    int next = 0;
+
+    for( int level = 0; level < levels.size(); level++ )
+      {
+      for( int i = 0; i < sizes.get( level ); i++ )
+        retained[ next++ ] = new Weighted( levels.get( level )[ i ], 1L << level );
+
+      weight += (long) sizes.get( level ) << level;
+      }
+
+    Arrays.sort( retained );
+
+    double[] results = new double[ quantiles.length ];
+
+    for( int q = 0; q < quantiles.length; q++ )
+      {
+      if( quantiles[ q ] < 0 || quantiles[ q ] > 1 )
+        throw new IllegalArgumentException( "quantile must be between 0 and 1, got: " + quantiles[ q ] );
+
+      results[ q ] = Double.NaN;
+
+      double target = quantiles[ q ] * weight;
+      long cumulative = 0;
+
+      for( Weighted value : retained )
+        {
+        cumulative += value.weight;
+        results[ q ] = value.value;
+
+        if( cumulative >= target )
+          break;
+        }
+      }
+
+    return results;
+    }
+
+  /** Returns the sketch as a string, so it can be stored in a tuple. */
+  public String encode()
+    {
+    StringBuilder builder = new StringBuilder();
+
+    builder.append( k ).append( ';' ).append( count );
+
+    for( int level = 0; level < levels.size(); level++ )
+      {
+      builder.append( ';' );
+
+      for( int i = 0; i < sizes.get( level ); i++ )
+        {
+        if( i != 0 )
+          builder.append( ',' );
+
+        builder.append( levels.get( level )[ i ] );
+        }
+      }
+
+    return builder.toString();
+    }
+
+  /** Returns the sketch encoded by {@link #encode()}. */
+  public static QuantileSketch decode( String encoded )
+    {
+    String[] parts = encoded.split( ";", -1 );
+
+    try
+      {
+      QuantileSketch sketch = new QuantileSketch( Integer.parseInt( parts[ 0 ] ) );
+
+      sketch.count = Long.parseLong( parts[ 1 ] );
+
+      for( int level = 0; level < parts.length - 2; level++ )
+        {
+        if( level == sketch.levels.size() )
+          sketch.addLevel();
+
+        if( parts[ level + 2 ].isEmpty() )
+          continue;
+
+        for( String value : parts[ level + 2 ].split( "," ) )
+          sketch.add( level, Double.parseDouble( value ) );
+        }
+
+      return sketch;
+      }
+    catch( RuntimeException exception )
+      {
+      throw new IllegalArgumentException( "not an encoded sketch: " + encoded, exception );
+      }
+    }
+
+  private void addLevel()
+    {
+    levels.add( new double[ k ] );
+    sizes.add( 0 );
+    offsets.add( false );
+
+    maxSize = 0;
+
+    for( int level = 0; level < levels.size(); level++ )
+      maxSize += getCapacity( level );
+    }
+
+  private void add( int level, double value )
+    {
+    while( level >= levels.size() )
+      addLevel();
+
+    double[] values = levels.get( level );
+    int used = sizes.get( level );
+
+    if( used == values.length )
+      {
+      values = Arrays.copyOf( values, used * 2 );
+      levels.set( level, values );
+      }
+
+    values[ used ] = value;
+    sizes.set( level, used + 1 );
+    size++;
+    }
+
+  /** Returns the number of values the given level may keep before it is compacted. */
+  private int getCapacity( int level )
+    {
+    int depth = levels.size() - 1 - level;
+
+    return Math.max( 2, (int) Math.ceil( k * Math.pow( CAPACITY_DECAY, depth ) ) );
+    }
+
+  private void compress()
+    {
+    while( size > maxSize )
+      {
+      for( int level = 0; level < levels.size(); level++ )
+        {
+        if( sizes.get( level ) >= getCapacity( level ) )
+          {
+          compact( level );
+          break;
+          }
+        }
+      }
+    }
+
+  private void compact( int level )
+    {
+    double[] values = levels.get( level );
+    int used = sizes.get( level );
+
+    Arrays.sort( values, 0, used );
+
+    // an odd value out stays on this level
+    int compacted = used - used % 2;
+    int offset = offsets.get( level ) ? 1 : 0;
+
+    offsets.set( level, !offsets.get( level ) );
+
+    for( int i = offset; i < compacted; i += 2 )
+      add( level + 1, values[ i ] );
+
+    if( used % 2 == 1 )
+      values[ 0 ] = values[ used - 1 ];
+
+    sizes.set( level, used % 2 );
+    size -= compacted;
+    }
+  }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper methods for regular expressions given on the command line.
+ */
+public class RegexUtil
+  {
+  /** Characters with a special meaning outside of a character class. */
+  private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+  /**
+   * Returns the string the given regex matches if it is a plain literal, otherwise null. Escaped
+   * punctuation and the escapes for tab, newline, carriage return, form feed, alert and escape
+   * are resolved, any other escape or metacharacter makes the regex non literal.
+   *
+   * @param regex the regular expression
+   * @return the literal string or null
+   */
+  public static String asLiteral( String regex )
+    {
+    if( regex == null || regex.isEmpty() )
+      return null;
+
+    StringBuilder builder = new StringBuilder( regex.length() );
+
+    for( int i = 0; i < regex.length(); i++ )
+      {
+      char current = regex.charAt( i );
+
+      if( current != '\\' )
+        {
+        if( METACHARACTERS.indexOf( current ) != -1 )
+          return null;
+
+        builder.append( current );
+        continue;
+        }
+
+      if( ++i == regex.length() )
+        return null;
+
+      char escaped = regex.charAt( i );
+
+      switch( escaped )
+        {
+        case 't':
+          builder.append( '\t' );
+          break;
+        case 'n':
+          builder.append( '\n' );
+          break;
+        case 'r':
+          builder.append( '\r' );
+          break;
+        case 'f':
+          builder.append( '\f' );
+          break;
+        case 'a':
+          builder.append( '\u0007' );
+          break;
+        case 'e':
+          builder.append( '\u001B' );
+          break;
+        default:
+          if( Character.isLetterOrDigit( escaped ) )
+            return null;
+
+          builder.append( escaped );
+        }
+      }
+
+    return builder.toString();
+    }
+
+  /**
+   * Returns the given regex, if not empty, followed by the regexes in the given file, one per
+   * line. Blank lines are skipped.
+   *
+   * @param regex the regular expression given on the command line, may be null
+   * @param path  the local file of regular expressions
+   * @return the regular expressions
+   */
+  public static String[] readPatterns( String regex, String path )
+    {
+    List<String> patterns = new ArrayList<String>();
+
+    if( regex != null && !regex.isEmpty() )
+      patterns.add( regex );
+
+    try
+      {
+      BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( path ), "UTF-8" ) );
+
+      try
+        {
+        String line;
+
+        while( ( line = reader.readLine() ) != null )
+          {
+          if( !line.trim().isEmpty() )
+            patterns.add( line );
+          }
+        }
+      finally
+        {
+        reader.close();
+        }
+      }
+    catch( IOException exception )
+      {
+      throw new IllegalArgumentException( "error: unable to read patterns: " + path, exception );
+      }
+
+    if( patterns.isEmpty() )
+      throw new IllegalArgumentException( "error: no patterns in: " + path );
+
+    return patterns.toArray( new String[ patterns.size() ] );
+    }
+  }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import multitool.tap.local.FileSetTap;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.tap.CompositeTap;
+import cascading.tap.Tap;
+import cascading.tap.hadoop.Hfs;
+import cascading.tap.local.FileTap;
+
+/**
+ * Helper methods for inspecting taps while planning.
+ */
+public class TapUtil
+  {
+  private static final Logger LOG = LoggerFactory.getLogger( TapUtil.class );
+
+  /** Returned by {@link #getSize(Tap)} if the size of a tap cannot be determined. */
+  public static final long UNKNOWN_SIZE = -1;
+
+  /**
+   * Returns the number of bytes the given tap will read, including all files below a directory.
+   *
+   * @param tap the tap to inspect
+   * @return the size in bytes or {@link #UNKNOWN_SIZE}
+   */
+  @SuppressWarnings("rawtypes")
+  public static long getSize( Tap tap )
+    {
+    try
+      {
+      if( tap instanceof CompositeTap )
+        return getCompositeSize( (CompositeTap) tap );
+
+      if( tap instanceof Hfs )
+        {
+        JobConf conf = new JobConf();
+        Path path = new Path( tap.getIdentifier() );
+        FileSystem fileSystem = path.getFileSystem( conf );
+
+        return fileSystem.getContentSummary( path ).getLength();
+        }
+
+      if( tap instanceof FileTap )
+        return getLocalSize( new File( tap.getIdentifier() ) );
+      }
+    catch( IOException exception )
+      {
+      LOG.warn( "unable to determine size of: {}", tap.getIdentifier(), exception );
+      }
+
+    return UNKNOWN_SIZE;
+    }
+
+  /**
+   * Returns the paths of the files the given tap reads in name order, skipping hidden files like the
+   * _SUCCESS and _logs of a job, as Hadoop does.
+   *
+   * @param tap the tap to inspect
+   * @return the paths, or null if the tap does not read files or they cannot be listed
+   */
+  @SuppressWarnings("rawtypes")
+  public static List<String> getFiles( Tap tap )
+    {
+    List<String> files = new ArrayList<String>();
+
+    try
+      {
+      if( tap instanceof FileSetTap )
+        {
+        for( File file : ( (FileSetTap) tap ).getFiles() )
+          files.add( file.getPath() );
+
+        return files;
+        }
+
+      if( tap instanceof Hfs )
+        {
+        Path path = new Path( tap.getIdentifier() );
+        FileSystem fileSystem = path.getFileSystem( new JobConf() );
+        FileStatus[] statuses = fileSystem.globStatus( path );
+
+        if( statuses == null )
+          return null;
+
+        Arrays.sort( statuses );
+
+        for( FileStatus status : statuses )
+          addFiles( fileSystem, status, files );
+
+        return files;
+        }
+      }
+    catch( IOException exception )
+      {
+      LOG.warn( "unable to list files of: {}", tap.getIdentifier(), exception );
+      }
+
+    return null;
+    }
+
+  private static void addFiles( FileSystem fileSystem, FileStatus status, List<String> files ) throws IOException
+    {
+    String name = status.getPath().getName();
+
+    if( name.startsWith( "_" ) || name.startsWith( "." ) )
+      return;
+
+    if( !status.isDir() )
+      {
+      files.add( status.getPath().toString() );
+      return;
+      }
+
+    FileStatus[] children = fileSystem.listStatus( status.getPath() );
+
+    if( children == null )
+      return;
+
+    Arrays.sort( children );
+
+    for( FileStatus child : children )
+      addFiles( fileSystem, child, files );
+    }
+
+  @SuppressWarnings("rawtypes")
+  private static long getCompositeSize( CompositeTap tap )
+    {
+    long size = 0;
+    Iterator iterator = tap.getChildTaps();
+
+    while( iterator.hasNext() )
+      {
+      long childSize = getSize( (Tap) iterator.next() );
+
+      if( childSize == UNKNOWN_SIZE )
+        return UNKNOWN_SIZE;
+
+      size += childSize;
+      }
+
+    return size;
+    }
+
+  private static long getLocalSize( File file )
+    {
+    if( !file.exists() )
+      return UNKNOWN_SIZE;
+
+    if( !file.isDirectory() )
+      return file.length();
+
+    long size = 0;
+    File[] children = file.listFiles();
+
+    if( children == null )
+      return UNKNOWN_SIZE;
+
+    for( File child : children )
+      {
+      if( child.isHidden() )
+        continue;
+
+      long childSize = getLocalSize( child );
+
+      if( childSize == UNKNOWN_SIZE )
+        return UNKNOWN_SIZE;
+
+      size += childSize;
+      }
+
+    return size;
+    }
+  }
@@ -20,11 +20,18 @@
 
 package multitool;
 
+import static org.junit.Assert.*;
+
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 /**
@@ -44,6 +51,18 @@ public class ParamsTest
     new Main( params ).plan( new Properties() );
     }
 
+  @Test(expected = IllegalArgumentException.class)
+  public void testStepsAfterLastSink() throws IOException
+    {
+    List<String[]> params = new LinkedList<String[]>();
+
+    params.add( new String[]{ "source", "path" } );
+    params.add( new String[]{ "sink", "path" } );
+    params.add( new String[]{ "select", "w" } );
+
+    new Main( params ).plan( new Properties() );
+    }
+
   @Test(expected = IllegalArgumentException.class)
   public void testBadSource() throws IOException
     {
@@ -78,4 +97,144 @@ public class ParamsTest
 
     new Main( params ).plan( new Properties() );
     }
-  }
\ No newline at end of file
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHashJoinRejectsOuterJoin() throws IOException
+    {
+    List<String[]> params = new LinkedList<String[]>();
+
+    params.add( new String[]{ "source", "path" } );
+    params.add( new String[]{ "source.name", "lhs" } );
+    params.add( new String[]{ "source", "path" } );
+    params.add( new String[]{ "source.name", "rhs" } );
+    params.add( new String[]{ "join", "" } );
+    params.add( new String[]{ "join.lhs", "lhs" } );
+    params.add( new String[]{ "join.rhs", "rhs" } );
+    params.add( new String[]{ "join.join", "outer" } );
+    params.add( new String[]{ "join.strategy", "hash" } );
+    params.add( new String[]{ "sink", "path" } );
+
+    new Main( params ).plan( new Properties() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSecondSinkWithoutBranch() throws IOException
+    {
+    List<String[]> params = new LinkedList<String[]>();
+
+    params.add( new String[]{ "source", "path" } );
+    params.add( new String[]{ "sink", "path" } );
+    params.add( new String[]{ "select", "w" } );
+    params.add( new String[]{ "sink", "path" } );
+
+    new Main( params ).plan( new Properties() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBranchWithoutSink() throws IOException
+    {
+    List<String[]> params = new LinkedList<String[]>();
+
+    params.add( new String[]{ "source", "path" } );
+    params.add( new String[]{ "source.name", "lhs" } );
+    params.add( new String[]{ "source", "path" } );
+    params.add( new String[]{ "source.name", "rhs" } );
+    params.add( new String[]{ "branch", "lhs" } );
+    params.add( new String[]{ "branch.name", "copy" } );
+    params.add( new String[]{ "sink", "path" } );
+
+    new Main( params ).plan( new Properties() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMappedSink() throws IOException
+    {
+    List<String[]> params = new LinkedList<String[]>();
+
+    params.add( new String[]{ "source", "path" } );
+    params.add( new String[]{ "sink", "path" } );
+    params.add( new String[]{ "sink.mmap", "true" } );
+
+    new Main( params ).plan( new Properties() );
+    }
+
+  @Test
+  public void testPipeline() throws IOException
+    {
+    File file = File.createTempFile( "pipeline", ".txt" );
+    file.deleteOnExit();
+
+    FileUtils.writeStringToFile( file, "# word count\n--local\nsource=input.txt\n  source.skipheader=true\n\ngroup=0\ncount\n" );
+
+    Map<String, String> options = new LinkedHashMap<String, String>();
+    List<String[]> params = new LinkedList<String[]>();
+
+    Main.parseArgs( Arrays.asList( "--pipeline=" + file.getPath(), "sink=output" ), options, params, false );
+
+    assertTrue( options.containsKey( "--local" ) );
+    assertEquals( 5, params.size() );
+    assertArrayEquals( new String[]{ "source.skipheader", "true" }, params.get( 1 ) );
+    assertArrayEquals( new String[]{ "count", null }, params.get( 3 ) );
+    assertArrayEquals( new String[]{ "sink", "output" }, params.get( 4 ) );
+    }
+
+  @Test
+  public void testPipelineValues() throws IOException
+    {
+    File file = File.createTempFile( "pipeline", ".txt" );
+    file.deleteOnExit();
+
+    FileUtils.writeStringToFile( file, "source=input.txt\n  source.delim= \n\tcut=0 \n  count  \n" );
+
+    List<String[]> params = new LinkedList<String[]>();
+
+    Main.parseArgs( Arrays.asList( "--pipeline=" + file.getPath() ), new LinkedHashMap<String, String>(), params, false );
+
+    assertArrayEquals( new String[]{ "source.delim", " " }, params.get( 1 ) );
+    assertArrayEquals( new String[]{ "cut", "0 " }, params.get( 2 ) );
+    assertArrayEquals( new String[]{ "count", null }, params.get( 3 ) );
+    }
+
+  @Test
+  public void testPipelineOverride() throws IOException
+    {
+    File file = File.createTempFile( "pipeline", ".txt" );
+    file.deleteOnExit();
+
+    FileUtils.writeStringToFile( file, "source=input.txt\n  source.skipheader=true\ngroup=0\ncount\nsink=output\n" );
+
+    List<String[]> params = new LinkedList<String[]>();
+
+    Main.parseArgs( Arrays.asList( "--pipeline=" + file.getPath(), "source.skipheader=false", "source.delim=,", "sink.replace=true", "cut=1", "cut.delim=:" ),
+      new LinkedHashMap<String, String>(), params, false );
+
+    assertEquals( 9, params.size() );
+    assertArrayEquals( new String[]{ "source.skipheader", "false" }, params.get( 1 ) );
+    assertArrayEquals( new String[]{ "source.delim", "," }, params.get( 2 ) );
+    assertArrayEquals( new String[]{ "sink.replace", "true" }, params.get( 6 ) );
+    assertArrayEquals( new String[]{ "cut", "1" }, params.get( 7 ) );
+    assertArrayEquals( new String[]{ "cut.delim", ":" }, params.get( 8 ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPipelineOverrideMissing() throws IOException
+    {
+    File file = File.createTempFile( "pipeline", ".txt" );
+    file.deleteOnExit();
+
+    FileUtils.writeStringToFile( file, "source=input.txt\nsink=output\n" );
+
+    Main.parseArgs( Arrays.asList( "--pipeline=" + file.getPath(), "cut.delim=:" ), new LinkedHashMap<String, String>(), new LinkedList<String[]>(), false );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNestedPipeline() throws IOException
+    {
+    File file = File.createTempFile( "pipeline", ".txt" );
+    file.deleteOnExit();
+
+    FileUtils.writeStringToFile( file, "--pipeline=" + file.getPath() + "\n" );
+
+    Main.parseArgs( Arrays.asList( "--pipeline=" + file.getPath() ), new LinkedHashMap<String, String>(), new LinkedList<String[]>(), false );
+    }
+  }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import cascading.scheme.hadoop.TextLine;
+import cascading.tap.SinkMode;
+import cascading.tap.Tap;
+import cascading.tap.hadoop.Hfs;
+
+@SuppressWarnings("rawtypes")
+public class PlanCacheTest
+  {
+  private final PlanCache planCache = new PlanCache( PlanCache.getDefaultDirectory(), "test" );
+
+  private String getKey( List<String[]> params, Map<String, String> options, SinkMode sinkMode )
+    {
+    Map<String, Tap> sources = Collections.<String, Tap>singletonMap( "input", new Hfs( new TextLine(), "input" ) );
+    Map<String, Tap> sinks = Collections.<String, Tap>singletonMap( "output", new Hfs( new TextLine(), "output", sinkMode ) );
+
+    return planCache.getKey( params, options, new Properties(), sources, sinks );
+    }
+
+  private List<String[]> getParams( String select )
+    {
+    List<String[]> params = new LinkedList<String[]>();
+
+    params.add( new String[]{ "source", "input" } );
+    params.add( new String[]{ "select", select } );
+    params.add( new String[]{ "sink", "output" } );
+
+    return params;
+    }
+
+  @Test
+  public void testKey()
+    {
+    Map<String, String> options = new LinkedHashMap<String, String>();
+    String key = getKey( getParams( "w" ), options, SinkMode.KEEP );
+
+    assertEquals( key, getKey( getParams( "w" ), options, SinkMode.KEEP ) );
+    assertFalse( key.equals( getKey( getParams( "o" ), options, SinkMode.KEEP ) ) );
+    assertFalse( key.equals( getKey( getParams( "w" ), options, SinkMode.REPLACE ) ) );
+
+    options.put( "--no-plan-cache", null );
+    assertEquals( key, getKey( getParams( "w" ), options, SinkMode.KEEP ) );
+
+    options.put( "--nofusion", null );
+    assertFalse( key.equals( getKey( getParams( "w" ), options, SinkMode.KEEP ) ) );
+    }
+
+  @Test
+  public void testPatternsFile() throws IOException
+    {
+    File patterns = File.createTempFile( "patterns", ".txt" );
+
+    try
+      {
+      Map<String, String> options = new LinkedHashMap<String, String>();
+      List<String[]> params = getParams( "w" );
+
+      params.add( 2, new String[]{ "select.patterns", patterns.getPath() } );
+
+      FileUtils.writeStringToFile( patterns, "o\n" );
+      String key = getKey( params, options, SinkMode.KEEP );
+
+      assertEquals( key, getKey( params, options, SinkMode.KEEP ) );
+
+      FileUtils.writeStringToFile( patterns, "o\nx\n" );
+      assertFalse( key.equals( getKey( params, options, SinkMode.KEEP ) ) );
+      }
+    finally
+      {
+      patterns.delete();
+      }
+    }
+
+  @Test
+  public void testUnknownCode()
+    {
+    PlanCache unknownCache = new PlanCache( PlanCache.getDefaultDirectory(), null );
+    Map<String, Tap> sources = Collections.<String, Tap>singletonMap( "input", new Hfs( new TextLine(), "input" ) );
+    Map<String, Tap> sinks = Collections.<String, Tap>singletonMap( "output", new Hfs( new TextLine(), "output" ) );
+
+    assertNull( unknownCache.getKey( getParams( "w" ), new LinkedHashMap<String, String>(), new Properties(), sources, sinks ) );
+    }
+  }
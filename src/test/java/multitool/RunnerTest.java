@@ -22,6 +22,8 @@ package multitool;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,6 +38,7 @@ import org.junit.Test;
 import cascading.PlatformTestCase;
 import cascading.flow.Flow;
 import cascading.scheme.hadoop.TextLine;
+import cascading.tap.Tap;
 import cascading.tap.hadoop.Hfs;
 import cascading.tap.local.FileTap;
 import cascading.tuple.TupleEntryIterator;
@@ -69,6 +72,9 @@ public class RunnerTest extends PlatformTestCase
 
     if( "LOCAL".equalsIgnoreCase( getPlatformName() ) )
       options.put( "--local", "" );
+
+    // plans must not be written to, nor read from, the cache in the home directory
+    options.put( "--no-plan-cache", "" );
     }
 
   @Test
@@ -111,6 +117,39 @@ public class RunnerTest extends PlatformTestCase
     iterator.close();
     }
 
+  @Test
+  public void testColumnar() throws IOException
+    {
+
+    params.add( new String[]{ "source", songsData } );
+    params.add( new String[]{ "source.delim", null } );
+    params.add( new String[]{ "source.hasheader", "true" } );
+
+    params.add( new String[]{ "sink", outputPath + "/columnar" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+    params.add( new String[]{ "sink.format", "columnar" } );
+
+    createFlow().complete();
+
+    params.clear();
+
+    params.add( new String[]{ "source", outputPath + "/columnar" } );
+    params.add( new String[]{ "source.format", "columnar" } );
+    params.add( new String[]{ "source.select", "name,album" } );
+
+    params.add( new String[]{ "sink", outputPath + "/uncolumnar" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+    params.add( new String[]{ "sink.writeheader", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 32, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){2}$" ) );
+    iterator.close();
+    }
+
   @Test
   public void testCut() throws IOException
     {
@@ -177,6 +216,59 @@ public class RunnerTest extends PlatformTestCase
     iterator.close();
     }
 
+  @Test
+  public void testSelectRejectNoFusion() throws IOException
+    {
+
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "select", "w" } );
+    params.add( new String[]{ "reject", "o" } );
+
+    params.add( new String[]{ "sink", outputPath + "/selectrejectnofusion" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    options.put( "--nofusion", "" );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 2, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){11}$" ) );
+
+    iterator.close();
+    }
+
+  @Test
+  public void testFusedFunctions() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "select", "w" } );
+    params.add( new String[]{ "cut", "1" } );
+    params.add( new String[]{ "replace", "o" } );
+    params.add( new String[]{ "replace.replace", "0" } );
+    params.add( new String[]{ "replace.replaceAll", "true" } );
+    params.add( new String[]{ "expr", "$0.toUpperCase()" } );
+    params.add( new String[]{ "reject", "^$" } );
+
+    params.add( new String[]{ "sink", outputPath + "/fusedfunctions" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    List<String> fused = readLines( createFlow() );
+
+    params.set( params.size() - 2, new String[]{ "sink", outputPath + "/fusedfunctionsnofusion" } );
+    options.put( "--nofusion", "" );
+
+    List<String> unfused = readLines( createFlow() );
+
+    assertFalse( unfused.isEmpty() );
+    assertEquals( unfused, fused );
+    }
+
   @Test
   public void testSelectFilename() throws IOException
     {
@@ -193,30 +285,82 @@ public class RunnerTest extends PlatformTestCase
     params.add( new String[]{ "sink.replace", "true" } );
     params.add( new String[]{ "sink.parts", "0" } );
 
-    // this only works in hadoop mode right now
-    if( "LOCAL".equalsIgnoreCase( getPlatformName() ) )
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 16, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){12}file:.*/data/track.100.txt$" ) );
+
+    iterator.close();
+    }
+
+  @Test
+  public void testBranch() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.name", "track" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "branch", "track" } );
+    params.add( new String[]{ "branch.name", "w" } );
+    params.add( new String[]{ "select", "w" } );
+    params.add( new String[]{ "sink", outputPath + "/branch-w" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    params.add( new String[]{ "branch", "track" } );
+    params.add( new String[]{ "branch.name", "o" } );
+    params.add( new String[]{ "select", "o" } );
+    params.add( new String[]{ "sink", outputPath + "/branch-o" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, ( (Tap) flow.getSinks().get( "w" ) ).getIdentifier() );
+    validateLength( iterator, 16, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){11}$" ) );
+    iterator.close();
+
+    iterator = openTupleEntryIterator( flow, ( (Tap) flow.getSinks().get( "o" ) ).getIdentifier() );
+    validateLength( iterator, 88, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){11}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testPartition() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "sink", outputPath + "/partition" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+    params.add( new String[]{ "sink.partition", "3" } );
+    params.add( new String[]{ "sink.partition.open", "4" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    File[] partitions = new File( outputPath, "partition" ).listFiles();
+    int lines = 0;
+    int directories = 0;
+
+    for( File partition : partitions )
       {
-      try
-        {
-        createFlow();
-        fail( "filename is not supported in local mode and should have thrown an exception" );
-        }
-      catch ( IllegalArgumentException iae )
+      if( !partition.isDirectory() )
+        continue;
+
+      assertTrue( partition.getName(), partition.getName().startsWith( "3=" ) );
+      directories++;
+
+      for( File part : partition.listFiles() )
         {
-        // ignore
+        if( part.getName().startsWith( "part-" ) )
+          lines += FileUtils.readLines( part ).size();
         }
       }
-    else
-      {
-      Flow flow = createFlow();
-      flow.complete();
 
-      String identifier = flow.getSink().getIdentifier().toString();
-      TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
-      validateLength( iterator, 16, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){12}file:.*/data/track.100.txt$" ) );
-
-      iterator.close();
-      }
+    assertEquals( 28, directories );
+    assertEquals( 99, lines );
     }
 
   @Test
@@ -241,6 +385,117 @@ public class RunnerTest extends PlatformTestCase
     iterator.close();
     }
 
+  @Test
+  public void testTop() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", null } );
+    params.add( new String[]{ "group", "4" } );
+    params.add( new String[]{ "top", "2" } );
+    params.add( new String[]{ "top.by", "0" } );
+
+    params.add( new String[]{ "sink", outputPath + "/top" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 96, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){11}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testTopValues() throws IOException
+    {
+    addTopParams( "/topvalues", "top.threshold", "0" );
+
+    // integral values rank exactly, other values rank above numbers
+    assertEquals( Arrays.asList( "x\t9007199254740993", "x\t9007199254740992", "y\tabc", "y\t3", "z\t1" ), readLines( createFlow() ) );
+    }
+
+  @Test
+  public void testTopReverse() throws IOException
+    {
+    addTopParams( "/topreverse", "top.reverse", "true", "top.threshold", "0" );
+
+    assertEquals( Arrays.asList( "x\t-2.5", "x\t10", "y\t-1", "y\t3", "z\t1" ), readLines( createFlow() ) );
+    }
+
+  @Test
+  public void testTopThreshold() throws IOException
+    {
+    // ranking one group at a time on the map side gives the same values as ranking after grouping
+    addTopParams( "/topthreshold", "top.threshold", "1" );
+
+    assertEquals( Arrays.asList( "x\t9007199254740993", "x\t9007199254740992", "y\tabc", "y\t3", "z\t1" ), readLines( createFlow() ) );
+
+    params.clear();
+    addTopParams( "/topthresholdreverse", "top.reverse", "true", "top.threshold", "1" );
+
+    assertEquals( Arrays.asList( "x\t-2.5", "x\t10", "y\t-1", "y\t3", "z\t1" ), readLines( createFlow() ) );
+    }
+
+  @Test
+  public void testApproxDistinct() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", null } );
+    params.add( new String[]{ "group", "4" } );
+    params.add( new String[]{ "approxdistinct", "0" } );
+    params.add( new String[]{ "approxdistinct.threshold", "100" } );
+
+    params.add( new String[]{ "sink", outputPath + "/approxdistinct" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 89, 2, Pattern.compile( "^[0-9]+\\t[^\\t]*\\t[1-4]$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testQuantile() throws IOException
+    {
+    addQuantileParams( "/quantile" );
+
+    // fewer values than the sketch size are kept exactly
+    assertEquals( Arrays.asList( "k\tp50\tp99.9", "x\t3.0\t5.0", "y\t\t", "z\t7.0\t7.0" ), readLines( createFlow() ) );
+    }
+
+  @Test
+  public void testQuantileThreshold() throws IOException
+    {
+    addQuantileParams( "/quantilethreshold", "quantile.threshold", "1" );
+
+    assertEquals( Arrays.asList( "k\tp50\tp99.9", "x\t3.0\t5.0", "y\t\t", "z\t7.0\t7.0" ), readLines( createFlow() ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testQuantileDuplicate() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", null } );
+    params.add( new String[]{ "group", "4" } );
+    params.add( new String[]{ "quantile", "2" } );
+    params.add( new String[]{ "quantile.p", "0.5,0.50" } );
+
+    params.add( new String[]{ "sink", outputPath + "/quantileduplicate" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    createFlow();
+    }
+
   @Test
   public void testConcat() throws IOException
     {
@@ -290,32 +545,95 @@ public class RunnerTest extends PlatformTestCase
     }
 
   @Test
-  public void testParseValues() throws IOException
+  public void testPartialWordCount() throws IOException
     {
-    params.add( new String[]{ "source", topicData } );
+    params.add( new String[]{ "source", trackData } );
     params.add( new String[]{ "source.skipheader", "true" } );
 
-    params.add( new String[]{ "cut", "0" } );
-    params.add( new String[]{ "pgen", "(\\b[12][09][0-9]{2}\\b)" } );
+    params.add( new String[]{ "expr", "$0.toLowerCase()" } );
+    params.add( new String[]{ "gen", "(?<!\\pL)(?=\\pL)[^\\s]*(?<=\\pL)(?!\\pL)" } );
     params.add( new String[]{ "group", "0" } );
-    params.add( new String[]{ "count", "0" } ); // adds count field
+    params.add( new String[]{ "count", null } );
+    params.add( new String[]{ "count.threshold", "100" } );
     params.add( new String[]{ "group", "1" } );
 
-    params.add( new String[]{ "sink", outputPath + "/parsevalues" } );
+    params.add( new String[]{ "sink", outputPath + "/partialwordcount" } );
     params.add( new String[]{ "sink.replace", "true" } );
 
     Flow flow = createFlow();
     flow.complete();
 
     String identifier = flow.getSink().getIdentifier().toString();
+
     TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
-    validateLength( iterator, 4, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){2}$" ) );
+    validateLength( iterator, 395, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){2}$" ) );
     iterator.close();
     }
 
   @Test
-  public void testJoin() throws IOException
+  public void testParallelWordCount() throws IOException
     {
+    if( !"LOCAL".equalsIgnoreCase( getPlatformName() ) )
+      return;
+
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "expr", "$0.toLowerCase()" } );
+    params.add( new String[]{ "gen", "(?<!\\pL)(?=\\pL)[^\\s]*(?<=\\pL)(?!\\pL)" } );
+    params.add( new String[]{ "group", "0" } );
+    params.add( new String[]{ "count", null } );
+    params.add( new String[]{ "group", "1" } );
+
+    params.add( new String[]{ "sink", outputPath + "/serial" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    createFlow().complete();
+
+    params.set( params.size() - 2, new String[]{ "sink", outputPath + "/parallel" } );
+    options.put( "--threads", "4" );
+
+    long minSliceSize = LocalParallel.minSliceSize;
+    LocalParallel.minSliceSize = 1;
+
+    try
+      {
+      new Main( options, params ).execute();
+      }
+    finally
+      {
+      LocalParallel.minSliceSize = minSliceSize;
+      }
+
+    assertEquals( FileUtils.readLines( new File( outputPath + "/serial" ) ), FileUtils.readLines( new File( outputPath + "/parallel" ) ) );
+    }
+
+  @Test
+  public void testParallelGroupCount() throws IOException
+    {
+    if( !"LOCAL".equalsIgnoreCase( getPlatformName() ) )
+      return;
+
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "3" } );
+    params.add( new String[]{ "group", "0" } );
+    params.add( new String[]{ "count", "" } );
+
+    params.add( new String[]{ "sink", outputPath + "/serialcount" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+    params.add( new String[]{ "sink.writeheader", "true" } );
+
+    assertParallel( "/serialcount", "/parallelcount" );
+    }
+
+  @Test
+  public void testParallelJoin() throws IOException
+    {
+    if( !"LOCAL".equalsIgnoreCase( getPlatformName() ) )
+      return;
+
     params.add( new String[]{ "source", trackData } );
     params.add( new String[]{ "source.name", "lhs" } );
     params.add( new String[]{ "source.skipheader", "true" } );
@@ -324,9 +642,6 @@ public class RunnerTest extends PlatformTestCase
     params.add( new String[]{ "gen", "" } );
     params.add( new String[]{ "gen.delim", " " } );
 
-    params.add( new String[]{ "debug", "" } );
-    params.add( new String[]{ "debug.prefix", "lhs" } );
-
     params.add( new String[]{ "source", artistData } );
     params.add( new String[]{ "source.name", "rhs" } );
     params.add( new String[]{ "source.skipheader", "true" } );
@@ -335,25 +650,548 @@ public class RunnerTest extends PlatformTestCase
     params.add( new String[]{ "gen", "" } );
     params.add( new String[]{ "gen.delim", " " } );
 
-    params.add( new String[]{ "debug", "" } );
-    params.add( new String[]{ "debug.prefix", "rhs" } );
-
     params.add( new String[]{ "join", "" } );
     params.add( new String[]{ "join.lhs", "lhs" } );
     params.add( new String[]{ "join.rhs", "rhs" } );
 
     params.add( new String[]{ "count", "" } );
+    params.add( new String[]{ "group", "1" } );
 
-    params.add( new String[]{ "sink", outputPath + "/join" } );
+    params.add( new String[]{ "sink", outputPath + "/serialjoin" } );
     params.add( new String[]{ "sink.replace", "true" } );
 
-    Flow flow = createFlow();
-    flow.complete();
+    assertParallel( "/serialjoin", "/paralleljoin" );
+    }
 
-    String identifier = flow.getSink().getIdentifier().toString();
-    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
-    validateLength( iterator, 5, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){3}$" ) );
-    iterator.close();
+  private void assertParallel( String serial, String parallel ) throws IOException
+    {
+    createFlow().complete();
+
+    for( int i = 0; i < params.size(); i++ )
+      {
+      if( params.get( i )[ 0 ].equals( "sink" ) )
+        params.set( i, new String[]{ "sink", outputPath + parallel } );
+      }
+
+    options.put( "--threads", "4" );
+
+    long minSliceSize = LocalParallel.minSliceSize;
+    LocalParallel.minSliceSize = 1;
+
+    try
+      {
+      new Main( options, params ).execute();
+      }
+    finally
+      {
+      LocalParallel.minSliceSize = minSliceSize;
+      }
+
+    List<String> lines = FileUtils.readLines( new File( outputPath + parallel ) );
+
+    assertFalse( lines.isEmpty() );
+    assertEquals( FileUtils.readLines( new File( outputPath + serial ) ), lines );
+    }
+
+  @Test
+  public void testStats() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "select", "w" } );
+
+    params.add( new String[]{ "sink", outputPath + "/stats" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    File stats = new File( outputPath, "stats.json" );
+    options.put( "--stats", stats.getPath() );
+
+    new Main( options, params ).execute();
+
+    String json = FileUtils.readFileToString( stats );
+
+    assertTrue( json, json.contains( "\"planning_ms\": " ) );
+    assertTrue( json, json.contains( "\"name\": \"source\", \"value\": \"" + trackData + "\", \"tuples_in\": 100, \"tuples_out\": 99, \"filtered\": 1" ) );
+
+    // Hadoop counts the bytes of the whole task, the local source counts those it read
+    if( "LOCAL".equalsIgnoreCase( getPlatformName() ) )
+      assertTrue( json, json.contains( "\"bytes_read\": " + new File( trackData ).length() + " }" ) );
+    else
+      assertTrue( json, json.contains( "\"bytes_read\": " ) );
+
+    assertTrue( json, json.contains( "\"name\": \"cut\", \"value\": \"0\", \"tuples_in\": 99, \"tuples_out\": 99" ) );
+    assertTrue( json, json.contains( "\"name\": \"select\", \"value\": \"w\", \"tuples_in\": 99, \"tuples_out\": " ) );
+    }
+
+  @Test
+  public void testStatsBuffer() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", null } );
+    params.add( new String[]{ "group", "4" } );
+    params.add( new String[]{ "top", "2" } );
+    params.add( new String[]{ "top.by", "0" } );
+
+    params.add( new String[]{ "sink", outputPath + "/statsbuffer" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    File stats = new File( outputPath, "statsbuffer.json" );
+    options.put( "--stats", stats.getPath() );
+
+    new Main( options, params ).execute();
+
+    String json = FileUtils.readFileToString( stats );
+
+    assertTrue( json, Pattern.compile( "\"name\": \"top\", \"value\": \"2\"[^}]*\"tuples_out\": 96[, ]" ).matcher( json ).find() );
+    assertTrue( json, Pattern.compile( "\"name\": \"top\", \"value\": \"2\"[^}]*\"nanos\": " ).matcher( json ).find() );
+    }
+
+  @Test
+  public void testStatsMismatches() throws IOException
+    {
+    // counters of failed Hadoop task attempts are dropped
+    if( !"LOCAL".equalsIgnoreCase( getPlatformName() ) )
+      return;
+
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "parse", "^(w)" } );
+
+    params.add( new String[]{ "sink", outputPath + "/statsmismatches" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    File stats = new File( outputPath, "mismatches.json" );
+    options.put( "--stats", stats.getPath() );
+
+    try
+      {
+      new Main( options, params ).execute();
+      fail( "expected the parser to fail on a value not starting with w" );
+      }
+    catch( RuntimeException exception )
+      {
+      // the flow fails on the first mismatch, which is still counted
+      }
+
+    String json = FileUtils.readFileToString( stats );
+
+    assertTrue( json, json.contains( "\"name\": \"parse\", \"value\": \"^(w)\"" ) );
+    assertTrue( json, json.contains( "\"mismatches\": 1" ) );
+    }
+
+  @Test
+  public void testParseValues() throws IOException
+    {
+    params.add( new String[]{ "source", topicData } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "pgen", "(\\b[12][09][0-9]{2}\\b)" } );
+    params.add( new String[]{ "group", "0" } );
+    params.add( new String[]{ "count", "0" } ); // adds count field
+    params.add( new String[]{ "group", "1" } );
+
+    params.add( new String[]{ "sink", outputPath + "/parsevalues" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 4, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){2}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testJoin() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.name", "lhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "3" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "debug", "" } );
+    params.add( new String[]{ "debug.prefix", "lhs" } );
+
+    params.add( new String[]{ "source", artistData } );
+    params.add( new String[]{ "source.name", "rhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "debug", "" } );
+    params.add( new String[]{ "debug.prefix", "rhs" } );
+
+    params.add( new String[]{ "join", "" } );
+    params.add( new String[]{ "join.lhs", "lhs" } );
+    params.add( new String[]{ "join.rhs", "rhs" } );
+
+    params.add( new String[]{ "count", "" } );
+
+    params.add( new String[]{ "sink", outputPath + "/join" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 5, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){3}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testBloomJoin() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.name", "lhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "3" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "source", artistData } );
+    params.add( new String[]{ "source.name", "rhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "join", "" } );
+    params.add( new String[]{ "join.lhs", "lhs" } );
+    params.add( new String[]{ "join.rhs", "rhs" } );
+    params.add( new String[]{ "join.bloom", "true" } );
+
+    params.add( new String[]{ "count", "" } );
+
+    params.add( new String[]{ "sink", outputPath + "/bloomjoin" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 5, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){3}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testSkewJoin() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.name", "lhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "3" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "source", artistData } );
+    params.add( new String[]{ "source.name", "rhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "join", "" } );
+    params.add( new String[]{ "join.lhs", "lhs" } );
+    params.add( new String[]{ "join.rhs", "rhs" } );
+    params.add( new String[]{ "join.skew", "auto" } );
+    params.add( new String[]{ "join.skew.salts", "4" } );
+    params.add( new String[]{ "join.skew.sample", "1" } );
+    params.add( new String[]{ "join.skew.threshold", "0.05" } );
+
+    // the joined values are unsalted by an each, so they are grouped again before counting
+    params.add( new String[]{ "group", "0" } );
+    params.add( new String[]{ "count", "" } );
+
+    params.add( new String[]{ "sink", outputPath + "/skewjoin" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 5, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){2}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testSkewJoinCount() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.name", "lhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "3" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "source", artistData } );
+    params.add( new String[]{ "source.name", "rhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "join", "" } );
+    params.add( new String[]{ "join.lhs", "lhs" } );
+    params.add( new String[]{ "join.rhs", "rhs" } );
+    params.add( new String[]{ "join.skew", "auto" } );
+    params.add( new String[]{ "join.skew.salts", "4" } );
+    params.add( new String[]{ "join.skew.sample", "1" } );
+    params.add( new String[]{ "join.skew.threshold", "0.05" } );
+
+    // count groups the unsalted values again on the lhs key
+    params.add( new String[]{ "count", "" } );
+
+    params.add( new String[]{ "sink", outputPath + "/skewjoincount" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 5, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){2}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testSkewJoinSampledFiles() throws IOException
+    {
+    // hot keys are found in two of the four copies of the lhs
+    File lhs = new File( outputPath, "skewlhs" );
+
+    for( int i = 0; i < 4; i++ )
+      FileUtils.copyFile( new File( trackData ), new File( lhs, "part-0000" + i ) );
+
+    params.add( new String[]{ "source", lhs.getPath() } );
+    params.add( new String[]{ "source.name", "lhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "3" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "source", artistData } );
+    params.add( new String[]{ "source.name", "rhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "join", "" } );
+    params.add( new String[]{ "join.lhs", "lhs" } );
+    params.add( new String[]{ "join.rhs", "rhs" } );
+    params.add( new String[]{ "join.skew", "auto" } );
+    params.add( new String[]{ "join.skew.salts", "4" } );
+    params.add( new String[]{ "join.skew.sample", "0.5" } );
+    params.add( new String[]{ "join.skew.threshold", "0.05" } );
+
+    params.add( new String[]{ "group", "0" } );
+    params.add( new String[]{ "count", "" } );
+
+    params.add( new String[]{ "sink", outputPath + "/skewjoinsampled" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 5, 2, Pattern.compile( "^[0-9]+(\t[^\t]*){2}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testHashJoin() throws IOException
+    {
+    params.add( new String[]{ "source", trackData } );
+    params.add( new String[]{ "source.name", "lhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "3" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "source", artistData } );
+    params.add( new String[]{ "source.name", "rhs" } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0" } );
+    params.add( new String[]{ "gen", "" } );
+    params.add( new String[]{ "gen.delim", " " } );
+
+    params.add( new String[]{ "join", "" } );
+    params.add( new String[]{ "join.lhs", "lhs" } );
+    params.add( new String[]{ "join.rhs", "rhs" } );
+    params.add( new String[]{ "join.strategy", "hash" } );
+
+    params.add( new String[]{ "sink", outputPath + "/hashjoin" } );
+    params.add( new String[]{ "sink.replace", "true" } );
+
+    Flow flow = createFlow();
+    flow.complete();
+
+    String identifier = flow.getSink().getIdentifier().toString();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, identifier );
+    validateLength( iterator, 40, 2, Pattern.compile( "^[0-9]+(\\t[^\\t]*){2}$" ) );
+    iterator.close();
+    }
+
+  @Test
+  public void testSumFields() throws IOException
+    {
+    addSumParams( "/sumfields", "1,2" );
+
+    assertEquals( Arrays.asList( "x\t9.0\t4.0", "y\t0.0\t4.0", "z\t2.0\t1.0" ), readLines( createFlow() ) );
+    }
+
+  @Test
+  public void testSumLong() throws IOException
+    {
+    addSumParams( "/sumlong", "1", "sum.type", "long" );
+
+    assertEquals( Arrays.asList( "x\t9", "y\t0", "z\t2" ), readLines( createFlow() ) );
+    }
+
+  @Test
+  public void testSumEmitEmpty() throws IOException
+    {
+    addSumParams( "/sumemit", "1", "sum.emit", "min,max,avg" );
+
+    // y has no values to take a minimum, maximum or average of
+    assertEquals( Arrays.asList( "x\t1.0\t5.0\t3.0", "y\t\t\t", "z\t2.0\t2.0\t2.0" ), readLines( createFlow() ) );
+    }
+
+  @Test
+  public void testSumPartial() throws IOException
+    {
+    addSumParams( "/sumfull", "1,2", "sum.emit", "sum,min,max,avg" );
+
+    List<String> expected = readLines( createFlow() );
+
+    params.clear();
+    addSumParams( "/sumpartial", "1,2", "sum.emit", "sum,min,max,avg", "sum.threshold", "2" );
+
+    assertEquals( Arrays.asList( "x\t9.0\t1.0\t5.0\t3.0\t4.0\t1.5\t2.5\t2.0", "y\t0.0\t\t\t\t4.0\t4.0\t4.0\t4.0", "z\t2.0\t2.0\t2.0\t2.0\t1.0\t1.0\t1.0\t1.0" ), expected );
+    assertEquals( expected, readLines( createFlow() ) );
+    }
+
+  /**
+   * Adds params summing the given fields of a small file with empty values, grouped on its first
+   * field, followed by the given sum params as pairs of names and values.
+   */
+  private void addSumParams( String sink, String fields, String... sumParams ) throws IOException
+    {
+    File input = new File( outputPath, "sums.txt" );
+
+    FileUtils.writeStringToFile( input, "k\ta\tb\tc\nx\t1\t2.5\t-\nx\t3\t\t-\ny\t\t4\t-\nx\t5\t1.5\t-\ny\t\t\t-\nz\t2\t1\t-\n" );
+
+    params.add( new String[]{ "source", input.getPath() } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0,1,2" } );
+    params.add( new String[]{ "group", "0" } );
+    params.add( new String[]{ "sum", fields } );
+
+    for( int i = 0; i < sumParams.length; i += 2 )
+      params.add( new String[]{ sumParams[ i ], sumParams[ i + 1 ] } );
+
+    params.add( new String[]{ "sink", outputPath + sink } );
+    params.add( new String[]{ "sink.replace", "true" } );
+    }
+
+  /**
+   * Adds params keeping the two greatest values of the second field per value of the first field,
+   * followed by the given top params as pairs of names and values.
+   */
+  private void addTopParams( String sink, String... topParams ) throws IOException
+    {
+    File input = new File( outputPath, "top.txt" );
+
+    FileUtils.writeStringToFile( input, "k\tv\nx\t10\ny\t-1\nx\t9007199254740992\nz\t1\nx\t-2.5\ny\tabc\nx\t9007199254740993\ny\t3\n" );
+
+    params.add( new String[]{ "source", input.getPath() } );
+    params.add( new String[]{ "source.skipheader", "true" } );
+
+    params.add( new String[]{ "cut", "0,1" } );
+    params.add( new String[]{ "group", "0" } );
+    params.add( new String[]{ "top", "2" } );
+    params.add( new String[]{ "top.by", "1" } );
+
+    for( int i = 0; i < topParams.length; i += 2 )
+      params.add( new String[]{ topParams[ i ], topParams[ i + 1 ] } );
+
+    params.add( new String[]{ "sink", outputPath + sink } );
+    params.add( new String[]{ "sink.replace", "true" } );
+    }
+
+  /**
+   * Adds params estimating the median and 99.9th percentile of field v per value of field k, written
+   * with a header, followed by the given quantile params as pairs of names and values. Group y has
+   * no numeric values.
+   */
+  private void addQuantileParams( String sink, String... quantileParams ) throws IOException
+    {
+    File input = new File( outputPath, "quantile.txt" );
+
+    FileUtils.writeStringToFile( input, "k\tv\nx\t4\ny\tabc\nx\t1\nz\t7\nx\t5\ny\t\nx\t3\nx\t2\n" );
+
+    params.add( new String[]{ "source", input.getPath() } );
+    params.add( new String[]{ "source.delim", null } );
+    params.add( new String[]{ "source.hasheader", "true" } );
+
+    params.add( new String[]{ "group", "k" } );
+    params.add( new String[]{ "quantile", "v" } );
+    params.add( new String[]{ "quantile.p", "0.5,0.999" } );
+
+    for( int i = 0; i < quantileParams.length; i += 2 )
+      params.add( new String[]{ quantileParams[ i ], quantileParams[ i + 1 ] } );
+
+    params.add( new String[]{ "sink", outputPath + sink } );
+    params.add( new String[]{ "sink.replace", "true" } );
+    params.add( new String[]{ "sink.writeheader", "true" } );
+    }
+
+  private List<String> readLines( Flow flow ) throws IOException
+    {
+    flow.complete();
+
+    List<String> lines = new ArrayList<String>();
+    TupleEntryIterator iterator = openTupleEntryIterator( flow, flow.getSink().getIdentifier().toString() );
+
+    try
+      {
+      while( iterator.hasNext() )
+        lines.add( iterator.next().getString( 1 ) );
+      }
+    finally
+      {
+      iterator.close();
+      }
+
+    return lines;
     }
 
   private Flow createFlow()
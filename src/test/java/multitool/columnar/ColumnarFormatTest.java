@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.columnar;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ColumnarFormatTest
+  {
+  private static final Object[][] ROWS = new Object[][]{
+    { "1", "red", 10L, 1.5, null },
+    { "22", "red", 7L, null, "x" },
+    { "-3", "blue", null, -2.0, "a\tb" },
+    { "40", "red", Long.MIN_VALUE, 0.0, "" },
+    { "5", "blue", Long.MAX_VALUE, 1e300, "\u00e9" }
+  };
+
+  @Test
+  public void testRoundTrip() throws IOException
+    {
+    ColumnarReader reader = new ColumnarReader( new ByteArrayInputStream( write( 2, true ) ) );
+
+    assertArrayEquals( new String[]{ "id", "color", "count", "score", "note" }, reader.getNames() );
+
+    for( Object[] row : ROWS )
+      {
+      assertTrue( reader.next() );
+
+      for( int i = 0; i < row.length; i++ )
+        assertEquals( row[ i ], reader.get( i ) );
+      }
+
+    assertFalse( reader.next() );
+    }
+
+  @Test
+  public void testProjection() throws IOException
+    {
+    ColumnarReader reader = new ColumnarReader( new ByteArrayInputStream( write( 3, false ) ) );
+
+    reader.select( new String[]{ "note", "id" } );
+
+    for( Object[] row : ROWS )
+      {
+      assertTrue( reader.next() );
+      assertEquals( row[ 4 ], reader.get( 0 ) );
+      assertEquals( row[ 0 ], reader.get( 1 ) );
+      }
+
+    assertFalse( reader.next() );
+    }
+
+  @Test
+  public void testStatistics() throws IOException
+    {
+    Object[] values = new Object[]{ "7", null, "-12", "300" };
+    ColumnChunk chunk = ColumnChunk.encode( values, values.length, true );
+
+    assertEquals( ColumnChunk.TYPE_STRING, chunk.getType() );
+    assertEquals( ColumnChunk.ENCODING_DELTA, chunk.getEncoding() );
+    assertEquals( 1, chunk.getNullCount() );
+    assertEquals( "-12", chunk.getMin() );
+    assertEquals( "7", chunk.getMax() );
+
+    // leading zeros must survive, so they are not delta encoded
+    assertEquals( ColumnChunk.ENCODING_PLAIN, ColumnChunk.encode( new Object[]{ "007", "8" }, 2, true ).getEncoding() );
+    }
+
+  @Test
+  public void testLongRange() throws IOException
+    {
+    Object[] extremes = new Object[]{ "9223372036854775807", "-9223372036854775808", "0" };
+    ColumnChunk chunk = ColumnChunk.encode( extremes, extremes.length, false );
+
+    assertEquals( ColumnChunk.ENCODING_DELTA, chunk.getEncoding() );
+
+    Object[] decoded = new Object[ extremes.length ];
+    chunk.decode( decoded );
+    assertArrayEquals( extremes, decoded );
+
+    // 19 digits beyond the range of a long are kept as text
+    Object[] beyond = new Object[]{ "9999999999999999999", "9223372036854775808", "-9223372036854775809" };
+    chunk = ColumnChunk.encode( beyond, beyond.length, false );
+
+    assertEquals( ColumnChunk.ENCODING_PLAIN, chunk.getEncoding() );
+
+    decoded = new Object[ beyond.length ];
+    chunk.decode( decoded );
+    assertArrayEquals( beyond, decoded );
+    }
+
+  @Test
+  public void testConcatenated() throws IOException
+    {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    output.write( write( 2, true ) );
+    output.write( write( 4, false ) );
+
+    ColumnarReader reader = new ColumnarReader( new ByteArrayInputStream( output.toByteArray() ) );
+
+    reader.select( new String[]{ "count" } );
+
+    for( int i = 0; i < 2 * ROWS.length; i++ )
+      {
+      assertTrue( reader.next() );
+      assertEquals( ROWS[ i % ROWS.length ][ 2 ], reader.get( 0 ) );
+      }
+
+    assertFalse( reader.next() );
+    }
+
+  @Test
+  public void testEmpty() throws IOException
+    {
+    ColumnarReader reader = new ColumnarReader( new ByteArrayInputStream( new byte[ 0 ] ) );
+
+    assertEquals( 0, reader.getNames().length );
+    assertFalse( reader.next() );
+    }
+
+  private byte[] write( int rowGroupSize, boolean compress ) throws IOException
+    {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ColumnarWriter writer = new ColumnarWriter( output, new String[]{ "id", "color", "count", "score", "note" }, rowGroupSize, compress );
+
+    for( Object[] row : ROWS )
+      {
+      for( int i = 0; i < row.length; i++ )
+        writer.set( i, row[ i ] );
+
+      writer.endRow();
+      }
+
+    writer.close();
+
+    return output.toByteArray();
+    }
+  }
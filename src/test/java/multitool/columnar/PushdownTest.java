@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.columnar;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+public class PushdownTest
+  {
+  private static final String[] NAMES = new String[]{ "id", "name", "album", "year" };
+
+  @Test
+  public void testResolve()
+    {
+    Pushdown pushdown = new Pushdown();
+
+    pushdown.retain( new Fields( 1, 2, 3 ) );
+    pushdown.filter( new Fields( "year" ), "^19", false );
+    pushdown.discard( new Fields( "year" ) );
+
+    Pushdown.Resolved resolved = pushdown.resolve( NAMES );
+
+    assertArrayEquals( new String[]{ "name", "album" }, resolved.getColumns() );
+    assertArrayEquals( new String[]{ "name", "album", "year" }, resolved.getDecoded() );
+    }
+
+  @Test
+  public void testFilters()
+    {
+    Pushdown pushdown = new Pushdown();
+
+    pushdown.retain( new Fields( "name", "album" ) );
+    pushdown.filter( null, "a\tb", false );
+    pushdown.filter( new Fields( 1 ), "live", true );
+
+    Pushdown.Resolved resolved = pushdown.resolve( NAMES );
+
+    assertTrue( resolved.accept( new Tuple( "xa", "bx" ) ) );
+    assertFalse( resolved.accept( new Tuple( "xa", "c" ) ) );
+    assertFalse( resolved.accept( new Tuple( "xa", "b live" ) ) );
+    }
+  }
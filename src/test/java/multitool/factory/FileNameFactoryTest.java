@@ -29,7 +29,7 @@ public class FileNameFactoryTest
   @Test
   public void testSupportsPlatformLocal()
     {
-    assertFalse( new FileNameFactory( "filename" ).supportsPlatform( PLATFORM.LOCAL ) );
+    assertTrue( new FileNameFactory( "filename" ).supportsPlatform( PLATFORM.LOCAL ) );
     }
 
   @Test
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.operation;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+
+public class ExpressionCacheTest
+  {
+  private final File directory = new File( "build/test/expressions" );
+
+  @After
+  public void tearDown() throws IOException
+    {
+    ExpressionCache.clear();
+    FileUtils.deleteDirectory( directory );
+    }
+
+  @Test
+  public void testEvaluate()
+    {
+    CompiledExpression expression = getExpression( "$0.toLowerCase()", null, String.class );
+
+    assertEquals( "hello", expression.evaluate( entry( "HeLLo" ) ) );
+    assertSame( expression, getExpression( "$0.toLowerCase()", null, String.class ) );
+    }
+
+  @Test
+  public void testTypes()
+    {
+    CompiledExpression expression = getExpression( "$0 > 100 && $1 < 0.5 && $2", null, Long.TYPE, Double.TYPE, Boolean.TYPE );
+
+    assertEquals( Boolean.TRUE, expression.evaluate( entry( "101", 0.25, "true" ) ) );
+    assertEquals( Boolean.FALSE, expression.evaluate( entry( 100L, "0.25", true ) ) );
+    assertEquals( Boolean.FALSE, expression.evaluate( entry( " 101 ", " 0.25 ", "" ) ) );
+    assertEquals( Boolean.TRUE, expression.evaluate( entry( " 101 ", " 0.25\t", " true " ) ) );
+
+    assertArrayEquals( new Class[]{ Long.TYPE, Integer.TYPE, Double.TYPE, Boolean.TYPE, String.class }, ExpressionCache.getTypes( "long,int, double,Boolean,string" ) );
+    }
+
+  @Test(expected = NumberFormatException.class)
+  public void testNull()
+    {
+    getExpression( "$0 > 100", null, Long.TYPE ).evaluate( entry( (Object) null ) );
+    }
+
+  @Test(expected = NumberFormatException.class)
+  public void testBlank()
+    {
+    getExpression( "$0 < 0.5", null, Double.TYPE ).evaluate( entry( " " ) );
+    }
+
+  @Test
+  public void testNullableTypes()
+    {
+    CompiledExpression expression = getExpression( "$0 == null ? -1 : $0 * 2", null, Long.class );
+
+    assertEquals( -1L, expression.evaluate( entry( (Object) null ) ) );
+    assertEquals( -1L, expression.evaluate( entry( " " ) ) );
+    assertEquals( 10L, expression.evaluate( entry( " 5" ) ) );
+
+    assertArrayEquals( new Class[]{ Long.class, Integer.class, Double.class, Boolean.class }, ExpressionCache.getTypes( "long?,int ?, double?,Boolean?" ) );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownType()
+    {
+    ExpressionCache.getTypes( "long,float" );
+    }
+
+  @Test
+  public void testStored() throws IOException
+    {
+    getExpression( "$0 + \"!\"", directory.getPath(), String.class );
+
+    File[] stored = directory.listFiles();
+    assertEquals( 1, stored.length );
+    assertTrue( stored[ 0 ].getName().endsWith( ".class" ) );
+
+    ExpressionCache.clear();
+    long modified = stored[ 0 ].lastModified();
+
+    CompiledExpression expression = getExpression( "$0 + \"!\"", directory.getPath(), String.class );
+
+    assertEquals( "hi!", expression.evaluate( entry( "hi" ) ) );
+    assertEquals( modified, stored[ 0 ].lastModified() );
+    }
+
+  @Test
+  public void testIdentifier()
+    {
+    assertTrue( CompiledExpressionOperation.isIdentifier( "name" ) );
+    assertFalse( CompiledExpressionOperation.isIdentifier( "0" ) );
+    assertFalse( CompiledExpressionOperation.isIdentifier( "first name" ) );
+    assertFalse( CompiledExpressionOperation.isIdentifier( "class" ) );
+    assertFalse( CompiledExpressionOperation.isIdentifier( "null" ) );
+    }
+
+  @Test
+  public void testIdentifiers()
+    {
+    Set<String> identifiers = CompiledExpressionOperation.getIdentifiers( "name.length() > 1.5e3 && $1.equals( \"size \\\" count\" ) || 'x' == c" );
+
+    assertEquals( new HashSet<String>( Arrays.asList( "name", "$1", "c" ) ), identifiers );
+    }
+
+  private static CompiledExpression getExpression( String expression, String directory, Class... types )
+    {
+    String[] names = new String[ types.length ];
+    int[] positions = new int[ types.length ];
+
+    for( int i = 0; i < types.length; i++ )
+      {
+      names[ i ] = "$" + i;
+      positions[ i ] = i;
+      }
+
+    return ExpressionCache.getExpression( expression, names, types, positions, directory );
+    }
+
+  private static TupleEntry entry( Object... values )
+    {
+    return new TupleEntry( Fields.size( values.length ), new Tuple( values ) );
+    }
+  }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.scheme.local;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedTextLineTest
+  {
+  private static final String TEXT = "first\r\n\nsecond line\nd\u00e9j\u00e0 vu\nlast";
+
+  private File file;
+  private int windowSize;
+  private int bufferSize;
+
+  @Before
+  public void setUp() throws IOException
+    {
+    file = new File( "build/test/mmap/lines.txt" );
+    FileUtils.writeStringToFile( file, TEXT, "UTF-8" );
+    windowSize = MappedTextLine.windowSize;
+    bufferSize = MappedTextLine.bufferSize;
+    }
+
+  @After
+  public void tearDown() throws IOException
+    {
+    MappedTextLine.windowSize = windowSize;
+    MappedTextLine.bufferSize = bufferSize;
+    FileUtils.deleteDirectory( file.getParentFile() );
+    }
+
+  @Test
+  public void testMapped() throws IOException
+    {
+    assertLines( new FileInputStream( file ) );
+    }
+
+  @Test
+  public void testMappedWindows() throws IOException
+    {
+    MappedTextLine.windowSize = 16;
+    assertLines( new FileInputStream( file ) );
+    }
+
+  @Test
+  public void testStream() throws IOException
+    {
+    MappedTextLine.bufferSize = 4;
+    assertLines( new ByteArrayInputStream( TEXT.getBytes( "UTF-8" ) ) );
+    }
+
+  @Test
+  public void testCarriageReturn() throws IOException
+    {
+    String text = "a\rb\r\n\rlast\r";
+
+    FileUtils.writeStringToFile( file, text );
+    MappedTextLine.windowSize = 5;
+    assertLines( new FileInputStream( file ), "[a, b, , last]", "[0, 2, 5, 6]" );
+
+    MappedTextLine.bufferSize = 1;
+    assertLines( new ByteArrayInputStream( text.getBytes( "UTF-8" ) ), "[a, b, , last]", "[0, 2, 5, 6]" );
+    }
+
+  @Test
+  public void testEmpty() throws IOException
+    {
+    FileUtils.writeStringToFile( file, "" );
+    assertFalse( new MappedTextLine.Lines( new FileInputStream( file ) ).next() );
+    }
+
+  @Test
+  public void testLine() throws IOException
+    {
+    MappedTextLine.Line line = new MappedTextLine.Line( "d\u00e9j\u00e0".getBytes( "UTF-8" ) );
+
+    assertEquals( "d\u00e9j\u00e0", line.toString() );
+    assertEquals( "d\u00e9j\u00e0".hashCode(), line.hashCode() );
+    assertEquals( new MappedTextLine.Line( "d\u00e9j\u00e0".getBytes( "UTF-8" ) ), line );
+    assertTrue( line.compareTo( "e" ) < 0 );
+    assertEquals( 4, line.length() );
+    }
+
+  private void assertLines( InputStream input ) throws IOException
+    {
+    assertLines( input, "[first, , second line, d\u00e9j\u00e0 vu, last]", "[0, 7, 8, 20, 30]" );
+    }
+
+  private void assertLines( InputStream input, String expectedValues, String expectedOffsets ) throws IOException
+    {
+    MappedTextLine.Lines lines = new MappedTextLine.Lines( input );
+    List<String> values = new ArrayList<String>();
+    List<Long> offsets = new ArrayList<Long>();
+
+    try
+      {
+      while( lines.next() )
+        {
+        values.add( lines.line.toString() );
+        offsets.add( lines.offset );
+        }
+      }
+    finally
+      {
+      input.close();
+      }
+
+    assertEquals( expectedValues, values.toString() );
+    assertEquals( expectedOffsets, offsets.toString() );
+    }
+  }
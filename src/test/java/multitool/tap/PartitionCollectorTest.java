@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.tap;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+public class PartitionCollectorTest
+  {
+  private final List<String> events = new ArrayList<String>();
+
+  private class RecordingCollector extends TupleEntryCollector
+    {
+    private final String name;
+
+    RecordingCollector( String name )
+      {
+      this.name = name;
+      }
+
+    @Override
+    protected void collect( TupleEntry tupleEntry )
+      {
+      events.add( "write " + name );
+      }
+
+    @Override
+    public void close()
+      {
+      events.add( "close " + name );
+      }
+    }
+
+  private PartitionCollector createCollector( int maxOpen )
+    {
+    return new PartitionCollector( new Fields( "date" ), maxOpen )
+      {
+      @Override
+      protected TupleEntryCollector openCollector( String partition, int sequence ) throws IOException
+        {
+        String name = partition + "#" + sequence;
+
+        events.add( "open " + name );
+
+        return new RecordingCollector( name );
+        }
+      };
+    }
+
+  private static TupleEntry entry( String date )
+    {
+    return new TupleEntry( new Fields( "date", "count" ), new Tuple( date, 1 ) );
+    }
+
+  @Test
+  public void testLeastRecentlyWrittenIsClosed() throws IOException
+    {
+    PartitionCollector collector = createCollector( 2 );
+
+    collector.collect( entry( "a" ) );
+    collector.collect( entry( "b" ) );
+    collector.collect( entry( "a" ) );
+    collector.collect( entry( "c" ) );
+    collector.collect( entry( "b" ) );
+    collector.close();
+
+    String[] expected = new String[]{ "open date=a#0", "write date=a#0", "open date=b#0", "write date=b#0", "write date=a#0",
+                                      "close date=b#0", "open date=c#0", "write date=c#0",
+                                      "close date=a#0", "open date=b#1", "write date=b#1",
+                                      "close date=c#0", "close date=b#1" };
+
+    assertArrayEquals( events.toString(), expected, events.toArray() );
+    }
+
+  @Test
+  public void testPartition()
+    {
+    PartitionCollector collector = createCollector( 1 );
+
+    assertEquals( "date=2013-10-01", collector.getPartition( entry( "2013-10-01" ) ) );
+    assertEquals( "date=a%2Fb%3Dc", collector.getPartition( entry( "a/b=c" ) ) );
+    assertEquals( "date=", collector.getPartition( entry( null ) ) );
+    }
+
+  @Test
+  public void testEscape()
+    {
+    StringBuilder builder = new StringBuilder();
+
+    PartitionCollector.escape( "caf\u00e9 au lait, 100%", builder );
+
+    assertEquals( "caf%C3%A9 au lait, 100%25", builder.toString() );
+    }
+  }
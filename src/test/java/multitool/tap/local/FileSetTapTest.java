@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.tap.local;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cascading.scheme.local.TextLine;
+
+public class FileSetTapTest
+  {
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException
+    {
+    directory = new File( "build/test/fileset" );
+
+    for( String name : new String[]{ "b.txt", "a.txt", "c.log", ".hidden.txt", "_SUCCESS", "sub/d.txt" } )
+      FileUtils.writeStringToFile( new File( directory, name ), name + "\n" );
+    }
+
+  @After
+  public void tearDown() throws IOException
+    {
+    FileUtils.deleteDirectory( directory );
+    }
+
+  @Test
+  public void testDirectory()
+    {
+    assertEquals( names( "a.txt", "b.txt", "c.log" ), getFiles( directory.getPath() ) );
+    }
+
+  @Test
+  public void testGlob()
+    {
+    assertEquals( names( "a.txt", "b.txt" ), getFiles( directory.getPath() + "/*.txt" ) );
+    assertEquals( names( "a.txt", "c.log" ), getFiles( directory.getPath() + "/{a.txt,c.*}" ) );
+    assertEquals( names( "sub/d.txt" ), getFiles( directory.getPath() + "/s?b" ) );
+    assertEquals( names(), getFiles( directory.getPath() + "/*.csv" ) );
+    }
+
+  @Test
+  public void testGlobToRegex()
+    {
+    assertEquals( "(?:\\Qa\\E|\\Qb\\E).*", FileSetTap.globToRegex( "{a,b}*" ) );
+    assertTrue( "2013-01-02.log".matches( FileSetTap.globToRegex( "2013-01-0[!3].log" ) ) );
+    assertFalse( "2013-01-03.log".matches( FileSetTap.globToRegex( "2013-01-0[!3].log" ) ) );
+    assertTrue( "part-7.log".matches( FileSetTap.globToRegex( "part-[0-9].log" ) ) );
+    assertFalse( "part-a.log".matches( FileSetTap.globToRegex( "part-[0-9].log" ) ) );
+    assertFalse( "part-5.log".matches( FileSetTap.globToRegex( "part-[!0-9].log" ) ) );
+    assertTrue( "a.b".matches( FileSetTap.globToRegex( "a[.^]b" ) ) );
+    assertFalse( "axb".matches( FileSetTap.globToRegex( "a[.^]b" ) ) );
+    }
+
+  private List<File> getFiles( String path )
+    {
+    return new FileSetTap( new TextLine(), path, 2 ).getFiles();
+    }
+
+  private List<File> names( String... names )
+    {
+    List<File> files = new ArrayList<File>();
+
+    for( String name : names )
+      files.add( new File( directory, name ) );
+
+    return files;
+    }
+  }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AhoCorasickTest
+  {
+  @Test
+  public void testFind()
+    {
+    AhoCorasick automaton = new AhoCorasick( Arrays.asList( "he", "she", "his", "hers" ) );
+
+    assertTrue( automaton.find( "ushers" ) );
+    assertTrue( automaton.find( "this" ) );
+    assertTrue( automaton.find( "she" ) );
+    assertFalse( automaton.find( "hi" ) );
+    assertFalse( automaton.find( "" ) );
+    }
+
+  @Test
+  public void testFailureLinks()
+    {
+    AhoCorasick automaton = new AhoCorasick( Arrays.asList( "abcd", "bce" ) );
+
+    assertTrue( automaton.find( "xabcex" ) );
+    assertFalse( automaton.find( "abcbcd" ) );
+    }
+
+  @Test
+  public void testEmptyPattern()
+    {
+    AhoCorasick automaton = new AhoCorasick( Collections.singletonList( "" ) );
+
+    assertTrue( automaton.find( "" ) );
+    assertTrue( automaton.find( "anything" ) );
+    }
+
+  @Test
+  public void testAgainstIndexOf()
+    {
+    Random random = new Random( 1 );
+    String[] patterns = new String[ 50 ];
+
+    for( int i = 0; i < patterns.length; i++ )
+      patterns[ i ] = randomString( random, 2 + random.nextInt( 4 ) );
+
+    AhoCorasick automaton = new AhoCorasick( Arrays.asList( patterns ) );
+
+    for( int i = 0; i < 1000; i++ )
+      {
+      String text = randomString( random, random.nextInt( 40 ) );
+      boolean expected = false;
+
+      for( String pattern : patterns )
+        expected |= text.contains( pattern );
+
+      assertEquals( text, expected, automaton.find( text ) );
+      }
+    }
+
+  private static String randomString( Random random, int length )
+    {
+    char[] chars = new char[ length ];
+
+    for( int i = 0; i < length; i++ )
+      chars[ i ] = (char) ( 'a' + random.nextInt( 3 ) );
+
+    return new String( chars );
+    }
+  }
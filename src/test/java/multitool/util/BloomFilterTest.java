@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BloomFilterTest
+  {
+  @Test
+  public void testNoFalseNegatives()
+    {
+    BloomFilter bloomFilter = new BloomFilter( 10000, 0.01 );
+
+    for( int i = 0; i < 10000; i++ )
+      bloomFilter.add( Hashing.hash( "key" + i ) );
+
+    for( int i = 0; i < 10000; i++ )
+      assertTrue( bloomFilter.mightContain( Hashing.hash( "key" + i ) ) );
+    }
+
+  @Test
+  public void testFalsePositiveProbability()
+    {
+    BloomFilter bloomFilter = new BloomFilter( 10000, 0.01 );
+
+    for( int i = 0; i < 10000; i++ )
+      bloomFilter.add( Hashing.hash( "key" + i ) );
+
+    int falsePositives = 0;
+
+    for( int i = 0; i < 100000; i++ )
+      {
+      if( bloomFilter.mightContain( Hashing.hash( "other" + i ) ) )
+        falsePositives++;
+      }
+
+    assertTrue( "false positives: " + falsePositives, falsePositives < 100000 * 0.02 );
+    }
+
+  @Test
+  public void testEmpty()
+    {
+    assertFalse( new BloomFilter( 0, 0.01 ).mightContain( Hashing.hash( "key" ) ) );
+    }
+  }
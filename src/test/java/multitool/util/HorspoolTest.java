@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HorspoolTest
+  {
+  @Test
+  public void testIndexOf()
+    {
+    assertEquals( 2, new Horspool( "ROR" ).indexOf( "ERROR: failed" ) );
+    assertEquals( 0, new Horspool( "/guid/" ).indexOf( "/guid/123" ) );
+    assertEquals( 1, new Horspool( "\t" ).indexOf( "a\tb" ) );
+    assertEquals( -1, new Horspool( "ERROR" ).indexOf( "ERRO" ) );
+    assertEquals( -1, new Horspool( "ERROR" ).indexOf( "" ) );
+    }
+
+  @Test
+  public void testSkipTableCollisions()
+    {
+    // \u0141 and A share the low byte of their skip table bucket
+    Horspool horspool = new Horspool( "A\u0141B" );
+
+    assertEquals( 3, horspool.indexOf( "xyzA\u0141B" ) );
+    assertEquals( -1, horspool.indexOf( "AAB\u0141AB" ) );
+    }
+
+  @Test
+  public void testAgainstIndexOf()
+    {
+    Random random = new Random( 1 );
+
+    for( int i = 0; i < 1000; i++ )
+      {
+      String literal = randomString( random, 1 + random.nextInt( 5 ) );
+      String text = randomString( random, random.nextInt( 60 ) );
+
+      assertEquals( literal + " in " + text, text.indexOf( literal ), new Horspool( literal ).indexOf( text ) );
+      }
+    }
+
+  private static String randomString( Random random, int length )
+    {
+    char[] chars = new char[ length ];
+
+    for( int i = 0; i < length; i++ )
+      chars[ i ] = "ab\u0161".charAt( random.nextInt( 3 ) );
+
+    return new String( chars );
+    }
+  }
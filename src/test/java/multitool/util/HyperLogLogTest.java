@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HyperLogLogTest
+  {
+  @Test
+  public void testSmallCardinalities()
+    {
+    HyperLogLog sketch = new HyperLogLog( 14 );
+
+    assertEquals( 0, sketch.estimate() );
+
+    for( int i = 0; i < 3; i++ )
+      {
+      sketch.offer( "a" );
+      sketch.offer( "b" );
+      sketch.offer( "c" );
+      }
+
+    assertEquals( 3, sketch.estimate() );
+    }
+
+  @Test
+  public void testEstimate()
+    {
+    HyperLogLog sketch = new HyperLogLog( 14 );
+
+    for( int i = 0; i < 1000000; i++ )
+      sketch.offer( "value" + ( i % 250000 ) );
+
+    assertEquals( 250000, sketch.estimate(), 250000 * 0.03 );
+    }
+
+  @Test
+  public void testMerge()
+    {
+    HyperLogLog lhs = new HyperLogLog( 12 );
+    HyperLogLog rhs = new HyperLogLog( 12 );
+    HyperLogLog all = new HyperLogLog( 12 );
+
+    for( int i = 0; i < 20000; i++ )
+      {
+      ( i % 2 == 0 ? lhs : rhs ).offer( Integer.toString( i ) );
+      all.offer( Integer.toString( i ) );
+      }
+
+    lhs.merge( rhs );
+
+    assertEquals( all.estimate(), lhs.estimate() );
+    assertEquals( 20000, lhs.estimate(), 20000 * 0.06 );
+    }
+
+  @Test
+  public void testEncode()
+    {
+    HyperLogLog sketch = new HyperLogLog( 10 );
+
+    for( int i = 0; i < 5000; i++ )
+      sketch.offer( Integer.toString( i ) );
+
+    HyperLogLog decoded = HyperLogLog.decode( sketch.encode() );
+
+    assertEquals( 10, decoded.getPrecision() );
+    assertEquals( sketch.estimate(), decoded.estimate() );
+    assertEquals( sketch.encode(), decoded.encode() );
+    assertTrue( sketch.encode().matches( "d[0-9A-Za-z_-]{1025}" ) );
+    }
+
+  @Test
+  public void testEncodeSparse()
+    {
+    HyperLogLog sketch = new HyperLogLog( 18 );
+
+    for( int i = 0; i < 100; i++ )
+      sketch.offer( Integer.toString( i ) );
+
+    String encoded = sketch.encode();
+    HyperLogLog decoded = HyperLogLog.decode( encoded );
+
+    assertTrue( encoded, encoded.matches( "s[0-9A-Za-z_-]{401}" ) );
+    assertEquals( 18, decoded.getPrecision() );
+    assertEquals( sketch.estimate(), decoded.estimate() );
+    assertEquals( encoded, decoded.encode() );
+    assertEquals( "s4", new HyperLogLog( 4 ).encode() );
+    assertEquals( 0, HyperLogLog.decode( "s4" ).estimate() );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeInvalid()
+    {
+    HyperLogLog.decode( "d4\t" );
+    }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergePrecision()
+    {
+    new HyperLogLog( 10 ).merge( new HyperLogLog( 12 ) );
+    }
+  }
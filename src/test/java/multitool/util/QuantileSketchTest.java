@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantileSketchTest
+  {
+  @Test
+  public void testExactWhileSmall()
+    {
+    QuantileSketch sketch = new QuantileSketch( 200 );
+
+    for( int i = 100; i >= 1; i-- )
+      sketch.offer( i );
+
+    assertEquals( 100, sketch.getCount() );
+    assertEquals( 1, sketch.getQuantile( 0 ), 0 );
+    assertEquals( 50, sketch.getQuantile( 0.5 ), 0 );
+    assertEquals( 99, sketch.getQuantile( 0.99 ), 0 );
+    assertEquals( 100, sketch.getQuantile( 1 ), 0 );
+    }
+
+  @Test
+  public void testEmpty()
+    {
+    assertTrue( Double.isNaN( new QuantileSketch( 200 ).getQuantile( 0.5 ) ) );
+    }
+
+  @Test
+  public void testRankError()
+    {
+    QuantileSketch sketch = new QuantileSketch( 200 );
+    Random random = new Random( 1 );
+    int count = 1000000;
+
+    for( int i = 0; i < count; i++ )
+      sketch.offer( random.nextInt( count ) );
+
+    double[] quantiles = {0.01, 0.5, 0.95, 0.99};
+    double[] values = sketch.getQuantiles( quantiles );
+
+    for( int i = 0; i < quantiles.length; i++ )
+      assertEquals( quantiles[ i ] * count, values[ i ], count * 0.02 );
+    }
+
+  @Test
+  public void testMerge()
+    {
+    QuantileSketch merged = new QuantileSketch( 100 );
+
+    for( int part = 0; part < 10; part++ )
+      {
+      QuantileSketch sketch = new QuantileSketch( 100 );
+
+      for( int i = part; i < 100000; i += 10 )
+        sketch.offer( i );
+
+      merged.merge( sketch );
+      }
+
+    assertEquals( 100000, merged.getCount() );
+    assertEquals( 50000, merged.getQuantile( 0.5 ), 100000 * 0.03 );
+    assertEquals( 95000, merged.getQuantile( 0.95 ), 100000 * 0.03 );
+    }
+
+  @Test
+  public void testEncode()
+    {
+    QuantileSketch sketch = new QuantileSketch( 50 );
+
+    for( int i = 0; i < 10000; i++ )
+      sketch.offer( i * 0.25 );
+
+    QuantileSketch decoded = QuantileSketch.decode( sketch.encode() );
+
+    assertEquals( sketch.encode(), decoded.encode() );
+    assertEquals( sketch.getCount(), decoded.getCount() );
+    assertEquals( sketch.getQuantile( 0.9 ), decoded.getQuantile( 0.9 ), 0 );
+    }
+  }
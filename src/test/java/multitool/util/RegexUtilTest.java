@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2007-2013 Concurrent, Inc. All Rights Reserved.
+ *
+ * Project and contact information: http://www.cascading.org/
+ *
+ * This file is part of the Cascading project.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package multitool.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+public class RegexUtilTest
+  {
+  @Test
+  public void testLiterals()
+    {
+    assertEquals( "\t", RegexUtil.asLiteral( "\\t" ) );
+    assertEquals( " ", RegexUtil.asLiteral( " " ) );
+    assertEquals( "ERROR", RegexUtil.asLiteral( "ERROR" ) );
+    assertEquals( "/guid/", RegexUtil.asLiteral( "/guid/" ) );
+    assertEquals( "|", RegexUtil.asLiteral( "\\|" ) );
+    assertEquals( "a.b", RegexUtil.asLiteral( "a\\.b" ) );
+    assertEquals( "\\", RegexUtil.asLiteral( "\\\\" ) );
+    }
+
+  @Test
+  public void testNonLiterals()
+    {
+    assertNull( RegexUtil.asLiteral( null ) );
+    assertNull( RegexUtil.asLiteral( "" ) );
+    assertNull( RegexUtil.asLiteral( "\\s+" ) );
+    assertNull( RegexUtil.asLiteral( "a.b" ) );
+    assertNull( RegexUtil.asLiteral( "a|b" ) );
+    assertNull( RegexUtil.asLiteral( "^ERROR" ) );
+    assertNull( RegexUtil.asLiteral( "\\Qa\\E" ) );
+    assertNull( RegexUtil.asLiteral( "\\" ) );
+    }
+
+  @Test
+  public void testReadPatterns() throws Exception
+    {
+    File file = File.createTempFile( "patterns", ".txt" );
+
+    file.deleteOnExit();
+
+    Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+    writer.write( "ERROR\n\n^WARN\\s\n" );
+    writer.close();
+
+    assertArrayEquals( new String[]{"ERROR", "^WARN\\s"}, RegexUtil.readPatterns( null, file.getPath() ) );
+    assertArrayEquals( new String[]{"FATAL", "ERROR", "^WARN\\s"}, RegexUtil.readPatterns( "FATAL", file.getPath() ) );
+    }
+  }